@@ -33,6 +33,7 @@ package com.google.protobuf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,6 +69,15 @@ public final class CodedInputStream {
     return new CodedInputStream(raf);
   }
 
+  /**
+   * Create a new CodedInputStream reading from a (memory-mapped) file buffer.
+   * Only a duplicate of the buffer is kept, so many streams can share one
+   * mapping and each keeps its own position.
+   */
+  public static CodedInputStream newInstance(ByteBuffer mappedFile) {
+    return new CodedInputStream(mappedFile);
+  }
+
   /**
    * Create a new CodedInputStream wrapping the given byte array slice.
    */
@@ -539,6 +549,7 @@ public final class CodedInputStream {
 
   private final byte[] buffer;
   private RandomAccessFile raf;
+  private ByteBuffer mappedFile;
   private int bufferSize;
   private int bufferSizeAfterLimit;
   private int bufferPos;
@@ -586,6 +597,16 @@ public final class CodedInputStream {
 		input = null;
 	}
 
+	private CodedInputStream(final ByteBuffer mappedFile) {
+		buffer = new byte[BUFFER_SIZE];
+		this.bufferSize = 0;
+		bufferPos = 0;
+		totalBytesRetired = 0;
+		this.mappedFile = mappedFile.duplicate();
+		this.mappedFile.position(0);
+		input = null;
+	}
+
   private CodedInputStream(final InputStream input) {
     buffer = new byte[BUFFER_SIZE];
     bufferSize = 0;
@@ -761,6 +782,14 @@ public final class CodedInputStream {
     	} else {
     		bufferSize = -1;
     	}
+    } else if (mappedFile != null) {
+    	totalBytesRetired = mappedFile.position();
+    	bufferSize = Math.min(mappedFile.remaining(), buffer.length);
+    	if (bufferSize > 0) {
+    		mappedFile.get(buffer, 0, bufferSize);
+    	} else {
+    		bufferSize = -1;
+    	}
     } else {
     	bufferSize = (input == null) ? -1 : input.read(buffer);
     }
@@ -882,6 +911,13 @@ public final class CodedInputStream {
         	if(raf != null) {
         		raf.readFully(chunk, pos, chunk.length - pos);
         		n = chunk.length - pos;
+        	} else if (mappedFile != null) {
+        		n = Math.min(mappedFile.remaining(), chunk.length - pos);
+        		if (n > 0) {
+        			mappedFile.get(chunk, pos, n);
+        		} else {
+        			throw InvalidProtocolBufferException.truncatedMessage();
+        		}
         	} else {
         		n = (input == null) ? -1 :
         	    input.read(chunk, pos, chunk.length - pos);
@@ -949,6 +985,14 @@ public final class CodedInputStream {
       	 if (n <= 0) {
              throw InvalidProtocolBufferException.truncatedMessage();
          }
+      } else if (mappedFile != null) {
+         bufferPos = 0;
+         bufferSize = 0;
+         if (size - pos > mappedFile.remaining()) {
+           throw InvalidProtocolBufferException.truncatedMessage();
+         }
+         mappedFile.position(mappedFile.position() + size - pos);
+         totalBytesRetired = mappedFile.position();
       } else {
       // Keep refilling the buffer until we get to the point we wanted to skip
       // to.  This has the side effect of ensuring the limits are updated
@@ -975,7 +1019,11 @@ public final class CodedInputStream {
 	  } else {
 		  totalBytesRetired = (int) pointer;
 		  bufferSizeAfterLimit = 0;
-		  raf.seek(pointer);
+		  if (mappedFile != null) {
+			  mappedFile.position((int) pointer);
+		  } else {
+			  raf.seek(pointer);
+		  }
 		  bufferPos = 0;
 		  bufferSize = 0;
 	  }
@@ -31,6 +31,7 @@ import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -43,6 +44,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TimeZone;
@@ -136,6 +138,19 @@ public class GPXUtilities {
 		boolean readExtensions(GPXFile res, XmlPullParser parser) throws IOException, XmlPullParserException;
 	}
 
+	/**
+	 * Receives track points from {@link #readTrackPoints(InputStream, GPXTrackPointsListener)}
+	 * as primitive values, no objects are created per point.
+	 */
+	public interface GPXTrackPointsListener {
+
+		void segmentStarted();
+
+		void trackPoint(double lat, double lon, double ele, long time, double speed, double hdop);
+
+		void segmentFinished();
+	}
+
 	public static class GPXExtensions {
 		public Map<String, String> extensions = null;
 		GPXExtensionsWriter extensionsWriter = null;
@@ -518,6 +533,55 @@ public class GPXUtilities {
 		public List<RouteSegment> routeSegments = new ArrayList<>();
 		public List<RouteType> routeTypes = new ArrayList<>();
 
+		public TrkSegment() {
+		}
+
+		/**
+		 * Creates segment which keeps points in columns, {@link #points} creates {@link WptPt} only for accessed points.
+		 */
+		public TrkSegment(TrackPointColumns columns) {
+			points = new ColumnPointsList(columns);
+		}
+
+		/**
+		 * Returns point columns if points are kept in columns, otherwise null.
+		 */
+		public TrackPointColumns getColumns() {
+			return points instanceof ColumnPointsList ? ((ColumnPointsList) points).getColumns() : null;
+		}
+
+		/**
+		 * Moves points to columns to reduce memory, possible only if points have no data except
+		 * coordinates, elevation, time, speed and hdop.
+		 *
+		 * @return true if points are kept in columns
+		 */
+		public boolean compactPoints() {
+			if (getColumns() != null) {
+				return true;
+			}
+			for (WptPt pt : points) {
+				if (!isCompactable(pt)) {
+					return false;
+				}
+			}
+			TrackPointColumns columns = new TrackPointColumns(points.size());
+			for (WptPt pt : points) {
+				columns.add(pt);
+			}
+			points = new ColumnPointsList(columns);
+			return true;
+		}
+
+		private static boolean isCompactable(WptPt pt) {
+			Map<String, String> extensions = pt.getExtensionsToRead();
+			// speed extension is written from speed column
+			boolean speedExtension = extensions.size() == 1 && extensions.containsKey("speed");
+			return pt.name == null && pt.link == null && pt.category == null && pt.desc == null && pt.comment == null
+					&& Float.isNaN(pt.heading) && !pt.deleted && pt.colourARGB == 0
+					&& (extensions.isEmpty() || speedExtension) && pt.getExtensionsWriter() == null;
+		}
+
 		public boolean hasRoute() {
 			return !routeSegments.isEmpty() && !routeTypes.isEmpty();
 		}
@@ -537,6 +601,280 @@ public class GPXUtilities {
 		}
 	}
 
+	/**
+	 * Track segment points stored as primitive columns, used for very large tracks
+	 * where a {@link WptPt} object per point is too expensive.
+	 */
+	public static class TrackPointColumns {
+
+		private static final int INITIAL_CAPACITY = 256;
+		private static final byte FIRST_POINT = 1;
+		private static final byte LAST_POINT = 2;
+
+		private int size;
+		private double[] lat;
+		private double[] lon;
+		private double[] ele;
+		private long[] time;
+		private double[] speed;
+		private double[] hdop;
+		private double[] distance;
+		// first and last point marks of general segment, allocated only when used
+		private byte[] flags;
+
+		public TrackPointColumns() {
+			this(INITIAL_CAPACITY);
+		}
+
+		public TrackPointColumns(int capacity) {
+			capacity = Math.max(capacity, 1);
+			lat = new double[capacity];
+			lon = new double[capacity];
+			ele = new double[capacity];
+			time = new long[capacity];
+			speed = new double[capacity];
+			hdop = new double[capacity];
+			distance = new double[capacity];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public void add(double lat, double lon, double ele, long time, double speed, double hdop) {
+			if (size == this.lat.length) {
+				ensureCapacity(size + (size >> 1) + 1);
+			}
+			this.lat[size] = lat;
+			this.lon[size] = lon;
+			this.ele[size] = ele;
+			this.time[size] = time;
+			this.speed[size] = speed;
+			this.hdop[size] = hdop;
+			this.distance[size] = 0;
+			if (flags != null) {
+				flags[size] = 0;
+			}
+			size++;
+		}
+
+		public void add(WptPt pt) {
+			add(pt.lat, pt.lon, pt.ele, pt.time, pt.speed, pt.hdop);
+			distance[size - 1] = pt.distance;
+			setFirstPoint(size - 1, pt.firstPoint);
+			setLastPoint(size - 1, pt.lastPoint);
+		}
+
+		private void ensureCapacity(int capacity) {
+			lat = Arrays.copyOf(lat, capacity);
+			lon = Arrays.copyOf(lon, capacity);
+			ele = Arrays.copyOf(ele, capacity);
+			time = Arrays.copyOf(time, capacity);
+			speed = Arrays.copyOf(speed, capacity);
+			hdop = Arrays.copyOf(hdop, capacity);
+			distance = Arrays.copyOf(distance, capacity);
+			if (flags != null) {
+				flags = Arrays.copyOf(flags, capacity);
+			}
+		}
+
+		public void trimToSize() {
+			if (size < lat.length) {
+				ensureCapacity(Math.max(size, 1));
+			}
+		}
+
+		public double getLatitude(int i) {
+			return lat[i];
+		}
+
+		public double getLongitude(int i) {
+			return lon[i];
+		}
+
+		public double getElevation(int i) {
+			return ele[i];
+		}
+
+		public long getTime(int i) {
+			return time[i];
+		}
+
+		public double getSpeed(int i) {
+			return speed[i];
+		}
+
+		public double getHdop(int i) {
+			return hdop[i];
+		}
+
+		/**
+		 * Cumulative distance of the point in the segment, calculated by analysis
+		 */
+		public double getDistance(int i) {
+			return distance[i];
+		}
+
+		public void setDistance(int i, double dist) {
+			distance[i] = dist;
+		}
+
+		public boolean isFirstPoint(int i) {
+			return flags != null && (flags[i] & FIRST_POINT) != 0;
+		}
+
+		public boolean isLastPoint(int i) {
+			return flags != null && (flags[i] & LAST_POINT) != 0;
+		}
+
+		public void setFirstPoint(int i, boolean firstPoint) {
+			setFlag(i, FIRST_POINT, firstPoint);
+		}
+
+		public void setLastPoint(int i, boolean lastPoint) {
+			setFlag(i, LAST_POINT, lastPoint);
+		}
+
+		private void setFlag(int i, byte flag, boolean value) {
+			if (flags == null) {
+				if (!value) {
+					return;
+				}
+				flags = new byte[lat.length];
+			}
+			flags[i] = (byte) (value ? flags[i] | flag : flags[i] & ~flag);
+		}
+
+		/**
+		 * Creates a new point with values of i-th point, changes of the point are not stored in columns.
+		 */
+		public WptPt getPoint(int i) {
+			WptPt pt = new WptPt(lat[i], lon[i], time[i], ele[i], speed[i], hdop[i]);
+			pt.distance = distance[i];
+			pt.firstPoint = isFirstPoint(i);
+			pt.lastPoint = isLastPoint(i);
+			return pt;
+		}
+
+		public GPXTrackAnalysis getAnalysis(long fileTimestamp) {
+			return GPXTrackAnalysis.segment(fileTimestamp, new TrkSegment(this));
+		}
+
+		public List<GPXTrackAnalysis> splitByDistance(double meters) {
+			return new TrkSegment(this).splitByDistance(meters, false);
+		}
+
+		public List<GPXTrackAnalysis> splitByTime(int seconds) {
+			return new TrkSegment(this).splitByTime(seconds, false);
+		}
+	}
+
+	/**
+	 * Points list of columnar {@link TrkSegment}. {@link WptPt} views are created lazily on access and kept,
+	 * so changes of returned points are visible to analysis and writers. Insertion or removal in the middle
+	 * converts the list back to plain {@link WptPt} objects.
+	 */
+	private static class ColumnPointsList extends AbstractList<WptPt> implements RandomAccess {
+
+		private TrackPointColumns columns;
+		private WptPt[] views;
+		// set when list is not columnar anymore
+		private List<WptPt> points;
+
+		ColumnPointsList(TrackPointColumns columns) {
+			this.columns = columns;
+		}
+
+		TrackPointColumns getColumns() {
+			return columns;
+		}
+
+		WptPt getView(int i) {
+			return views == null || i >= views.length ? null : views[i];
+		}
+
+		@Override
+		public WptPt get(int i) {
+			if (points != null) {
+				return points.get(i);
+			}
+			if (i < 0 || i >= columns.size()) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + columns.size());
+			}
+			WptPt view = getView(i);
+			if (view == null) {
+				view = columns.getPoint(i);
+				setView(i, view);
+			}
+			return view;
+		}
+
+		private void setView(int i, WptPt view) {
+			if (views == null || i >= views.length) {
+				views = Arrays.copyOf(views == null ? new WptPt[0] : views, Math.max(i + 1, columns.size()));
+			}
+			views[i] = view;
+		}
+
+		@Override
+		public int size() {
+			return points != null ? points.size() : columns.size();
+		}
+
+		@Override
+		public WptPt set(int i, WptPt element) {
+			if (points != null) {
+				return points.set(i, element);
+			}
+			WptPt old = get(i);
+			setView(i, element);
+			return old;
+		}
+
+		@Override
+		public void add(int i, WptPt element) {
+			if (points == null && i == columns.size()) {
+				// appended point is kept as is, as it could have data not stored in columns
+				columns.add(element);
+				setView(i, element);
+			} else {
+				toPoints().add(i, element);
+			}
+			modCount++;
+		}
+
+		@Override
+		public WptPt remove(int i) {
+			modCount++;
+			return toPoints().remove(i);
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			points = new ArrayList<>();
+			columns = null;
+			views = null;
+		}
+
+		private List<WptPt> toPoints() {
+			if (points == null) {
+				List<WptPt> list = new ArrayList<>(columns.size());
+				for (int i = 0; i < columns.size(); i++) {
+					list.add(get(i));
+				}
+				points = list;
+				columns = null;
+				views = null;
+			}
+			return points;
+		}
+	}
+
 	public static class Track extends GPXExtensions {
 		public String name = null;
 		public String desc = null;
@@ -910,20 +1248,23 @@ public class GPXUtilities {
 				secondaryMetricEnd += s.secondaryMetricEnd;
 				points += numberOfPoints;
 				for (int j = 0; j < numberOfPoints; j++) {
-					WptPt point = s.get(j);
 					if (j == 0 && locationStart == null) {
-						locationStart = point;
+						locationStart = s.get(j);
 					}
 					if (j == numberOfPoints - 1) {
-						locationEnd = point;
+						locationEnd = s.get(j);
 					}
-					long time = point.time;
+					double lat = s.getLatitude(j);
+					double lon = s.getLongitude(j);
+					boolean firstPoint = s.isFirstPoint(j);
+					boolean lastPoint = s.isLastPoint(j);
+					long time = s.getTime(j);
 					if (time != 0) {
 						if (s.metricEnd == 0) {
-							if (s.segment.generalSegment) {
-								if (point.firstPoint) {
+							if (s.generalSegment) {
+								if (firstPoint) {
 									startTimeOfSingleSegment = time;
-								} else if (point.lastPoint) {
+								} else if (lastPoint) {
 									endTimeOfSingleSegment = time;
 								}
 								if (startTimeOfSingleSegment != 0 && endTimeOfSingleSegment != 0) {
@@ -938,18 +1279,18 @@ public class GPXUtilities {
 					}
 
 					if (left == 0 && right == 0) {
-						left = point.getLongitude();
-						right = point.getLongitude();
-						top = point.getLatitude();
-						bottom = point.getLatitude();
+						left = lon;
+						right = lon;
+						top = lat;
+						bottom = lat;
 					} else {
-						left = Math.min(left, point.getLongitude());
-						right = Math.max(right, point.getLongitude());
-						top = Math.max(top, point.getLatitude());
-						bottom = Math.min(bottom, point.getLatitude());
+						left = Math.min(left, lon);
+						right = Math.max(right, lon);
+						top = Math.max(top, lat);
+						bottom = Math.min(bottom, lat);
 					}
 
-					double elevation = point.ele;
+					double elevation = s.getElevation(j);
 					Elevation elevation1 = new Elevation();
 					if (!Double.isNaN(elevation)) {
 						totalElevation += elevation;
@@ -962,12 +1303,12 @@ public class GPXUtilities {
 						elevation1.elevation = Float.NaN;
 					}
 
-					float speed = (float) point.speed;
+					float speed = (float) s.getSpeed(j);
 					if (speed > 0) {
 						hasSpeedInTrack = true;
 					}
 
-					double hdop = point.hdop;
+					double hdop = s.getHdop(j);
 					if (hdop > 0) {
 						if (Double.isNaN(minHdop) || hdop < minHdop) {
 							minHdop = hdop;
@@ -978,7 +1319,9 @@ public class GPXUtilities {
 					}
 
 					if (j > 0) {
-						WptPt prev = s.get(j - 1);
+						double prevLat = s.getLatitude(j - 1);
+						double prevLon = s.getLongitude(j - 1);
+						long prevTime = s.getTime(j - 1);
 
 						// Old complete summation approach for elevation gain/loss
 						//if (!Double.isNaN(point.ele) && !Double.isNaN(prev.ele)) {
@@ -993,13 +1336,13 @@ public class GPXUtilities {
 						// totalDistance += MapUtils.getDistance(prev.lat, prev.lon, point.lat, point.lon);
 						// using ellipsoidal 'distanceBetween' instead of spherical haversine (MapUtils.getDistance) is
 						// a little more exact, also seems slightly faster:
-						net.osmand.Location.distanceBetween(prev.lat, prev.lon, point.lat, point.lon, calculations);
+						net.osmand.Location.distanceBetween(prevLat, prevLon, lat, lon, calculations);
 						totalDistance += calculations[0];
 						segmentDistance += calculations[0];
-						point.distance = segmentDistance;
+						s.setDistance(j, segmentDistance);
 
 						// In case points are reversed and => time is decreasing
-						long timeDiffMillis = Math.max(0, point.time - prev.time);
+						long timeDiffMillis = Math.max(0, time - prevTime);
 						timeDiff = (int) ((timeDiffMillis) / 1000);
 
 						//Last resort: Derive speed values from displacement if track does not originally contain speed
@@ -1010,11 +1353,11 @@ public class GPXUtilities {
 						// Motion detection:
 						//   speed > 0  uses GPS chipset's motion detection
 						//   calculations[0] > minDisplacment * time  is heuristic needed because tracks may be filtered at recording time, so points at rest may not be present in file at all
-						boolean timeSpecified = point.time != 0 && prev.time != 0;
+						boolean timeSpecified = time != 0 && prevTime != 0;
 						if (speed > 0 && timeSpecified && calculations[0] > timeDiffMillis / 10000f) {
 							timeMoving = timeMoving + timeDiffMillis;
 							totalDistanceMoving += calculations[0];
-							if (s.segment.generalSegment && !point.firstPoint) {
+							if (s.generalSegment && !firstPoint) {
 								timeMovingOfSingleSegment += timeDiffMillis;
 								distanceMovingOfSingleSegment += calculations[0];
 							}
@@ -1049,9 +1392,9 @@ public class GPXUtilities {
 					if (!hasSpeedData && speed1.speed > 0 && totalDistance > 0) {
 						hasSpeedData = true;
 					}
-					if (s.segment.generalSegment) {
+					if (s.generalSegment) {
 						distanceOfSingleSegment += calculations[0];
-						if (point.firstPoint) {
+						if (firstPoint) {
 							distanceOfSingleSegment = 0;
 							timeMovingOfSingleSegment = 0;
 							distanceMovingOfSingleSegment = 0;
@@ -1060,7 +1403,7 @@ public class GPXUtilities {
 								speed1.firstPoint = true;
 							}
 						}
-						if (point.lastPoint) {
+						if (lastPoint) {
 							totalDistanceWithoutGaps += distanceOfSingleSegment;
 							timeMovingWithoutGaps += timeMovingOfSingleSegment;
 							totalDistanceMovingWithoutGaps += distanceMovingOfSingleSegment;
@@ -1077,6 +1420,21 @@ public class GPXUtilities {
 					public WptPt getPoint(int index) {
 						return s.get(index);
 					}
+
+					@Override
+					protected long getPointTime(int index) {
+						return s.getTime(index);
+					}
+
+					@Override
+					protected double getPointElevation(int index) {
+						return s.getElevation(index);
+					}
+
+					@Override
+					protected double getPointDistance(int index) {
+						return s.getDistance(index);
+					}
 				};
 				elevationDiffsCalc.calculateElevationDiffs();
 				diffElevationUp += elevationDiffsCalc.diffElevationUp;
@@ -1133,8 +1491,8 @@ public class GPXUtilities {
 			public ElevationDiffsCalculator(int startIndex, int numberOfPoints) {
 				this.startIndex = startIndex;
 				this.numberOfPoints = numberOfPoints;
-				WptPt lastPoint = getPoint(startIndex + numberOfPoints - 1);
-				this.windowLength = lastPoint.time == 0 ? CALCULATED_GPX_WINDOW_LENGTH : Math.max(20d, lastPoint.distance / numberOfPoints * 4);
+				int lastIndex = startIndex + numberOfPoints - 1;
+				this.windowLength = getPointTime(lastIndex) == 0 ? CALCULATED_GPX_WINDOW_LENGTH : Math.max(20d, getPointDistance(lastIndex) / numberOfPoints * 4);
 			}
 
 			public ElevationDiffsCalculator(double windowLength, int startIndex, int numberOfPoints) {
@@ -1144,6 +1502,18 @@ public class GPXUtilities {
 
 			public abstract WptPt getPoint(int index);
 
+			protected long getPointTime(int index) {
+				return getPoint(index).time;
+			}
+
+			protected double getPointElevation(int index) {
+				return getPoint(index).ele;
+			}
+
+			protected double getPointDistance(int index) {
+				return getPoint(index).distance;
+			}
+
 			public double getDiffElevationUp() {
 				return diffElevationUp;
 			}
@@ -1153,20 +1523,20 @@ public class GPXUtilities {
 			}
 
 			public void calculateElevationDiffs() {
-				WptPt initialPoint = getPoint(startIndex);
-				double eleSumm = initialPoint.ele;
-				double prevEle = initialPoint.ele;
+				double eleSumm = getPointElevation(startIndex);
+				double prevEle = eleSumm;
 				int pointsCount = Double.isNaN(eleSumm) ? 0 : 1;
 				double eleAvg = Double.NaN;
-				double nextWindowPos = initialPoint.distance + windowLength;
+				double nextWindowPos = getPointDistance(startIndex) + windowLength;
 				int pointIndex = startIndex + 1;
 				while (pointIndex < numberOfPoints + startIndex) {
-					WptPt point = getPoint(pointIndex);
-					if (point.distance > nextWindowPos) {
+					double ele = getPointElevation(pointIndex);
+					double distance = getPointDistance(pointIndex);
+					if (distance > nextWindowPos) {
 						eleAvg = calcAvg(eleSumm, pointsCount, eleAvg);
-						if (!Double.isNaN(point.ele)) {
-							eleSumm = point.ele;
-							prevEle = point.ele;
+						if (!Double.isNaN(ele)) {
+							eleSumm = ele;
+							prevEle = ele;
 							pointsCount = 1;
 						} else if (!Double.isNaN(prevEle)) {
 							eleSumm = prevEle;
@@ -1175,13 +1545,13 @@ public class GPXUtilities {
 							eleSumm = Double.NaN;
 							pointsCount = 0;
 						}
-						while (nextWindowPos < point.distance) {
+						while (nextWindowPos < distance) {
 							nextWindowPos += windowLength;
 						}
 					} else {
-						if (!Double.isNaN(point.ele)) {
-							eleSumm += point.ele;
-							prevEle = point.ele;
+						if (!Double.isNaN(ele)) {
+							eleSumm += ele;
+							prevEle = ele;
 							pointsCount++;
 						} else if (!Double.isNaN(prevEle)) {
 							eleSumm += prevEle;
@@ -1214,8 +1584,201 @@ public class GPXUtilities {
 		}
 	}
 
+	/**
+	 * Random access to segment points, so analysis and splits could run over
+	 * {@link TrkSegment} points as well as over {@link TrackPointColumns}.
+	 */
+	private abstract static class SegmentPoints {
+
+		abstract int size();
+
+		abstract double getLatitude(int i);
+
+		abstract double getLongitude(int i);
+
+		abstract long getTime(int i);
+
+		abstract double getElevation(int i);
+
+		abstract double getSpeed(int i);
+
+		abstract double getHdop(int i);
+
+		abstract double getDistance(int i);
+
+		abstract void setDistance(int i, double distance);
+
+		abstract boolean isFirstPoint(int i);
+
+		abstract boolean isLastPoint(int i);
+
+		abstract WptPt getPoint(int i);
+	}
+
+	private static class WptPtSegmentPoints extends SegmentPoints {
+
+		private final List<WptPt> points;
+
+		WptPtSegmentPoints(List<WptPt> points) {
+			this.points = points;
+		}
+
+		@Override
+		int size() {
+			return points.size();
+		}
+
+		@Override
+		double getLatitude(int i) {
+			return points.get(i).lat;
+		}
+
+		@Override
+		double getLongitude(int i) {
+			return points.get(i).lon;
+		}
+
+		@Override
+		long getTime(int i) {
+			return points.get(i).time;
+		}
+
+		@Override
+		double getElevation(int i) {
+			return points.get(i).ele;
+		}
+
+		@Override
+		double getSpeed(int i) {
+			return points.get(i).speed;
+		}
+
+		@Override
+		double getHdop(int i) {
+			return points.get(i).hdop;
+		}
+
+		@Override
+		double getDistance(int i) {
+			return points.get(i).distance;
+		}
+
+		@Override
+		void setDistance(int i, double distance) {
+			points.get(i).distance = distance;
+		}
+
+		@Override
+		boolean isFirstPoint(int i) {
+			return points.get(i).firstPoint;
+		}
+
+		@Override
+		boolean isLastPoint(int i) {
+			return points.get(i).lastPoint;
+		}
+
+		@Override
+		WptPt getPoint(int i) {
+			return points.get(i);
+		}
+	}
+
+	// reads values of not accessed points from columns, without creating views
+	private static class ColumnSegmentPoints extends SegmentPoints {
+
+		private final ColumnPointsList list;
+		private final TrackPointColumns columns;
+
+		ColumnSegmentPoints(ColumnPointsList list) {
+			this.list = list;
+			this.columns = list.getColumns();
+		}
+
+		@Override
+		int size() {
+			return columns.size();
+		}
+
+		@Override
+		double getLatitude(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.lat : columns.getLatitude(i);
+		}
+
+		@Override
+		double getLongitude(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.lon : columns.getLongitude(i);
+		}
+
+		@Override
+		long getTime(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.time : columns.getTime(i);
+		}
+
+		@Override
+		double getElevation(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.ele : columns.getElevation(i);
+		}
+
+		@Override
+		double getSpeed(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.speed : columns.getSpeed(i);
+		}
+
+		@Override
+		double getHdop(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.hdop : columns.getHdop(i);
+		}
+
+		@Override
+		double getDistance(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.distance : columns.getDistance(i);
+		}
+
+		@Override
+		void setDistance(int i, double distance) {
+			WptPt view = list.getView(i);
+			if (view != null) {
+				view.distance = distance;
+			}
+			columns.setDistance(i, distance);
+		}
+
+		@Override
+		boolean isFirstPoint(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.firstPoint : columns.isFirstPoint(i);
+		}
+
+		@Override
+		boolean isLastPoint(int i) {
+			WptPt view = list.getView(i);
+			return view != null ? view.lastPoint : columns.isLastPoint(i);
+		}
+
+		@Override
+		WptPt getPoint(int i) {
+			return list.get(i);
+		}
+	}
+
+	private static SegmentPoints getSegmentPoints(List<WptPt> points) {
+		if (points instanceof ColumnPointsList && ((ColumnPointsList) points).getColumns() != null) {
+			return new ColumnSegmentPoints((ColumnPointsList) points);
+		}
+		return new WptPtSegmentPoints(points);
+	}
+
 	private static class SplitSegment {
-		TrkSegment segment;
+		SegmentPoints points;
+		boolean generalSegment;
 		double startCoeff = 0;
 		int startPointInd;
 		double endCoeff = 0;
@@ -1224,11 +1787,16 @@ public class GPXUtilities {
 		double secondaryMetricEnd;
 
 		public SplitSegment(TrkSegment s) {
+			this(getSegmentPoints(s.points), s.generalSegment);
+		}
+
+		public SplitSegment(SegmentPoints points, boolean generalSegment) {
 			startPointInd = 0;
 			startCoeff = 0;
-			endPointInd = s.points.size() - 2;
+			endPointInd = points.size() - 2;
 			endCoeff = 1;
-			this.segment = s;
+			this.points = points;
+			this.generalSegment = generalSegment;
 		}
 
 		public SplitSegment(int startInd, int endInd, TrkSegment s) {
@@ -1236,11 +1804,13 @@ public class GPXUtilities {
 			startCoeff = 0;
 			endPointInd = endInd - 2;
 			endCoeff = 1;
-			this.segment = s;
+			this.points = getSegmentPoints(s.points);
+			this.generalSegment = s.generalSegment;
 		}
 
-		public SplitSegment(TrkSegment s, int pointInd, double cf) {
-			this.segment = s;
+		public SplitSegment(SegmentPoints points, boolean generalSegment, int pointInd, double cf) {
+			this.points = points;
+			this.generalSegment = generalSegment;
 			this.startPointInd = pointInd;
 			this.startCoeff = cf;
 		}
@@ -1250,32 +1820,93 @@ public class GPXUtilities {
 			return endPointInd - startPointInd + 2;
 		}
 
-		public WptPt get(int j) {
-			final int ind = j + startPointInd;
+		// index of the first of two points used to approximate j-th point, -1 if point is not approximated
+		private int approxIndex(int j) {
 			if (j == 0) {
-				if (startCoeff == 0) {
-					return segment.points.get(ind);
-				}
-				return approx(segment.points.get(ind), segment.points.get(ind + 1), startCoeff);
+				return startCoeff == 0 ? -1 : startPointInd;
 			}
 			if (j == getNumberOfPoints() - 1) {
-				if (endCoeff == 1) {
-					return segment.points.get(ind);
-				}
-				return approx(segment.points.get(ind - 1), segment.points.get(ind), endCoeff);
+				return endCoeff == 1 ? -1 : j + startPointInd - 1;
+			}
+			return -1;
+		}
+
+		private double approxCoeff(int j) {
+			return j == 0 ? startCoeff : endCoeff;
+		}
+
+		public WptPt get(int j) {
+			if (approxIndex(j) == -1) {
+				return points.getPoint(j + startPointInd);
+			}
+			return new WptPt(getLatitude(j), getLongitude(j), getTime(j), getElevation(j), getSpeed(j), getHdop(j));
+		}
+
+		public double getLatitude(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getLatitude(j + startPointInd);
+			}
+			return value(points.getLatitude(ind), points.getLatitude(ind + 1), -360, approxCoeff(j));
+		}
+
+		public double getLongitude(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getLongitude(j + startPointInd);
 			}
-			return segment.points.get(ind);
+			return value(points.getLongitude(ind), points.getLongitude(ind + 1), -360, approxCoeff(j));
 		}
 
+		public long getTime(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getTime(j + startPointInd);
+			}
+			return value(points.getTime(ind), points.getTime(ind + 1), 0, approxCoeff(j));
+		}
+
+		public double getElevation(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getElevation(j + startPointInd);
+			}
+			return value(points.getElevation(ind), points.getElevation(ind + 1), 0, approxCoeff(j));
+		}
+
+		public double getSpeed(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getSpeed(j + startPointInd);
+			}
+			return value(points.getSpeed(ind), points.getSpeed(ind + 1), 0, approxCoeff(j));
+		}
+
+		public double getHdop(int j) {
+			int ind = approxIndex(j);
+			if (ind == -1) {
+				return points.getHdop(j + startPointInd);
+			}
+			return value(points.getHdop(ind), points.getHdop(ind + 1), 0, approxCoeff(j));
+		}
 
-		private WptPt approx(WptPt w1, WptPt w2, double cf) {
-			long time = value(w1.time, w2.time, 0, cf);
-			double speed = value(w1.speed, w2.speed, 0, cf);
-			double ele = value(w1.ele, w2.ele, 0, cf);
-			double hdop = value(w1.hdop, w2.hdop, 0, cf);
-			double lat = value(w1.lat, w2.lat, -360, cf);
-			double lon = value(w1.lon, w2.lon, -360, cf);
-			return new WptPt(lat, lon, time, ele, speed, hdop);
+		public boolean isFirstPoint(int j) {
+			return approxIndex(j) == -1 && points.isFirstPoint(j + startPointInd);
+		}
+
+		public boolean isLastPoint(int j) {
+			return approxIndex(j) == -1 && points.isLastPoint(j + startPointInd);
+		}
+
+		// approximated points are not stored, so their distance is not kept
+		public double getDistance(int j) {
+			return approxIndex(j) == -1 ? points.getDistance(j + startPointInd) : 0;
+		}
+
+		public void setDistance(int j, double distance) {
+			if (approxIndex(j) == -1) {
+				points.setDistance(j + startPointInd, distance);
+			}
 		}
 
 		private double value(double vl, double vl2, double none, double cf) {
@@ -1311,8 +1942,9 @@ public class GPXUtilities {
 			private final float[] calculations = new float[1];
 
 			@Override
-			public double metric(WptPt p1, WptPt p2) {
-				net.osmand.Location.distanceBetween(p1.lat, p1.lon, p2.lat, p2.lon, calculations);
+			public double metric(SegmentPoints points, int i1, int i2) {
+				net.osmand.Location.distanceBetween(points.getLatitude(i1), points.getLongitude(i1),
+						points.getLatitude(i2), points.getLongitude(i2), calculations);
 				return calculations[0];
 			}
 		};
@@ -1322,9 +1954,11 @@ public class GPXUtilities {
 		return new SplitMetric() {
 
 			@Override
-			public double metric(WptPt p1, WptPt p2) {
-				if (p1.time != 0 && p2.time != 0) {
-					return (int) Math.abs((p2.time - p1.time) / 1000l);
+			public double metric(SegmentPoints points, int i1, int i2) {
+				long t1 = points.getTime(i1);
+				long t2 = points.getTime(i2);
+				if (t1 != 0 && t2 != 0) {
+					return (int) Math.abs((t2 - t1) / 1000l);
 				}
 				return 0;
 			}
@@ -1333,46 +1967,49 @@ public class GPXUtilities {
 
 	private abstract static class SplitMetric {
 
-		public abstract double metric(WptPt p1, WptPt p2);
+		public abstract double metric(SegmentPoints points, int i1, int i2);
 
 	}
 
 	private static void splitSegment(SplitMetric metric, SplitMetric secondaryMetric,
 	                                 double metricLimit, List<SplitSegment> splitSegments,
 	                                 TrkSegment segment, boolean joinSegments) {
+		splitSegment(metric, secondaryMetric, metricLimit, splitSegments, getSegmentPoints(segment.points),
+				segment.generalSegment, joinSegments);
+	}
+
+	private static void splitSegment(SplitMetric metric, SplitMetric secondaryMetric,
+	                                 double metricLimit, List<SplitSegment> splitSegments,
+	                                 SegmentPoints points, boolean generalSegment, boolean joinSegments) {
 		double currentMetricEnd = metricLimit;
 		double secondaryMetricEnd = 0;
-		SplitSegment sp = new SplitSegment(segment, 0, 0);
+		SplitSegment sp = new SplitSegment(points, generalSegment, 0, 0);
 		double total = 0;
-		WptPt prev = null;
-		for (int k = 0; k < segment.points.size(); k++) {
-			WptPt point = segment.points.get(k);
-			if (k > 0) {
-				double currentSegment = 0;
-				if (!(segment.generalSegment && !joinSegments && point.firstPoint)) {
-					currentSegment = metric.metric(prev, point);
-					secondaryMetricEnd += secondaryMetric.metric(prev, point);
-				}
-				while (total + currentSegment > currentMetricEnd) {
-					double p = currentMetricEnd - total;
-					double cf = (p / currentSegment);
-					sp.setLastPoint(k - 1, cf);
-					sp.metricEnd = currentMetricEnd;
-					sp.secondaryMetricEnd = secondaryMetricEnd;
-					splitSegments.add(sp);
-
-					sp = new SplitSegment(segment, k - 1, cf);
-					currentMetricEnd += metricLimit;
-				}
-				total += currentSegment;
-			}
-			prev = point;
-		}
-		if (segment.points.size() > 0
-				&& !(sp.endPointInd == segment.points.size() - 1 && sp.startCoeff == 1)) {
+		int size = points.size();
+		for (int k = 1; k < size; k++) {
+			double currentSegment = 0;
+			if (!(generalSegment && !joinSegments && points.isFirstPoint(k))) {
+				currentSegment = metric.metric(points, k - 1, k);
+				secondaryMetricEnd += secondaryMetric.metric(points, k - 1, k);
+			}
+			while (total + currentSegment > currentMetricEnd) {
+				double p = currentMetricEnd - total;
+				double cf = (p / currentSegment);
+				sp.setLastPoint(k - 1, cf);
+				sp.metricEnd = currentMetricEnd;
+				sp.secondaryMetricEnd = secondaryMetricEnd;
+				splitSegments.add(sp);
+
+				sp = new SplitSegment(points, generalSegment, k - 1, cf);
+				currentMetricEnd += metricLimit;
+			}
+			total += currentSegment;
+		}
+		if (size > 0
+				&& !(sp.endPointInd == size - 1 && sp.startCoeff == 1)) {
 			sp.metricEnd = total;
 			sp.secondaryMetricEnd = secondaryMetricEnd;
-			sp.setLastPoint(segment.points.size() - 2, 1);
+			sp.setLastPoint(size - 2, 1);
 			splitSegments.add(sp);
 		}
 	}
@@ -1405,12 +2042,28 @@ public class GPXUtilities {
 	}
 
 	public static void updateBounds(QuadRect trackBounds, List<WptPt> pts, int startIndex) {
+		updateBounds(trackBounds, getSegmentPoints(pts), startIndex);
+	}
+
+	public static QuadRect calculateBounds(TrackPointColumns columns) {
+		QuadRect trackBounds = new QuadRect(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		updateBounds(trackBounds, columns, 0);
+		return trackBounds;
+	}
+
+	public static void updateBounds(QuadRect trackBounds, TrackPointColumns columns, int startIndex) {
+		updateBounds(trackBounds, new ColumnSegmentPoints(new ColumnPointsList(columns)), startIndex);
+	}
+
+	private static void updateBounds(QuadRect trackBounds, SegmentPoints pts, int startIndex) {
 		for (int i = startIndex; i < pts.size(); i++) {
-			WptPt pt = pts.get(i);
-			trackBounds.right = Math.max(trackBounds.right, pt.lon);
-			trackBounds.left = Math.min(trackBounds.left, pt.lon);
-			trackBounds.top = Math.max(trackBounds.top, pt.lat);
-			trackBounds.bottom = Math.min(trackBounds.bottom, pt.lat);
+			double lat = pts.getLatitude(i);
+			double lon = pts.getLongitude(i);
+			trackBounds.right = Math.max(trackBounds.right, lon);
+			trackBounds.left = Math.min(trackBounds.left, lon);
+			trackBounds.top = Math.max(trackBounds.top, lat);
+			trackBounds.bottom = Math.min(trackBounds.bottom, lat);
 		}
 	}
 
@@ -1627,6 +2280,10 @@ public class GPXUtilities {
 		}
 
 		private void buildGeneralSegment() {
+			if (hasOnlyColumnSegments()) {
+				buildColumnsGeneralSegment();
+				return;
+			}
 			TrkSegment segment = new TrkSegment();
 			for (Track track : tracks) {
 				for (TrkSegment s : track.segments) {
@@ -1647,6 +2304,43 @@ public class GPXUtilities {
 			}
 		}
 
+		private boolean hasOnlyColumnSegments() {
+			for (Track track : tracks) {
+				for (TrkSegment s : track.segments) {
+					if (s.points.size() > 0 && s.getColumns() == null) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		private void buildColumnsGeneralSegment() {
+			TrackPointColumns columns = new TrackPointColumns();
+			for (Track track : tracks) {
+				for (TrkSegment s : track.segments) {
+					int size = s.points.size();
+					if (size > 0) {
+						SegmentPoints pts = getSegmentPoints(s.points);
+						int start = columns.size();
+						for (int i = 0; i < size; i++) {
+							columns.add(pts.getLatitude(i), pts.getLongitude(i), pts.getElevation(i),
+									pts.getTime(i), pts.getSpeed(i), pts.getHdop(i));
+							columns.setDistance(start + i, pts.getDistance(i));
+						}
+						columns.setFirstPoint(start, true);
+						columns.setLastPoint(columns.size() - 1, true);
+					}
+				}
+			}
+			if (columns.size() > 0) {
+				columns.trimToSize();
+				TrkSegment segment = new TrkSegment(columns);
+				segment.generalSegment = true;
+				generalSegment = segment;
+			}
+		}
+
 		public GPXTrackAnalysis getAnalysis(long fileTimestamp) {
 			return getAnalysis(fileTimestamp, null, null);
 		}
@@ -1695,9 +2389,9 @@ public class GPXUtilities {
 		public int getPointIndexByDistance(List<WptPt> points, double distance) {
 			int index = 0;
 			double minDistanceChange = Double.MAX_VALUE;
-			for (int i = 0; i < points.size(); i++) {
-				WptPt point = points.get(i);
-				double currentDistanceChange = Math.abs(point.distance - distance);
+			SegmentPoints pts = getSegmentPoints(points);
+			for (int i = 0; i < pts.size(); i++) {
+				double currentDistanceChange = Math.abs(pts.getDistance(i) - distance);
 				if (currentDistanceChange < minDistanceChange) {
 					minDistanceChange = currentDistanceChange;
 					index = i;
@@ -2324,12 +3018,16 @@ public class GPXUtilities {
 				for (TrkSegment segment : track.segments) {
 					serializer.startTag(null, "trkseg"); //$NON-NLS-1$
 					writeNotNullText(serializer, "name", segment.name);
-					for (WptPt p : segment.points) {
-						boolean artificial = Math.abs(p.lon) == PRIME_MERIDIAN;
-						if (!artificial) {
-							serializer.startTag(null, "trkpt"); //$NON-NLS-1$
-							writeWpt(serializer, p, progress);
-							serializer.endTag(null, "trkpt"); //$NON-NLS-1$
+					if (segment.getColumns() != null) {
+						writeColumnPoints(serializer, (ColumnPointsList) segment.points, progress);
+					} else {
+						for (WptPt p : segment.points) {
+							boolean artificial = Math.abs(p.lon) == PRIME_MERIDIAN;
+							if (!artificial) {
+								serializer.startTag(null, "trkpt"); //$NON-NLS-1$
+								writeWpt(serializer, p, progress);
+								serializer.endTag(null, "trkpt"); //$NON-NLS-1$
+							}
 						}
 					}
 					assignRouteExtensionWriter(segment);
@@ -2342,6 +3040,47 @@ public class GPXUtilities {
 		}
 	}
 
+	private static void writeColumnPoints(XmlSerializer serializer, ColumnPointsList points, IProgress progress) throws IOException {
+		TrackPointColumns columns = points.getColumns();
+		SimpleDateFormat timeFormat = getTimeFormatter();
+		for (int i = 0; i < columns.size(); i++) {
+			WptPt view = points.getView(i);
+			double lon = view != null ? view.lon : columns.getLongitude(i);
+			if (Math.abs(lon) == PRIME_MERIDIAN) {
+				continue;
+			}
+			serializer.startTag(null, "trkpt"); //$NON-NLS-1$
+			if (view != null) {
+				writeWpt(serializer, view, progress);
+			} else {
+				serializer.attribute(null, "lat", LAT_LON_FORMAT.format(columns.getLatitude(i))); //$NON-NLS-1$
+				serializer.attribute(null, "lon", LAT_LON_FORMAT.format(lon)); //$NON-NLS-1$
+				double ele = columns.getElevation(i);
+				if (!Double.isNaN(ele)) {
+					writeNotNullText(serializer, "ele", DECIMAL_FORMAT.format(ele));
+				}
+				long time = columns.getTime(i);
+				if (time != 0) {
+					writeNotNullText(serializer, "time", timeFormat.format(new Date(time)));
+				}
+				double hdop = columns.getHdop(i);
+				if (!Double.isNaN(hdop)) {
+					writeNotNullText(serializer, "hdop", DECIMAL_FORMAT.format(hdop));
+				}
+				double speed = columns.getSpeed(i);
+				if (speed > 0) {
+					serializer.startTag(null, "extensions");
+					writeNotNullText(serializer, "speed", DECIMAL_FORMAT.format(speed));
+					serializer.endTag(null, "extensions");
+				}
+				if (progress != null) {
+					progress.progress(1);
+				}
+			}
+			serializer.endTag(null, "trkpt"); //$NON-NLS-1$
+		}
+	}
+
 	private static void assignRouteExtensionWriter(final TrkSegment segment) {
 		if (segment.hasRoute() && segment.getExtensionsWriter() == null) {
 			segment.setExtensionsWriter(new GPXExtensionsWriter() {
@@ -2631,6 +3370,160 @@ public class GPXUtilities {
 		}
 	}
 
+	/**
+	 * Reads track points of the file in one pass and passes them to the listener as primitive values,
+	 * so tracks of any size could be processed without creating {@link GPXFile} and {@link WptPt} objects.
+	 * Waypoints, routes, metadata and extensions except point speed are skipped.
+	 */
+	public static void readTrackPoints(InputStream stream, GPXTrackPointsListener listener)
+			throws IOException, XmlPullParserException {
+		XmlPullParser parser = PlatformUtil.newXMLPullParser();
+		parser.setInput(getUTF8Reader(stream));
+		SimpleDateFormat format = getTimeFormatterTZ();
+		SimpleDateFormat formatMillis = getTimeFormatterMills();
+		boolean track = false;
+		boolean segment = false;
+		// depth of current tag inside of track point, -1 outside of point
+		int pointDepth = -1;
+		boolean pointExtensions = false;
+		double lat = 0;
+		double lon = 0;
+		double ele = Double.NaN;
+		long time = 0;
+		double speed = 0;
+		double hdop = Double.NaN;
+		int tok;
+		while ((tok = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			if (tok == XmlPullParser.START_TAG) {
+				String tag = parser.getName();
+				if (pointDepth >= 0) {
+					if (pointDepth == 0 && tag.equals("ele")) {
+						ele = parseFloatValue(readText(parser, "ele"), ele);
+					} else if (pointDepth == 0 && tag.equals("time")) {
+						time = parseTime(readText(parser, "time"), format, formatMillis);
+					} else if (pointDepth == 0 && tag.equals("hdop")) {
+						hdop = parseFloatValue(readText(parser, "hdop"), hdop);
+					} else if ((pointDepth == 0 || (pointDepth == 1 && pointExtensions)) && tag.equals("speed")) {
+						speed = parseFloatValue(readText(parser, "speed"), speed);
+					} else {
+						if (pointDepth == 0 && tag.equals("extensions")) {
+							pointExtensions = true;
+						}
+						pointDepth++;
+					}
+				} else if (tag.equals("trk")) {
+					track = true;
+				} else if (track && tag.equals("trkseg")) {
+					if (segment) {
+						listener.segmentFinished();
+					}
+					segment = true;
+					listener.segmentStarted();
+				} else if (track && (tag.equals("trkpt") || tag.equals("rpt"))) {
+					if (!segment) {
+						segment = true;
+						listener.segmentStarted();
+					}
+					lat = parseCoordinate(parser.getAttributeValue("", "lat"));
+					lon = parseCoordinate(parser.getAttributeValue("", "lon"));
+					ele = Double.NaN;
+					time = 0;
+					speed = 0;
+					hdop = Double.NaN;
+					pointDepth = 0;
+				} else if (segment && tag.equals("csvattributes")) {
+					String segmentPoints = readText(parser, "csvattributes");
+					if (segmentPoints != null) {
+						for (String point : segmentPoints.split("\n")) {
+							String[] pointAttrs = point.split(",");
+							try {
+								if (pointAttrs.length > 1) {
+									listener.trackPoint(Double.parseDouble(pointAttrs[1]), Double.parseDouble(pointAttrs[0]),
+											pointAttrs.length > 2 ? Double.parseDouble(pointAttrs[2]) : Double.NaN,
+											0, 0, Double.NaN);
+								}
+							} catch (NumberFormatException e) {
+							}
+						}
+					}
+				}
+			} else if (tok == XmlPullParser.END_TAG) {
+				if (pointDepth > 0) {
+					pointDepth--;
+					if (pointDepth == 0) {
+						pointExtensions = false;
+					}
+				} else if (pointDepth == 0) {
+					pointDepth = -1;
+					listener.trackPoint(lat, lon, ele, time, speed, hdop);
+				} else {
+					String tag = parser.getName();
+					if (segment && (tag.equals("trkseg") || tag.equals("trk"))) {
+						segment = false;
+						listener.segmentFinished();
+					}
+					if (tag.equals("trk")) {
+						track = false;
+					}
+				}
+			}
+		}
+		if (segment) {
+			listener.segmentFinished();
+		}
+	}
+
+	/**
+	 * Reads non-empty track segments of the file as point columns.
+	 */
+	public static List<TrackPointColumns> readTrackColumns(InputStream stream)
+			throws IOException, XmlPullParserException {
+		final List<TrackPointColumns> segments = new ArrayList<>();
+		readTrackPoints(stream, new GPXTrackPointsListener() {
+
+			private TrackPointColumns columns;
+
+			@Override
+			public void segmentStarted() {
+				columns = new TrackPointColumns();
+			}
+
+			@Override
+			public void trackPoint(double lat, double lon, double ele, long time, double speed, double hdop) {
+				columns.add(lat, lon, ele, time, speed, hdop);
+			}
+
+			@Override
+			public void segmentFinished() {
+				if (!columns.isEmpty()) {
+					columns.trimToSize();
+					segments.add(columns);
+				}
+				columns = null;
+			}
+		});
+		return segments;
+	}
+
+	private static double parseCoordinate(String value) {
+		try {
+			return value == null ? 0 : Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// values are parsed as float to be the same as in loaded GPXFile
+	private static double parseFloatValue(String text, double defaultValue) {
+		if (!Algorithms.isEmpty(text)) {
+			try {
+				return Float.parseFloat(text);
+			} catch (NumberFormatException e) {
+			}
+		}
+		return defaultValue;
+	}
+
 	public static GPXFile loadGPXFile(InputStream stream) {
 		return loadGPXFile(stream, null);
 	}
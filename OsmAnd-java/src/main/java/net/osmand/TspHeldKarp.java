@@ -43,6 +43,13 @@ public class TspHeldKarp {
 		
 		return this;
 	}
+
+	public TspHeldKarp readCostMatrix(double[][] cost) {
+		n = cost.length;
+		order = new int[n];
+		this.cost = cost;
+		return this;
+	}
   //
   
 
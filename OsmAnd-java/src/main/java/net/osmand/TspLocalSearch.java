@@ -0,0 +1,450 @@
+package net.osmand;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteMatrix;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Orders points to visit (open path from the start point, end point could be fixed) by cost matrix,
+ * costs could be asymmetric: travel times of {@link RouteMatrix} or straight line distances.
+ * <p>
+ * Every restart builds path with (randomized) nearest neighbor and improves it with 2-opt and Or-opt moves,
+ * then perturbs best path with double bridge and improves it again while iterations and time budget allow.
+ * Restarts run in parallel, best path of all restarts is returned.
+ * <p>
+ * Result has the same format as {@link TspAnt#solve()}: indexes of points starting with 0 (start point),
+ * ending with n - 1 when end point is kept.
+ */
+public class TspLocalSearch {
+
+	private static final Log log = PlatformUtil.getLog(TspLocalSearch.class);
+
+	// speed to estimate time between points not connected by roads, m/s
+	private static final double UNREACHABLE_SPEED = 1;
+	private static final int NEAREST_CANDIDATES = 3;
+	private static final int MAX_OR_OPT_SEGMENT = 3;
+	private static final double EPS = 1e-7;
+
+	private double[][] cost;
+	private int n;
+	private boolean keepEndPoint;
+
+	private long timeLimit = 2000;
+	private int maxIterations = 2000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int restarts = 0;
+	private long seed = 1;
+
+	private int[] bestTour;
+	private double bestTourLength;
+
+	/**
+	 * Points are: start (optional), intermediates, end (optional), costs are straight line distances
+	 */
+	public TspLocalSearch readGraph(List<LatLon> intermediates, LatLon start, LatLon end) {
+		List<LatLon> l = listPoints(intermediates, start, end);
+		double[][] cost = new double[l.size()][l.size()];
+		for (int i = 0; i < l.size(); i++) {
+			for (int j = 0; j < l.size(); j++) {
+				cost[i][j] = i == j ? 0 : MapUtils.getDistance(l.get(i), l.get(j));
+			}
+		}
+		return readCostMatrix(cost, end != null);
+	}
+
+	/**
+	 * @param matrix travel times between points (as sources and targets), calculated by
+	 *               {@link net.osmand.router.RoutePlannerFrontEnd#searchRouteMatrix}
+	 * @param points same points as in {@link #readGraph(List, LatLon, LatLon)}, used to estimate time
+	 *               between points not connected by roads
+	 */
+	public TspLocalSearch readRouteMatrix(RouteMatrix matrix, List<LatLon> points, boolean keepEndPoint) {
+		int n = points.size();
+		if (matrix.getSourcesCount() != n || matrix.getTargetsCount() != n) {
+			throw new IllegalArgumentException("Route matrix " + matrix.getSourcesCount() + "x"
+					+ matrix.getTargetsCount() + " doesn't match " + n + " points");
+		}
+		double[][] cost = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				float time = matrix.getTime(i, j);
+				if (i == j) {
+					cost[i][j] = 0;
+				} else if (time >= 0) {
+					cost[i][j] = time;
+				} else {
+					cost[i][j] = MapUtils.getDistance(points.get(i), points.get(j)) / UNREACHABLE_SPEED;
+				}
+			}
+		}
+		return readCostMatrix(cost, keepEndPoint);
+	}
+
+	/**
+	 * @param cost cost[i][j] is cost to go from point i to point j, point 0 is start
+	 * @param keepEndPoint last point is end of the path
+	 */
+	public TspLocalSearch readCostMatrix(double[][] cost, boolean keepEndPoint) {
+		this.cost = cost;
+		this.n = cost.length;
+		this.keepEndPoint = keepEndPoint;
+		this.bestTour = null;
+		return this;
+	}
+
+	public static List<LatLon> listPoints(List<LatLon> intermediates, LatLon start, LatLon end) {
+		List<LatLon> l = new ArrayList<LatLon>();
+		if (start != null) {
+			l.add(start);
+		}
+		l.addAll(intermediates);
+		if (end != null) {
+			l.add(end);
+		}
+		return l;
+	}
+
+	/**
+	 * Time budget of solve in ms, best path found so far is returned when it is exceeded
+	 */
+	public TspLocalSearch setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+		return this;
+	}
+
+	/**
+	 * Perturbations of best path shared by all restarts
+	 */
+	public TspLocalSearch setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+		return this;
+	}
+
+	public TspLocalSearch setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Number of restarts, by default one per thread
+	 */
+	public TspLocalSearch setRestarts(int restarts) {
+		this.restarts = restarts;
+		return this;
+	}
+
+	public TspLocalSearch setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public int[] getBestTour() {
+		return bestTour;
+	}
+
+	public double getBestTourLength() {
+		return bestTourLength;
+	}
+
+	public double getTourLength(int[] tour) {
+		double length = 0;
+		for (int i = 0; i < tour.length - 1; i++) {
+			length += cost[tour[i]][tour[i + 1]];
+		}
+		return length;
+	}
+
+	public int[] solve() {
+		long start = System.currentTimeMillis();
+		final long deadline = timeLimit > 0 ? start + timeLimit : Long.MAX_VALUE;
+		int restarts = this.restarts > 0 ? this.restarts : threads;
+		int movable = (keepEndPoint ? n - 2 : n - 1);
+		if (movable <= 1) {
+			restarts = 1;
+		}
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		for (int r = 0; r < restarts; r++) {
+			final int restart = r;
+			final int iterations = maxIterations / restarts + (r < maxIterations % restarts ? 1 : 0);
+			tasks.add(new Callable<int[]>() {
+				@Override
+				public int[] call() {
+					return new Restart(new Random(seed + restart), restart == 0).run(iterations, deadline);
+				}
+			});
+		}
+		List<int[]> tours = new ArrayList<int[]>();
+		int threads = Math.min(this.threads, restarts);
+		if (threads <= 1) {
+			for (Callable<int[]> task : tasks) {
+				try {
+					tours.add(task.call());
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "TspLocalSearch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			try {
+				for (Future<int[]> f : executor.invokeAll(tasks)) {
+					tours.add(f.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		bestTour = null;
+		for (int[] tour : tours) {
+			double length = getTourLength(tour);
+			if (bestTour == null || length < bestTourLength - EPS) {
+				bestTour = tour;
+				bestTourLength = length;
+			}
+		}
+		log.info(String.format("TSP %d points: best path %.1f, %d restarts in %d ms", n, bestTourLength, restarts,
+				System.currentTimeMillis() - start));
+		return bestTour.clone();
+	}
+
+	private class Restart {
+
+		private final Random rnd;
+		private final boolean greedy;
+		// movable positions of the path
+		private final int lo;
+		private final int hi;
+		private final double[] forward = new double[n];
+		private final double[] backward = new double[n];
+		private final int[] tmp = new int[n];
+
+		Restart(Random rnd, boolean greedy) {
+			this.rnd = rnd;
+			this.greedy = greedy;
+			this.lo = 1;
+			this.hi = keepEndPoint ? n - 2 : n - 1;
+		}
+
+		int[] run(int iterations, long deadline) {
+			int[] best = construct();
+			if (hi - lo < 1) {
+				return best;
+			}
+			localSearch(best);
+			double bestLength = getTourLength(best);
+			int[] tour = new int[n];
+			for (int it = 0; it < iterations && System.currentTimeMillis() < deadline; it++) {
+				System.arraycopy(best, 0, tour, 0, n);
+				perturb(tour);
+				localSearch(tour);
+				double length = getTourLength(tour);
+				if (length < bestLength - EPS) {
+					System.arraycopy(tour, 0, best, 0, n);
+					bestLength = length;
+				}
+			}
+			return best;
+		}
+
+		private int[] construct() {
+			int[] tour = new int[n];
+			boolean[] visited = new boolean[n];
+			visited[0] = true;
+			if (keepEndPoint && n > 1) {
+				tour[n - 1] = n - 1;
+				visited[n - 1] = true;
+			}
+			int[] candidates = new int[NEAREST_CANDIDATES];
+			for (int p = lo; p <= hi; p++) {
+				int last = tour[p - 1];
+				int found = 0;
+				for (int j = 0; j < n; j++) {
+					if (visited[j]) {
+						continue;
+					}
+					// keep candidates sorted by cost from last point
+					int k = found < candidates.length ? found++ : candidates.length;
+					while (k > 0 && cost[last][j] < cost[last][candidates[k - 1]]) {
+						if (k < candidates.length) {
+							candidates[k] = candidates[k - 1];
+						}
+						k--;
+					}
+					if (k < candidates.length) {
+						candidates[k] = j;
+					}
+				}
+				int next = candidates[greedy ? 0 : rnd.nextInt(found)];
+				tour[p] = next;
+				visited[next] = true;
+			}
+			return tour;
+		}
+
+		private void perturb(int[] tour) {
+			int len = hi - lo + 1;
+			if (len >= 8) {
+				// double bridge: A B C D -> A C B D
+				int p1 = lo + 1 + rnd.nextInt(len / 4);
+				int p2 = p1 + 1 + rnd.nextInt(len / 4);
+				int p3 = p2 + 1 + rnd.nextInt(len / 4);
+				int k = 0;
+				for (int i = p2; i < p3; i++) {
+					tmp[k++] = tour[i];
+				}
+				for (int i = p1; i < p2; i++) {
+					tmp[k++] = tour[i];
+				}
+				System.arraycopy(tmp, 0, tour, p1, k);
+			} else {
+				int i = lo + rnd.nextInt(len - 1);
+				int j = i + 1 + rnd.nextInt(hi - i);
+				reverse(tour, i, j);
+			}
+		}
+
+		void localSearch(int[] tour) {
+			boolean improved = true;
+			while (improved) {
+				improved = twoOpt(tour);
+				improved |= orOpt(tour);
+			}
+		}
+
+		private double c(int[] tour, int from, int to) {
+			return to >= n ? 0 : cost[tour[from]][tour[to]];
+		}
+
+		private void prefixCosts(int[] tour) {
+			forward[0] = 0;
+			backward[0] = 0;
+			for (int i = 1; i < n; i++) {
+				forward[i] = forward[i - 1] + cost[tour[i - 1]][tour[i]];
+				backward[i] = backward[i - 1] + cost[tour[i]][tour[i - 1]];
+			}
+		}
+
+		// reverses tour[i..j], costs are asymmetric so cost of reversed part is changed too
+		private boolean twoOpt(int[] tour) {
+			boolean changed = false;
+			boolean improved = true;
+			while (improved) {
+				improved = false;
+				prefixCosts(tour);
+				for (int i = lo; i < hi && !improved; i++) {
+					for (int j = i + 1; j <= hi; j++) {
+						double delta = cost[tour[i - 1]][tour[j]] - cost[tour[i - 1]][tour[i]];
+						if (j + 1 < n) {
+							delta += cost[tour[i]][tour[j + 1]] - cost[tour[j]][tour[j + 1]];
+						}
+						delta += (backward[j] - backward[i]) - (forward[j] - forward[i]);
+						if (delta < -EPS) {
+							reverse(tour, i, j);
+							improved = changed = true;
+							break;
+						}
+					}
+				}
+			}
+			return changed;
+		}
+
+		// moves segment of 1..3 points (possibly reversed) to other place of the path
+		private boolean orOpt(int[] tour) {
+			boolean changed = false;
+			boolean improved = true;
+			while (improved) {
+				improved = false;
+				for (int len = 1; len <= MAX_OR_OPT_SEGMENT && !improved; len++) {
+					for (int i = lo; i + len - 1 <= hi && !improved; i++) {
+						improved = moveSegment(tour, i, len);
+					}
+				}
+				changed |= improved;
+			}
+			return changed;
+		}
+
+		private boolean moveSegment(int[] tour, int i, int len) {
+			int e = i + len - 1;
+			int s0 = tour[i];
+			int s1 = tour[e];
+			double inner = 0;
+			double innerReversed = 0;
+			for (int k = i; k < e; k++) {
+				inner += cost[tour[k]][tour[k + 1]];
+				innerReversed += cost[tour[k + 1]][tour[k]];
+			}
+			double removeGain = c(tour, i - 1, i) + c(tour, e, e + 1);
+			if (e + 1 < n) {
+				removeGain -= cost[tour[i - 1]][tour[e + 1]];
+			}
+			// insert between p and p + 1
+			for (int p = lo - 1; p <= hi; p++) {
+				if (p >= i - 1 && p <= e) {
+					continue;
+				}
+				int a = tour[p];
+				boolean hasNext = p + 1 < n;
+				double edge = hasNext ? cost[a][tour[p + 1]] : 0;
+				double add = cost[a][s0] + (hasNext ? cost[s1][tour[p + 1]] : 0) - edge;
+				double addReversed = cost[a][s1] + (hasNext ? cost[s0][tour[p + 1]] : 0) - edge
+						+ innerReversed - inner;
+				boolean reversed = len > 1 && addReversed < add;
+				if ((reversed ? addReversed : add) - removeGain < -EPS) {
+					applyMove(tour, i, len, p, reversed);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void applyMove(int[] tour, int i, int len, int p, boolean reversed) {
+			int e = i + len - 1;
+			int k = 0;
+			for (int q = 0; q < n; q++) {
+				if (q >= i && q <= e) {
+					continue;
+				}
+				tmp[k++] = tour[q];
+				if (q == p) {
+					for (int s = 0; s < len; s++) {
+						tmp[k++] = tour[reversed ? e - s : i + s];
+					}
+				}
+			}
+			System.arraycopy(tmp, 0, tour, 0, n);
+		}
+	}
+
+	private static void reverse(int[] tour, int i, int j) {
+		while (i < j) {
+			int t = tour[i];
+			tour[i++] = tour[j];
+			tour[j--] = t;
+		}
+	}
+}
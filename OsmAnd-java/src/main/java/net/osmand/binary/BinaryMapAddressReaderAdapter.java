@@ -601,6 +601,14 @@ public class BinaryMapAddressReaderAdapter {
 	}
 
 	public void searchAddressDataByName(AddressRegion reg, SearchRequest<MapObject> req, List<Integer> typeFilter) throws IOException {
+		searchAddressDataByName(reg, req, typeFilter, null);
+	}
+
+	/**
+	 * @param names name index of region, if it's specified references to objects are taken from it and name table is not read
+	 */
+	void searchAddressDataByName(AddressRegion reg, SearchRequest<MapObject> req, List<Integer> typeFilter,
+	                             NameSearchIndex.AddressNames names) throws IOException {
 		TIntArrayList loffsets = new TIntArrayList();
 		CollatorStringMatcher stringMatcher = new CollatorStringMatcher(req.nameQuery, req.matcherMode);
 		String postcode = Postcode.normalize(req.nameQuery, map.getCountryName());
@@ -612,6 +620,12 @@ public class BinaryMapAddressReaderAdapter {
 				return city.isPostcode() ? postcodeMatcher.matches(city) : cityMatcher.matches(city);
 			}
 		};
+		TIntArrayList[] refs = new TIntArrayList[5];
+		TIntArrayList[] refsContainer = new TIntArrayList[5];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = new TIntArrayList();
+			refsContainer[i] = new TIntArrayList();
+		}
 		long time = System.currentTimeMillis();
 		int indexOffset = 0;
 		while (true) {
@@ -626,6 +640,14 @@ public class BinaryMapAddressReaderAdapter {
 			case OsmAndAddressNameIndexData.TABLE_FIELD_NUMBER:
 				int length = readInt();
 				indexOffset = codedIS.getTotalBytesRead();
+				if (names != null) {
+					if (names.collectRefs(req, postcode, refs, refsContainer)) {
+						codedIS.skipRawBytes(length);
+						break;
+					}
+					// query can't be resolved by name index
+					names = null;
+				}
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
 				TIntArrayList charsList = new TIntArrayList();
@@ -637,15 +659,14 @@ public class BinaryMapAddressReaderAdapter {
 				// also offsets can be randomly skipped by limit
 				loffsets.sort();
 				
-				TIntArrayList[] refs = new TIntArrayList[5];
-				TIntArrayList[] refsContainer = new TIntArrayList[5];
-				for (int i = 0; i < refs.length; i++) {
-					refs[i] = new TIntArrayList();
-					refsContainer[i] = new TIntArrayList();
+				if (names != null) {
+					LOG.info("Searched address name index in " + (System.currentTimeMillis() - time) + "ms. Found "
+							+ (refs[CITY_TOWN_TYPE].size() + refs[POSTCODES_TYPE].size() + refs[VILLAGES_TYPE].size()
+							+ refs[STREET_TYPE].size()) + " objects");
+				} else {
+					LOG.info("Searched address structure in " + (System.currentTimeMillis() - time) + "ms. Found " + loffsets.size()
+							+ " subtress");
 				}
-
-				LOG.info("Searched address structure in " + (System.currentTimeMillis() - time) + "ms. Found " + loffsets.size()
-						+ " subtress");
 				for (int j = 0; j < loffsets.size(); j++) {
 					int fp = indexOffset + loffsets.get(j);
 					codedIS.seek(fp);
@@ -813,6 +834,101 @@ public class BinaryMapAddressReaderAdapter {
 		}
 	}
 
+	/**
+	 * Reads all keys and atoms of name index of region to build {@link NameSearchIndex}
+	 */
+	void readAddressNameIndex(NameSearchIndex.AddressNamesBuilder builder) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		TIntArrayList values = new TIntArrayList();
+		int indexOffset = 0;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmAndAddressNameIndexData.TABLE_FIELD_NUMBER:
+				int length = readInt();
+				indexOffset = codedIS.getTotalBytesRead();
+				int oldLimit = codedIS.pushLimit(length);
+				map.readIndexedStringTableKeys("", keys, values);
+				codedIS.popLimit(oldLimit);
+				break;
+			case OsmAndAddressNameIndexData.ATOM_FIELD_NUMBER:
+				for (int j = 0; j < keys.size(); j++) {
+					int fp = indexOffset + values.get(j);
+					codedIS.seek(fp);
+					int len = codedIS.readRawVarint32();
+					int oldLim = codedIS.pushLimit(len);
+					int stag;
+					do {
+						int st = codedIS.readTag();
+						stag = WireFormat.getTagFieldNumber(st);
+						if (stag == AddressNameIndexData.ATOM_FIELD_NUMBER) {
+							int slen = codedIS.readRawVarint32();
+							int soldLim = codedIS.pushLimit(slen);
+							readAddressNameAtom(builder, keys.get(j), fp);
+							codedIS.popLimit(soldLim);
+						} else if (stag != 0) {
+							skipUnknownField(st);
+						}
+					} while (stag != 0);
+					codedIS.popLimit(oldLim);
+				}
+				return;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readAddressNameAtom(NameSearchIndex.AddressNamesBuilder builder, String key, int fp) throws IOException {
+		String name = null;
+		String nameEn = null;
+		int type = -1;
+		int shiftindex = 0;
+		int shiftcityindex = 0;
+		int xy16 = 0;
+		boolean xyDefined = false;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			// the same pairing of repeated fields as in readAddressNameData
+			if (tag == 0 || tag == AddressNameIndexDataAtom.SHIFTTOINDEX_FIELD_NUMBER) {
+				if (type != -1 && shiftindex != 0) {
+					builder.addAtom(key, type, shiftindex, shiftcityindex, xy16, xyDefined, name, nameEn);
+				}
+			}
+			switch (tag) {
+			case 0:
+				return;
+			case AddressNameIndexDataAtom.NAMEEN_FIELD_NUMBER:
+				nameEn = codedIS.readString();
+				break;
+			case AddressNameIndexDataAtom.NAME_FIELD_NUMBER:
+				name = codedIS.readString();
+				break;
+			case AddressNameIndexDataAtom.SHIFTTOCITYINDEX_FIELD_NUMBER:
+				shiftcityindex = fp - codedIS.readInt32();
+				break;
+			case AddressNameIndexDataAtom.XY16_FIELD_NUMBER:
+				xy16 = codedIS.readInt32();
+				xyDefined = true;
+				break;
+			case AddressNameIndexDataAtom.SHIFTTOINDEX_FIELD_NUMBER:
+				shiftindex = fp - codedIS.readInt32();
+				break;
+			case AddressNameIndexDataAtom.TYPE_FIELD_NUMBER:
+				type = codedIS.readInt32();
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private <T> void publishRawData(SearchRequest<T> resultMatcher, T obj) {
 		if (resultMatcher != null && obj != null) {
 			resultMatcher.collectRawData(obj);
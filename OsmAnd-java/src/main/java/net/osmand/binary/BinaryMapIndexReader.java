@@ -55,6 +55,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -102,6 +105,7 @@ public class BinaryMapIndexReader {
 	
 	
 	private final RandomAccessFile raf;
+	private final ByteBuffer mappedFile;
 	protected final File file;
 	/*private*/ int version;
 	/*private*/ long dateCreated;
@@ -114,6 +118,7 @@ public class BinaryMapIndexReader {
 	/*private*/ List<RouteRegion> routingIndexes = new ArrayList<RouteRegion>();
 	/*private*/ List<BinaryIndexPart> indexes = new ArrayList<BinaryIndexPart>();
 	TLongObjectHashMap<IncompleteTransportRoute> incompleteTransportRoutes = null;
+	private volatile NameSearchIndex nameIndex;
 	
 	protected CodedInputStream codedIS;
 
@@ -127,6 +132,7 @@ public class BinaryMapIndexReader {
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file) throws IOException {
 		this.raf = raf;
+		this.mappedFile = null;
 		this.file = file;
 		codedIS = CodedInputStream.newInstance(raf);
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
@@ -139,6 +145,7 @@ public class BinaryMapIndexReader {
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init) throws IOException {
 		this.raf = raf;
+		this.mappedFile = null;
 		this.file = file;
 		codedIS = CodedInputStream.newInstance(raf);
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
@@ -151,10 +158,60 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	/**
+	 * Reads the file through a read-only memory mapping (see {@link #mapFile(File)}) instead of a file handle.
+	 * The mapping can be shared by any number of readers created with {@link #BinaryMapIndexReader(BinaryMapIndexReader)}.
+	 */
+	public BinaryMapIndexReader(final ByteBuffer mappedFile, File file) throws IOException {
+		this(mappedFile, file, true);
+	}
+
+	public BinaryMapIndexReader(final ByteBuffer mappedFile, File file, boolean init) throws IOException {
+		this.raf = null;
+		this.mappedFile = mappedFile;
+		this.file = file;
+		codedIS = CodedInputStream.newInstance(mappedFile);
+		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
+		transportAdapter = new BinaryMapTransportReaderAdapter(this);
+		addressAdapter = new BinaryMapAddressReaderAdapter(this);
+		poiAdapter = new BinaryMapPoiReaderAdapter(this);
+		routeAdapter = new BinaryMapRouteReaderAdapter(this);
+		if (init) {
+			init();
+		}
+	}
+
 	public BinaryMapIndexReader(final RandomAccessFile raf, BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(raf, null, referenceToSameFile);
+	}
+
+	/**
+	 * Creates another cursor over the memory mapping of a reader opened with {@link #BinaryMapIndexReader(ByteBuffer, File)}.
+	 * It doesn't open any file handle and doesn't read the file index again, so it is cheap to create one per thread.
+	 */
+	public BinaryMapIndexReader(BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(null, referenceToSameFile.mappedFile, referenceToSameFile);
+	}
+
+	/**
+	 * Another cursor for the same file: over the same memory mapping or with own file handle
+	 */
+	public BinaryMapIndexReader createCursor() throws IOException {
+		if (mappedFile != null) {
+			return new BinaryMapIndexReader(this);
+		}
+		return new BinaryMapIndexReader(new RandomAccessFile(file, "r"), this);
+	}
+
+	private BinaryMapIndexReader(final RandomAccessFile raf, final ByteBuffer mappedFile,
+	                             BinaryMapIndexReader referenceToSameFile) throws IOException {
+		if (raf == null && mappedFile == null) {
+			throw new IllegalArgumentException("Reader is not memory mapped: " + referenceToSameFile.file.getName());
+		}
 		this.raf = raf;
+		this.mappedFile = raf == null ? mappedFile : null;
 		this.file = referenceToSameFile.file;
-		codedIS = CodedInputStream.newInstance(raf);
+		codedIS = raf != null ? CodedInputStream.newInstance(raf) : CodedInputStream.newInstance(mappedFile);
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		version = referenceToSameFile.version;
 		dateCreated = referenceToSameFile.dateCreated;
@@ -169,6 +226,7 @@ public class BinaryMapIndexReader {
 		routingIndexes = new ArrayList<RouteRegion>(referenceToSameFile.routingIndexes);
 		indexes = new ArrayList<BinaryIndexPart>(referenceToSameFile.indexes);
 		basemap = referenceToSameFile.basemap;
+		nameIndex = referenceToSameFile.nameIndex;
 		calculateCenterPointForRegions();
 	}
 
@@ -177,6 +235,51 @@ public class BinaryMapIndexReader {
 		return dateCreated;
 	}
 
+	public NameSearchIndex getNameIndex() {
+		return nameIndex;
+	}
+
+	/**
+	 * Name index is used by {@link #searchAddressDataByName(SearchRequest, List)} and {@link #searchPoiByName(SearchRequest)}
+	 * instead of name tables of the file
+	 */
+	public void setNameIndex(NameSearchIndex nameIndex) {
+		this.nameIndex = nameIndex;
+	}
+
+	// index built in other transliteration mode is not used, name tables are searched instead
+	private NameSearchIndex getActualNameIndex() {
+		NameSearchIndex names = nameIndex;
+		return names != null && names.isTransliterationActual() ? names : null;
+	}
+
+	/**
+	 * Reads all address and poi name tables of the file, see {@link CachedOsmandIndexes#loadNameIndex(BinaryMapIndexReader, boolean)}
+	 */
+	public NameSearchIndex buildNameIndex() throws IOException {
+		NameSearchIndex index = new NameSearchIndex(file.getName(), file.length(), dateCreated);
+		for (AddressRegion reg : addressIndexes) {
+			if (reg.indexNameOffset != -1) {
+				NameSearchIndex.AddressNamesBuilder builder = new NameSearchIndex.AddressNamesBuilder(reg.indexNameOffset);
+				codedIS.seek(reg.indexNameOffset);
+				int len = readInt();
+				int old = codedIS.pushLimit(len);
+				addressAdapter.readAddressNameIndex(builder);
+				codedIS.popLimit(old);
+				index.addressNames.add(builder.build());
+			}
+		}
+		for (PoiRegion poiIndex : poiIndexes) {
+			NameSearchIndex.PoiNamesBuilder builder = new NameSearchIndex.PoiNamesBuilder(poiIndex.filePointer);
+			codedIS.seek(poiIndex.filePointer);
+			int old = codedIS.pushLimit(poiIndex.length);
+			poiAdapter.readPoiNameIndex(builder);
+			codedIS.popLimit(old);
+			index.poiNames.add(builder.build());
+		}
+		return index;
+	}
+
 	private void init() throws IOException {
 		boolean initCorrectly = false;
 		while (true) {
@@ -390,10 +493,34 @@ public class BinaryMapIndexReader {
 	}
 
 
+	/**
+	 * @return file handle or null if the reader works over a memory mapping
+	 */
 	public RandomAccessFile getRaf() {
 		return raf;
 	}
 
+	public boolean isMemoryMapped() {
+		return mappedFile != null;
+	}
+
+	/**
+	 * Maps the whole file read-only. The file handle is closed right away, the mapping stays valid
+	 * until the buffer is garbage collected.
+	 */
+	public static MappedByteBuffer mapFile(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File is too big to be memory mapped: " + file.getName());
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
 	public File getFile() {
 		return file;
 	}
@@ -1304,7 +1431,8 @@ public class BinaryMapIndexReader {
 				codedIS.seek(reg.indexNameOffset);
 				int len = readInt();
 				int old = codedIS.pushLimit(len);
-				addressAdapter.searchAddressDataByName(reg, req, typeFilter);
+				NameSearchIndex names = getActualNameIndex();
+				addressAdapter.searchAddressDataByName(reg, req, typeFilter, names == null ? null : names.getAddressNames(reg));
 				codedIS.popLimit(old);
 			}
 		}
@@ -1333,7 +1461,8 @@ public class BinaryMapIndexReader {
 			poiAdapter.initCategories(poiIndex);
 			codedIS.seek(poiIndex.filePointer);
 			int old = codedIS.pushLimit(poiIndex.length);
-			poiAdapter.searchPoiByName(poiIndex, req);
+			NameSearchIndex names = getActualNameIndex();
+			poiAdapter.searchPoiByName(poiIndex, req, names == null ? null : names.getPoiNames(poiIndex));
 			codedIS.popLimit(old);
 		}
 		return req.getSearchResults();
@@ -1619,7 +1748,9 @@ public class BinaryMapIndexReader {
 
 	public void close() throws IOException {
 		if (codedIS != null) {
-			raf.close();
+			if (raf != null) {
+				raf.close();
+			}
 			codedIS = null;
 			mapIndexes.clear();
 			addressIndexes.clear();
@@ -2480,6 +2611,47 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	/**
+	 * Reads whole string table collecting all keys with their values
+	 */
+	void readIndexedStringTableKeys(String prefix, List<String> keys, TIntArrayList values) throws IOException {
+		String key = null;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER :
+				key = codedIS.readString();
+				if (prefix.length() > 0) {
+					key = prefix + key;
+				}
+				break;
+			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER :
+				int val = readInt();
+				if (key != null) {
+					keys.add(key);
+					values.add(val);
+				}
+				break;
+			case OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER :
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				if (key != null) {
+					readIndexedStringTableKeys(key, keys, values);
+				} else {
+					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				}
+				codedIS.popLimit(oldLim);
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private static void testAddressSearchByName(BinaryMapIndexReader reader) throws IOException {
 		SearchRequest<MapObject> req = buildAddressByNameRequest(new ResultMatcher<MapObject>() {
 			@Override
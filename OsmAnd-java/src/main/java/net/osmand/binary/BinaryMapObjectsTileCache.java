@@ -0,0 +1,328 @@
+package net.osmand.binary;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.util.ConcurrentLruCache;
+import net.osmand.util.ConcurrentLruCache.Weigher;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Cache of decoded map objects by (file, zoom, map tile) limited by memory budget (approximate LRU).
+ * Map tiles are taken {@link #TILE_ZOOM_DELTA} zooms less than search zoom, so a visible area is covered by
+ * a few tiles and after pan only newly exposed tiles are read from file.
+ * Objects are searched with search filter, so cache must be cleared when filter changes (rendering style or its parameters).
+ */
+public class BinaryMapObjectsTileCache {
+
+	private static final Log log = PlatformUtil.getLog(BinaryMapObjectsTileCache.class);
+
+	public static final int TILE_ZOOM_DELTA = 1;
+	private static final int OBJECT_WEIGHT = 120;
+	private static final int TILE_WEIGHT = 100;
+
+	private final ConcurrentLruCache<TileKey, MapTile> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	// tiles of removed readers which are read by running searches are not cached
+	private final Set<BinaryMapIndexReader> removedReaders = Collections.newSetFromMap(
+			Collections.synchronizedMap(new WeakHashMap<BinaryMapIndexReader, Boolean>()));
+
+	public BinaryMapObjectsTileCache(long maxBytes) {
+		cache = new ConcurrentLruCache<>(maxBytes, new Weigher<TileKey, MapTile>() {
+			@Override
+			public long weigh(TileKey key, MapTile value) {
+				return value.weight;
+			}
+		});
+	}
+
+	public static class SearchResult {
+
+		private final List<BinaryMapDataObject> objects;
+		private final boolean ocean;
+		private final boolean land;
+
+		private SearchResult(List<BinaryMapDataObject> objects, boolean ocean, boolean land) {
+			this.objects = objects;
+			this.ocean = ocean;
+			this.land = land;
+		}
+
+		public List<BinaryMapDataObject> getObjects() {
+			return objects;
+		}
+
+		public boolean isOcean() {
+			return ocean;
+		}
+
+		public boolean isLand() {
+			return land;
+		}
+	}
+
+	/**
+	 * Searches objects of the reader in all tiles intersecting bbox of request (with its zoom and search filter),
+	 * tiles missing in cache are read from file. Objects of tiles are filtered by bbox of request like the reader does,
+	 * objects intersecting several tiles are returned once.
+	 * When request is cancelled, partially read tile is not cached and search stops.
+	 */
+	public SearchResult searchMapIndex(BinaryMapIndexReader reader, SearchRequest<BinaryMapDataObject> request)
+			throws IOException {
+		return searchMapIndex(reader, reader, request);
+	}
+
+	/**
+	 * Same as {@link #searchMapIndex(BinaryMapIndexReader, SearchRequest)}, missing tiles are read with cursor of the reader
+	 */
+	public SearchResult searchMapIndex(BinaryMapIndexReader reader, BinaryMapIndexReader cursor,
+	                                   SearchRequest<BinaryMapDataObject> request) throws IOException {
+		int zoom = request.zoom;
+		int tileZoom = Math.max(0, zoom - TILE_ZOOM_DELTA);
+		int shift = 31 - tileZoom;
+		List<MapTile> tiles = new ArrayList<>();
+		// objects of tiles are not filtered if request covers them completely
+		boolean coversTiles = request.left == (request.left >>> shift) << shift
+				&& request.top == (request.top >>> shift) << shift
+				&& isTileEnd(request.right, shift) && isTileEnd(request.bottom, shift);
+		long now = System.currentTimeMillis();
+		for (int x = request.left >>> shift; x <= request.right >>> shift; x++) {
+			for (int y = request.top >>> shift; y <= request.bottom >>> shift; y++) {
+				TileKey key = new TileKey(reader, zoom, x, y);
+				MapTile tile = cache.get(key, now);
+				if (tile == null) {
+					misses.incrementAndGet();
+					tile = loadTile(cursor, zoom, x, y, shift, request);
+					if (request.isCancelled()) {
+						tiles.add(tile);
+						return mergeTiles(tiles, coversTiles ? null : request);
+					}
+					cache.put(key, tile, now);
+					if (removedReaders.contains(reader)) {
+						cache.remove(key);
+					}
+				} else {
+					hits.incrementAndGet();
+				}
+				tiles.add(tile);
+			}
+		}
+		return mergeTiles(tiles, coversTiles ? null : request);
+	}
+
+	private static boolean isTileEnd(int coordinate, int shift) {
+		return coordinate == Integer.MAX_VALUE || ((coordinate + 1) & ((1 << shift) - 1)) == 0;
+	}
+
+	private MapTile loadTile(BinaryMapIndexReader reader, int zoom, int x, int y, int shift,
+	                         final SearchRequest<BinaryMapDataObject> request) throws IOException {
+		long tileLeft = (long) x << shift;
+		long tileTop = (long) y << shift;
+		int tileRight = (int) Math.min(Integer.MAX_VALUE, tileLeft + (1L << shift) - 1);
+		int tileBottom = (int) Math.min(Integer.MAX_VALUE, tileTop + (1L << shift) - 1);
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest((int) tileLeft, tileRight,
+				(int) tileTop, tileBottom, zoom, request.searchFilter, new ResultMatcher<BinaryMapDataObject>() {
+					@Override
+					public boolean publish(BinaryMapDataObject object) {
+						return true;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return request.isCancelled();
+					}
+				});
+		req.log = false;
+		List<BinaryMapDataObject> objects = new ArrayList<>(reader.searchMapIndex(req));
+		return new MapTile(objects, req.isOcean(), req.isLand());
+	}
+
+	/**
+	 * @param request bbox to filter objects of tiles or null to return all objects
+	 */
+	private static SearchResult mergeTiles(List<MapTile> tiles, SearchRequest<BinaryMapDataObject> request) {
+		if (tiles.size() == 1 && request == null) {
+			MapTile tile = tiles.get(0);
+			return new SearchResult(Collections.unmodifiableList(tile.objects), tile.ocean, tile.land);
+		}
+		boolean ocean = false;
+		boolean land = false;
+		List<BinaryMapDataObject> objects = new ArrayList<>();
+		TLongObjectHashMap<Object> added = new TLongObjectHashMap<>();
+		for (MapTile tile : tiles) {
+			ocean |= tile.ocean;
+			land |= tile.land;
+			for (BinaryMapDataObject o : tile.objects) {
+				if ((request == null || intersects(o, request)) && (tiles.size() == 1 || addObject(added, o))) {
+					objects.add(o);
+				}
+			}
+		}
+		return new SearchResult(objects, ocean, land);
+	}
+
+	// the same check as reader does for decoded object
+	private static boolean intersects(BinaryMapDataObject o, SearchRequest<BinaryMapDataObject> req) {
+		int[] c = o.getCoordinates();
+		int minX = Integer.MAX_VALUE;
+		int maxX = 0;
+		int minY = Integer.MAX_VALUE;
+		int maxY = 0;
+		for (int i = 0; i + 1 < c.length; i += 2) {
+			int x = c[i];
+			int y = c[i + 1];
+			if (req.left <= x && req.right >= x && req.top <= y && req.bottom >= y) {
+				return true;
+			}
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		return maxX >= req.left && minX <= req.right && minY <= req.bottom && maxY >= req.top;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static boolean addObject(TLongObjectHashMap<Object> added, BinaryMapDataObject o) {
+		// same object is decoded separately for each tile it intersects
+		Object prev = added.get(o.getId());
+		if (prev == null) {
+			added.put(o.getId(), o);
+			return true;
+		}
+		List<BinaryMapDataObject> list;
+		if (prev instanceof BinaryMapDataObject) {
+			list = new ArrayList<>(2);
+			list.add((BinaryMapDataObject) prev);
+			added.put(o.getId(), list);
+		} else {
+			list = (List<BinaryMapDataObject>) prev;
+		}
+		for (BinaryMapDataObject p : list) {
+			if (p.getMapIndex() == o.getMapIndex() && Arrays.equals(p.getTypes(), o.getTypes())
+					&& Arrays.equals(p.getCoordinates(), o.getCoordinates())) {
+				return false;
+			}
+		}
+		list.add(o);
+		return true;
+	}
+
+	/**
+	 * Removes tiles of the reader, tiles read by running searches of the reader are not cached afterwards
+	 */
+	public void removeReader(BinaryMapIndexReader reader) {
+		removedReaders.add(reader);
+		for (TileKey key : new ArrayList<>(cache.keySet())) {
+			if (key.reader == reader) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public int getTilesCount() {
+		return cache.size();
+	}
+
+	public long getWeight() {
+		return cache.getWeight();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	// debug level
+	public void logStatistics() {
+		if (!log.isDebugEnabled()) {
+			return;
+		}
+		log.debug(String.format("Map objects tiles: %d tiles, %d KB, %d hits, %d misses",
+				cache.size(), cache.getWeight() >> 10, hits.get(), misses.get()));
+	}
+
+	private static class MapTile {
+
+		final List<BinaryMapDataObject> objects;
+		final boolean ocean;
+		final boolean land;
+		final long weight;
+
+		MapTile(List<BinaryMapDataObject> objects, boolean ocean, boolean land) {
+			this.objects = objects;
+			this.ocean = ocean;
+			this.land = land;
+			long w = TILE_WEIGHT;
+			for (BinaryMapDataObject o : objects) {
+				w += OBJECT_WEIGHT + 4L * o.getCoordinates().length;
+				int[][] inner = o.getPolygonInnerCoordinates();
+				if (inner != null) {
+					for (int[] ring : inner) {
+						w += 16 + (ring == null ? 0 : 4L * ring.length);
+					}
+				}
+				if (o.getObjectNames() != null) {
+					w += 64L * o.getObjectNames().size();
+				}
+			}
+			this.weight = w;
+		}
+	}
+
+	private static class TileKey {
+
+		final BinaryMapIndexReader reader;
+		final int zoom;
+		final int x;
+		final int y;
+
+		TileKey(BinaryMapIndexReader reader, int zoom, int x, int y) {
+			this.reader = reader;
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = System.identityHashCode(reader);
+			result = 31 * result + zoom;
+			result = 31 * result + x;
+			result = 31 * result + y;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return reader == other.reader && zoom == other.zoom && x == other.x && y == other.y;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package net.osmand.binary;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads map objects of several files for one map request (box, zoom) in parallel.
+ * With one thread files are read one by one by calling thread with their readers,
+ * otherwise every worker reads memory mapped file with own cursor ({@link BinaryMapIndexReader#createCursor()}),
+ * cursors are reused by next requests. Files which are not memory mapped are read by calling thread meanwhile,
+ * as their cursors would open more file handles. Results are returned in order of readers, so they are merged
+ * as with sequential reading.
+ * Cancellation of the request stops all file reads.
+ */
+public class BinaryMapParallelSearch {
+
+	private static final Log log = PlatformUtil.getLog(BinaryMapParallelSearch.class);
+
+	public interface SearchFilterFactory {
+
+		/**
+		 * Filter is used only by one worker thread
+		 */
+		SearchFilter createFilter();
+	}
+
+	public static class FileResult {
+
+		private final BinaryMapIndexReader reader;
+		private List<BinaryMapDataObject> objects = Collections.emptyList();
+		private boolean ocean;
+		private boolean land;
+		private long time;
+		private IOException error;
+
+		private FileResult(BinaryMapIndexReader reader) {
+			this.reader = reader;
+		}
+
+		public BinaryMapIndexReader getReader() {
+			return reader;
+		}
+
+		public List<BinaryMapDataObject> getObjects() {
+			return objects;
+		}
+
+		public boolean isOcean() {
+			return ocean;
+		}
+
+		public boolean isLand() {
+			return land;
+		}
+
+		/**
+		 * Read time in ms
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public IOException getError() {
+			return error;
+		}
+	}
+
+	private final ConcurrentHashMap<BinaryMapIndexReader, ConcurrentLinkedQueue<BinaryMapIndexReader>> cursors = new ConcurrentHashMap<>();
+	// cursors returned by running searches of removed readers are closed
+	private final Set<BinaryMapIndexReader> removedReaders = Collections.newSetFromMap(
+			Collections.synchronizedMap(new WeakHashMap<BinaryMapIndexReader, Boolean>()));
+	private final BinaryMapObjectsTileCache tilesCache;
+	private ThreadPoolExecutor executor;
+
+	public BinaryMapParallelSearch(int threads, BinaryMapObjectsTileCache tilesCache) {
+		this.tilesCache = tilesCache;
+		setThreads(threads);
+	}
+
+	/**
+	 * Sets number of threads to read files in parallel, 1 to read files one by one in the calling thread.
+	 */
+	public synchronized void setThreads(int threads) {
+		ThreadPoolExecutor prev = executor;
+		if (threads > 1) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "MapObjectsSearch-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			this.executor = executor;
+		} else {
+			this.executor = null;
+		}
+		if (prev != null) {
+			prev.shutdown();
+		}
+	}
+
+	public synchronized int getThreads() {
+		return executor == null ? 1 : executor.getCorePoolSize();
+	}
+
+	/**
+	 * Searches map objects of every reader with box and zoom of request.
+	 * Request is used only to check cancellation, so it could be cancelled from other thread.
+	 */
+	public List<FileResult> searchMapIndex(List<BinaryMapIndexReader> readers, final SearchRequest<BinaryMapDataObject> request,
+	                                       final SearchFilterFactory filterFactory) {
+		List<FileResult> results = new ArrayList<>();
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		if (executor == null || readers.size() <= 1) {
+			SearchFilter filter = filterFactory == null ? null : filterFactory.createFilter();
+			for (BinaryMapIndexReader r : readers) {
+				if (request.isCancelled()) {
+					break;
+				}
+				results.add(readFile(r, request, filter, false));
+			}
+			return results;
+		}
+		List<Future<FileResult>> futures = new ArrayList<>();
+		for (final BinaryMapIndexReader r : readers) {
+			if (!r.isMemoryMapped()) {
+				futures.add(null);
+				continue;
+			}
+			futures.add(executor.submit(new Callable<FileResult>() {
+				@Override
+				public FileResult call() {
+					if (request.isCancelled()) {
+						return new FileResult(r);
+					}
+					return readFile(r, request, filterFactory == null ? null : filterFactory.createFilter(), true);
+				}
+			}));
+		}
+		boolean interrupted = false;
+		SearchFilter filter = null;
+		for (int i = 0; i < futures.size(); i++) {
+			Future<FileResult> future = futures.get(i);
+			if (future == null) {
+				BinaryMapIndexReader r = readers.get(i);
+				if (request.isCancelled()) {
+					results.add(new FileResult(r));
+					continue;
+				}
+				if (filter == null && filterFactory != null) {
+					filter = filterFactory.createFilter();
+				}
+				results.add(readFile(r, request, filter, false));
+				continue;
+			}
+			try {
+				results.add(future.get());
+			} catch (InterruptedException e) {
+				interrupted = true;
+				request.setInterrupted(true);
+				i--;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return results;
+	}
+
+	private FileResult readFile(BinaryMapIndexReader reader, final SearchRequest<BinaryMapDataObject> request,
+	                            SearchFilter filter, boolean useCursor) {
+		FileResult res = new FileResult(reader);
+		long start = System.currentTimeMillis();
+		BinaryMapIndexReader cursor = null;
+		try {
+			cursor = useCursor ? borrowCursor(reader) : reader;
+			SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(request.left,
+					request.right, request.top, request.bottom, request.zoom, filter,
+					new ResultMatcher<BinaryMapDataObject>() {
+						@Override
+						public boolean publish(BinaryMapDataObject object) {
+							return true;
+						}
+
+						@Override
+						public boolean isCancelled() {
+							return request.isCancelled();
+						}
+					});
+			req.log = false;
+			if (tilesCache != null) {
+				BinaryMapObjectsTileCache.SearchResult tilesResult = tilesCache.searchMapIndex(reader, cursor, req);
+				res.objects = tilesResult.getObjects();
+				res.ocean = tilesResult.isOcean();
+				res.land = tilesResult.isLand();
+			} else {
+				res.objects = cursor.searchMapIndex(req);
+				res.ocean = req.isOcean();
+				res.land = req.isLand();
+			}
+		} catch (IOException e) {
+			res.error = e;
+		} finally {
+			if (cursor != null && cursor != reader) {
+				returnCursor(reader, cursor);
+			}
+		}
+		res.time = System.currentTimeMillis() - start;
+		return res;
+	}
+
+	private BinaryMapIndexReader borrowCursor(BinaryMapIndexReader reader) throws IOException {
+		ConcurrentLinkedQueue<BinaryMapIndexReader> queue = cursors.get(reader);
+		BinaryMapIndexReader cursor = queue == null ? null : queue.poll();
+		return cursor != null ? cursor : reader.createCursor();
+	}
+
+	private void returnCursor(BinaryMapIndexReader reader, BinaryMapIndexReader cursor) {
+		if (removedReaders.contains(reader)) {
+			closeCursor(cursor);
+			return;
+		}
+		ConcurrentLinkedQueue<BinaryMapIndexReader> queue = cursors.get(reader);
+		if (queue == null) {
+			queue = new ConcurrentLinkedQueue<>();
+			ConcurrentLinkedQueue<BinaryMapIndexReader> prev = cursors.putIfAbsent(reader, queue);
+			if (prev != null) {
+				queue = prev;
+			}
+		}
+		queue.offer(cursor);
+		// reader could be removed meanwhile, cursors of queue created after removal are closed here
+		if (removedReaders.contains(reader)) {
+			cursors.remove(reader, queue);
+			closeCursors(queue);
+		}
+	}
+
+	/**
+	 * Closes cursors of the file, should be called before the reader is closed.
+	 * Cursors used by running searches of the file are closed when searches finish.
+	 */
+	public void removeReader(BinaryMapIndexReader reader) {
+		removedReaders.add(reader);
+		ConcurrentLinkedQueue<BinaryMapIndexReader> queue = cursors.remove(reader);
+		if (queue != null) {
+			closeCursors(queue);
+		}
+		if (tilesCache != null) {
+			tilesCache.removeReader(reader);
+		}
+	}
+
+	public synchronized void close() {
+		setThreads(1);
+		for (BinaryMapIndexReader reader : new ArrayList<>(cursors.keySet())) {
+			removeReader(reader);
+		}
+	}
+
+	private static void closeCursors(ConcurrentLinkedQueue<BinaryMapIndexReader> queue) {
+		BinaryMapIndexReader cursor;
+		while ((cursor = queue.poll()) != null) {
+			closeCursor(cursor);
+		}
+	}
+
+	private static void closeCursor(BinaryMapIndexReader cursor) {
+		try {
+			cursor.close();
+		} catch (IOException e) {
+			log.warn("Closing cursor failed " + cursor.getFile().getName(), e);
+		}
+	}
+
+	/**
+	 * Logs read time of files, slowest first (debug level)
+	 */
+	public static void logTimings(List<FileResult> results, long totalTime) {
+		if (!log.isDebugEnabled()) {
+			return;
+		}
+		List<FileResult> sorted = new ArrayList<>(results);
+		Collections.sort(sorted, new Comparator<FileResult>() {
+			@Override
+			public int compare(FileResult o1, FileResult o2) {
+				return o1.time < o2.time ? 1 : (o1.time == o2.time ? 0 : -1);
+			}
+		});
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Map objects read: %d ms, %d files", totalTime, results.size()));
+		for (FileResult r : sorted) {
+			sb.append(String.format("; %s %d ms (%d objects)", r.reader.getFile().getName(), r.time, r.objects.size()));
+		}
+		log.debug(sb.toString());
+	}
+}
@@ -132,7 +132,14 @@ public class BinaryMapPoiReaderAdapter {
 	protected BinaryMapPoiReaderAdapter(BinaryMapIndexReader map) {
 		this.codedIS = map.codedIS;
 		this.map = map;
-		this.poiTypes = MapPoiTypes.getDefault();
+	}
+
+	// poi types are loaded on first use, so readers without poi data don't need them
+	private MapPoiTypes getPoiTypes() {
+		if (poiTypes == null) {
+			poiTypes = MapPoiTypes.getDefault();
+		}
+		return poiTypes;
 	}
 
 	private void skipUnknownField(int t) throws IOException {
@@ -227,7 +234,7 @@ public class BinaryMapPoiReaderAdapter {
 			case OsmandOdb.OsmAndCategoryTable.CATEGORY_FIELD_NUMBER:
 				String cat = codedIS.readString().intern();
 				region.categories.add(cat);
-				region.categoriesType.add(poiTypes.getPoiCategoryByName(cat.toLowerCase(), true));
+				region.categoriesType.add(getPoiTypes().getPoiCategoryByName(cat.toLowerCase(), true));
 				region.subcategories.add(new ArrayList<String>());
 				break;
 			case OsmandOdb.OsmAndCategoryTable.SUBCATEGORIES_FIELD_NUMBER:
@@ -298,6 +305,13 @@ public class BinaryMapPoiReaderAdapter {
 	}
 
 	protected void searchPoiByName(PoiRegion region, SearchRequest<Amenity> req) throws IOException {
+		searchPoiByName(region, req, null);
+	}
+
+	/**
+	 * @param names name index of region, if it's specified poi boxes are taken from it and name table is not read
+	 */
+	void searchPoiByName(PoiRegion region, SearchRequest<Amenity> req, NameSearchIndex.PoiNames names) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		String query = normalizeSearchPoiByNameQuery(req.nameQuery);
 		CollatorStringMatcher matcher = new CollatorStringMatcher(query,
@@ -315,6 +329,12 @@ public class BinaryMapPoiReaderAdapter {
 				return;
 			case OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER:
 				int length = readInt();
+				TIntLongHashMap indexOffsets = names == null ? null : names.getOffsets(query, req);
+				if (indexOffsets != null) {
+					offsets = indexOffsets;
+					codedIS.skipRawBytes(length);
+					break;
+				}
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
 				offsets = readPoiNameIndex(matcher.getCollator(), query, req);
@@ -495,6 +515,111 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
+	/**
+	 * Reads all keys and atoms of name index of region to build {@link NameSearchIndex}
+	 */
+	void readPoiNameIndex(NameSearchIndex.PoiNamesBuilder builder) throws IOException {
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER:
+				int length = readInt();
+				int oldLimit = codedIS.pushLimit(length);
+				readPoiNameIndexTable(builder);
+				codedIS.popLimit(oldLimit);
+				return;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readPoiNameIndexTable(NameSearchIndex.PoiNamesBuilder builder) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		TIntArrayList values = new TIntArrayList();
+		int offset = 0;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiNameIndex.TABLE_FIELD_NUMBER: {
+				int len = readInt();
+				int oldLimit = codedIS.pushLimit(len);
+				offset = codedIS.getTotalBytesRead();
+				map.readIndexedStringTableKeys("", keys, values);
+				codedIS.popLimit(oldLimit);
+				break;
+			}
+			case OsmandOdb.OsmAndPoiNameIndex.DATA_FIELD_NUMBER: {
+				for (int i = 0; i < keys.size(); i++) {
+					codedIS.seek(values.get(i) + offset);
+					int len = codedIS.readRawVarint32();
+					int oldLim = codedIS.pushLimit(len);
+					readPoiNameIndexData(builder, keys.get(i));
+					codedIS.popLimit(oldLim);
+				}
+				codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				return;
+			}
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readPoiNameIndexData(NameSearchIndex.PoiNamesBuilder builder, String key) throws IOException {
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmAndPoiNameIndexData.ATOMS_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				int x = 0;
+				int y = 0;
+				int zoom = 15;
+				int atomTag;
+				do {
+					int at = codedIS.readTag();
+					atomTag = WireFormat.getTagFieldNumber(at);
+					switch (atomTag) {
+					case 0:
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.X_FIELD_NUMBER:
+						x = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.Y_FIELD_NUMBER:
+						y = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.ZOOM_FIELD_NUMBER:
+						zoom = codedIS.readUInt32();
+						break;
+					case OsmandOdb.OsmAndPoiNameIndexDataAtom.SHIFTTO_FIELD_NUMBER:
+						builder.addAtom(key, readInt(), x << (31 - zoom), y << (31 - zoom));
+						break;
+					default:
+						skipUnknownField(at);
+						break;
+					}
+				} while (atomTag != 0);
+				codedIS.popLimit(oldLim);
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	protected void searchPoiIndex(int left31, int right31, int top31, int bottom31,
 			SearchRequest<Amenity> req, PoiRegion region) throws IOException {
 		int indexOffset = codedIS.getTotalBytesRead();
@@ -801,7 +926,7 @@ public class BinaryMapPoiReaderAdapter {
 				int cat = codedIS.readUInt32();
 				int subcatId = cat >> SHIFT_BITS_CATEGORY;
 				int catId = cat & CATEGORY_MASK;
-				PoiCategory type = poiTypes.getOtherPoiCategory();
+				PoiCategory type = getPoiTypes().getOtherPoiCategory();
 				String subtype = "";
 				if (catId < region.categoriesType.size()) {
 					type = region.categoriesType.get(catId);
@@ -810,8 +935,8 @@ public class BinaryMapPoiReaderAdapter {
 						subtype = subcats.get(subcatId);
 					}
 				}
-				subtype = poiTypes.replaceDeprecatedSubtype(type, subtype);
-				boolean isForbidden = poiTypes.isTypeForbidden(subtype);
+				subtype = getPoiTypes().replaceDeprecatedSubtype(type, subtype);
+				boolean isForbidden = getPoiTypes().isTypeForbidden(subtype);
 				if (!isForbidden && (req.poiTypeFilter == null || req.poiTypeFilter.accept(type, subtype))) {
 					if (amenityType == null) {
 						amenityType = type;
@@ -874,7 +999,7 @@ public class BinaryMapPoiReaderAdapter {
 //				}
 //				break;
 			case OsmandOdb.OsmAndPoiCategories.CATEGORIES_FIELD_NUMBER:
-				PoiCategory type = poiTypes.getOtherPoiCategory();
+				PoiCategory type = getPoiTypes().getOtherPoiCategory();
 				String subtype = "";
 				int cat = codedIS.readUInt32();
 				int subcatId = cat >> SHIFT_BITS_CATEGORY;
@@ -886,7 +1011,7 @@ public class BinaryMapPoiReaderAdapter {
 						subtype = subcats.get(subcatId);
 					}
 				}
-				subtype = poiTypes.replaceDeprecatedSubtype(type, subtype);
+				subtype = getPoiTypes().replaceDeprecatedSubtype(type, subtype);
 				if (req.poiTypeFilter.accept(type, subtype)) {
 					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
 					return true;
@@ -0,0 +1,287 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Spatial index of readers by bounding boxes of their index parts (map roots, route subregions, poi and address regions).
+ * Same checks as {@link BinaryMapIndexReader#containsMapData(int, int, int, int, int)} and others are done in
+ * logarithmic time by R-trees packed with Sort-Tile-Recursive algorithm. Trees are rebuilt on first query
+ * after readers are added or removed. Readers are returned in order they were added.
+ */
+public class BinaryMapReadersIndex {
+
+	public enum IndexType {
+		MAP,
+		ROUTE,
+		BASE_ROUTE,
+		POI,
+		ADDRESS
+	}
+
+	private final List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+	private volatile Trees trees;
+
+	public BinaryMapReadersIndex() {
+	}
+
+	public BinaryMapReadersIndex(Collection<? extends BinaryMapIndexReader> readers) {
+		this.readers.addAll(readers);
+	}
+
+	public synchronized void addReader(BinaryMapIndexReader reader) {
+		readers.add(reader);
+		trees = null;
+	}
+
+	public synchronized boolean removeReader(BinaryMapIndexReader reader) {
+		boolean removed = readers.remove(reader);
+		trees = null;
+		return removed;
+	}
+
+	public synchronized void clear() {
+		readers.clear();
+		trees = null;
+	}
+
+	public synchronized List<BinaryMapIndexReader> getReaders() {
+		return new ArrayList<BinaryMapIndexReader>(readers);
+	}
+
+	public boolean containsReader(BinaryMapIndexReader reader) {
+		return getTrees().readerSet.contains(reader);
+	}
+
+	public List<BinaryMapIndexReader> getMapReaders(int left31x, int top31y, int right31x, int bottom31y, int zoom) {
+		return getReaders(IndexType.MAP, left31x, top31y, right31x, bottom31y, zoom);
+	}
+
+	public List<BinaryMapIndexReader> getRouteReaders(int left31x, int top31y, int right31x, int bottom31y) {
+		return getReaders(IndexType.ROUTE, left31x, top31y, right31x, bottom31y, -1);
+	}
+
+	public List<BinaryMapIndexReader> getPoiReaders(int left31x, int top31y, int right31x, int bottom31y) {
+		return getReaders(IndexType.POI, left31x, top31y, right31x, bottom31y, -1);
+	}
+
+	public List<BinaryMapIndexReader> getAddressReaders(int left31x, int top31y, int right31x, int bottom31y) {
+		return getReaders(IndexType.ADDRESS, left31x, top31y, right31x, bottom31y, -1);
+	}
+
+	/**
+	 * @param zoom - zoom to check map roots, ignored for other types
+	 */
+	public List<BinaryMapIndexReader> getReaders(IndexType type, int left31x, int top31y, int right31x, int bottom31y,
+	                                             int zoom) {
+		Trees t = getTrees();
+		TIntArrayList ids = new TIntArrayList();
+		t.trees[type.ordinal()].query(left31x, top31y, right31x, bottom31y, type == IndexType.MAP ? zoom : -1, ids);
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		ids.sort();
+		List<BinaryMapIndexReader> res = new ArrayList<BinaryMapIndexReader>(ids.size());
+		int prev = -1;
+		for (int i = 0; i < ids.size(); i++) {
+			int id = ids.get(i);
+			if (id != prev) {
+				res.add(t.readers[id]);
+				prev = id;
+			}
+		}
+		return res;
+	}
+
+	private Trees getTrees() {
+		Trees t = trees;
+		if (t == null) {
+			synchronized (this) {
+				t = trees;
+				if (t == null) {
+					t = new Trees(readers.toArray(new BinaryMapIndexReader[0]));
+					trees = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	private static class Trees {
+
+		final BinaryMapIndexReader[] readers;
+		final Set<BinaryMapIndexReader> readerSet;
+		final StrTree[] trees = new StrTree[IndexType.values().length];
+
+		Trees(BinaryMapIndexReader[] readers) {
+			this.readers = readers;
+			this.readerSet = new HashSet<BinaryMapIndexReader>(Arrays.asList(readers));
+			for (int i = 0; i < trees.length; i++) {
+				trees[i] = new StrTree();
+			}
+			for (int id = 0; id < readers.length; id++) {
+				BinaryMapIndexReader r = readers[id];
+				for (MapIndex mi : r.getMapIndexes()) {
+					for (MapRoot root : mi.getRoots()) {
+						trees[IndexType.MAP.ordinal()].add(root.left, root.top, root.right, root.bottom,
+								root.minZoom, root.maxZoom, id);
+					}
+				}
+				for (RouteRegion rr : r.getRoutingIndexes()) {
+					for (RouteSubregion sr : rr.getSubregions()) {
+						trees[IndexType.ROUTE.ordinal()].add(sr.left, sr.top, sr.right, sr.bottom, 0, 0, id);
+					}
+					for (RouteSubregion sr : rr.getBaseSubregions()) {
+						trees[IndexType.BASE_ROUTE.ordinal()].add(sr.left, sr.top, sr.right, sr.bottom, 0, 0, id);
+					}
+				}
+				for (PoiRegion pr : r.getPoiIndexes()) {
+					trees[IndexType.POI.ordinal()].add(pr.left31, pr.top31, pr.right31, pr.bottom31, 0, 0, id);
+				}
+				for (AddressRegion ar : r.getAddressIndexes()) {
+					trees[IndexType.ADDRESS.ordinal()].add(ar.left31, ar.top31, ar.right31, ar.bottom31, 0, 0, id);
+				}
+			}
+			for (StrTree tree : trees) {
+				tree.pack();
+			}
+		}
+	}
+
+	/**
+	 * R-tree of boxes with zoom ranges packed bottom up with Sort-Tile-Recursive algorithm
+	 */
+	static class StrTree {
+
+		static final int NODE_CAPACITY = 8;
+
+		private final List<Node> entries = new ArrayList<Node>();
+		private Node root;
+
+		void add(int left, int top, int right, int bottom, int minZoom, int maxZoom, int id) {
+			Node n = new Node();
+			n.left = left;
+			n.top = top;
+			n.right = right;
+			n.bottom = bottom;
+			n.minZoom = minZoom;
+			n.maxZoom = maxZoom;
+			n.id = id;
+			entries.add(n);
+			root = null;
+		}
+
+		void pack() {
+			List<Node> level = entries;
+			while (level.size() > NODE_CAPACITY) {
+				level = packLevel(level);
+			}
+			root = level.isEmpty() ? null : createParent(level, 0, level.size());
+		}
+
+		int size() {
+			return entries.size();
+		}
+
+		/**
+		 * @param zoom - negative to ignore zoom ranges
+		 */
+		void query(int left, int top, int right, int bottom, int zoom, TIntArrayList ids) {
+			if (root == null && !entries.isEmpty()) {
+				pack();
+			}
+			if (root != null) {
+				query(root, left, top, right, bottom, zoom, ids);
+			}
+		}
+
+		private void query(Node n, int left, int top, int right, int bottom, int zoom, TIntArrayList ids) {
+			if (right < n.left || left > n.right || n.top > bottom || n.bottom < top) {
+				return;
+			}
+			if (zoom >= 0 && (zoom < n.minZoom || zoom > n.maxZoom)) {
+				return;
+			}
+			if (n.children == null) {
+				ids.add(n.id);
+			} else {
+				for (Node c : n.children) {
+					query(c, left, top, right, bottom, zoom, ids);
+				}
+			}
+		}
+
+		private static List<Node> packLevel(List<Node> nodes) {
+			Node[] sorted = nodes.toArray(new Node[0]);
+			Arrays.sort(sorted, CENTER_X);
+			int parents = (sorted.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+			int slices = (int) Math.ceil(Math.sqrt(parents));
+			int sliceSize = slices * NODE_CAPACITY;
+			List<Node> res = new ArrayList<Node>(parents);
+			for (int s = 0; s < sorted.length; s += sliceSize) {
+				int sliceEnd = Math.min(sorted.length, s + sliceSize);
+				Arrays.sort(sorted, s, sliceEnd, CENTER_Y);
+				for (int i = s; i < sliceEnd; i += NODE_CAPACITY) {
+					res.add(createParent(Arrays.asList(sorted), i, Math.min(sliceEnd, i + NODE_CAPACITY)));
+				}
+			}
+			return res;
+		}
+
+		private static Node createParent(List<Node> nodes, int start, int end) {
+			Node p = new Node();
+			p.children = nodes.subList(start, end).toArray(new Node[end - start]);
+			p.left = p.top = p.minZoom = Integer.MAX_VALUE;
+			p.right = p.bottom = p.maxZoom = Integer.MIN_VALUE;
+			for (Node c : p.children) {
+				p.left = Math.min(p.left, c.left);
+				p.top = Math.min(p.top, c.top);
+				p.right = Math.max(p.right, c.right);
+				p.bottom = Math.max(p.bottom, c.bottom);
+				p.minZoom = Math.min(p.minZoom, c.minZoom);
+				p.maxZoom = Math.max(p.maxZoom, c.maxZoom);
+			}
+			return p;
+		}
+
+		private static final Comparator<Node> CENTER_X = new Comparator<Node>() {
+			@Override
+			public int compare(Node o1, Node o2) {
+				return Long.compare((long) o1.left + o1.right, (long) o2.left + o2.right);
+			}
+		};
+
+		private static final Comparator<Node> CENTER_Y = new Comparator<Node>() {
+			@Override
+			public int compare(Node o1, Node o2) {
+				return Long.compare((long) o1.top + o1.bottom, (long) o2.top + o2.bottom);
+			}
+		};
+
+		private static class Node {
+			int left;
+			int top;
+			int right;
+			int bottom;
+			int minZoom;
+			int maxZoom;
+			int id;
+			Node[] children;
+		}
+	}
+}
@@ -22,12 +22,14 @@ import org.apache.commons.logging.Log;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TIntArrayList;
@@ -290,6 +292,32 @@ public class BinaryMapRouteReaderAdapter {
 		}
 	}
 
+	public static class RouteTypesCombination {
+		public final int[] types;
+		public final int id;
+
+		RouteTypesCombination(int[] types, int id) {
+			this.types = types;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(types);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof RouteTypesCombination)) {
+				return false;
+			}
+			return Arrays.equals(types, ((RouteTypesCombination) obj).types);
+		}
+	}
+
 	public static class RouteRegion extends BinaryIndexPart {
 		public int regionsRead;
 		public List<RouteTypeRule> routeEncodingRules = new ArrayList<BinaryMapRouteReaderAdapter.RouteTypeRule>();
@@ -312,6 +340,8 @@ public class BinaryMapRouteReaderAdapter {
 		int destinationTypeRule = -1;
 		int destinationRefTypeRule = -1;
 		private RouteRegion referenceRouteRegion;
+		private final Map<RouteTypesCombination, RouteTypesCombination> typesCombinations =
+				new ConcurrentHashMap<RouteTypesCombination, RouteTypesCombination>();
 
 		public String getPartName() {
 			return "Routing";
@@ -349,6 +379,28 @@ public class BinaryMapRouteReaderAdapter {
 			return routeEncodingRules.get(id);
 		}
 
+		/**
+		 * Returns shared instance for the types combination, ids are dense and start from 0.
+		 * Passed array is stored if combination is new, so it shouldn't be modified afterwards.
+		 */
+		public RouteTypesCombination internTypesCombination(int[] types) {
+			RouteTypesCombination c = typesCombinations.get(new RouteTypesCombination(types, -1));
+			if (c == null) {
+				synchronized (typesCombinations) {
+					c = typesCombinations.get(new RouteTypesCombination(types, -1));
+					if (c == null) {
+						c = new RouteTypesCombination(types, typesCombinations.size());
+						typesCombinations.put(c, c);
+					}
+				}
+			}
+			return c;
+		}
+
+		public int getTypesCombinationsCount() {
+			return typesCombinations.size();
+		}
+
 		public void initRouteEncodingRule(int id, String tags, String val) {
 			decodingRules = null;
 			while (routeEncodingRules.size() <= id) {
@@ -476,6 +528,7 @@ public class BinaryMapRouteReaderAdapter {
 					int ruleId = findOrCreateRouteType(tp.getTag(), tp.getValue());
 					rdo.types[i] = ruleId;
 				}
+				rdo.internTypes();
 			}
 			if (o.pointTypes != null) {
 				rdo.pointTypes = new int[o.pointTypes.length][];
@@ -703,6 +756,7 @@ public class BinaryMapRouteReaderAdapter {
 				o.pointsX = pointsX.toArray();
 				o.pointsY = pointsY.toArray();
 				o.types = types.toArray();
+				o.internTypes();
 				if (globalpointTypes.size() > 0) {
 					o.pointTypes = new int[globalpointTypes.size()][];
 					for (int k = 0; k < o.pointTypes.length; k++) {
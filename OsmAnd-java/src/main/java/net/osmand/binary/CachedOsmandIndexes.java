@@ -21,39 +21,53 @@ import net.osmand.binary.OsmandIndex.RoutingPart;
 import net.osmand.binary.OsmandIndex.RoutingSubregion;
 import net.osmand.binary.OsmandIndex.TransportPart;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
 import org.apache.commons.logging.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Cache of index headers of obf files. Cache file is memory mapped and only positions of file entries
+ * are read on loading, entry of file is parsed when reader of the file is requested.
+ */
 public class CachedOsmandIndexes {
 
-	private OsmAndStoredIndex storedIndex;
-	private OsmAndStoredIndex.Builder storedIndexBuilder;
+	// file name -> stored index of the file
+	private final Map<String, StoredFileIndex> storedFiles = new ConcurrentHashMap<String, StoredFileIndex>();
+	private ByteBuffer storedBuffer;
 	private Log log = PlatformUtil.getLog(CachedOsmandIndexes.class);
-	private boolean hasChanged = false;
+	private volatile boolean hasChanged = false;
 	public static final String INDEXES_DEFAULT_FILENAME = "indexes.cache";
+	public static final String NAME_INDEXES_DIR = "names.cache";
 
 	public static final int VERSION = 2;
 
-	public FileIndex addToCache(BinaryMapIndexReader reader, File f) {
-		hasChanged = true;
-		if (storedIndexBuilder == null) {
-			storedIndexBuilder = OsmandIndex.OsmAndStoredIndex.newBuilder();
-			storedIndexBuilder.setVersion(VERSION);
-			storedIndexBuilder.setDateCreated(System.currentTimeMillis());
-			if (storedIndex != null) {
-				for (FileIndex ex : storedIndex.getFileIndexList()) {
-					if (!ex.getFileName().equals(f.getName())) {
-						storedIndexBuilder.addFileIndex(ex);
-					}
-				}
-			}
-		}
+	private File nameIndexesDir;
+	private volatile boolean memoryMappedReaders;
+	private final Map<String, NameSearchIndex> nameIndexes = new ConcurrentHashMap<String, NameSearchIndex>();
 
+	public FileIndex addToCache(BinaryMapIndexReader reader, File f) {
 		FileIndex.Builder fileIndex = OsmandIndex.FileIndex.newBuilder();
 		long d = reader.getDateCreated();
 		fileIndex.setDateModified(d == 0 ? f.lastModified() : d);
@@ -159,7 +173,8 @@ public class CachedOsmandIndexes {
 		}
 
 		FileIndex fi = fileIndex.build();
-		storedIndexBuilder.addFileIndex(fi);
+		storedFiles.put(fi.getFileName(), new StoredFileIndex(fi));
+		hasChanged = true;
 		return fi;
 	}
 
@@ -194,17 +209,167 @@ public class CachedOsmandIndexes {
 	}
 
 
-	public FileIndex getFileIndex(File f, boolean init) throws IOException {
-		FileIndex found = null;
-		if (storedIndex != null) {
-			for (int i = 0; i < storedIndex.getFileIndexCount(); i++) {
-				FileIndex fi = storedIndex.getFileIndex(i);
-				if (f.length() == fi.getSize() && f.getName().equals(fi.getFileName())) {
-					// f.lastModified() == fi.getDateModified()
-					found = fi;
-					break;
+	/**
+	 * Same as {@link #getReader(File, boolean)} but the reader works over a shared read-only memory mapping,
+	 * so copies for other threads can be created with {@link BinaryMapIndexReader#BinaryMapIndexReader(BinaryMapIndexReader)}.
+	 * Files which can't be mapped (bigger than 2 GB or out of address space) are read with file handle.
+	 */
+	public BinaryMapIndexReader getMappedReader(File f, boolean useStoredIndex) throws IOException {
+		if (!canMapFile(f)) {
+			return getReader(f, useStoredIndex);
+		}
+		MappedByteBuffer mf;
+		try {
+			mf = BinaryMapIndexReader.mapFile(f);
+		} catch (IOException e) {
+			log.warn("File " + f.getName() + " can't be memory mapped: " + e.getMessage());
+			return getReader(f, useStoredIndex);
+		}
+		FileIndex found = useStoredIndex ? getFileIndex(f, false) : null;
+		BinaryMapIndexReader reader;
+		if (found == null) {
+			long val = System.currentTimeMillis();
+			reader = new BinaryMapIndexReader(mf, f);
+			found = addToCache(reader, f);
+			if (log.isDebugEnabled()) {
+				log.debug("Initializing db " + f.getAbsolutePath() + " " + (System.currentTimeMillis() - val) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		} else {
+			reader = initReaderFromFileIndex(found, new BinaryMapIndexReader(mf, f, false));
+		}
+		return reader;
+	}
+
+	// mapping of bigger files is not supported by ByteBuffer
+	boolean canMapFile(File f) {
+		return f.length() <= Integer.MAX_VALUE;
+	}
+
+	public boolean isMemoryMappedReaders() {
+		return memoryMappedReaders;
+	}
+
+	/**
+	 * Readers of {@link #getReaders(List, Collection, int)} are memory mapped (see {@link #getMappedReader(File, boolean)})
+	 */
+	public void setMemoryMappedReaders(boolean memoryMappedReaders) {
+		this.memoryMappedReaders = memoryMappedReaders;
+	}
+
+	private BinaryMapIndexReader openReader(File f, boolean useStoredIndex) throws IOException {
+		return memoryMappedReaders ? getMappedReader(f, useStoredIndex) : getReader(f, useStoredIndex);
+	}
+
+	/**
+	 * Initializes readers of files in parallel, files which can't be read are logged and skipped.
+	 * @param reindexFiles - files which shouldn't be initialized from cache
+	 * @return readers in order of files
+	 */
+	public Map<File, BinaryMapIndexReader> getReaders(List<File> files, final Collection<File> reindexFiles,
+	                                                  int threads) throws InterruptedException {
+		Map<File, BinaryMapIndexReader> readers = new LinkedHashMap<File, BinaryMapIndexReader>();
+		if (threads <= 1 || files.size() <= 1) {
+			for (File f : files) {
+				try {
+					readers.put(f, openReader(f, !reindexFiles.contains(f)));
+				} catch (IOException e) {
+					log.error(String.format("File %s could not be read", f.getName()), e);
+				}
+			}
+			return readers;
+		}
+		long time = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+		try {
+			List<Future<BinaryMapIndexReader>> futures = new ArrayList<Future<BinaryMapIndexReader>>();
+			for (final File f : files) {
+				futures.add(executor.submit(new Callable<BinaryMapIndexReader>() {
+					@Override
+					public BinaryMapIndexReader call() throws Exception {
+						return openReader(f, !reindexFiles.contains(f));
+					}
+				}));
+			}
+			for (int i = 0; i < files.size(); i++) {
+				File f = files.get(i);
+				try {
+					readers.put(f, futures.get(i).get());
+				} catch (ExecutionException e) {
+					// out of memory on one file shouldn't stop others as for sequential initialization
+					log.error(String.format("File %s could not be read", f.getName()), e.getCause());
 				}
 			}
+		} finally {
+			executor.shutdownNow();
+		}
+		log.info("Initialize " + files.size() + " readers in " + threads + " threads " + (System.currentTimeMillis() - time) + " ms");
+		return readers;
+	}
+
+	public File getNameIndexesDir() {
+		return nameIndexesDir;
+	}
+
+	/**
+	 * Directory of name index files, by default it's {@link #NAME_INDEXES_DIR} next to the cache file
+	 */
+	public void setNameIndexesDir(File nameIndexesDir) {
+		this.nameIndexesDir = nameIndexesDir;
+	}
+
+	/**
+	 * Sets name index to the reader (see {@link BinaryMapIndexReader#setNameIndex(NameSearchIndex)}).
+	 * Index is loaded from the name indexes directory, if it's missing or outdated (built for other file or
+	 * other transliteration mode) and build is true it's built from the file and stored,
+	 * otherwise reader keeps searching name tables of the file.
+	 */
+	public NameSearchIndex loadNameIndex(BinaryMapIndexReader reader, boolean build) throws IOException {
+		File f = reader.getFile();
+		NameSearchIndex index = nameIndexes.get(f.getName());
+		if (index != null && !isActualNameIndex(index, reader)) {
+			index = null;
+		}
+		File indexFile = nameIndexesDir == null ? null : new File(nameIndexesDir, f.getName() + NameSearchIndex.FILE_EXT);
+		if (index == null && indexFile != null && indexFile.exists()) {
+			long time = System.currentTimeMillis();
+			try {
+				index = NameSearchIndex.readFromFile(indexFile);
+			} catch (IOException e) {
+				log.warn("Name index " + indexFile.getName() + " can't be read", e);
+			}
+			if (index != null && !isActualNameIndex(index, reader)) {
+				index = null;
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Loading name index " + indexFile.getName() + " " + (System.currentTimeMillis() - time) + "ms");
+			}
+		}
+		if (index == null && build) {
+			long time = System.currentTimeMillis();
+			index = reader.buildNameIndex();
+			log.info("Building name index of " + f.getName() + " " + (System.currentTimeMillis() - time) + "ms");
+			if (indexFile != null) {
+				nameIndexesDir.mkdirs();
+				index.writeToFile(indexFile);
+			}
+		}
+		if (index != null) {
+			nameIndexes.put(f.getName(), index);
+		}
+		reader.setNameIndex(index);
+		return index;
+	}
+
+	private static boolean isActualNameIndex(NameSearchIndex index, BinaryMapIndexReader reader) {
+		return index.isIndexOf(reader.getFile(), reader.getDateCreated()) && index.isTransliterationActual();
+	}
+
+	public FileIndex getFileIndex(File f, boolean init) throws IOException {
+		FileIndex found = null;
+		StoredFileIndex stored = storedFiles.get(f.getName());
+		// f.lastModified() == fi.getDateModified()
+		if (stored != null && f.length() == stored.size) {
+			found = stored.getFileIndex(storedBuffer);
 		}
 		if (found == null && init) {
 			RandomAccessFile mf = new RandomAccessFile(f.getPath(), "r");
@@ -221,7 +386,10 @@ public class CachedOsmandIndexes {
 	}
 
 	public BinaryMapIndexReader initReaderFromFileIndex(FileIndex found, RandomAccessFile mf, File f) throws IOException {
-		BinaryMapIndexReader reader = new BinaryMapIndexReader(mf, f, false);
+		return initReaderFromFileIndex(found, new BinaryMapIndexReader(mf, f, false));
+	}
+
+	private BinaryMapIndexReader initReaderFromFileIndex(FileIndex found, BinaryMapIndexReader reader) {
 		reader.version = found.getVersion();
 		reader.dateCreated = found.getDateModified();
 
@@ -329,32 +497,137 @@ public class CachedOsmandIndexes {
 	}
 	
 
+	/**
+	 * Maps cache file and reads only names, sizes and positions of file entries
+	 */
 	public void readFromFile(File f, int version) throws IOException {
+		if (nameIndexesDir == null) {
+			nameIndexesDir = new File(f.getParentFile(), NAME_INDEXES_DIR);
+		}
 		long time = System.currentTimeMillis();
-		FileInputStream is = new FileInputStream(f);
-		try {
-			storedIndex = OsmandIndex.OsmAndStoredIndex.newBuilder().mergeFrom(is).build();
-			hasChanged = false;
-			if (storedIndex.getVersion() != version) {
-				storedIndex = null;
+		MappedByteBuffer buffer = BinaryMapIndexReader.mapFile(f);
+		Map<String, StoredFileIndex> files = new LinkedHashMap<String, StoredFileIndex>();
+		int storedVersion = 0;
+		CodedInputStream cis = CodedInputStream.newInstance(buffer);
+		cis.setSizeLimit(Integer.MAX_VALUE);
+		while (true) {
+			int tag = cis.readTag();
+			int field = WireFormat.getTagFieldNumber(tag);
+			if (tag == 0) {
+				break;
+			} else if (field == OsmAndStoredIndex.VERSION_FIELD_NUMBER) {
+				storedVersion = cis.readUInt32();
+			} else if (field == OsmAndStoredIndex.FILEINDEX_FIELD_NUMBER) {
+				StoredFileIndex stored = readStoredFileIndex(cis);
+				if (stored.fileName != null) {
+					files.put(stored.fileName, stored);
+				}
+			} else {
+				cis.skipField(tag);
+			}
+		}
+		storedFiles.clear();
+		if (storedVersion == version) {
+			storedBuffer = buffer;
+			storedFiles.putAll(files);
+		}
+		hasChanged = false;
+		log.info("Initialize cache " + storedFiles.size() + " files " + (System.currentTimeMillis() - time));
+	}
+
+	private static StoredFileIndex readStoredFileIndex(CodedInputStream cis) throws IOException {
+		int length = cis.readRawVarint32();
+		int offset = cis.getTotalBytesRead();
+		int oldLimit = cis.pushLimit(length);
+		StoredFileIndex stored = new StoredFileIndex(offset, length);
+		while ((stored.size < 0 || stored.fileName == null) && cis.getBytesUntilLimit() > 0) {
+			int tag = cis.readTag();
+			int field = WireFormat.getTagFieldNumber(tag);
+			if (field == FileIndex.SIZE_FIELD_NUMBER) {
+				stored.size = cis.readInt64();
+			} else if (field == FileIndex.FILENAME_FIELD_NUMBER) {
+				stored.fileName = cis.readString();
+			} else {
+				cis.skipField(tag);
 			}
-		} finally {
-			is.close();
 		}
-		log.info("Initialize cache " + (System.currentTimeMillis() - time));
+		cis.skipRawBytes(cis.getBytesUntilLimit());
+		cis.popLimit(oldLimit);
+		return stored;
 	}
 
 	public void writeToFile(File f) throws IOException {
 		if (hasChanged) {
-			FileOutputStream outputStream = new FileOutputStream(f);
+			// cache file could be still mapped, so it's replaced by new file
+			File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+			OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tmp));
 			try {
-				storedIndexBuilder.build().writeTo(outputStream);
+				CodedOutputStream cos = CodedOutputStream.newInstance(outputStream);
+				cos.writeUInt32(OsmAndStoredIndex.VERSION_FIELD_NUMBER, VERSION);
+				cos.writeInt64(OsmAndStoredIndex.DATECREATED_FIELD_NUMBER, System.currentTimeMillis());
+				for (StoredFileIndex stored : storedFiles.values()) {
+					stored.writeTo(cos, OsmAndStoredIndex.FILEINDEX_FIELD_NUMBER, storedBuffer);
+				}
+				cos.flush();
 			} finally {
 				outputStream.close();
 			}
+			if (f.exists()) {
+				f.delete();
+			}
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+				throw new IOException("Can't write indexes cache " + f.getName());
+			}
+			hasChanged = false;
 		}
 	}
 
-	
+	private static class StoredFileIndex {
+
+		private final int offset;
+		private final int length;
+		private String fileName;
+		private long size = -1;
+		private FileIndex fileIndex;
 
+		StoredFileIndex(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		StoredFileIndex(FileIndex fileIndex) {
+			this.offset = -1;
+			this.length = 0;
+			this.fileName = fileIndex.getFileName();
+			this.size = fileIndex.getSize();
+			this.fileIndex = fileIndex;
+		}
+
+		synchronized FileIndex getFileIndex(ByteBuffer buffer) throws IOException {
+			if (fileIndex == null) {
+				fileIndex = FileIndex.parseFrom(readBytes(buffer));
+			}
+			return fileIndex;
+		}
+
+		private byte[] readBytes(ByteBuffer buffer) {
+			byte[] bytes = new byte[length];
+			ByteBuffer b = buffer.duplicate();
+			b.position(offset);
+			b.get(bytes);
+			return bytes;
+		}
+
+		synchronized void writeTo(CodedOutputStream cos, int field, ByteBuffer buffer) throws IOException {
+			if (fileIndex != null) {
+				cos.writeMessage(field, fileIndex);
+			} else {
+				// not parsed entry is copied as is
+				cos.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				cos.writeRawVarint32(length);
+				cos.writeRawBytes(readBytes(buffer));
+			}
+		}
+	}
 }
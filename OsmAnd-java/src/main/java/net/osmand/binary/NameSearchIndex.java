@@ -0,0 +1,648 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.util.Algorithms;
+import net.osmand.util.TransliterationHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Name index of address and poi name tables of one file (see {@link CachedOsmandIndexes#loadNameIndex(BinaryMapIndexReader, boolean)}).
+ * It is built once by reading all name tables of the file and keeps normalized (lower case, transliterated) names:
+ * sorted keys of name tables are used for prefix lookup and trigrams of address names for substring lookup.
+ * Search by name resolves candidate objects directly to file pointers, so only candidates are read from the file.
+ */
+public class NameSearchIndex {
+
+	public static final int VERSION = 2;
+	public static final String FILE_EXT = ".names";
+
+	private static final int TRIGRAM = 3;
+	private static final char TEXT_SEPARATOR = '\n';
+	private static final byte XY_DEFINED = 1;
+
+	private final String fileName;
+	private final long fileSize;
+	private final long dateCreated;
+	private final boolean japanese;
+	final List<AddressNames> addressNames = new ArrayList<>();
+	final List<PoiNames> poiNames = new ArrayList<>();
+
+	NameSearchIndex(String fileName, long fileSize, long dateCreated) {
+		this(fileName, fileSize, dateCreated, TransliterationHelper.isJapanese());
+	}
+
+	NameSearchIndex(String fileName, long fileSize, long dateCreated, boolean japanese) {
+		this.fileName = fileName;
+		this.fileSize = fileSize;
+		this.dateCreated = dateCreated;
+		this.japanese = japanese;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public boolean isIndexOf(File f, long dateCreated) {
+		return fileName.equals(f.getName()) && fileSize == f.length() && this.dateCreated == dateCreated;
+	}
+
+	/**
+	 * Keys are normalized with transliteration mode of {@link TransliterationHelper} at the time index is built,
+	 * queries normalized in other mode don't match them
+	 */
+	public boolean isTransliterationActual() {
+		return japanese == TransliterationHelper.isJapanese();
+	}
+
+	AddressNames getAddressNames(AddressRegion reg) {
+		for (AddressNames names : addressNames) {
+			if (names.indexNameOffset == reg.indexNameOffset) {
+				return names;
+			}
+		}
+		return null;
+	}
+
+	PoiNames getPoiNames(PoiRegion reg) {
+		for (PoiNames names : poiNames) {
+			if (names.filePointer == reg.filePointer) {
+				return names;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Lower case transliterated string where all characters except letters and digits are replaced by space.
+	 */
+	public static String normalize(String s) {
+		String lower = s.toLowerCase();
+		if (lower.indexOf('ß') != -1) {
+			lower = lower.replace("ß", "ss");
+		}
+		String tr = TransliterationHelper.transliterate(lower).toLowerCase();
+		char[] chars = tr.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (!Character.isLetterOrDigit(chars[i])) {
+				chars[i] = ' ';
+			}
+		}
+		return new String(chars);
+	}
+
+	private static long trigram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+	}
+
+	private static boolean matchesText(String text, String query, StringMatcherMode mode) {
+		int i = text.indexOf(query);
+		if (mode == StringMatcherMode.CHECK_CONTAINS) {
+			return i != -1;
+		}
+		while (i != -1) {
+			if (i == 0 || text.charAt(i - 1) == ' ' || text.charAt(i - 1) == TEXT_SEPARATOR) {
+				return true;
+			}
+			i = text.indexOf(query, i + 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Sorted normalized keys of name table with ids of entries for every key.
+	 */
+	static class KeysTable {
+		final String[] keys;
+		final int[] start;
+		final int[] ids;
+
+		KeysTable(String[] keys, int[] start, int[] ids) {
+			this.keys = keys;
+			this.start = start;
+			this.ids = ids;
+		}
+
+		KeysTable(Map<String, TIntArrayList> table) {
+			TreeMap<String, TIntArrayList> sorted = new TreeMap<>(table);
+			keys = new String[sorted.size()];
+			start = new int[sorted.size() + 1];
+			TIntArrayList allIds = new TIntArrayList();
+			int k = 0;
+			for (Map.Entry<String, TIntArrayList> e : sorted.entrySet()) {
+				keys[k++] = e.getKey();
+				allIds.addAll(e.getValue());
+				start[k] = allIds.size();
+			}
+			ids = allIds.toArray();
+		}
+
+		int indexOf(String key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? -1 : i;
+		}
+
+		void collect(int keyIndex, TIntArrayList res) {
+			for (int i = start[keyIndex]; i < start[keyIndex + 1]; i++) {
+				res.add(ids[i]);
+			}
+		}
+
+		/**
+		 * Collects ids of keys starting with query and returns number of such keys
+		 */
+		int collectStartingWith(String query, TIntArrayList res) {
+			int i = Arrays.binarySearch(keys, query);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			int found = 0;
+			for (; i < keys.length && keys[i].startsWith(query); i++) {
+				collect(i, res);
+				found++;
+			}
+			return found;
+		}
+
+		/**
+		 * Collects ids of the longest key which query starts with and returns its length
+		 */
+		int collectLongestPrefix(String query, int maxLength, TIntArrayList res) {
+			for (int l = Math.min(maxLength, query.length()); l > 0; l--) {
+				int i = indexOf(query.substring(0, l));
+				if (i != -1) {
+					collect(i, res);
+					return l;
+				}
+			}
+			return 0;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(keys.length);
+			for (int k = 0; k < keys.length; k++) {
+				out.writeUTF(keys[k]);
+				out.writeInt(start[k + 1] - start[k]);
+				for (int i = start[k]; i < start[k + 1]; i++) {
+					out.writeInt(ids[i]);
+				}
+			}
+		}
+
+		static KeysTable read(DataInputStream in) throws IOException {
+			int size = in.readInt();
+			String[] keys = new String[size];
+			int[] start = new int[size + 1];
+			TIntArrayList ids = new TIntArrayList();
+			for (int k = 0; k < size; k++) {
+				keys[k] = in.readUTF();
+				int cnt = in.readInt();
+				for (int i = 0; i < cnt; i++) {
+					ids.add(in.readInt());
+				}
+				start[k + 1] = ids.size();
+			}
+			return new KeysTable(keys, start, ids.toArray());
+		}
+	}
+
+	/**
+	 * Entries of address name index: type, file pointer, file pointer of city for streets and location of object.
+	 * Texts of entries contain normalized keys and names separated by new line.
+	 */
+	static class AddressNames {
+		final int indexNameOffset;
+		final byte[] types;
+		final int[] offsets;
+		final int[] containers;
+		final int[] xy16;
+		final byte[] flags;
+		final String[] texts;
+		final KeysTable keys;
+
+		private long[] trigrams;
+		private int[] trigramStart;
+		private int[] trigramIds;
+
+		AddressNames(int indexNameOffset, byte[] types, int[] offsets, int[] containers, int[] xy16, byte[] flags,
+		             String[] texts, KeysTable keys) {
+			this.indexNameOffset = indexNameOffset;
+			this.types = types;
+			this.offsets = offsets;
+			this.containers = containers;
+			this.xy16 = xy16;
+			this.flags = flags;
+			this.texts = texts;
+			this.keys = keys;
+			buildTrigrams();
+		}
+
+		public int size() {
+			return offsets.length;
+		}
+
+		private void buildTrigrams() {
+			TLongObjectHashMap<TIntArrayList> grams = new TLongObjectHashMap<>();
+			for (int id = 0; id < texts.length; id++) {
+				String text = texts[id];
+				for (int i = 0; i + TRIGRAM <= text.length(); i++) {
+					if (text.charAt(i) == TEXT_SEPARATOR || text.charAt(i + 1) == TEXT_SEPARATOR
+							|| text.charAt(i + 2) == TEXT_SEPARATOR) {
+						continue;
+					}
+					long g = trigram(text, i);
+					TIntArrayList l = grams.get(g);
+					if (l == null) {
+						l = new TIntArrayList(2);
+						grams.put(g, l);
+					}
+					if (l.isEmpty() || l.get(l.size() - 1) != id) {
+						l.add(id);
+					}
+				}
+			}
+			trigrams = grams.keys();
+			Arrays.sort(trigrams);
+			trigramStart = new int[trigrams.length + 1];
+			TIntArrayList ids = new TIntArrayList();
+			for (int i = 0; i < trigrams.length; i++) {
+				ids.addAll(grams.get(trigrams[i]));
+				trigramStart[i + 1] = ids.size();
+			}
+			trigramIds = ids.toArray();
+		}
+
+		private void collectByTrigrams(String query, StringMatcherMode mode, TIntArrayList res) {
+			// entries of the rarest trigram checked by text
+			int best = -1;
+			for (int i = 0; i + TRIGRAM <= query.length(); i++) {
+				int g = Arrays.binarySearch(trigrams, trigram(query, i));
+				if (g < 0) {
+					return;
+				}
+				if (best == -1 || trigramStart[g + 1] - trigramStart[g] < trigramStart[best + 1] - trigramStart[best]) {
+					best = g;
+				}
+			}
+			for (int i = trigramStart[best]; i < trigramStart[best + 1]; i++) {
+				int id = trigramIds[i];
+				if (matchesText(texts[id], query, mode)) {
+					res.add(id);
+				}
+			}
+		}
+
+		/**
+		 * Returns entries of objects which names could match query, like walking of name table it prefers
+		 * names starting with query and falls back to the longest key which query starts with.
+		 * Returns null if query can't be resolved by index.
+		 */
+		TIntArrayList getCandidates(String query, StringMatcherMode mode) {
+			String q = normalize(query).trim();
+			if (q.length() == 0) {
+				return null;
+			}
+			TIntArrayList res = new TIntArrayList();
+			if (q.length() >= TRIGRAM) {
+				collectByTrigrams(q, mode, res);
+			} else if (mode == StringMatcherMode.CHECK_CONTAINS) {
+				return null;
+			} else {
+				keys.collectStartingWith(q, res);
+			}
+			if (res.isEmpty()) {
+				keys.collectLongestPrefix(q, q.length() - 1, res);
+			}
+			return res;
+		}
+
+		/**
+		 * Fills references to objects like {@link BinaryMapAddressReaderAdapter} does for atoms of name table
+		 */
+		boolean collectRefs(SearchRequest<?> req, String postcode, TIntArrayList[] refs, TIntArrayList[] refsContainer) {
+			TIntArrayList candidates = getCandidates(req.nameQuery, req.matcherMode);
+			if (candidates == null) {
+				return false;
+			}
+			if (postcode != null && !postcode.equals(req.nameQuery)) {
+				TIntArrayList pc = getCandidates(postcode, req.matcherMode);
+				if (pc != null) {
+					candidates.addAll(pc);
+				}
+			}
+			TIntHashSet added = new TIntHashSet();
+			for (int i = 0; i < candidates.size(); i++) {
+				int id = candidates.get(i);
+				if (!added.add(id) || types[id] >= refs.length) {
+					continue;
+				}
+				if ((flags[id] & XY_DEFINED) != 0 && req.isBboxSpecified()) {
+					int x16 = (xy16[id] >>> 16) << 15;
+					int y16 = (xy16[id] & ((1 << 16) - 1)) << 15;
+					if (!req.contains(x16, y16, x16, y16)) {
+						continue;
+					}
+				}
+				refs[types[id]].add(offsets[id]);
+				if (containers[id] != 0) {
+					refsContainer[types[id]].add(containers[id]);
+				}
+			}
+			return true;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(indexNameOffset);
+			out.writeInt(offsets.length);
+			for (int i = 0; i < offsets.length; i++) {
+				out.writeByte(types[i]);
+				out.writeInt(offsets[i]);
+				out.writeInt(containers[i]);
+				out.writeInt(xy16[i]);
+				out.writeByte(flags[i]);
+				out.writeUTF(texts[i]);
+			}
+			keys.write(out);
+		}
+
+		static AddressNames read(DataInputStream in) throws IOException {
+			int indexNameOffset = in.readInt();
+			int size = in.readInt();
+			byte[] types = new byte[size];
+			int[] offsets = new int[size];
+			int[] containers = new int[size];
+			int[] xy16 = new int[size];
+			byte[] flags = new byte[size];
+			String[] texts = new String[size];
+			for (int i = 0; i < size; i++) {
+				types[i] = in.readByte();
+				offsets[i] = in.readInt();
+				containers[i] = in.readInt();
+				xy16[i] = in.readInt();
+				flags[i] = in.readByte();
+				texts[i] = in.readUTF();
+			}
+			return new AddressNames(indexNameOffset, types, offsets, containers, xy16, flags, texts, KeysTable.read(in));
+		}
+	}
+
+	static class AddressNamesBuilder {
+		private final int indexNameOffset;
+		private final TLongObjectHashMap<Integer> entries = new TLongObjectHashMap<>();
+		private final TIntArrayList types = new TIntArrayList();
+		private final TIntArrayList offsets = new TIntArrayList();
+		private final TIntArrayList containers = new TIntArrayList();
+		private final TIntArrayList xy16 = new TIntArrayList();
+		private final List<Boolean> xyDefined = new ArrayList<>();
+		private final List<List<String>> texts = new ArrayList<>();
+		private final Map<String, TIntArrayList> keys = new TreeMap<>();
+
+		AddressNamesBuilder(int indexNameOffset) {
+			this.indexNameOffset = indexNameOffset;
+		}
+
+		void addAtom(String key, int type, int offset, int container, int xy, boolean xyDefined, String name, String nameEn) {
+			long entryKey = (((long) type) << 32) | (offset & 0xffffffffL);
+			Integer id = entries.get(entryKey);
+			if (id == null) {
+				id = offsets.size();
+				entries.put(entryKey, id);
+				types.add(type);
+				offsets.add(offset);
+				containers.add(container);
+				xy16.add(xy);
+				this.xyDefined.add(xyDefined);
+				texts.add(new ArrayList<String>(3));
+			}
+			String nkey = normalize(key).trim();
+			if (nkey.length() > 0) {
+				TIntArrayList keyIds = keys.get(nkey);
+				if (keyIds == null) {
+					keyIds = new TIntArrayList();
+					keys.put(nkey, keyIds);
+				}
+				if (keyIds.isEmpty() || keyIds.get(keyIds.size() - 1) != id) {
+					keyIds.add(id);
+				}
+				addText(id, nkey);
+			}
+			if (!Algorithms.isEmpty(name)) {
+				addText(id, normalize(name));
+			}
+			if (!Algorithms.isEmpty(nameEn)) {
+				addText(id, normalize(nameEn));
+			}
+		}
+
+		private void addText(int id, String text) {
+			List<String> l = texts.get(id);
+			if (!l.contains(text)) {
+				l.add(text);
+			}
+		}
+
+		AddressNames build() {
+			int size = offsets.size();
+			byte[] t = new byte[size];
+			byte[] f = new byte[size];
+			String[] txt = new String[size];
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++) {
+				t[i] = (byte) types.get(i);
+				f[i] = xyDefined.get(i) ? XY_DEFINED : 0;
+				sb.setLength(0);
+				for (String s : texts.get(i)) {
+					if (sb.length() > 0) {
+						sb.append(TEXT_SEPARATOR);
+					}
+					sb.append(s);
+				}
+				txt[i] = sb.toString();
+			}
+			return new AddressNames(indexNameOffset, t, offsets.toArray(), containers.toArray(), xy16.toArray(), f,
+					txt, new KeysTable(keys));
+		}
+	}
+
+	/**
+	 * Atoms of poi name index: shift to poi box data and its tile location for every normalized key.
+	 */
+	static class PoiNames {
+		final int filePointer;
+		final int[] shifts;
+		final int[] x31;
+		final int[] y31;
+		final KeysTable keys;
+
+		PoiNames(int filePointer, int[] shifts, int[] x31, int[] y31, KeysTable keys) {
+			this.filePointer = filePointer;
+			this.shifts = shifts;
+			this.x31 = x31;
+			this.y31 = y31;
+			this.keys = keys;
+		}
+
+		/**
+		 * Returns shifts of poi boxes with distance to request location, the same as walking of poi name table,
+		 * or null if query can't be resolved by index.
+		 */
+		TIntLongHashMap getOffsets(String query, SearchRequest<?> req) {
+			TIntLongHashMap offsets = null;
+			for (String word : Algorithms.splitByWordsLowercase(query)) {
+				String w = normalize(word).trim();
+				if (w.length() == 0) {
+					continue;
+				}
+				TIntArrayList atoms = new TIntArrayList();
+				if (keys.collectStartingWith(w, atoms) == 0) {
+					keys.collectLongestPrefix(w, w.length() - 1, atoms);
+				}
+				TIntLongHashMap wordOffsets = new TIntLongHashMap();
+				for (int i = 0; i < atoms.size(); i++) {
+					int a = atoms.get(i);
+					if (req.contains(x31[a], y31[a], x31[a], y31[a])) {
+						long d = Math.abs(req.x - x31[a]) + Math.abs(req.y - y31[a]);
+						wordOffsets.put(shifts[a], d);
+					}
+				}
+				if (offsets == null) {
+					offsets = wordOffsets;
+				} else {
+					for (int key : offsets.keys()) {
+						if (!wordOffsets.containsKey(key)) {
+							offsets.remove(key);
+						}
+					}
+				}
+			}
+			return offsets;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(filePointer);
+			out.writeInt(shifts.length);
+			for (int i = 0; i < shifts.length; i++) {
+				out.writeInt(shifts[i]);
+				out.writeInt(x31[i]);
+				out.writeInt(y31[i]);
+			}
+			keys.write(out);
+		}
+
+		static PoiNames read(DataInputStream in) throws IOException {
+			int filePointer = in.readInt();
+			int size = in.readInt();
+			int[] shifts = new int[size];
+			int[] x31 = new int[size];
+			int[] y31 = new int[size];
+			for (int i = 0; i < size; i++) {
+				shifts[i] = in.readInt();
+				x31[i] = in.readInt();
+				y31[i] = in.readInt();
+			}
+			return new PoiNames(filePointer, shifts, x31, y31, KeysTable.read(in));
+		}
+	}
+
+	static class PoiNamesBuilder {
+		private final int filePointer;
+		private final TIntArrayList shifts = new TIntArrayList();
+		private final TIntArrayList x31 = new TIntArrayList();
+		private final TIntArrayList y31 = new TIntArrayList();
+		private final Map<String, TIntArrayList> keys = new TreeMap<>();
+
+		PoiNamesBuilder(int filePointer) {
+			this.filePointer = filePointer;
+		}
+
+		void addAtom(String key, int shift, int x31, int y31) {
+			String nkey = normalize(key).trim();
+			TIntArrayList keyAtoms = keys.get(nkey);
+			if (keyAtoms == null) {
+				keyAtoms = new TIntArrayList();
+				keys.put(nkey, keyAtoms);
+			}
+			keyAtoms.add(shifts.size());
+			shifts.add(shift);
+			this.x31.add(x31);
+			this.y31.add(y31);
+		}
+
+		PoiNames build() {
+			return new PoiNames(filePointer, shifts.toArray(), x31.toArray(), y31.toArray(), new KeysTable(keys));
+		}
+	}
+
+	public void writeToFile(File f) throws IOException {
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(VERSION);
+			out.writeUTF(fileName);
+			out.writeLong(fileSize);
+			out.writeLong(dateCreated);
+			out.writeBoolean(japanese);
+			out.writeInt(addressNames.size());
+			for (AddressNames names : addressNames) {
+				names.write(out);
+			}
+			out.writeInt(poiNames.size());
+			for (PoiNames names : poiNames) {
+				names.write(out);
+			}
+		} finally {
+			out.close();
+		}
+		if (f.exists()) {
+			f.delete();
+		}
+		if (!tmp.renameTo(f)) {
+			tmp.delete();
+			throw new IOException("Can't write name index " + f.getName());
+		}
+	}
+
+	/**
+	 * Returns null if the file was written by another version
+	 */
+	public static NameSearchIndex readFromFile(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			NameSearchIndex index = new NameSearchIndex(in.readUTF(), in.readLong(), in.readLong(), in.readBoolean());
+			int addressSize = in.readInt();
+			for (int i = 0; i < addressSize; i++) {
+				index.addressNames.add(AddressNames.read(in));
+			}
+			int poiSize = in.readInt();
+			for (int i = 0; i < poiSize; i++) {
+				index.poiNames.add(PoiNames.read(in));
+			}
+			return index;
+		} finally {
+			in.close();
+		}
+	}
+}
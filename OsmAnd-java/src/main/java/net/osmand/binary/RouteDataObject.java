@@ -6,6 +6,7 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 import net.osmand.Location;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypesCombination;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
 import net.osmand.data.LatLon;
 import net.osmand.util.Algorithms;
@@ -35,7 +36,8 @@ public class RouteDataObject {
 	public int[] nameIds;
 	// mixed array [0, height, cumulative_distance height, cumulative_distance, height, ...] - length is length(points)*2
 	public float[] heightDistanceArray = null;
-	public float heightByCurrentLocation = Float.NaN;
+	// interned combination of types, valid only while it refers to the current types array
+	private RouteTypesCombination typesCombination;
 	private static final Log LOG = PlatformUtil.getLog(RouteDataObject.class);
 
 	public RouteDataObject(RouteRegion region) {
@@ -58,6 +60,7 @@ public class RouteDataObject {
 		this.pointsX = copy.pointsX;
 		this.pointsY = copy.pointsY;
 		this.types = copy.types;
+		this.typesCombination = copy.typesCombination;
 		this.names = copy.names;
 		this.nameIds = copy.nameIds;
 		this.restrictions = copy.restrictions;
@@ -164,11 +167,31 @@ public class RouteDataObject {
 		return false;
 	}
 
-	public float[] calculateHeightArray() {
-		return calculateHeightArray(null);
+	/**
+	 * Height of the road point nearest to location (state is not kept in the object, it could be shared
+	 * between routing contexts)
+	 *
+	 * @return height or NaN if heights of the road are unknown
+	 */
+	public float calculateHeightByLocation(LatLon location) {
+		float[] heightArray = calculateHeightArray();
+		float height = Float.NaN;
+		double minDistance = Double.MAX_VALUE;
+		for (int k = 0; 2 * k + 1 < heightArray.length; k++) {
+			float h = heightArray[2 * k + 1];
+			if (h != HEIGHT_UNDEFINED) {
+				double distance = MapUtils.getDistance(location, MapUtils.get31LatitudeY(getPoint31YTile(k)),
+						MapUtils.get31LongitudeX(getPoint31XTile(k)));
+				if (distance < minDistance) {
+					minDistance = distance;
+					height = h;
+				}
+			}
+		}
+		return height;
 	}
 
-	public float[] calculateHeightArray(LatLon currentLocation) {
+	public float[] calculateHeightArray() {
 		if (heightDistanceArray != null) {
 			return heightDistanceArray;
 		}
@@ -179,12 +202,11 @@ public class RouteDataObject {
 			return heightDistanceArray;
 		}
 
-		heightDistanceArray = new float[2 * getPointsLength()];
+		// array is assigned to the field when it's filled (object could be shared between routing contexts)
+		float[] heightDistanceArray = new float[2 * getPointsLength()];
 		double plon = 0;
 		double plat = 0;
 		float prevHeight = startHeight;
-		heightByCurrentLocation = Float.NaN;
-		double prevDistance = 0;
 		for (int k = 0; k < getPointsLength(); k++) {
 			double lon = MapUtils.get31LongitudeX(getPoint31XTile(k));
 			double lat = MapUtils.get31LatitudeY(getPoint31YTile(k));
@@ -207,14 +229,6 @@ public class RouteDataObject {
 				heightDistanceArray[2 * k] = (float) dd;
 				heightDistanceArray[2 * k + 1] = height;
 
-				if (currentLocation != null) {
-					double distance = MapUtils.getDistance(currentLocation, lat, lon);
-					if (height != HEIGHT_UNDEFINED && distance < prevDistance) {
-						prevDistance = distance;
-						heightByCurrentLocation = height;
-					}
-				}
-
 				if (height != HEIGHT_UNDEFINED) {
 					// interpolate undefined
 					double totalDistance = dd;
@@ -238,10 +252,8 @@ public class RouteDataObject {
 			}
 			plat = lat;
 			plon = lon;
-			if (currentLocation != null) {
-				prevDistance = MapUtils.getDistance(currentLocation, plat, plon);
-			}
 		}
+		this.heightDistanceArray = heightDistanceArray;
 		return heightDistanceArray;
 	}
 
@@ -533,7 +545,29 @@ public class RouteDataObject {
 		return types;
 	}
 
+	/**
+	 * Replaces types with the shared array of the region, so types must not be modified in place afterwards
+	 */
+	public void internTypes() {
+		if (region != null && types != null) {
+			typesCombination = region.internTypesCombination(types);
+			types = typesCombination.types;
+		}
+	}
+
+	/**
+	 * @return dense id of types combination within region or -1 if types are not interned
+	 */
+	public int getTypesCombinationId() {
+		RouteTypesCombination c = typesCombination;
+		if (c != null && c.types == types) {
+			return c.id;
+		}
+		return -1;
+	}
+
 	public void processConditionalTags(long conditionalTime) {
+		boolean interned = getTypesCombinationId() >= 0;
 		int sz = types.length;
 		for (int i = 0; i < sz; i++) {
 			RouteTypeRule r = region.quickGetEncodingRule(types[i]);
@@ -553,11 +587,17 @@ public class RouteDataObject {
 						int[] ntypes = new int[types.length + 1];
 						System.arraycopy(types, 0, ntypes, 0, types.length);
 						types = ntypes;
+					} else if (interned && getTypesCombinationId() >= 0) {
+						// interned array is shared with other objects
+						types = types.clone();
 					}
 					types[ks] = vl;
 				}
 			}
 		}
+		if (interned && getTypesCombinationId() < 0) {
+			internTypes();
+		}
 
 		if (pointTypes != null) {
 			for (int i = 0; i < pointTypes.length; i++) {
@@ -3,7 +3,6 @@ package net.osmand.map;
 import net.osmand.PlatformUtil;
 import net.osmand.osm.io.NetworkUtils;
 import net.osmand.util.Algorithms;
-import net.osmand.util.LIFOBlockingDeque;
 
 import org.apache.commons.logging.Log;
 
@@ -15,17 +14,30 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
+/**
+ * Downloads tiles by pool of workers, number of workers is the limit of requests in flight.
+ * Requests wait in priority queue: with viewport set (see {@link #setViewport(int, double, double)}) tiles
+ * closer to the viewport zoom and center go first, otherwise (and between equal tiles) the latest request goes first.
+ * Requests of the same file are not duplicated. Every host has own limit of connections and own error counter,
+ * so failing host doesn't block other hosts. Connections are kept alive and reused by {@link HttpURLConnection}
+ * for the next request of the same host.
+ */
 public class MapTileDownloader {
 
 	private static final Log log = PlatformUtil.getLog(MapTileDownloader.class);
@@ -35,7 +47,10 @@ public class MapTileDownloader {
 	public static int TILE_DOWNLOAD_SECONDS_TO_WORK = 25;
 	public static final long TIMEOUT_AFTER_EXCEEDING_LIMIT_ERRORS = 15000;
 	public static final int TILE_DOWNLOAD_MAX_ERRORS_PER_TIMEOUT = 50;
+	public static final int TILE_DOWNLOAD_CONNECTIONS_PER_HOST = 4;
 	private static final int CONNECTION_TIMEOUT = 30000;
+	// priority penalty of one zoom level difference from viewport in tiles of distance
+	private static final double ZOOM_PRIORITY_TILES = 16;
 
 	private static MapTileDownloader downloader = null;
 
@@ -47,8 +62,19 @@ public class MapTileDownloader {
 	private final Map<File, DownloadRequest> pendingToDownload = new ConcurrentHashMap<>();
 	private final Map<File, DownloadRequest> currentlyDownloaded = new ConcurrentHashMap<>();
 
-	private int currentErrors = 0;
-	private long timeForErrorCounter = 0;
+	// guarded by queue
+	private final PriorityQueue<QueuedRequest> queue = new PriorityQueue<>();
+	private final Map<String, HostState> hosts = new HashMap<>();
+	private int maxInFlight;
+	private int maxConnectionsPerHost = TILE_DOWNLOAD_CONNECTIONS_PER_HOST;
+	private int maxErrorsPerTimeout = TILE_DOWNLOAD_MAX_ERRORS_PER_TIMEOUT;
+	private int activeWorkers;
+	private long requestsCounter;
+	private boolean viewportSet;
+	private int viewportZoom;
+	private double viewportX;
+	private double viewportY;
+
 	private boolean noHttps;
 
 	public static MapTileDownloader getInstance(String userAgent) {
@@ -120,14 +146,81 @@ public class MapTileDownloader {
 
 
 	public MapTileDownloader(int numberOfThreads) {
+		maxInFlight = numberOfThreads;
 		threadPoolExecutor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads,
-				TILE_DOWNLOAD_SECONDS_TO_WORK, TimeUnit.SECONDS, new LIFOBlockingDeque<Runnable>());
+				TILE_DOWNLOAD_SECONDS_TO_WORK, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
 	}
 	
 	public void setNoHttps(boolean noHttps) {
 		this.noHttps = noHttps;
 	}
 
+	/**
+	 * Sets limit of requests downloaded at the same time
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		synchronized (queue) {
+			this.maxInFlight = Math.max(1, maxInFlight);
+			threadPoolExecutor.setMaximumPoolSize(Math.max(threadPoolExecutor.getCorePoolSize(), this.maxInFlight));
+			threadPoolExecutor.setCorePoolSize(this.maxInFlight);
+			threadPoolExecutor.setMaximumPoolSize(this.maxInFlight);
+			startWorkers();
+		}
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		synchronized (queue) {
+			this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+			startWorkers();
+		}
+	}
+
+	public void setMaxErrorsPerTimeout(int maxErrorsPerTimeout) {
+		this.maxErrorsPerTimeout = maxErrorsPerTimeout;
+	}
+
+	/**
+	 * Requests are prioritized by distance (in tiles of the zoom) to the center of the viewport,
+	 * every zoom level of difference counts as {@link #ZOOM_PRIORITY_TILES} tiles
+	 */
+	public void setViewport(int zoom, double xTile, double yTile) {
+		synchronized (queue) {
+			viewportSet = true;
+			viewportZoom = zoom;
+			viewportX = xTile;
+			viewportY = yTile;
+			updatePriorities();
+		}
+	}
+
+	public void clearViewport() {
+		synchronized (queue) {
+			viewportSet = false;
+			updatePriorities();
+		}
+	}
+
+	private void updatePriorities() {
+		List<QueuedRequest> requests = new ArrayList<>(queue);
+		queue.clear();
+		for (QueuedRequest q : requests) {
+			q.priority = getPriority(q.request);
+			queue.add(q);
+		}
+	}
+
+	private double getPriority(DownloadRequest request) {
+		if (!viewportSet) {
+			return 0;
+		}
+		// tile center at viewport zoom
+		double scale = Math.pow(2, viewportZoom - request.zoom);
+		double dx = (request.xTile + 0.5) * scale - viewportX;
+		double dy = (request.yTile + 0.5) * scale - viewportY;
+		return Math.sqrt(dx * dx + dy * dy) + Math.abs(viewportZoom - request.zoom) * ZOOM_PRIORITY_TILES;
+	}
+
 	public void addDownloaderCallback(IMapDownloaderCallback callback) {
 		LinkedList<WeakReference<IMapDownloaderCallback>> ncall = new LinkedList<>(callbacks);
 		ncall.add(new WeakReference<>(callback));
@@ -174,103 +267,273 @@ public class MapTileDownloader {
 	}
 
 	public int getRemainingWorkers() {
-		return (int) (threadPoolExecutor.getTaskCount());
+		synchronized (queue) {
+			return queue.size() + currentlyDownloaded.size();
+		}
 	}
 
 	public void refuseAllPreviousRequests() {
-		// That's very strange because exception in impl of queue (possibly wrong impl)
-//		threadPoolExecutor.getQueue().clear();
-		while (!threadPoolExecutor.getQueue().isEmpty()) {
-			threadPoolExecutor.getQueue().poll();
+		synchronized (queue) {
+			queue.clear();
+			pendingToDownload.clear();
 		}
-		pendingToDownload.clear();
 	}
 
 	public void requestToDownload(DownloadRequest request) {
-		long now = System.currentTimeMillis();
-		if ((int) (now - timeForErrorCounter) > TIMEOUT_AFTER_EXCEEDING_LIMIT_ERRORS) {
-			timeForErrorCounter = now;
-			currentErrors = 0;
-		} else if (shouldSkipRequests()) {
-			return;
-		}
-		if (request.url == null) {
+		if (request.url == null || request.fileToSave == null) {
 			return;
 		}
 		if (noHttps) {
 			request.url = request.url.replace("https://", "http://");
 		}
-		if (!isFileCurrentlyDownloaded(request.fileToSave)
-				&& !isFilePendingToDownload(request.fileToSave)) {
+		String host = getHost(request.url);
+		synchronized (queue) {
+			if (getHostState(host).shouldSkipRequests(System.currentTimeMillis(), maxErrorsPerTimeout)) {
+				return;
+			}
+			if (isFileCurrentlyDownloaded(request.fileToSave)) {
+				return;
+			}
+			DownloadRequest pending = pendingToDownload.get(request.fileToSave);
+			if (pending != null) {
+				// the latest request of the file replaces pending one
+				Iterator<QueuedRequest> it = queue.iterator();
+				while (it.hasNext()) {
+					if (it.next().request == pending) {
+						it.remove();
+						break;
+					}
+				}
+			}
 			pendingToDownload.put(request.fileToSave, request);
-			threadPoolExecutor.execute(new DownloadMapWorker(request));
+			queue.add(new QueuedRequest(request, host, getPriority(request), requestsCounter++));
+			startWorkers();
 		}
 	}
 
+	/**
+	 * @return true if all hosts which were requested are skipped after too many errors
+	 */
 	public boolean shouldSkipRequests() {
-		return currentErrors > TILE_DOWNLOAD_MAX_ERRORS_PER_TIMEOUT;
+		synchronized (queue) {
+			long now = System.currentTimeMillis();
+			for (HostState h : hosts.values()) {
+				if (!h.shouldSkipRequests(now, maxErrorsPerTimeout)) {
+					return false;
+				}
+			}
+			return !hosts.isEmpty();
+		}
 	}
 
-	private class DownloadMapWorker implements Runnable, Comparable<DownloadMapWorker> {
+	public boolean shouldSkipRequests(String url) {
+		synchronized (queue) {
+			return getHostState(getHost(url)).shouldSkipRequests(System.currentTimeMillis(), maxErrorsPerTimeout);
+		}
+	}
 
-		private final DownloadRequest request;
+	private static String getHost(String url) {
+		try {
+			URL u = new URL(url);
+			return u.getHost() + ":" + u.getPort();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	private HostState getHostState(String host) {
+		HostState h = hosts.get(host);
+		if (h == null) {
+			h = new HostState();
+			hosts.put(host, h);
+		}
+		return h;
+	}
 
-		private DownloadMapWorker(DownloadRequest request) {
+	// called under lock
+	private void startWorkers() {
+		while (activeWorkers < maxInFlight && activeWorkers < queue.size()) {
+			activeWorkers++;
+			threadPoolExecutor.execute(new DownloadMapWorker());
+		}
+	}
+
+	/**
+	 * @return the first request of host which is not busy or null
+	 */
+	private QueuedRequest pollRequest() {
+		synchronized (queue) {
+			long now = System.currentTimeMillis();
+			List<QueuedRequest> busy = null;
+			QueuedRequest res = null;
+			while (!queue.isEmpty()) {
+				QueuedRequest q = queue.poll();
+				HostState h = getHostState(q.host);
+				if (h.shouldSkipRequests(now, maxErrorsPerTimeout)) {
+					pendingToDownload.remove(q.request.fileToSave);
+				} else if (h.inFlight >= maxConnectionsPerHost) {
+					if (busy == null) {
+						busy = new ArrayList<>();
+					}
+					busy.add(q);
+				} else {
+					h.inFlight++;
+					res = q;
+					break;
+				}
+			}
+			if (busy != null) {
+				queue.addAll(busy);
+			}
+			if (res == null) {
+				activeWorkers--;
+			}
+			return res;
+		}
+	}
+
+	private void requestFinished(QueuedRequest q, boolean error) {
+		synchronized (queue) {
+			HostState h = getHostState(q.host);
+			h.inFlight--;
+			if (error) {
+				h.error(System.currentTimeMillis());
+			}
+		}
+	}
+
+	private static class HostState {
+		int inFlight;
+		int errors;
+		long timeForErrorCounter;
+
+		void error(long now) {
+			if (now - timeForErrorCounter > TIMEOUT_AFTER_EXCEEDING_LIMIT_ERRORS) {
+				errors = 0;
+			}
+			errors++;
+			timeForErrorCounter = now;
+		}
+
+		boolean shouldSkipRequests(long now, int maxErrors) {
+			if (now - timeForErrorCounter > TIMEOUT_AFTER_EXCEEDING_LIMIT_ERRORS) {
+				errors = 0;
+			}
+			return errors > maxErrors;
+		}
+	}
+
+	private static class QueuedRequest implements Comparable<QueuedRequest> {
+		final DownloadRequest request;
+		final String host;
+		final long order;
+		double priority;
+
+		QueuedRequest(DownloadRequest request, String host, double priority, long order) {
 			this.request = request;
+			this.host = host;
+			this.priority = priority;
+			this.order = order;
 		}
 
 		@Override
-		public void run() {
-			if (request != null && request.fileToSave != null && request.url != null) {
-				pendingToDownload.remove(request.fileToSave);
-				if (currentlyDownloaded.containsKey(request.fileToSave)) {
-					return;
-				}
+		public int compareTo(QueuedRequest o) {
+			int c = Double.compare(priority, o.priority);
+			// the latest request first
+			return c != 0 ? c : Long.compare(o.order, order);
+		}
+	}
 
-				currentlyDownloaded.put(request.fileToSave, request);
-				if (log.isDebugEnabled()) {
-					log.debug("Start downloading tile : " + request.url); 
-				}
-				long time = System.currentTimeMillis();
-				request.setError(false);
-				HttpURLConnection connection = null;
+	// skipped request is not sent and doesn't count as error of the host
+	private enum DownloadResult {
+		DOWNLOADED,
+		FAILED,
+		SKIPPED
+	}
+
+	private class DownloadMapWorker implements Runnable {
+
+		@Override
+		public void run() {
+			QueuedRequest q;
+			while ((q = pollRequest()) != null) {
+				DownloadRequest request = q.request;
+				DownloadResult result = DownloadResult.FAILED;
 				try {
-					connection = NetworkUtils.getHttpURLConnection(request.url);
-					connection.setRequestProperty("User-Agent", Algorithms.isEmpty(request.userAgent) ? USER_AGENT : request.userAgent); 
-					if (request.referer != null)
-						connection.setRequestProperty("Referer", request.referer); 
-					connection.setConnectTimeout(CONNECTION_TIMEOUT);
-					connection.setReadTimeout(CONNECTION_TIMEOUT);
-					BufferedInputStream inputStream = new BufferedInputStream(connection.getInputStream(), 8 * 1024);
-					request.saveTile(inputStream);
-					if (log.isDebugEnabled()) {
-						log.debug("Downloading tile : " + request.url + " successfull " + (System.currentTimeMillis() - time) + " ms");  //$NON-NLS-2$ //$NON-NLS-3$
-					}
-				} catch (UnknownHostException e) {
-					currentErrors++;
-					timeForErrorCounter = System.currentTimeMillis();
-					request.setError(true);
-					log.error("UnknownHostException, cannot download tile " + request.url + " " + e.getMessage());   //$NON-NLS-2$
-				} catch (Exception e) {
-					currentErrors++;
-					timeForErrorCounter = System.currentTimeMillis();
-					request.setError(true);
-					log.warn("Cannot download tile : " + request.url, e); 
+					result = download(request);
 				} finally {
-					currentlyDownloaded.remove(request.fileToSave);
-					if (connection != null) {
-						connection.disconnect();
-					}
+					requestFinished(q, result == DownloadResult.FAILED);
 				}
-				if (!request.error) {
+				if (result == DownloadResult.DOWNLOADED) {
 					fireLoadCallback(request);
 				}
 			}
 		}
 
-		@Override
-		public int compareTo(DownloadMapWorker o) {
-			return 0;
+		private DownloadResult download(DownloadRequest request) {
+			if (request.fileToSave == null || request.url == null) {
+				return DownloadResult.SKIPPED;
+			}
+			pendingToDownload.remove(request.fileToSave);
+			if (currentlyDownloaded.containsKey(request.fileToSave)) {
+				return DownloadResult.SKIPPED;
+			}
+			currentlyDownloaded.put(request.fileToSave, request);
+			if (log.isDebugEnabled()) {
+				log.debug("Start downloading tile : " + request.url);
+			}
+			long time = System.currentTimeMillis();
+			request.setError(false);
+			HttpURLConnection connection = null;
+			try {
+				connection = NetworkUtils.getHttpURLConnection(request.url);
+				connection.setRequestProperty("User-Agent", Algorithms.isEmpty(request.userAgent) ? USER_AGENT : request.userAgent);
+				if (request.referer != null)
+					connection.setRequestProperty("Referer", request.referer);
+				connection.setConnectTimeout(CONNECTION_TIMEOUT);
+				connection.setReadTimeout(CONNECTION_TIMEOUT);
+				// stream is read to the end and closed (without disconnect), so connection is kept alive for next tile
+				BufferedInputStream inputStream = new BufferedInputStream(connection.getInputStream(), 8 * 1024);
+				request.saveTile(inputStream);
+				connection = null;
+				if (log.isDebugEnabled()) {
+					log.debug("Downloading tile : " + request.url + " successfull " + (System.currentTimeMillis() - time) + " ms");  //$NON-NLS-2$ //$NON-NLS-3$
+				}
+			} catch (UnknownHostException e) {
+				request.setError(true);
+				log.error("UnknownHostException, cannot download tile " + request.url + " " + e.getMessage());   //$NON-NLS-2$
+			} catch (Exception e) {
+				request.setError(true);
+				log.warn("Cannot download tile : " + request.url, e);
+				closeErrorStream(connection);
+				connection = null;
+			} finally {
+				currentlyDownloaded.remove(request.fileToSave);
+				if (connection != null) {
+					connection.disconnect();
+				}
+			}
+			return request.error ? DownloadResult.FAILED : DownloadResult.DOWNLOADED;
+		}
+
+		private void closeErrorStream(HttpURLConnection connection) {
+			// reading error body lets to reuse connection
+			if (connection != null) {
+				InputStream es = connection.getErrorStream();
+				if (es != null) {
+					try {
+						byte[] buf = new byte[1024];
+						while (es.read(buf) != -1) {
+						}
+					} catch (IOException e) {
+						connection.disconnect();
+					} finally {
+						Algorithms.closeStream(es);
+					}
+				} else {
+					connection.disconnect();
+				}
+			}
 		}
 	}
 
@@ -0,0 +1,304 @@
+package net.osmand.map;
+
+import net.osmand.PlatformUtil;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Access to OsmAnd sqlitedb tile databases through JDBC (any sqlite driver), so tile databases
+ * could be seeded, read and exported by java tools outside of application.
+ * Tiles are written by batches in transactions, rectangle of tiles is read by one query
+ * and database could be exported to MBTiles format.
+ */
+public class SQLiteTileDatabase {
+
+	private static final Log LOG = PlatformUtil.getLog(SQLiteTileDatabase.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private static final String BIG_PLANET_TILE_NUMBERING = "BigPlanet";
+	private static final int BIG_PLANET_MAX_ZOOM = 17;
+
+	private final Connection conn;
+	private boolean inversiveZoom = true;
+	private boolean timeSupported;
+
+	public interface TileCallback {
+
+		/**
+		 * @param time - tile modification time or 0 if time is not supported
+		 */
+		void tileLoaded(int x, int y, int zoom, byte[] data, long time) throws IOException;
+	}
+
+	public SQLiteTileDatabase(Connection conn) throws SQLException {
+		this.conn = conn;
+		Statement st = conn.createStatement();
+		try {
+			ResultSet rs = st.executeQuery("SELECT * FROM info");
+			ResultSetMetaData md = rs.getMetaData();
+			if (rs.next()) {
+				for (int i = 1; i <= md.getColumnCount(); i++) {
+					String column = md.getColumnName(i);
+					if ("tilenumbering".equalsIgnoreCase(column)) {
+						inversiveZoom = BIG_PLANET_TILE_NUMBERING.equalsIgnoreCase(rs.getString(i));
+					} else if ("timecolumn".equalsIgnoreCase(column)) {
+						timeSupported = "yes".equalsIgnoreCase(rs.getString(i));
+					}
+				}
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+	}
+
+	/**
+	 * Creates tables of sqlitedb with simple tile numbering (same as created by application)
+	 */
+	public static SQLiteTileDatabase create(Connection conn, int minZoom, int maxZoom, String urlTemplate,
+	                                        boolean timeSupported) throws SQLException {
+		Statement st = conn.createStatement();
+		try {
+			st.execute("CREATE TABLE IF NOT EXISTS tiles (x int, y int, z int, s int, image blob, time long, PRIMARY KEY (x,y,z,s))");
+			st.execute("CREATE INDEX IF NOT EXISTS IND on tiles (x,y,z,s)");
+			st.execute("CREATE TABLE IF NOT EXISTS info(tilenumbering,minzoom,maxzoom,url,timecolumn)");
+			st.execute("DELETE FROM info");
+		} finally {
+			st.close();
+		}
+		PreparedStatement ps = conn.prepareStatement(
+				"INSERT INTO info (tilenumbering,minzoom,maxzoom,url,timecolumn) VALUES ('simple', ?, ?, ?, ?)");
+		try {
+			ps.setString(1, String.valueOf(minZoom));
+			ps.setString(2, String.valueOf(maxZoom));
+			ps.setString(3, urlTemplate);
+			ps.setString(4, timeSupported ? "yes" : "no");
+			ps.execute();
+		} finally {
+			ps.close();
+		}
+		return new SQLiteTileDatabase(conn);
+	}
+
+	public boolean isInversiveZoom() {
+		return inversiveZoom;
+	}
+
+	public boolean isTimeSupported() {
+		return timeSupported;
+	}
+
+	private int getFileZoom(int zoom) {
+		return inversiveZoom ? BIG_PLANET_MAX_ZOOM - zoom : zoom;
+	}
+
+	private int getZoom(int fileZoom) {
+		return inversiveZoom ? BIG_PLANET_MAX_ZOOM - fileZoom : fileZoom;
+	}
+
+	/**
+	 * Writer should be closed to commit last batch
+	 */
+	public TileWriter createWriter(int batchSize) throws SQLException {
+		checkBatchSize(batchSize);
+		return new TileWriter(batchSize);
+	}
+
+	/**
+	 * Reads all tiles of zoom within [left, right] x [top, bottom] (tile numbers) by one query
+	 * @return number of loaded tiles
+	 */
+	public int readTiles(int zoom, int left, int top, int right, int bottom, TileCallback callback)
+			throws SQLException, IOException {
+		String query = "SELECT x, y, image" + (timeSupported ? ", time" : "")
+				+ " FROM tiles WHERE z = ? AND x >= ? AND x <= ? AND y >= ? AND y <= ?";
+		PreparedStatement ps = conn.prepareStatement(query);
+		int count = 0;
+		try {
+			ps.setInt(1, getFileZoom(zoom));
+			ps.setInt(2, left);
+			ps.setInt(3, right);
+			ps.setInt(4, top);
+			ps.setInt(5, bottom);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				callback.tileLoaded(rs.getInt(1), rs.getInt(2), zoom, rs.getBytes(3), timeSupported ? rs.getLong(4) : 0);
+				count++;
+			}
+			rs.close();
+		} finally {
+			ps.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Streams all tiles to MBTiles database (tables are created if needed, rows are in TMS scheme)
+	 * @param format - tile format as png or jpg
+	 * @param batchSize - tiles written per transaction, at least 1
+	 * @return number of exported tiles
+	 */
+	public int exportToMBTiles(Connection mbtiles, String name, String format, int batchSize)
+			throws SQLException {
+		checkBatchSize(batchSize);
+		Statement st = mbtiles.createStatement();
+		try {
+			st.execute("CREATE TABLE IF NOT EXISTS metadata (name text, value text)");
+			st.execute("CREATE TABLE IF NOT EXISTS tiles (zoom_level integer, tile_column integer, tile_row integer, tile_data blob)");
+			st.execute("CREATE UNIQUE INDEX IF NOT EXISTS tile_index on tiles (zoom_level, tile_column, tile_row)");
+		} finally {
+			st.close();
+		}
+		boolean autoCommit = mbtiles.getAutoCommit();
+		mbtiles.setAutoCommit(false);
+		Statement read = conn.createStatement();
+		PreparedStatement write = mbtiles.prepareStatement(
+				"INSERT OR REPLACE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)");
+		int count = 0;
+		int minZoom = Integer.MAX_VALUE;
+		int maxZoom = Integer.MIN_VALUE;
+		double left = 180, right = -180, top = -90, bottom = 90;
+		try {
+			read.setFetchSize(batchSize);
+			ResultSet rs = read.executeQuery("SELECT x, y, z, image FROM tiles");
+			while (rs.next()) {
+				int x = rs.getInt(1);
+				int y = rs.getInt(2);
+				int zoom = getZoom(rs.getInt(3));
+				write.setInt(1, zoom);
+				write.setInt(2, x);
+				write.setInt(3, (1 << zoom) - 1 - y);
+				write.setBytes(4, rs.getBytes(4));
+				write.addBatch();
+				minZoom = Math.min(minZoom, zoom);
+				maxZoom = Math.max(maxZoom, zoom);
+				left = Math.min(left, MapUtils.getLongitudeFromTile(zoom, x));
+				right = Math.max(right, MapUtils.getLongitudeFromTile(zoom, x + 1));
+				top = Math.max(top, MapUtils.getLatitudeFromTile(zoom, y));
+				bottom = Math.min(bottom, MapUtils.getLatitudeFromTile(zoom, y + 1));
+				if (++count % batchSize == 0) {
+					write.executeBatch();
+					mbtiles.commit();
+					LOG.debug("Exported " + count + " tiles");
+				}
+			}
+			rs.close();
+			write.executeBatch();
+			if (count > 0) {
+				writeMetadata(mbtiles, "name", name);
+				writeMetadata(mbtiles, "type", "baselayer");
+				writeMetadata(mbtiles, "version", "1.1");
+				writeMetadata(mbtiles, "format", Algorithms.isEmpty(format) || format.charAt(0) != '.' ? format
+						: format.substring(1));
+				writeMetadata(mbtiles, "minzoom", String.valueOf(minZoom));
+				writeMetadata(mbtiles, "maxzoom", String.valueOf(maxZoom));
+				writeMetadata(mbtiles, "bounds", left + "," + bottom + "," + right + "," + top);
+			}
+			mbtiles.commit();
+		} catch (SQLException e) {
+			mbtiles.rollback();
+			throw e;
+		} finally {
+			write.close();
+			read.close();
+			mbtiles.setAutoCommit(autoCommit);
+		}
+		return count;
+	}
+
+	private static void checkBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size should be positive: " + batchSize);
+		}
+	}
+
+	private static void writeMetadata(Connection mbtiles, String name, String value) throws SQLException {
+		PreparedStatement ps = mbtiles.prepareStatement("DELETE FROM metadata WHERE name = ?");
+		try {
+			ps.setString(1, name);
+			ps.execute();
+		} finally {
+			ps.close();
+		}
+		ps = mbtiles.prepareStatement("INSERT INTO metadata (name, value) VALUES (?, ?)");
+		try {
+			ps.setString(1, name);
+			ps.setString(2, value);
+			ps.execute();
+		} finally {
+			ps.close();
+		}
+	}
+
+	public class TileWriter implements Closeable {
+
+		private final PreparedStatement statement;
+		private final boolean autoCommit;
+		private final int batchSize;
+		private int pending;
+		private int count;
+
+		private TileWriter(int batchSize) throws SQLException {
+			this.batchSize = batchSize;
+			this.autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			statement = conn.prepareStatement(timeSupported
+					? "INSERT OR REPLACE INTO tiles(x,y,z,s,image,time) VALUES(?, ?, ?, ?, ?, ?)"
+					: "INSERT OR REPLACE INTO tiles(x,y,z,s,image) VALUES(?, ?, ?, ?, ?)");
+		}
+
+		public void addTile(int x, int y, int zoom, byte[] data) throws SQLException {
+			statement.setInt(1, x);
+			statement.setInt(2, y);
+			statement.setInt(3, getFileZoom(zoom));
+			statement.setInt(4, 0);
+			statement.setBytes(5, data);
+			if (timeSupported) {
+				statement.setLong(6, System.currentTimeMillis());
+			}
+			statement.addBatch();
+			count++;
+			if (++pending >= batchSize) {
+				flush();
+			}
+		}
+
+		public void flush() throws SQLException {
+			if (pending > 0) {
+				statement.executeBatch();
+				conn.commit();
+				pending = 0;
+			}
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				try {
+					flush();
+				} finally {
+					statement.close();
+					conn.setAutoCommit(autoCommit);
+				}
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+}
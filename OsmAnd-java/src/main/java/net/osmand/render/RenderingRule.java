@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RenderingRule {
 	
@@ -22,6 +23,17 @@ public class RenderingRule {
 
 	private final RenderingRulesStorage storage;
 	private Map<String, String> attributes;
+
+	// compiled rules are valid while rules are not modified
+	private static final AtomicInteger modifications = new AtomicInteger();
+
+	static int getModifications() {
+		return modifications.get();
+	}
+
+	static void rulesModified() {
+		modifications.incrementAndGet();
+	}
 	
 	public RenderingRule(Map<String, String> attributes, boolean isGroup, RenderingRulesStorage storage){
 		this.isGroup = isGroup;
@@ -47,6 +59,7 @@ public class RenderingRule {
 	}
 
 	public void init(Map<String, String> attributes) {
+		rulesModified();
 		ArrayList<RenderingRuleProperty> props = new ArrayList<RenderingRuleProperty>(attributes.size());
 		intProperties = new int[attributes.size()];
 		floatProperties = new float[attributes.size()];
@@ -154,6 +167,7 @@ public class RenderingRule {
 	}
 	
 	public void addIfChildren(RenderingRule rr){
+		rulesModified();
 		if(ifChildren == null){
 			ifChildren = new ArrayList<RenderingRule>();
 		}
@@ -161,6 +175,7 @@ public class RenderingRule {
 	}
 	
 	public void addIfElseChildren(RenderingRule rr){
+		rulesModified();
 		if(ifElseChildren == null){
 			ifElseChildren = new ArrayList<RenderingRule>();
 		}
@@ -168,6 +183,7 @@ public class RenderingRule {
 	}
 	
 	public void addToBeginIfElseChildren(RenderingRule rr){
+		rulesModified();
 		if(ifElseChildren == null){
 			ifElseChildren = new ArrayList<RenderingRule>();
 		}
@@ -179,6 +195,7 @@ public class RenderingRule {
 	}
 
 	public void removeIfChildren(RenderingRule rule) {
+		rulesModified();
 		if (ifChildren != null) {
 			List<RenderingRule> children = new ArrayList<>(ifChildren);
 			children.remove(rule);
@@ -187,6 +204,7 @@ public class RenderingRule {
 	}
 
 	public void removeIfElseChildren(RenderingRule rule) {
+		rulesModified();
 		if (ifElseChildren != null) {
 			List<RenderingRule> children = new ArrayList<>(ifElseChildren);
 			children.remove(rule);
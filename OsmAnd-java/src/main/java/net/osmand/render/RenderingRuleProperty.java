@@ -19,6 +19,13 @@ public class RenderingRuleProperty {
 
 	public static final int TRUE_VALUE = 1;
 	public static final int FALSE_VALUE = 0;
+
+	// accept operations used by compiled rules (see RenderingRulesProgram)
+	static final int ACCEPT_EQUAL = 0;
+	static final int ACCEPT_FLOAT_EQUAL = 1;
+	static final int ACCEPT_LESS = 2;
+	static final int ACCEPT_GREATER = 3;
+	static final int ACCEPT_CUSTOM = 4;
 	
 	// Fields C++
 	protected final int type;
@@ -144,6 +151,16 @@ public class RenderingRuleProperty {
 		return ruleValue == renderingProperty;
 	}
 	
+	/**
+	 * Operation which is equivalent to accept methods, custom properties are checked by accept
+	 */
+	int getAcceptOperation() {
+		if (getClass() != RenderingRuleProperty.class) {
+			return ACCEPT_CUSTOM;
+		}
+		return isFloat() ? ACCEPT_FLOAT_EQUAL : ACCEPT_EQUAL;
+	}
+
 	@Override
 	public String toString() {
 		return "#RenderingRuleProperty " + getAttrName();
@@ -263,6 +280,11 @@ public class RenderingRuleProperty {
 				}
 				return ruleValue >= renderingProperty;
 			}
+
+			@Override
+			int getAcceptOperation() {
+				return ACCEPT_LESS;
+			}
 		};
 	}
 	
@@ -275,6 +297,11 @@ public class RenderingRuleProperty {
 				}
 				return ruleValue <= renderingProperty;
 			}
+
+			@Override
+			int getAcceptOperation() {
+				return ACCEPT_GREATER;
+			}
 		};
 	}
 	
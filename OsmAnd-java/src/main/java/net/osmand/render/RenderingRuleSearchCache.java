@@ -0,0 +1,246 @@
+package net.osmand.render;
+
+import net.osmand.binary.BinaryMapDataObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoizes results of {@link RenderingRuleSearchRequest#search(int, boolean)} for one rendering style.
+ * Results are grouped by rendering parameters (state saved by {@link RenderingRuleSearchRequest#saveState()}),
+ * inside a group the key is rules state, values which differ from saved state (tag, value, zoom, layer, ...)
+ * and additional types of the searched object, result is list of changed values.
+ * Cache is shared between requests of different renderers, all groups are dropped when rules are modified.
+ */
+public class RenderingRuleSearchCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 8192;
+	private static final int MAX_PARAMETERS = 4;
+
+	private final RenderingRulesStorage storage;
+	private final int maxEntries;
+	private final LinkedList<Results> parameters = new LinkedList<Results>();
+	private int version;
+
+	public RenderingRuleSearchCache(RenderingRulesStorage storage) {
+		this(storage, DEFAULT_MAX_ENTRIES);
+	}
+
+	public RenderingRuleSearchCache(RenderingRulesStorage storage, int maxEntries) {
+		this.storage = storage;
+		this.maxEntries = maxEntries;
+		this.version = RenderingRule.getModifications();
+	}
+
+	public RenderingRulesStorage getStorage() {
+		return storage;
+	}
+
+	synchronized Results getResults(int[] savedValues, float[] savedFvalues) {
+		checkVersion();
+		Iterator<Results> it = parameters.iterator();
+		while (it.hasNext()) {
+			Results r = it.next();
+			if (Arrays.equals(r.savedValues, savedValues) && Arrays.equals(r.savedFvalues, savedFvalues)) {
+				it.remove();
+				parameters.addFirst(r);
+				return r;
+			}
+		}
+		Results r = new Results(this, savedValues.clone(), savedFvalues.clone(), version);
+		parameters.addFirst(r);
+		if (parameters.size() > MAX_PARAMETERS) {
+			parameters.removeLast();
+		}
+		return r;
+	}
+
+	private void checkVersion() {
+		int modifications = RenderingRule.getModifications();
+		if (version != modifications) {
+			version = modifications;
+			parameters.clear();
+		}
+	}
+
+	public synchronized int size() {
+		int size = 0;
+		for (Results r : parameters) {
+			size += r.results.size();
+		}
+		return size;
+	}
+
+	public synchronized void clear() {
+		parameters.clear();
+	}
+
+	static class Results {
+
+		private final RenderingRuleSearchCache cache;
+		private final int[] savedValues;
+		private final float[] savedFvalues;
+		private final ConcurrentHashMap<SearchKey, SearchResult> results = new ConcurrentHashMap<SearchKey, SearchResult>();
+		private final int version;
+
+		private Results(RenderingRuleSearchCache cache, int[] savedValues, float[] savedFvalues, int version) {
+			this.cache = cache;
+			this.savedValues = savedValues;
+			this.savedFvalues = savedFvalues;
+			this.version = version;
+		}
+
+		boolean isValid() {
+			return version == RenderingRule.getModifications();
+		}
+
+		SearchResult get(SearchKey key) {
+			return results.get(key);
+		}
+
+		void put(SearchKey key, SearchResult result) {
+			if (results.size() >= cache.maxEntries) {
+				results.clear();
+			}
+			results.put(key, result);
+		}
+	}
+
+	static class SearchKey {
+
+		// state, loadOutput, count of changed values, (id, value, float bits) * count, additional types
+		private int[] data;
+		private int length;
+		private Object mapIndex;
+		private int hash;
+
+		SearchKey() {
+			data = new int[32];
+		}
+
+		private SearchKey(int[] data, Object mapIndex, int hash) {
+			this.data = data;
+			this.length = data.length;
+			this.mapIndex = mapIndex;
+			this.hash = hash;
+		}
+
+		void init(int state, boolean loadOutput, int[] values, float[] fvalues, int[] savedValues,
+				  float[] savedFvalues, long[] changedValues, BinaryMapDataObject object) {
+			length = 0;
+			add(state);
+			add(loadOutput ? 1 : 0);
+			int countInd = length;
+			add(0);
+			for (int w = 0; w < changedValues.length; w++) {
+				long bits = changedValues[w];
+				while (bits != 0) {
+					int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					if (i >= values.length) {
+						break;
+					}
+					int fbits = Float.floatToIntBits(fvalues[i]);
+					if (values[i] != savedValues[i] || fbits != Float.floatToIntBits(savedFvalues[i])) {
+						add(i);
+						add(values[i]);
+						add(fbits);
+						data[countInd]++;
+					}
+				}
+			}
+			mapIndex = null;
+			if (object != null) {
+				mapIndex = object.getMapIndex();
+				int[] additionalTypes = object.getAdditionalTypes();
+				if (additionalTypes != null) {
+					for (int t : additionalTypes) {
+						add(t);
+					}
+				}
+			}
+			int h = mapIndex == null ? 0 : System.identityHashCode(mapIndex);
+			for (int i = 0; i < length; i++) {
+				h = 31 * h + data[i];
+			}
+			hash = h;
+		}
+
+		private void add(int v) {
+			if (length == data.length) {
+				data = Arrays.copyOf(data, length * 2);
+			}
+			data[length++] = v;
+		}
+
+		SearchKey copy() {
+			return new SearchKey(Arrays.copyOf(data, length), mapIndex, hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SearchKey)) {
+				return false;
+			}
+			SearchKey other = (SearchKey) obj;
+			if (hash != other.hash || length != other.length || mapIndex != other.mapIndex) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (data[i] != other.data[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	static class SearchResult {
+
+		final boolean found;
+		private final int[] ids;
+		private final int[] values;
+		private final float[] fvalues;
+
+		SearchResult(boolean found, int[] before, float[] fbefore, int[] after, float[] fafter) {
+			this.found = found;
+			int count = 0;
+			for (int i = 0; i < after.length; i++) {
+				if (before[i] != after[i] || Float.floatToIntBits(fbefore[i]) != Float.floatToIntBits(fafter[i])) {
+					count++;
+				}
+			}
+			ids = new int[count];
+			values = new int[count];
+			fvalues = new float[count];
+			int k = 0;
+			for (int i = 0; i < after.length; i++) {
+				if (before[i] != after[i] || Float.floatToIntBits(fbefore[i]) != Float.floatToIntBits(fafter[i])) {
+					ids[k] = i;
+					values[k] = after[i];
+					fvalues[k] = fafter[i];
+					k++;
+				}
+			}
+		}
+
+		void apply(int[] values, float[] fvalues, long[] changedValues) {
+			for (int i = 0; i < ids.length; i++) {
+				int id = ids[i];
+				values[id] = this.values[i];
+				fvalues[id] = this.fvalues[i];
+				changedValues[id >> 6] |= 1L << id;
+			}
+		}
+	}
+}
@@ -9,6 +9,8 @@ import static net.osmand.render.RenderingRuleProperty.STRING_TYPE;
 import net.osmand.binary.BinaryMapDataObject;
 import net.osmand.util.Algorithms;
 
+import java.util.Arrays;
+
 
 public class RenderingRuleSearchRequest {
 
@@ -23,8 +25,16 @@ public class RenderingRuleSearchRequest {
 
 	private int[] savedValues;
 	private float[] savedFvalues;
+	// bit set of values which could differ from saved state
+	private final long[] changedValues;
 
 	private boolean searchResult = false;
+	private boolean useCompiledRules = true;
+
+	private RenderingRuleSearchCache.Results cachedResults;
+	private RenderingRuleSearchCache.SearchKey cacheKey;
+	private int[] valuesBeforeSearch;
+	private float[] fvaluesBeforeSearch;
 
 	public RenderingRuleSearchRequest(RenderingRulesStorage storage) {
 		this.storage = storage;
@@ -37,6 +47,7 @@ public class RenderingRuleSearchRequest {
 			}
 		}
 		fvalues = new float[props.length];
+		changedValues = new long[(props.length + 63) >> 6];
 		setBooleanFilter(storage.PROPS.R_TEST, true);
 		saveState();
 	}
@@ -46,11 +57,16 @@ public class RenderingRuleSearchRequest {
 		this.props = searchRequest.props;
 		this.values = new int[searchRequest.values.length];
 		this.fvalues = new float[searchRequest.fvalues.length];
+		this.changedValues = new long[searchRequest.changedValues.length];
 		this.object = searchRequest.object;
 		this.searchResult = searchRequest.searchResult;
 		this.ALL = searchRequest.ALL;
+		this.useCompiledRules = searchRequest.useCompiledRules;
 		System.arraycopy(searchRequest.values, 0, values, 0, searchRequest.values.length);
 		System.arraycopy(searchRequest.fvalues, 0, fvalues, 0, searchRequest.fvalues.length);
+		if (searchRequest.cacheKey != null) {
+			cacheKey = new RenderingRuleSearchCache.SearchKey();
+		}
 		saveState();
 	}
 
@@ -62,24 +78,50 @@ public class RenderingRuleSearchRequest {
 		return object;
 	}
 
+	/**
+	 * Search with rules compiled by storage (default) or by walking rules
+	 */
+	public void setUseCompiledRules(boolean useCompiledRules) {
+		this.useCompiledRules = useCompiledRules;
+	}
+
+	/**
+	 * Reuse results of previous searches with the same input values (shared cache of the storage).
+	 * Results are kept for the rendering parameters fixed by last {@link #saveState()}.
+	 */
+	public void setUseSearchCache(boolean useSearchCache) {
+		if (useSearchCache) {
+			cacheKey = new RenderingRuleSearchCache.SearchKey();
+			cachedResults = storage.getSearchCache().getResults(savedValues, savedFvalues);
+			Arrays.fill(changedValues, -1L);
+		} else {
+			cacheKey = null;
+			cachedResults = null;
+		}
+	}
+
 	public void setStringFilter(RenderingRuleProperty p, String filter) {
 		assert p.isInputProperty();
 		values[p.getId()] = storage.getDictionaryValue(filter);
+		markChanged(p.getId());
 	}
 
 	public void setIntFilter(RenderingRuleProperty p, int filter) {
 		assert p.isInputProperty();
 		values[p.getId()] = filter;
+		markChanged(p.getId());
 	}
 	
 	public void setBooleanFilter(RenderingRuleProperty p, boolean filter) {
 		assert p.isInputProperty();
 		values[p.getId()] = filter ? RenderingRuleProperty.TRUE_VALUE : RenderingRuleProperty.FALSE_VALUE;
+		markChanged(p.getId());
 	}
 
 	public void setFloatFilter(RenderingRuleProperty p, float filter) {
 		assert p.isInputProperty();
 		fvalues[p.getId()] = filter;
+		markChanged(p.getId());
 	}
 
 	public void saveState() {
@@ -87,19 +129,37 @@ public class RenderingRuleSearchRequest {
 		savedFvalues = new float[fvalues.length];
 		System.arraycopy(values, 0, savedValues, 0, values.length);
 		System.arraycopy(fvalues, 0, savedFvalues, 0, fvalues.length);
+		Arrays.fill(changedValues, 0);
+		if (cacheKey != null) {
+			cachedResults = storage.getSearchCache().getResults(savedValues, savedFvalues);
+		}
+	}
+
+	/**
+	 * Whether requests search the same storage with the same saved state (rendering parameters)
+	 */
+	public boolean hasSameSavedState(RenderingRuleSearchRequest other) {
+		return other != null && storage == other.storage && Arrays.equals(savedValues, other.savedValues)
+				&& Arrays.equals(savedFvalues, other.savedFvalues);
 	}
 
 	public void clearState() {
 		System.arraycopy(savedValues, 0, values, 0, values.length);
 		System.arraycopy(savedFvalues, 0, fvalues, 0, fvalues.length);
+		Arrays.fill(changedValues, 0);
 		object = null;
 	}
+
+	private void markChanged(int id) {
+		changedValues[id >> 6] |= 1L << id;
+	}
 	
 	public void clearValue(RenderingRuleProperty p) {
 		if (!p.isIntParse()) {
 			fvalues[p.getId()] = savedFvalues[p.getId()];
 		}
 		values[p.getId()] = savedValues[p.getId()];
+		markChanged(p.getId());
 	}
 
 	public void setInitialTagValueZoom(String tag, String val, int zoom, BinaryMapDataObject obj) {
@@ -126,6 +186,18 @@ public class RenderingRuleSearchRequest {
 	
 	public boolean searchRenderingAttribute(String attribute) {
 		searchResult = false;
+		if (cacheKey != null) {
+			Arrays.fill(changedValues, -1L);
+		}
+		if (useCompiledRules) {
+			RenderingRulesProgram program = storage.getCompiledRules();
+			int node = program.getAttributeRule(attribute);
+			if (node < 0) {
+				return false;
+			}
+			searchResult = program.visit(node, true, values, fvalues, this);
+			return searchResult;
+		}
 		RenderingRule rule = storage.getRenderingAttributeRule(attribute);
 		if (rule == null) {
 			return false;
@@ -139,6 +211,34 @@ public class RenderingRuleSearchRequest {
 	}
 	
 	public boolean search(int state, boolean loadOutput) {
+		if (cacheKey == null) {
+			return searchRules(state, loadOutput);
+		}
+		if (!cachedResults.isValid()) {
+			cachedResults = storage.getSearchCache().getResults(savedValues, savedFvalues);
+		}
+		cacheKey.init(state, loadOutput, values, fvalues, savedValues, savedFvalues, changedValues, object);
+		RenderingRuleSearchCache.SearchResult cached = cachedResults.get(cacheKey);
+		if (cached != null) {
+			cached.apply(values, fvalues, changedValues);
+			searchResult = cached.found;
+			return searchResult;
+		}
+		if (valuesBeforeSearch == null) {
+			valuesBeforeSearch = new int[values.length];
+			fvaluesBeforeSearch = new float[fvalues.length];
+		}
+		System.arraycopy(values, 0, valuesBeforeSearch, 0, values.length);
+		System.arraycopy(fvalues, 0, fvaluesBeforeSearch, 0, fvalues.length);
+		boolean found = searchRules(state, loadOutput);
+		RenderingRuleSearchCache.SearchResult result = new RenderingRuleSearchCache.SearchResult(found,
+				valuesBeforeSearch, fvaluesBeforeSearch, values, fvalues);
+		result.apply(values, fvalues, changedValues);
+		cachedResults.put(cacheKey.copy(), result);
+		return found;
+	}
+
+	private boolean searchRules(int state, boolean loadOutput) {
 		searchResult = false;
 		int tagKey = values[storage.PROPS.R_TAG.getId()];
 		int valueKey = values[storage.PROPS.R_VALUE.getId()];
@@ -164,11 +264,21 @@ public class RenderingRuleSearchRequest {
 		values[storage.PROPS.R_TAG.getId()] = tagKey;
 		values[storage.PROPS.R_VALUE.getId()] = valueKey;
 		values[storage.PROPS.R_DISABLE.getId()] = 0;
-		RenderingRule accept = storage.getRule(state, tagKey, valueKey);
-		if (accept == null) {
-			return false;
+		boolean match;
+		if (useCompiledRules) {
+			RenderingRulesProgram program = storage.getCompiledRules();
+			int node = program.getRule(state, storage.getTagValueKey(tagKey, valueKey));
+			if (node < 0) {
+				return false;
+			}
+			match = program.visit(node, loadOutput, values, fvalues, this);
+		} else {
+			RenderingRule accept = storage.getRule(state, tagKey, valueKey);
+			if (accept == null) {
+				return false;
+			}
+			match = visitRule(accept, loadOutput);
 		}
-		boolean match = visitRule(accept, loadOutput);
 		if (match && values[storage.PROPS.R_DISABLE.getId()] != 0) {
 			return false;
 		}
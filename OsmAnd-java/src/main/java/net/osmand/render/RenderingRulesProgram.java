@@ -0,0 +1,345 @@
+package net.osmand.render;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules of {@link RenderingRulesStorage} compiled to flat arrays. Every rule is a node with ranges of
+ * input conditions, output assignments and children, so search doesn't iterate rule properties and lists and
+ * doesn't call accept of standard properties. Root rules of every state are looked up by open addressing tables.
+ * Evaluation order and side effects are the same as in {@link RenderingRuleSearchRequest} interpreter.
+ */
+class RenderingRulesProgram {
+
+	private static final int COND_EQUAL = RenderingRuleProperty.ACCEPT_EQUAL;
+	private static final int COND_FLOAT_EQUAL = RenderingRuleProperty.ACCEPT_FLOAT_EQUAL;
+	private static final int COND_LESS = RenderingRuleProperty.ACCEPT_LESS;
+	private static final int COND_GREATER = RenderingRuleProperty.ACCEPT_GREATER;
+	// not condition: disable is set while input properties are checked
+	private static final int COND_SET_DISABLE = 5;
+
+	private static final int OUT_INT = 0;
+	private static final int OUT_FLOAT = 1;
+	private static final int OUT_ATTR = 2;
+
+	private static final int SPEC_INT = 0;
+	private static final int SPEC_FLOAT = 1;
+	private static final int SPEC_COLOR = 2;
+
+	final int version;
+
+	private final boolean[] group;
+	private final int[] condStart;
+	private final int[] condOp;
+	private final int[] condProp;
+	private final int[] condInt;
+	private final float[] condFloat;
+	private final RenderingRuleProperty[] condProperty;
+
+	private final int[] outStart;
+	private final int[] outOp;
+	private final int[] outProp;
+	private final int[] outSpec;
+	private final int[] outInt;
+	private final float[] outFloat;
+
+	private final int[] ifElseStart;
+	private final int[] ifElseChildren;
+	private final int[] ifStart;
+	private final int[] ifChildren;
+
+	private final int[][] stateKeys = new int[RenderingRulesStorage.LENGTH_RULES][];
+	private final int[][] stateNodes = new int[RenderingRulesStorage.LENGTH_RULES][];
+	private final Map<String, Integer> attributes = new HashMap<String, Integer>();
+
+	private final RenderingRuleProperty attrColorValue;
+	private final RenderingRuleProperty attrIntValue;
+	private final RenderingRuleProperty attrBoolValue;
+
+	RenderingRulesProgram(RenderingRulesStorage storage, int version) {
+		this.version = version;
+		RenderingRuleStorageProperties props = storage.PROPS;
+		attrColorValue = props.R_ATTR_COLOR_VALUE;
+		attrIntValue = props.R_ATTR_INT_VALUE;
+		attrBoolValue = props.R_ATTR_BOOL_VALUE;
+
+		IdentityHashMap<RenderingRule, Integer> ids = new IdentityHashMap<RenderingRule, Integer>();
+		List<RenderingRule> nodes = new ArrayList<RenderingRule>();
+		for (int state = 0; state < RenderingRulesStorage.LENGTH_RULES; state++) {
+			TIntObjectHashMap<RenderingRule> rules = storage.tagValueGlobalRules[state];
+			if (rules == null || rules.isEmpty()) {
+				continue;
+			}
+			int[] keys = rules.keys();
+			int capacity = Integer.highestOneBit(keys.length * 2 - 1) << 1;
+			int[] tkeys = new int[capacity];
+			int[] tnodes = new int[capacity];
+			Arrays.fill(tnodes, -1);
+			for (int key : keys) {
+				int ind = hash(key, capacity);
+				while (tnodes[ind] != -1) {
+					ind = (ind + 1) & (capacity - 1);
+				}
+				tkeys[ind] = key;
+				tnodes[ind] = register(rules.get(key), ids, nodes);
+			}
+			stateKeys[state] = tkeys;
+			stateNodes[state] = tnodes;
+		}
+		for (Map.Entry<String, RenderingRule> e : storage.renderingAttributes.entrySet()) {
+			attributes.put(e.getKey(), register(e.getValue(), ids, nodes));
+		}
+		// nodes list grows while children are registered
+		for (int i = 0; i < nodes.size(); i++) {
+			RenderingRule r = nodes.get(i);
+			for (RenderingRule c : r.getIfElseChildren()) {
+				register(c, ids, nodes);
+			}
+			for (RenderingRule c : r.getIfChildren()) {
+				register(c, ids, nodes);
+			}
+			for (int k = 0; k < r.getProperties().length; k++) {
+				RenderingRule attr = r.getAttrProp(k);
+				if (attr != null) {
+					register(attr, ids, nodes);
+				}
+			}
+		}
+
+		int size = nodes.size();
+		group = new boolean[size];
+		condStart = new int[size + 1];
+		outStart = new int[size + 1];
+		ifElseStart = new int[size + 1];
+		ifStart = new int[size + 1];
+		// floats are kept as raw int bits
+		TIntArrayList cOp = new TIntArrayList(), cProp = new TIntArrayList(), cInt = new TIntArrayList(),
+				cFloat = new TIntArrayList();
+		List<RenderingRuleProperty> cProperty = new ArrayList<RenderingRuleProperty>();
+		TIntArrayList oOp = new TIntArrayList(), oProp = new TIntArrayList(), oSpec = new TIntArrayList(),
+				oInt = new TIntArrayList(), oFloat = new TIntArrayList();
+		TIntArrayList ifElse = new TIntArrayList(), ifs = new TIntArrayList();
+		for (int i = 0; i < size; i++) {
+			RenderingRule r = nodes.get(i);
+			group[i] = r.isGroup();
+			condStart[i] = cOp.size();
+			outStart[i] = oOp.size();
+			ifElseStart[i] = ifElse.size();
+			ifStart[i] = ifs.size();
+			RenderingRuleProperty[] properties = r.getProperties();
+			for (int k = 0; k < properties.length; k++) {
+				RenderingRuleProperty rp = properties[k];
+				if (rp.isInputProperty()) {
+					cOp.add(rp.getAcceptOperation());
+				} else if (rp == props.R_DISABLE) {
+					cOp.add(COND_SET_DISABLE);
+				} else {
+					continue;
+				}
+				cProp.add(rp.getId());
+				cInt.add(r.getIntProp(k));
+				cFloat.add(Float.floatToRawIntBits(r.getFloatProp(k)));
+				cProperty.add(rp);
+			}
+			for (int k = 0; k < properties.length; k++) {
+				RenderingRuleProperty rp = properties[k];
+				if (!rp.isOutputProperty()) {
+					continue;
+				}
+				RenderingRule attr = r.getAttrProp(k);
+				if (attr != null) {
+					oOp.add(OUT_ATTR);
+					oInt.add(ids.get(attr));
+				} else {
+					oOp.add(rp.isFloat() ? OUT_FLOAT : OUT_INT);
+					oInt.add(r.getIntProp(k));
+				}
+				oFloat.add(Float.floatToRawIntBits(r.getFloatProp(k)));
+				oProp.add(rp.getId());
+				oSpec.add(rp.isFloat() ? SPEC_FLOAT : (rp.isColor() ? SPEC_COLOR : SPEC_INT));
+			}
+			for (RenderingRule c : r.getIfElseChildren()) {
+				ifElse.add(ids.get(c));
+			}
+			for (RenderingRule c : r.getIfChildren()) {
+				ifs.add(ids.get(c));
+			}
+		}
+		condStart[size] = cOp.size();
+		outStart[size] = oOp.size();
+		ifElseStart[size] = ifElse.size();
+		ifStart[size] = ifs.size();
+		condOp = cOp.toArray();
+		condProp = cProp.toArray();
+		condInt = cInt.toArray();
+		condFloat = toFloats(cFloat);
+		condProperty = cProperty.toArray(new RenderingRuleProperty[0]);
+		outOp = oOp.toArray();
+		outProp = oProp.toArray();
+		outSpec = oSpec.toArray();
+		outInt = oInt.toArray();
+		outFloat = toFloats(oFloat);
+		ifElseChildren = ifElse.toArray();
+		ifChildren = ifs.toArray();
+	}
+
+	private static int register(RenderingRule rule, IdentityHashMap<RenderingRule, Integer> ids,
+	                            List<RenderingRule> nodes) {
+		Integer id = ids.get(rule);
+		if (id == null) {
+			id = nodes.size();
+			ids.put(rule, id);
+			nodes.add(rule);
+		}
+		return id;
+	}
+
+	private static float[] toFloats(TIntArrayList bits) {
+		float[] res = new float[bits.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = Float.intBitsToFloat(bits.get(i));
+		}
+		return res;
+	}
+
+	private static int hash(int key, int capacity) {
+		return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(capacity)) & (capacity - 1);
+	}
+
+	int getNodesCount() {
+		return group.length;
+	}
+
+	/**
+	 * @return root node of state for tag and value or -1
+	 */
+	int getRule(int state, int key) {
+		int[] tnodes = stateNodes[state];
+		if (tnodes == null) {
+			return -1;
+		}
+		int[] tkeys = stateKeys[state];
+		int mask = tnodes.length - 1;
+		int ind = hash(key, tnodes.length);
+		while (tnodes[ind] != -1) {
+			if (tkeys[ind] == key) {
+				return tnodes[ind];
+			}
+			ind = (ind + 1) & mask;
+		}
+		return -1;
+	}
+
+	int getAttributeRule(String attribute) {
+		Integer node = attributes.get(attribute);
+		return node == null ? -1 : node;
+	}
+
+	boolean visit(int node, boolean loadOutput, int[] values, float[] fvalues, RenderingRuleSearchRequest req) {
+		for (int c = condStart[node], end = condStart[node + 1]; c < end; c++) {
+			int p = condProp[c];
+			switch (condOp[c]) {
+			case COND_EQUAL:
+				if (condInt[c] != values[p]) {
+					return false;
+				}
+				break;
+			case COND_FLOAT_EQUAL:
+				if (condFloat[c] != fvalues[p]) {
+					return false;
+				}
+				break;
+			case COND_LESS:
+				if (condInt[c] < values[p]) {
+					return false;
+				}
+				break;
+			case COND_GREATER:
+				if (condInt[c] > values[p]) {
+					return false;
+				}
+				break;
+			case COND_SET_DISABLE:
+				values[p] = condInt[c];
+				break;
+			default:
+				// custom accept
+				RenderingRuleProperty rp = condProperty[c];
+				boolean match = rp.isFloat() ? rp.accept(condFloat[c], fvalues[p], req)
+						: rp.accept(condInt[c], values[p], req);
+				if (!match) {
+					return false;
+				}
+			}
+		}
+		boolean isGroup = group[node];
+		if (!loadOutput && !isGroup) {
+			return true;
+		}
+		if (!isGroup) {
+			loadOutput(node, true, values, fvalues, req);
+		}
+		boolean match = false;
+		for (int c = ifElseStart[node], end = ifElseStart[node + 1]; c < end; c++) {
+			if (visit(ifElseChildren[c], loadOutput, values, fvalues, req)) {
+				match = true;
+				break;
+			}
+		}
+		boolean fit = match || !isGroup;
+		if (fit && loadOutput) {
+			if (isGroup) {
+				loadOutput(node, false, values, fvalues, req);
+			}
+			for (int c = ifStart[node], end = ifStart[node + 1]; c < end; c++) {
+				visit(ifChildren[c], true, values, fvalues, req);
+			}
+		}
+		return fit;
+	}
+
+	private void loadOutput(int node, boolean override, int[] values, float[] fvalues,
+	                        RenderingRuleSearchRequest req) {
+		for (int o = outStart[node], end = outStart[node + 1]; o < end; o++) {
+			int p = outProp[o];
+			if (!override && isSpecified(outSpec[o], p, values, fvalues)) {
+				continue;
+			}
+			switch (outOp[o]) {
+			case OUT_INT:
+				values[p] = outInt[o];
+				break;
+			case OUT_FLOAT:
+				fvalues[p] = outFloat[o];
+				values[p] = outInt[o];
+				break;
+			default:
+				visit(outInt[o], true, values, fvalues, req);
+				if (req.isSpecified(attrColorValue)) {
+					values[p] = req.getIntPropertyValue(attrColorValue);
+				} else if (req.isSpecified(attrIntValue)) {
+					values[p] = req.getIntPropertyValue(attrIntValue);
+					fvalues[p] = req.getFloatPropertyValue(attrIntValue);
+				} else if (req.isSpecified(attrBoolValue)) {
+					values[p] = req.getIntPropertyValue(attrBoolValue);
+				}
+			}
+		}
+	}
+
+	private static boolean isSpecified(int spec, int p, int[] values, float[] fvalues) {
+		if (spec == SPEC_FLOAT) {
+			return fvalues[p] != 0 || values[p] != -1;
+		} else if (spec == SPEC_COLOR) {
+			return values[p] != 0;
+		}
+		return values[p] != -1;
+	}
+}
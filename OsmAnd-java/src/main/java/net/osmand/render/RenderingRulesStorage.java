@@ -53,6 +53,8 @@ public class RenderingRulesStorage {
 	public TIntObjectHashMap<RenderingRule>[] tagValueGlobalRules = new TIntObjectHashMap[LENGTH_RULES];
 	
 	protected Map<String, RenderingRule> renderingAttributes = new LinkedHashMap<String, RenderingRule>();
+	private volatile RenderingRulesProgram compiledRules;
+	private RenderingRuleSearchCache searchCache;
 	protected Map<String, String> renderingConstants = new LinkedHashMap<String, String>();
 	
 	protected String renderingName;
@@ -99,6 +101,26 @@ public class RenderingRulesStorage {
 		return storage;
 	}
 
+	/**
+	 * Rules compiled for search, compiled again after any rule is modified
+	 */
+	RenderingRulesProgram getCompiledRules() {
+		int version = RenderingRule.getModifications();
+		RenderingRulesProgram program = compiledRules;
+		if (program == null || program.version != version) {
+			program = new RenderingRulesProgram(this, version);
+			compiledRules = program;
+		}
+		return program;
+	}
+
+	public synchronized RenderingRuleSearchCache getSearchCache() {
+		if (searchCache == null) {
+			searchCache = new RenderingRuleSearchCache(this);
+		}
+		return searchCache;
+	}
+
 	public int getInternalVersion() {
 		return internalVersion;
 	}
@@ -131,6 +153,7 @@ public class RenderingRulesStorage {
 		XmlPullParser parser = PlatformUtil.newXMLPullParser();
 		RenderingRulesHandler handler = new RenderingRulesHandler(parser, resolver);
 		handler.parse(is);
+		RenderingRule.rulesModified();
 		RenderingRulesStorage depends = handler.getDependsStorage();
 		if (depends != null) {
 			dependsName = depends.getName();
@@ -202,6 +225,7 @@ public class RenderingRulesStorage {
 			insert = rr;
 		}
 		tagValueGlobalRules[state].put(key, insert);
+		RenderingRule.rulesModified();
 	}
 
 	private RenderingRule createTagValueRootWrapperRule(int tagValueKey, RenderingRule previous) {
@@ -497,6 +521,10 @@ public class RenderingRulesStorage {
 		int ivalue = getDictionaryValue(value);
 		return (itag << SHIFT_TAG_VAL) | ivalue; 
 	}
+
+	int getTagValueKey(int itag, int ivalue) {
+		return (itag << SHIFT_TAG_VAL) | ivalue;
+	}
 	
 	public String getValueString(int tagValueKey){
 		return getStringValue(tagValueKey & ((1 << SHIFT_TAG_VAL) - 1)); 
@@ -508,7 +536,7 @@ public class RenderingRulesStorage {
 	
 	protected RenderingRule getRule(int state, int itag, int ivalue){
 		if (tagValueGlobalRules[state] != null){
-			return tagValueGlobalRules[state].get((itag << SHIFT_TAG_VAL) | ivalue);
+			return tagValueGlobalRules[state].get(getTagValueKey(itag, ivalue));
 		}
 		return null;
 	}
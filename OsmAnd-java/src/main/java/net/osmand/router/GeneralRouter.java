@@ -11,7 +11,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -19,6 +19,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TLongHashSet;
@@ -58,14 +60,15 @@ public class GeneralRouter implements VehicleRouter {
 	private final Map<String, Integer> universalRules;
 	private final List<String> universalRulesById;
 	private final Map<String, BitSet> tagRuleMask;
-	private final ArrayList<Object> ruleToValue;
+	private final List<Object> ruleToValue;
 	private boolean shortestRoute;
 	private boolean heightObstacles;
 	private boolean allowPrivate;
 	private String filename = null;
 	private String profileName = "";
 
-	private Map<RouteRegion, Map<Integer, Integer>> regionConvert = new LinkedHashMap<RouteRegion, Map<Integer,Integer>>();
+	// region type -> universal rule id + 1 (copy on write arrays)
+	private final Map<RouteRegion, int[]> regionConvert = new ConcurrentHashMap<RouteRegion, int[]>();
 	
 	// cached values
 	private boolean restrictionsAware = true;
@@ -85,7 +88,7 @@ public class GeneralRouter implements VehicleRouter {
 	
 	private GeneralRouterProfile profile;
 	
-	Map<RouteRegion, Map<IntHolder, Float>>[] evalCache;	
+	RouteEvalCache[] evalCache;
 	
 	public enum RouteDataObjectAttribute {
 		ROAD_SPEED("speed"),
@@ -187,22 +190,22 @@ public class GeneralRouter implements VehicleRouter {
 		for (int i = 0; i < objectAttributes.length; i++) {
 			objectAttributes[i] = new RouteAttributeContext();
 		}
-		universalRules = new LinkedHashMap<String, Integer>();
-		universalRulesById = new ArrayList<String>();
-		tagRuleMask = new LinkedHashMap<String, BitSet>();
-		ruleToValue = new ArrayList<Object>();
+		// rules are shared between routers built from this one and could be registered during routing
+		universalRules = new ConcurrentHashMap<String, Integer>();
+		universalRulesById = new CopyOnWriteArrayList<String>();
+		tagRuleMask = new ConcurrentHashMap<String, BitSet>();
+		ruleToValue = new CopyOnWriteArrayList<Object>();
 		parameters = new LinkedHashMap<String, GeneralRouter.RoutingParameter>();
 		
 		initCaches();
 
 	}
 
-	@SuppressWarnings("unchecked")
 	private void initCaches() {
 		int l = RouteDataObjectAttribute.values().length;
-		evalCache = new Map[l];
+		evalCache = new RouteEvalCache[l];
 		for (int i = 0; i < l; i++) {
-			evalCache[i] = new HashMap<>();
+			evalCache[i] = new RouteEvalCache();
 		}
 	}
 
@@ -286,8 +289,8 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public boolean acceptLine(RouteDataObject way) {
-		Float res = getCache(RouteDataObjectAttribute.ACCESS, way);
-		if (res == null) {
+		float res = getCache(RouteDataObjectAttribute.ACCESS, way);
+		if (Float.isNaN(res)) {
 			res = (float) getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
 			putCache(RouteDataObjectAttribute.ACCESS, way, res);
 		}
@@ -310,20 +313,44 @@ public class GeneralRouter implements VehicleRouter {
 	
 	public int registerTagValueAttribute(String tag, String value) {
 		String key = tag +"$"+value;
-		if(universalRules.containsKey(key)) {
-			return universalRules.get(key);
-		}
-		int id = universalRules.size();
-		universalRulesById.add(key);
-		universalRules.put(key, id);
-		if(!tagRuleMask.containsKey(tag)) {
-			tagRuleMask.put(tag, new BitSet());
+		Integer existing = universalRules.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		synchronized (universalRules) {
+			existing = universalRules.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			int id = universalRulesById.size();
+			universalRulesById.add(key);
+			// masks are read without locks, so they are never modified after publishing
+			BitSet mask = tagRuleMask.get(tag);
+			mask = mask == null ? new BitSet() : (BitSet) mask.clone();
+			mask.set(id);
+			tagRuleMask.put(tag, mask);
+			universalRules.put(key, id);
+			return id;
 		}
-		tagRuleMask.get(tag).set(id);
-		return id;
 	}
 	
 	
+	private int convertRegionType(RouteRegion reg, int type) {
+		synchronized (regionConvert) {
+			int[] map = regionConvert.get(reg);
+			if (map != null && type < map.length && map[type] > 0) {
+				return map[type] - 1;
+			}
+			RouteTypeRule r = reg.quickGetEncodingRule(type);
+			int nid = registerTagValueAttribute(r.getTag(), r.getValue());
+			int[] nmap = map == null ? new int[Math.max(type + 1, 64)] :
+					Arrays.copyOf(map, Math.max(map.length, type + 1));
+			nmap[type] = nid + 1;
+			regionConvert.put(reg, nmap);
+			return nid;
+		}
+	}
+
 	private Object parseValue(String value, String type) {
 		float vl = -1;
 		value = value.trim();
@@ -347,10 +374,7 @@ public class GeneralRouter implements VehicleRouter {
 	}
 	
 	private Object parseValueFromTag(int id, String type) {
-		while (ruleToValue.size() <= id) {
-			ruleToValue.add(null);
-		}
-		Object res = ruleToValue.get(id);
+		Object res = id < ruleToValue.size() ? ruleToValue.get(id) : null;
 		if (res == null) {
 			String v = universalRulesById.get(id);
 			String value = v.substring(v.indexOf('$') + 1);
@@ -358,7 +382,12 @@ public class GeneralRouter implements VehicleRouter {
 			if (res == null) {
 				res = "";
 			}
-			ruleToValue.set(id, res);
+			synchronized (ruleToValue) {
+				if (ruleToValue.size() <= id) {
+					ruleToValue.addAll(Collections.nCopies(id + 1 - ruleToValue.size(), null));
+				}
+				ruleToValue.set(id, res);
+			}
 		}
 		if ("".equals(res)) {
 			return null;
@@ -380,8 +409,8 @@ public class GeneralRouter implements VehicleRouter {
 	public float defineObstacle(RouteDataObject road, int point, boolean dir) {
 		int[] pointTypes = road.getPointTypes(point);
 		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, dir);
-			if(obst == null) {
+			float obst = getCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, dir);
+			if (Float.isNaN(obst)) {
 				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
 				obst = getObjContext(RouteDataObjectAttribute.OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
 				putCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, obst, dir);
@@ -395,8 +424,8 @@ public class GeneralRouter implements VehicleRouter {
 	public float defineRoutingObstacle(RouteDataObject road, int point, boolean dir) {
 		int[] pointTypes = road.getPointTypes(point);
 		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, dir);
-			if(obst == null) {
+			float obst = getCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, dir);
+			if (Float.isNaN(obst)) {
 				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
 				obst = getObjContext(RouteDataObjectAttribute.ROUTING_OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
 				putCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, obst, dir);
@@ -462,8 +491,8 @@ public class GeneralRouter implements VehicleRouter {
 				int percentIncl = (int) (incl * 100);
 				percentIncl = (percentIncl + 2)/ 3 * 3 - 2; // 1, 4, 7, 10, .   
 				if(percentIncl >= 1) {
-					objContext.paramContext.incline = diff > 0 ? percentIncl : -percentIncl;
-					sum += objContext.evaluateFloat(road, 0) * (diff > 0? diff : -diff );
+					double incline = diff > 0 ? percentIncl : -percentIncl;
+					sum += objContext.evaluateFloat(road, incline, 0) * (diff > 0? diff : -diff );
 				}
 			}
 		}
@@ -473,12 +502,12 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public int isOneWay(RouteDataObject road) {
-		Float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
-		if(res == null) {
+		float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
+		if (Float.isNaN(res)) {
 			res = (float) getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
 			putCache(RouteDataObjectAttribute.ONEWAY, road, res);
 		}
-		return res.intValue();
+		return (int) res;
 	}
 	
 	@Override
@@ -488,8 +517,8 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float getPenaltyTransition(RouteDataObject road) {
-		Float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
-		if (vl == null) {
+		float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
+		if (Float.isNaN(vl)) {
 			vl = (float) getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
 			putCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
 		}
@@ -498,8 +527,8 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public float defineRoutingSpeed(RouteDataObject road) {
-		Float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (definedSpd == null) {
+		float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
+		if (Float.isNaN(definedSpd)) {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			definedSpd = Math.max(Math.min(spd, maxSpeed), minSpeed);
 			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, definedSpd);
@@ -514,8 +543,8 @@ public class GeneralRouter implements VehicleRouter {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			return Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 		}
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
+		if (Float.isNaN(sp)) {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			sp = Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, sp);
@@ -525,8 +554,8 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float defineSpeedPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(road, 1f);
 			putCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp, false);
 		}
@@ -535,85 +564,49 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float defineDestinationPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.DESTINATION_PRIORITIES).evaluateFloat(road, 1f);
 			putCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, sp, false);
 		}
 		return sp;
 	}
 
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val) {
-		putCache(attr, road.region, road.types, val, false);
+	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, float val) {
+		putCache(attr, road, val, false);
 	}
 	
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val, boolean extra) {
-		putCache(attr, road.region, road.types, val, extra);
+	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, float val, boolean extra) {
+		int typesId = road.getTypesCombinationId();
+		if (USE_CACHE && typesId >= 0 && !extra) {
+			evalCache[attr.ordinal()].put(road.region, typesId, val);
+		} else {
+			putCache(attr, road.region, road.types, val, extra);
+		}
 	}
 	
-	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, Float val, boolean extra) {
-//		TIMER -= System.nanoTime();
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
+	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, float val, boolean extra) {
 		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				rM = new HashMap<IntHolder, Float>();
-				ch.put(reg, rM);
-			}
-			rM.put(new IntHolder(types, extra), val);
+			evalCache[attr.ordinal()].put(reg, types, extra, val);
 		}
-//		TIMER += System.nanoTime();
 	}
-	
-	class IntHolder {
-		private final int[] array;
-		private final boolean extra;
-
-		IntHolder(int[] ts, boolean extra) {
-			array = ts;
-			this.extra = extra;
-		}
-
-		@Override
-		public int hashCode() {
-			return Arrays.hashCode(array) + (extra ? 1 : 0);
-		}
 
-		@Override
-		public boolean equals(Object other) {
-			if (array == other) {
-				return true;
-			}
-			if (!(other instanceof IntHolder)) {
-				return false;
-			}
-			if (((IntHolder) other).extra != this.extra) {
-				return false;
-			}
-			// noinspection unchecked
-			return Arrays.equals(array, ((IntHolder) other).array);
+	private float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
+		int typesId = road.getTypesCombinationId();
+		if (USE_CACHE && typesId >= 0) {
+			return evalCache[attr.ordinal()].get(road.region, typesId);
 		}
-	}
-
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
 		return getCache(attr, road.region, road.types, false);
 	}
 	
-	private Float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
-//		TIMER -= System.nanoTime();
+	/**
+	 * @return cached value or NaN
+	 */
+	private float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
 		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				return null;
-			}
-			Float vl = rM.get(new IntHolder(types, extra));
-			if(vl != null) {
-//				TIMER += System.nanoTime();
-				return vl;
-			}
+			return evalCache[attr.ordinal()].get(reg, types, extra);
 		}
-		return null;
+		return Float.NaN;
 	}
 
 	@Override
@@ -830,6 +823,10 @@ public class GeneralRouter implements VehicleRouter {
 		}
 
 		private Object evaluate(BitSet types) {
+			return evaluate(types, paramContext);
+		}
+
+		private Object evaluate(BitSet types, ParameterContext paramContext) {
 			for (int k = 0; k < rules.size(); k++) {
 				RouteAttributeEvalRule r = rules.get(k);
 				Object o = r.eval(types, paramContext);
@@ -891,6 +888,20 @@ public class GeneralRouter implements VehicleRouter {
 			return ((Number)o).floatValue();
 		}
 		
+		/**
+		 * Evaluates value with :incline parameter (thread safe, parameters of router are not modified).
+		 */
+		public float evaluateFloat(RouteDataObject ro, double incline, float defValue) {
+			ParameterContext pc = new ParameterContext();
+			pc.vars = paramContext == null ? Collections.<String, String>emptyMap() : paramContext.vars;
+			pc.incline = incline;
+			Object o = evaluate(convert(ro.region, ro.types), pc);
+			if (!(o instanceof Number)) {
+				return defValue;
+			}
+			return ((Number) o).floatValue();
+		}
+
 		public float evaluateFloat(RouteRegion region, int[] types, float defValue) {
 			Object o = evaluate(convert(region, types));
 			if(!(o instanceof Number)) {
@@ -909,17 +920,13 @@ public class GeneralRouter implements VehicleRouter {
 		
 		private BitSet convert(RouteRegion reg, int[] types) {
 			BitSet b = new BitSet(universalRules.size());
-			Map<Integer, Integer> map = regionConvert.get(reg);
-			if(map == null){
-				map = new HashMap<Integer, Integer>();
-				regionConvert.put(reg, map);
-			}
-			for(int k = 0; k < types.length; k++) {
-				Integer nid = map.get(types[k]);
-				if (nid == null) {
-					RouteTypeRule r = reg.quickGetEncodingRule(types[k]);
-					nid = registerTagValueAttribute(r.getTag(), r.getValue());
-					map.put(types[k], nid);
+			int[] map = regionConvert.get(reg);
+			for (int k = 0; k < types.length; k++) {
+				int t = types[k];
+				int nid = map != null && t < map.length ? map[t] - 1 : -1;
+				if (nid < 0) {
+					nid = convertRegionType(reg, t);
+					map = regionConvert.get(reg);
 				}
 				b.set(nid);
 			}
@@ -1017,7 +1024,6 @@ public class GeneralRouter implements VehicleRouter {
 		protected String selectType = null;
 		protected BitSet filterTypes = new BitSet();
 		protected BitSet filterNotTypes = new BitSet();
-		protected BitSet evalFilterTypes = new BitSet();
 		
 		protected Set<String> onlyTags = new LinkedHashSet<String>();
 		protected Set<String> onlyNotTags = new LinkedHashSet<String>();
@@ -1133,7 +1139,8 @@ public class GeneralRouter implements VehicleRouter {
 			parameters.add(param);
 		}
 
-		public synchronized Object eval(BitSet types, ParameterContext paramContext) {
+		// rule is not modified during evaluation, so it could be evaluated concurrently
+		public Object eval(BitSet types, ParameterContext paramContext) {
 			if (matches(types, paramContext)) {
 				return calcSelectValue(types, paramContext);
 			}
@@ -1154,7 +1161,7 @@ public class GeneralRouter implements VehicleRouter {
 			} else if (selectValue instanceof String && selectValue.toString().startsWith(":")) {
 				String p = ((String) selectValue).substring(1);
 				if (paramContext != null && paramContext.vars.containsKey(p)) {
-					selectValue = parseValue(paramContext.vars.get(p), selectType);
+					return parseValue(paramContext.vars.get(p), selectType);
 				} else {
 					return null;
 				}
@@ -1218,14 +1225,11 @@ public class GeneralRouter implements VehicleRouter {
 		}
 
 		private boolean checkAllTypesShouldBePresent(BitSet types) {
-			// Bitset method subset is missing "filterTypes.isSubset(types)"    
-			// reset previous evaluation
-			// evalFilterTypes.clear(); // not needed same as or()
-			evalFilterTypes.or(filterTypes);
-			// evaluate bit intersection and check if filterTypes contained as set in types
-			evalFilterTypes.and(types);
-			if(!evalFilterTypes.equals(filterTypes)) {
-				return false;
+			// Bitset method subset is missing "filterTypes.isSubset(types)"
+			for (int i = filterTypes.nextSetBit(0); i >= 0; i = filterTypes.nextSetBit(i + 1)) {
+				if (!types.get(i)) {
+					return false;
+				}
 			}
 			return true;
 		}
@@ -0,0 +1,411 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hidden Markov model map matching of GPX points, alternative to routing between GPX points step by step
+ * in {@link RoutePlannerFrontEnd#searchGpxRoute}.
+ * Candidates of the point are road projections found by {@link RoutePlannerFrontEnd#findRouteSegment}.
+ * Emission probability depends on distance from the point to the candidate and transition probability on
+ * difference between route distance and distance between the points. Route distances from one candidate to all candidates
+ * of the next point are calculated by one Dijkstra search over road points bounded by distance between the points.
+ * Viterbi runs point by point, so calculation is linear in track length. When the next point has no candidates
+ * or can't be reached, matched chain is finished and the gap is kept as straight line.
+ * Turn restrictions are not taken into account.
+ */
+class GpxMapMatcher {
+
+	private static final Log log = PlatformUtil.getLog(GpxMapMatcher.class);
+
+	// route between points shouldn't be longer than distance between them multiplied by this ratio (plus gps error)
+	private static final double MAX_ROUTE_DISTANCE_RATIO = 2;
+	private static final int MAX_CANDIDATES = 6;
+	private static final int MAX_SEARCH_VERTICES = 20000;
+
+	private final RoutePlannerFrontEnd planner;
+	private final GpxRouteApproximation gctx;
+	private final RoutingContext ctx;
+	private final VehicleRouter router;
+	// distance to the road of the matched point
+	private final double maxPointDistance;
+	// standard deviation of gps error
+	private final double sigma;
+	// points closer than that to the previous one are not matched
+	private final double minPointsDistance;
+
+	private int searches;
+	private int searchedVertices;
+
+	GpxMapMatcher(RoutePlannerFrontEnd planner, GpxRouteApproximation gctx) {
+		this.planner = planner;
+		this.gctx = gctx;
+		this.ctx = gctx.ctx;
+		this.router = ctx.getRouter();
+		this.maxPointDistance = ctx.config.minPointApproximation;
+		this.sigma = Math.max(RoutePlannerFrontEnd.GPS_POSSIBLE_ERROR, maxPointDistance / 4);
+		this.minPointsDistance = 2 * sigma;
+	}
+
+	/**
+	 * Sets {@link GpxPoint#routeToTarget} and {@link GpxPoint#targetInd} of the first point of every matched chain
+	 */
+	void matchGpxPoints(List<GpxPoint> gpxPoints) throws IOException {
+		long time = System.currentTimeMillis();
+		RouteCalculationProgress progress = ctx.calculationProgress;
+		progress.totalIterations = gpxPoints.size();
+		List<MatchedPoint> chain = new ArrayList<MatchedPoint>();
+		GpxPoint lastMatched = null;
+		for (int i = 0; i < gpxPoints.size(); i++) {
+			if (progress.isCancelled) {
+				return;
+			}
+			progress.iteration = i;
+			GpxPoint p = gpxPoints.get(i);
+			if (lastMatched != null && i < gpxPoints.size() - 1
+					&& MapUtils.getDistance(lastMatched.loc, p.loc) < minPointsDistance) {
+				continue;
+			}
+			lastMatched = p;
+			MatchedPoint mp = findCandidates(p);
+			if (mp.candidates.isEmpty()) {
+				finishChain(chain);
+				chain.clear();
+				continue;
+			}
+			if (!chain.isEmpty()) {
+				// failed transition removes all candidates, they are needed to start the next chain
+				List<Candidate> candidates = new ArrayList<Candidate>(mp.candidates);
+				if (!calculateTransitions(chain.get(chain.size() - 1), mp)) {
+					finishChain(chain);
+					chain.clear();
+					for (Candidate c : candidates) {
+						c.prev = null;
+						c.route = null;
+					}
+					mp.candidates.addAll(candidates);
+				}
+			}
+			if (chain.isEmpty()) {
+				for (Candidate c : mp.candidates) {
+					c.score = c.emission;
+				}
+			}
+			chain.add(mp);
+		}
+		finishChain(chain);
+		log.info(String.format("GPX map matching of %d points: %d searches, %d vertices visited in %d ms",
+				gpxPoints.size(), searches, searchedVertices, System.currentTimeMillis() - time));
+	}
+
+	private MatchedPoint findCandidates(GpxPoint p) throws IOException {
+		MatchedPoint mp = new MatchedPoint(p);
+		gctx.routePointsSearched++;
+		RouteSegmentPoint rsp = findRouteSegment(p);
+		if (rsp == null) {
+			return mp;
+		}
+		for (RouteSegmentPoint o : rsp.others) {
+			double dist = MapUtils.getDistance(o.getPreciseLatLon(), p.loc);
+			if (dist > maxPointDistance || o.getSegmentStart() == 0) {
+				continue;
+			}
+			boolean duplicate = false;
+			for (Candidate c : mp.candidates) {
+				duplicate |= c.pnt.road.getId() == o.road.getId();
+			}
+			if (!duplicate) {
+				mp.candidates.add(new Candidate(o, -0.5 * (dist / sigma) * (dist / sigma)));
+				if (mp.candidates.size() >= MAX_CANDIDATES) {
+					break;
+				}
+			}
+		}
+		return mp;
+	}
+
+	RouteSegmentPoint findRouteSegment(GpxPoint p) throws IOException {
+		return planner.findRouteSegment(p.loc.getLatitude(), p.loc.getLongitude(), ctx, null, false);
+	}
+
+	RouteSegment loadRouteSegment(int x31, int y31) {
+		return ctx.loadRouteSegment(x31, y31, ctx.config.memoryLimitation);
+	}
+
+	/**
+	 * Viterbi step: finds the best previous candidate for every candidate of the next point.
+	 * Candidates which can't be reached are removed.
+	 */
+	private boolean calculateTransitions(MatchedPoint prev, MatchedPoint next) {
+		double pointsDist = MapUtils.getDistance(prev.point.loc, next.point.loc);
+		double maxDist = pointsDist * MAX_ROUTE_DISTANCE_RATIO + 2 * maxPointDistance;
+		gctx.routeDistCalculations += pointsDist;
+		SearchState state = new SearchState(next.candidates);
+		for (Candidate from : prev.candidates) {
+			searchRoutes(state, from, maxDist);
+			for (int t = 0; t < next.candidates.size(); t++) {
+				if (state.routes.get(t) == null) {
+					continue;
+				}
+				Candidate to = next.candidates.get(t);
+				double score = from.score - Math.abs(state.routeDistances[t] - pointsDist) / sigma + to.emission;
+				if (to.prev == null || score > to.score) {
+					to.prev = from;
+					to.score = score;
+					to.route = state.routes.get(t);
+				}
+			}
+		}
+		for (int t = next.candidates.size() - 1; t >= 0; t--) {
+			if (next.candidates.get(t).prev == null) {
+				next.candidates.remove(t);
+			}
+		}
+		return !next.candidates.isEmpty();
+	}
+
+	private void finishChain(List<MatchedPoint> chain) {
+		if (chain.size() < 2) {
+			return;
+		}
+		MatchedPoint last = chain.get(chain.size() - 1);
+		Candidate best = null;
+		for (Candidate c : last.candidates) {
+			if (best == null || c.score > best.score) {
+				best = c;
+			}
+		}
+		List<List<RouteSegmentResult>> routes = new ArrayList<List<RouteSegmentResult>>();
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			chain.get(i).point.pnt = best.pnt;
+			if (best.route != null) {
+				routes.add(best.route);
+			}
+			best = best.prev;
+		}
+		Collections.reverse(routes);
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		for (List<RouteSegmentResult> route : routes) {
+			for (RouteSegmentResult r : route) {
+				appendPiece(res, r.getObject(), r.getStartPointIndex(), r.getEndPointIndex());
+			}
+		}
+		if (!res.isEmpty()) {
+			publishChain(chain.get(0).point, last.point, res);
+		}
+	}
+
+	/**
+	 * @param res route of matched chain from start to target
+	 */
+	void publishChain(GpxPoint start, GpxPoint target, List<RouteSegmentResult> res) {
+		try {
+			res = new RouteResultPreparation().prepareResult(ctx, res, false);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		planner.makeSegmentPointPrecise(res.get(0), start.loc, true);
+		planner.makeSegmentPointPrecise(res.get(res.size() - 1), target.loc, false);
+		start.routeToTarget = res;
+		start.targetInd = target.ind;
+		if (ctx.getVisitor() != null) {
+			ctx.getVisitor().visitApproximatedSegments(res, start, target);
+		}
+	}
+
+	static void appendPiece(List<RouteSegmentResult> res, RouteDataObject road, int start, int end) {
+		if (start == end) {
+			return;
+		}
+		if (!res.isEmpty()) {
+			RouteSegmentResult last = res.get(res.size() - 1);
+			int ls = last.getStartPointIndex();
+			int le = last.getEndPointIndex();
+			boolean positive = start < end;
+			if (last.getObject().getId() == road.getId() && (ls < le) == positive) {
+				// continuation of the road or segment of matched point which ends route to it and starts route from it
+				boolean overlaps = positive ? start >= ls && start <= le : start <= ls && start >= le;
+				if (overlaps) {
+					if (positive ? end > le : end < le) {
+						last.setEndPointIndex(end);
+					}
+					return;
+				}
+			}
+		}
+		res.add(new RouteSegmentResult(road, start, end));
+	}
+
+	/**
+	 * Dijkstra search by distance from the candidate to all targets of the state
+	 */
+	private void searchRoutes(SearchState state, Candidate from, double maxDist) {
+		searches++;
+		gctx.routeCalculations++;
+		state.clear();
+		RouteSegmentPoint src = from.pnt;
+		RouteDataObject road = src.road;
+		int seg = src.getSegmentStart();
+		int oneway = router.isOneWay(road);
+		// candidates on the same segment are reached along the segment
+		for (int t = 0; t < state.targets.size(); t++) {
+			RouteSegmentPoint target = state.targets.get(t).pnt;
+			if (target.road.getId() == road.getId() && target.getSegmentStart() == seg) {
+				boolean positive = state.distToPoint(src, seg - 1) <= state.distToPoint(target, seg - 1);
+				if (positive ? oneway >= 0 : oneway <= 0) {
+					state.routeDistances[t] = BinaryRoutePlanner.squareRootDist(src.preciseX, src.preciseY,
+							target.preciseX, target.preciseY);
+					List<RouteSegmentResult> route = new ArrayList<RouteSegmentResult>();
+					route.add(positive ? new RouteSegmentResult(road, seg - 1, seg)
+							: new RouteSegmentResult(road, seg, seg - 1));
+					state.routes.set(t, route);
+				}
+			}
+		}
+		state.search(src, 0, maxDist, MAX_SEARCH_VERTICES);
+		searchedVertices += state.size;
+	}
+
+	private static class MatchedPoint {
+		final GpxPoint point;
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+
+		MatchedPoint(GpxPoint point) {
+			this.point = point;
+		}
+	}
+
+	private static class Candidate {
+		final RouteSegmentPoint pnt;
+		// log probabilities
+		final double emission;
+		double score;
+		Candidate prev;
+		// route from previous candidate
+		List<RouteSegmentResult> route;
+
+		Candidate(RouteSegmentPoint pnt, double emission) {
+			this.pnt = pnt;
+			this.emission = emission;
+		}
+	}
+
+	/**
+	 * Target is reached from the point moving along its segment
+	 */
+	private static class TargetEntry {
+		final int target;
+		final double distance;
+		final RouteDataObject road;
+		final int start;
+		final int end;
+		final TargetEntry next;
+
+		TargetEntry(int target, double distance, RouteDataObject road, int start, int end, TargetEntry next) {
+			this.target = target;
+			this.distance = distance;
+			this.road = road;
+			this.start = start;
+			this.end = end;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Search reused by searches from all candidates to the candidates of the same point
+	 */
+	private class SearchState extends RoadPointsSearch {
+		final List<Candidate> targets;
+		final TLongObjectHashMap<TargetEntry> entries = new TLongObjectHashMap<TargetEntry>();
+		final double[] routeDistances;
+		final List<List<RouteSegmentResult>> routes;
+
+		SearchState(List<Candidate> targets) {
+			super(GpxMapMatcher.this.router, false);
+			this.targets = targets;
+			routeDistances = new double[targets.size()];
+			routes = new ArrayList<List<RouteSegmentResult>>(Collections.<List<RouteSegmentResult>>nCopies(targets.size(), null));
+			for (int t = 0; t < targets.size(); t++) {
+				RouteSegmentPoint p = targets.get(t).pnt;
+				int seg = p.getSegmentStart();
+				int oneway = router.isOneWay(p.road);
+				if (oneway >= 0) {
+					addEntry(p.road.getPoint31XTile(seg - 1), p.road.getPoint31YTile(seg - 1),
+							new TargetEntry(t, distToPoint(p, seg - 1), p.road, seg - 1, seg, null));
+				}
+				if (oneway <= 0) {
+					addEntry(p.road.getPoint31XTile(seg), p.road.getPoint31YTile(seg),
+							new TargetEntry(t, distToPoint(p, seg), p.road, seg, seg - 1, null));
+				}
+			}
+		}
+
+		private void addEntry(int px, int py, TargetEntry e) {
+			long k = RouteContractionHierarchy.pointKey(px, py);
+			entries.put(k, new TargetEntry(e.target, e.distance, e.road, e.start, e.end, entries.get(k)));
+		}
+
+		void clear() {
+			for (int t = 0; t < routes.size(); t++) {
+				routes.set(t, null);
+			}
+		}
+
+		boolean allTargetsReachedBefore(float key) {
+			for (int t = 0; t < routes.size(); t++) {
+				if (routes.get(t) == null || routeDistances[t] > key) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		RouteSegment loadRouteSegment(int x31, int y31) {
+			return GpxMapMatcher.this.loadRouteSegment(x31, y31);
+		}
+
+		@Override
+		boolean visit(int v, float key) {
+			if (allTargetsReachedBefore(key)) {
+				return false;
+			}
+			for (TargetEntry e = entries.get(RouteContractionHierarchy.pointKey(x[v], y[v])); e != null; e = e.next) {
+				double d = key + e.distance;
+				if (routes.get(e.target) == null || d < routeDistances[e.target]) {
+					routeDistances[e.target] = d;
+					routes.set(e.target, collectRoute(v, e));
+				}
+			}
+			return true;
+		}
+
+		List<RouteSegmentResult> collectRoute(int v, TargetEntry e) {
+			List<RouteSegmentResult> pieces = new ArrayList<RouteSegmentResult>();
+			pieces.add(new RouteSegmentResult(e.road, e.start, e.end));
+			for (; v >= 0; v = parent[v]) {
+				pieces.add(new RouteSegmentResult(road[v], start[v], end[v]));
+			}
+			Collections.reverse(pieces);
+			List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+			for (RouteSegmentResult r : pieces) {
+				appendPiece(res, r.getObject(), r.getStartPointIndex(), r.getEndPointIndex());
+			}
+			return res;
+		}
+	}
+}
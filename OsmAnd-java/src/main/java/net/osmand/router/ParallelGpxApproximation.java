@@ -0,0 +1,228 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Approximates long GPX track in parallel. Track is cut at anchor points which are snapped to the only road around,
+ * so approximation of every chunk starts and ends at the same road point as approximation of the whole track passing it.
+ * Chunks are approximated by {@link RoutePlannerFrontEnd#approximateGpxPoints} with own routing contexts over own readers
+ * of the same files, decoded tiles are shared by {@link RoutingConfiguration#tileCache} if it's set.
+ * Results are stitched at anchors into the points of the track. Visitor of the context is not called by chunks.
+ */
+class ParallelGpxApproximation {
+
+	private static final Log log = PlatformUtil.getLog(ParallelGpxApproximation.class);
+
+	// chunk is not shorter than this number of approximation steps
+	private static final int MIN_CHUNK_STEPS = 5;
+	// more chunks than threads to balance chunks of different complexity
+	private static final int CHUNKS_PER_THREAD = 2;
+	// points checked after planned cut to find anchor
+	private static final int ANCHOR_SEARCH_POINTS = 50;
+	private static final long CANCEL_CHECK_MS = 100;
+
+	private final RoutePlannerFrontEnd planner;
+	private final GpxRouteApproximation gctx;
+	private final RoutingContext ctx;
+	private final int threads;
+
+	ParallelGpxApproximation(RoutePlannerFrontEnd planner, GpxRouteApproximation gctx, int threads) {
+		this.planner = planner;
+		this.gctx = gctx;
+		this.ctx = gctx.ctx;
+		this.threads = threads;
+	}
+
+	void approximate(List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		long time = System.currentTimeMillis();
+		TIntArrayList cuts = findAnchors(gpxPoints);
+		if (cuts.size() <= 2) {
+			planner.approximateGpxPoints(gctx, gpxPoints);
+			return;
+		}
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (int i = 0; i < cuts.size() - 1; i++) {
+			chunks.add(new Chunk(gpxPoints, cuts.get(i), cuts.get(i + 1)));
+		}
+		RouteCalculationProgress progress = ctx.calculationProgress;
+		progress.totalIterations = chunks.size();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.size()));
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (Chunk c : chunks) {
+				futures.add(executor.submit(c));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				progress.iteration = i;
+				waitChunk(futures.get(i), chunks);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (progress.isCancelled) {
+			return;
+		}
+		for (Chunk c : chunks) {
+			c.copyResults(gpxPoints);
+		}
+		log.info(String.format("GPX approximation of %d points in %d chunks by %d threads: %d ms",
+				gpxPoints.size(), chunks.size(), threads, System.currentTimeMillis() - time));
+	}
+
+	private void waitChunk(Future<Void> future, List<Chunk> chunks) throws IOException, InterruptedException {
+		while (true) {
+			try {
+				future.get(CANCEL_CHECK_MS, TimeUnit.MILLISECONDS);
+				return;
+			} catch (TimeoutException e) {
+				if (ctx.calculationProgress.isCancelled) {
+					for (Chunk c : chunks) {
+						c.progress.isCancelled = true;
+					}
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof InterruptedException) {
+					throw (InterruptedException) cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * @return indexes of first point, anchors and last point
+	 */
+	TIntArrayList findAnchors(List<GpxPoint> gpxPoints) throws IOException {
+		TIntArrayList cuts = new TIntArrayList();
+		if (gpxPoints.size() < 2) {
+			return cuts;
+		}
+		double length = gpxPoints.get(gpxPoints.size() - 1).cumDist - gpxPoints.get(0).cumDist;
+		double minChunk = MIN_CHUNK_STEPS * ctx.config.maxStepApproximation;
+		int chunks = (int) Math.min(threads * CHUNKS_PER_THREAD, length / minChunk);
+		cuts.add(0);
+		int ind = 0;
+		for (int c = 1; c < chunks; c++) {
+			double cutDist = gpxPoints.get(0).cumDist + length * c / chunks;
+			while (ind < gpxPoints.size() - 1 && gpxPoints.get(ind).cumDist < cutDist) {
+				ind++;
+			}
+			int end = Math.min(gpxPoints.size() - 1, ind + ANCHOR_SEARCH_POINTS);
+			for (; ind < end; ind++) {
+				if (gpxPoints.get(ind).cumDist - gpxPoints.get(cuts.get(cuts.size() - 1)).cumDist >= minChunk
+						&& isAnchor(gpxPoints.get(ind))) {
+					cuts.add(ind);
+					break;
+				}
+			}
+		}
+		if (cuts.get(cuts.size() - 1) != gpxPoints.size() - 1) {
+			cuts.add(gpxPoints.size() - 1);
+		}
+		return cuts;
+	}
+
+	/**
+	 * Point is anchor if it's close to the road and there are no other roads (except continuation of the same road)
+	 * within approximation distance
+	 */
+	private boolean isAnchor(GpxPoint p) throws IOException {
+		RouteSegmentPoint rsp = planner.findRouteSegment(p.loc.getLatitude(), p.loc.getLongitude(), ctx, null, false);
+		if (rsp == null || MapUtils.getDistance(rsp.getPreciseLatLon(), p.loc) > RoutePlannerFrontEnd.GPS_POSSIBLE_ERROR) {
+			return false;
+		}
+		for (RouteSegmentPoint o : rsp.others) {
+			if (o.getRoad().getId() != rsp.getRoad().getId()
+					&& MapUtils.getDistance(o.getPreciseLatLon(), p.loc) < ctx.config.minPointApproximation) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private BinaryMapIndexReader[] openReaders() throws IOException {
+		BinaryMapIndexReader[] maps = ctx.getMaps();
+		BinaryMapIndexReader[] readers = new BinaryMapIndexReader[maps.length];
+		for (int i = 0; i < maps.length; i++) {
+			readers[i] = maps[i].createCursor();
+		}
+		return readers;
+	}
+
+	private class Chunk implements Callable<Void> {
+		final int start;
+		final List<GpxPoint> points = new ArrayList<GpxPoint>();
+		final RouteCalculationProgress progress = new RouteCalculationProgress();
+		GpxRouteApproximation result;
+
+		Chunk(List<GpxPoint> gpxPoints, int start, int end) {
+			this.start = start;
+			for (int i = start; i <= end; i++) {
+				GpxPoint p = new GpxPoint(gpxPoints.get(i));
+				p.ind = i - start;
+				points.add(p);
+			}
+		}
+
+		@Override
+		public Void call() throws Exception {
+			BinaryMapIndexReader[] readers = openReaders();
+			try {
+				RoutingContext local = new RoutingContext(ctx.config, null, readers, ctx.calculationMode);
+				local.calculationProgress = progress;
+				result = new GpxRouteApproximation(local);
+				planner.approximateGpxPoints(result, points);
+				local.unloadAllData();
+			} finally {
+				for (BinaryMapIndexReader r : readers) {
+					r.close();
+				}
+			}
+			return null;
+		}
+
+		void copyResults(List<GpxPoint> gpxPoints) {
+			// last point is the first point of the next chunk
+			for (int i = 0; i < points.size(); i++) {
+				GpxPoint p = points.get(i);
+				GpxPoint target = gpxPoints.get(start + i);
+				if (target.pnt == null) {
+					target.pnt = p.pnt;
+				}
+				if (p.routeToTarget != null && i < points.size() - 1) {
+					target.routeToTarget = p.routeToTarget;
+					target.stepBackRoute = p.stepBackRoute;
+					target.targetInd = p.targetInd + start;
+				}
+			}
+			gctx.routeCalculations += result.routeCalculations;
+			gctx.routePointsSearched += result.routePointsSearched;
+			gctx.routeDistCalculations += result.routeDistCalculations;
+		}
+	}
+}
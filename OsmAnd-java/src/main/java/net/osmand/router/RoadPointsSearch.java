@@ -0,0 +1,135 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RouteContractionHierarchy.NodeQueue;
+import net.osmand.util.MapUtils;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra by distance over road points from the point on the road, bounded by distance and number of vertices.
+ * Used for short searches to many targets around where full routing is too heavy: walking transfers between
+ * transport stops in {@link TransportTransferGraph} and route distances between GPX points in {@link GpxMapMatcher}.
+ * Edges are road segments allowed by oneway, turn restrictions are not taken into account.
+ * Vertex {@code v} is reached by segment {@code start[v]} - {@code end[v]} of {@code road[v]} from {@code parent[v]}.
+ * Arrays are reused by searches of the same instance.
+ */
+abstract class RoadPointsSearch {
+
+	final VehicleRouter router;
+	// distance in meters or in 31 tile units
+	private final boolean measured;
+	private final TLongObjectHashMap<Integer> vertices = new TLongObjectHashMap<Integer>();
+	private final NodeQueue queue = new NodeQueue();
+	int[] x = new int[64];
+	int[] y = new int[64];
+	float[] dist = new float[64];
+	int[] parent = new int[64];
+	RouteDataObject[] road = new RouteDataObject[64];
+	int[] start = new int[64];
+	int[] end = new int[64];
+	int size;
+
+	RoadPointsSearch(VehicleRouter router, boolean measured) {
+		this.router = router;
+		this.measured = measured;
+	}
+
+	abstract RouteSegment loadRouteSegment(int x31, int y31);
+
+	/**
+	 * Called for vertices in order of distance
+	 * @return false to stop the search
+	 */
+	abstract boolean visit(int v, float key);
+
+	/**
+	 * Runs the search from the ends of the segment of the point
+	 * @param initial distance added to the distances from the point
+	 */
+	void search(RouteSegmentPoint src, double initial, double maxDist, int maxVertices) {
+		vertices.clear();
+		queue.clear();
+		size = 0;
+		RouteDataObject r = src.road;
+		int seg = src.getSegmentStart();
+		int oneway = router.isOneWay(r);
+		if (oneway >= 0) {
+			relax(r.getPoint31XTile(seg), r.getPoint31YTile(seg), initial + distToPoint(src, seg), -1, r, seg - 1, seg);
+		}
+		if (oneway <= 0) {
+			relax(r.getPoint31XTile(seg - 1), r.getPoint31YTile(seg - 1), initial + distToPoint(src, seg - 1), -1,
+					r, seg, seg - 1);
+		}
+		while (!queue.isEmpty()) {
+			float key = queue.peekKey();
+			int v = queue.poll();
+			if (key > dist[v]) {
+				continue;
+			}
+			if (key > maxDist || size > maxVertices || !visit(v, key)) {
+				break;
+			}
+			RouteSegment s = loadRouteSegment(x[v], y[v]);
+			for (; s != null; s = s.getNext()) {
+				RouteDataObject sr = s.getRoad();
+				int ind = s.getSegmentStart();
+				int ow = router.isOneWay(sr);
+				if (ow >= 0 && ind + 1 < sr.getPointsLength()) {
+					relax(sr.getPoint31XTile(ind + 1), sr.getPoint31YTile(ind + 1),
+							key + segmentDistance(sr, ind, ind + 1), v, sr, ind, ind + 1);
+				}
+				if (ow <= 0 && ind > 0) {
+					relax(sr.getPoint31XTile(ind - 1), sr.getPoint31YTile(ind - 1),
+							key + segmentDistance(sr, ind, ind - 1), v, sr, ind, ind - 1);
+				}
+			}
+		}
+	}
+
+	private void relax(int px, int py, double d, int parentVertex, RouteDataObject r, int s, int e) {
+		long k = RouteContractionHierarchy.pointKey(px, py);
+		Integer v = vertices.get(k);
+		if (v != null && dist[v] <= d) {
+			return;
+		}
+		if (v == null) {
+			if (size == x.length) {
+				int l = size * 2;
+				x = Arrays.copyOf(x, l);
+				y = Arrays.copyOf(y, l);
+				dist = Arrays.copyOf(dist, l);
+				parent = Arrays.copyOf(parent, l);
+				road = Arrays.copyOf(road, l);
+				start = Arrays.copyOf(start, l);
+				end = Arrays.copyOf(end, l);
+			}
+			v = size++;
+			vertices.put(k, v);
+			x[v] = px;
+			y[v] = py;
+		}
+		dist[v] = (float) d;
+		parent[v] = parentVertex;
+		road[v] = r;
+		start[v] = s;
+		end[v] = e;
+		queue.push(v, (float) d);
+	}
+
+	double distance(int x1, int y1, int x2, int y2) {
+		return measured ? MapUtils.measuredDist31(x1, y1, x2, y2) : BinaryRoutePlanner.squareRootDist(x1, y1, x2, y2);
+	}
+
+	double distToPoint(RouteSegmentPoint pnt, int ind) {
+		return distance(pnt.preciseX, pnt.preciseY, pnt.road.getPoint31XTile(ind), pnt.road.getPoint31YTile(ind));
+	}
+
+	double segmentDistance(RouteDataObject r, int from, int to) {
+		return distance(r.getPoint31XTile(from), r.getPoint31YTile(from), r.getPoint31XTile(to), r.getPoint31YTile(to));
+	}
+}
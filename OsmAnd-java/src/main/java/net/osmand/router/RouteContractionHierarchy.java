@@ -0,0 +1,691 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.osm.MapRenderingTypes;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+
+import org.apache.commons.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Contraction hierarchy overlay over the routing graph of a fixed set of OBF files.
+ * It is built offline for one {@link GeneralRouter} profile by {@link RouteContractionHierarchyBuilder}
+ * and stored in a sidecar file. Nodes are road junctions numbered by contraction order,
+ * edges are either pieces of roads between 2 junctions or shortcuts over a contracted junction.
+ * Turn costs are not part of the overlay, turn restrictions are checked on the unpacked route.
+ * Overlay is optional and it's not loaded by the app: caller loads it with {@link #load(File)} and sets it to
+ * {@link RoutingContext#contractionHierarchy} of the context created with {@code RouteCalculationMode.CONTRACTION}.
+ */
+public class RouteContractionHierarchy {
+
+	private static final Log log = PlatformUtil.getLog(RouteContractionHierarchy.class);
+
+	public static final String FILE_EXT = ".chroute";
+	private static final int MAGIC = 0x4f434852;
+	private static final int VERSION = 1;
+
+	final String routerKey;
+	final String[] fileNames;
+	final long[] fileDates;
+
+	// nodes are ordered by rank (contraction order)
+	final int[] nodeX;
+	final int[] nodeY;
+	private final long[] nodeKeys;
+	private final int[] nodeByKey;
+
+	// upward edges u -> v (rank(u) < rank(v)) stored at u
+	final int[] fwdOffsets;
+	final int[] fwdTarget;
+	final float[] fwdCost;
+	final int[] fwdData;
+	// upward edges v -> u (rank(u) < rank(v)) stored at u
+	final int[] bwdOffsets;
+	final int[] bwdTarget;
+	final float[] bwdCost;
+	final int[] bwdData;
+	// edge data >= 0 is a middle node of shortcut, otherwise -(piece + 1)
+	final long[] pieceRoad;
+	final int[] pieceStart;
+	final int[] pieceEnd;
+
+	RouteContractionHierarchy(String routerKey, String[] fileNames, long[] fileDates, int[] nodeX, int[] nodeY,
+			int[] fwdOffsets, int[] fwdTarget, float[] fwdCost, int[] fwdData,
+			int[] bwdOffsets, int[] bwdTarget, float[] bwdCost, int[] bwdData,
+			long[] pieceRoad, int[] pieceStart, int[] pieceEnd) {
+		this.routerKey = routerKey;
+		this.fileNames = fileNames;
+		this.fileDates = fileDates;
+		this.nodeX = nodeX;
+		this.nodeY = nodeY;
+		this.fwdOffsets = fwdOffsets;
+		this.fwdTarget = fwdTarget;
+		this.fwdCost = fwdCost;
+		this.fwdData = fwdData;
+		this.bwdOffsets = bwdOffsets;
+		this.bwdTarget = bwdTarget;
+		this.bwdCost = bwdCost;
+		this.bwdData = bwdData;
+		this.pieceRoad = pieceRoad;
+		this.pieceStart = pieceStart;
+		this.pieceEnd = pieceEnd;
+		long[] keys = new long[nodeX.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = pointKey(nodeX[i], nodeY[i]);
+		}
+		nodeKeys = Arrays.copyOf(keys, keys.length);
+		Arrays.sort(nodeKeys);
+		nodeByKey = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			nodeByKey[Arrays.binarySearch(nodeKeys, keys[i])] = i;
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeX.length;
+	}
+
+	public int getEdgeCount() {
+		return fwdTarget.length + bwdTarget.length;
+	}
+
+	static long pointKey(int x31, int y31) {
+		return (((long) x31) << 31) + y31;
+	}
+
+	int findNode(int x31, int y31) {
+		int ind = Arrays.binarySearch(nodeKeys, pointKey(x31, y31));
+		return ind < 0 ? -1 : nodeByKey[ind];
+	}
+
+	/**
+	 * Key of the router profile and parameters the overlay was built for.
+	 */
+	public static String getRouterKey(GeneralRouter router) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(router.getProfile()).append('/').append(router.getProfileName());
+		Map<String, String> params = new TreeMap<String, String>();
+		GeneralRouter.RouteAttributeContext ctx = router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED);
+		String[] keys = ctx.getParamKeys();
+		String[] values = ctx.getParamValues();
+		for (int i = 0; i < keys.length; i++) {
+			params.put(keys[i], values[i]);
+		}
+		for (Map.Entry<String, String> e : params.entrySet()) {
+			sb.append(';').append(e.getKey()).append('=').append(e.getValue());
+		}
+		return sb.toString();
+	}
+
+	static float getRoutingSpeed(VehicleRouter router, RouteDataObject road) {
+		float priority = router.defineSpeedPriority(road);
+		float speed = router.defineRoutingSpeed(road) * priority;
+		if (speed == 0) {
+			speed = router.getDefaultSpeed() * priority;
+		}
+		if (speed > router.getMaxSpeed()) {
+			speed = router.getMaxSpeed();
+		}
+		return speed;
+	}
+
+	/**
+	 * Time to pass segment between 2 neighbour points of the road (same formula as BinaryRoutePlanner),
+	 * negative if segment can't be passed.
+	 */
+	static float calculateSegmentTime(VehicleRouter router, RouteDataObject road, int from, int to, float speed) {
+		double obstacle = router.defineRoutingObstacle(road, from, to > from);
+		if (obstacle < 0) {
+			return -1;
+		}
+		double heightObstacle = router.defineHeightObstacle(road, (short) from, (short) to);
+		if (heightObstacle < 0) {
+			return -1;
+		}
+		double dist = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+				road.getPoint31XTile(to), road.getPoint31YTile(to));
+		return (float) (obstacle + heightObstacle + dist / speed);
+	}
+
+	/**
+	 * Overlay could answer the query only if it was built for the same profile and the same files
+	 * and there are no runtime changes of the graph (impassable roads, conditional tags).
+	 */
+	public boolean isValidFor(RoutingContext ctx) {
+		GeneralRouter router = ctx.config.router;
+		if (!routerKey.equals(getRouterKey(router)) || router.getImpassableRoadIds().length > 0
+				|| ctx.config.routeCalculationTime != 0) {
+			return false;
+		}
+		int matched = 0;
+		for (BinaryMapIndexReader reader : ctx.map.keySet()) {
+			if (reader.getRoutingIndexes().isEmpty()) {
+				continue;
+			}
+			int ind = Arrays.asList(fileNames).indexOf(reader.getFile().getName());
+			if (ind < 0 || fileDates[ind] != reader.getDateCreated()) {
+				return false;
+			}
+			matched++;
+		}
+		return matched == fileNames.length;
+	}
+
+	/**
+	 * @return route between points (not prepared) or null if overlay can't be used for these points
+	 */
+	public List<RouteSegmentResult> searchRoute(RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end)
+			throws IOException {
+		if (start.road.getId() == end.road.getId()) {
+			// movement along one road is not represented in the overlay
+			return null;
+		}
+		long timeToCalculate = System.nanoTime();
+		VehicleRouter router = ctx.getRouter();
+		TIntObjectHashMap<AccessPoint> sources = new TIntObjectHashMap<AccessPoint>();
+		TIntObjectHashMap<AccessPoint> targets = new TIntObjectHashMap<AccessPoint>();
+		int oneway = router.isOneWay(start.road);
+		if (oneway >= 0) {
+			collectAccessNode(router, start, true, true, sources);
+		}
+		if (oneway <= 0) {
+			collectAccessNode(router, start, false, true, sources);
+		}
+		oneway = router.isOneWay(end.road);
+		if (oneway >= 0) {
+			collectAccessNode(router, end, true, false, targets);
+		}
+		if (oneway <= 0) {
+			collectAccessNode(router, end, false, false, targets);
+		}
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return null;
+		}
+		QueryDirection fwd = new QueryDirection(fwdOffsets, fwdTarget, fwdCost, sources);
+		QueryDirection bwd = new QueryDirection(bwdOffsets, bwdTarget, bwdCost, targets);
+		int meet = bidirectionalSearch(fwd, bwd);
+		if (meet < 0) {
+			return null;
+		}
+		float best = fwd.entries.get(meet).dist + bwd.entries.get(meet).dist;
+
+		// collect pieces of roads (with the node they start from) in route order
+		TIntArrayList pieces = new TIntArrayList();
+		TIntArrayList path = new TIntArrayList();
+		int node = meet;
+		QueryEntry e = fwd.entries.get(node);
+		while (e.parent >= 0) {
+			path.add(e.edge);
+			path.add(e.parent);
+			path.add(node);
+			node = e.parent;
+			e = fwd.entries.get(node);
+		}
+		AccessPoint source = sources.get(node);
+		for (int i = path.size() - 3; i >= 0; i -= 3) {
+			unpackEdge(path.get(i + 1), path.get(i + 2), fwdData[path.get(i)], pieces);
+		}
+		node = meet;
+		e = bwd.entries.get(node);
+		while (e.parent >= 0) {
+			unpackEdge(node, e.parent, bwdData[e.edge], pieces);
+			node = e.parent;
+			e = bwd.entries.get(node);
+		}
+		AccessPoint target = targets.get(node);
+
+		List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
+		appendSegment(result, start.road, source.endPoint, source.nodePoint);
+		TLongObjectHashMap<RouteDataObject> roads = new TLongObjectHashMap<RouteDataObject>();
+		roads.put(start.road.getId(), start.road);
+		roads.put(end.road.getId(), end.road);
+		for (int i = 0; i < pieces.size(); i += 2) {
+			int p = pieces.get(i);
+			RouteDataObject road = roads.get(pieceRoad[p]);
+			if (road == null) {
+				road = loadRoad(ctx, pieceRoad[p], pieces.get(i + 1));
+				if (road == null) {
+					log.warn("Road " + (pieceRoad[p] >> 6) + " of routing overlay is not found in maps");
+					return null;
+				}
+				roads.put(road.getId(), road);
+			}
+			appendSegment(result, road, pieceStart[p], pieceEnd[p]);
+		}
+		appendSegment(result, end.road, target.nodePoint, target.endPoint);
+		if (router.restrictionsAware() && !checkRestrictions(result)) {
+			log.info("Route from routing overlay violates turn restrictions");
+			return null;
+		}
+		ctx.routingTime += best;
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.visitedSegments += fwd.entries.size() + bwd.entries.size();
+		}
+		log.info(String.format("Routing overlay route %.1f sec is found in %.2f ms (%d nodes visited)", best,
+				(System.nanoTime() - timeToCalculate) / 1e6, fwd.entries.size() + bwd.entries.size()));
+		return result;
+	}
+
+	/**
+	 * Shortest time between 2 nodes of the overlay or -1 if there is no route.
+	 */
+	float calculateDistance(int from, int to) {
+		AccessPoint ap = new AccessPoint();
+		TIntObjectHashMap<AccessPoint> sources = new TIntObjectHashMap<AccessPoint>();
+		sources.put(from, ap);
+		TIntObjectHashMap<AccessPoint> targets = new TIntObjectHashMap<AccessPoint>();
+		targets.put(to, ap);
+		QueryDirection fwd = new QueryDirection(fwdOffsets, fwdTarget, fwdCost, sources);
+		QueryDirection bwd = new QueryDirection(bwdOffsets, bwdTarget, bwdCost, targets);
+		int meet = bidirectionalSearch(fwd, bwd);
+		if (meet < 0) {
+			return -1;
+		}
+		return fwd.entries.get(meet).dist + bwd.entries.get(meet).dist;
+	}
+
+	private int bidirectionalSearch(QueryDirection fwd, QueryDirection bwd) {
+		// both directions go only upward by rank, search stops when queues can't improve best route
+		float best = Float.POSITIVE_INFINITY;
+		int meet = -1;
+		while (!fwd.queue.isEmpty() || !bwd.queue.isEmpty()) {
+			boolean forward = bwd.queue.isEmpty() || (!fwd.queue.isEmpty() && fwd.queue.peekKey() <= bwd.queue.peekKey());
+			QueryDirection dir = forward ? fwd : bwd;
+			QueryDirection opposite = forward ? bwd : fwd;
+			if (dir.queue.peekKey() >= best) {
+				dir.queue.clear();
+				continue;
+			}
+			int node = dir.settleNext();
+			if (node < 0) {
+				continue;
+			}
+			QueryEntry o = opposite.entries.get(node);
+			if (o != null && o.settled) {
+				float d = dir.entries.get(node).dist + o.dist;
+				if (d < best) {
+					best = d;
+					meet = node;
+				}
+			}
+			dir.relax(node);
+		}
+		return meet;
+	}
+
+	private RouteDataObject loadRoad(RoutingContext ctx, long roadId, int node) {
+		RouteSegment s = ctx.loadRouteSegment(nodeX[node], nodeY[node], ctx.config.memoryLimitation);
+		while (s != null) {
+			if (s.getRoad().getId() == roadId) {
+				return s.getRoad();
+			}
+			s = s.getNext();
+		}
+		return null;
+	}
+
+	private void unpackEdge(int from, int to, int data, TIntArrayList pieces) {
+		if (data < 0) {
+			pieces.add(-data - 1);
+			pieces.add(from);
+			return;
+		}
+		int middle = data;
+		// from -> middle is stored as backward edge of middle, middle -> to as forward edge of middle
+		int first = findCheapestEdge(bwdOffsets, bwdTarget, bwdCost, middle, from);
+		int second = findCheapestEdge(fwdOffsets, fwdTarget, fwdCost, middle, to);
+		if (first < 0 || second < 0) {
+			throw new IllegalStateException("Routing overlay is corrupted: shortcut " + from + " -> " + to);
+		}
+		unpackEdge(from, middle, bwdData[first], pieces);
+		unpackEdge(middle, to, fwdData[second], pieces);
+	}
+
+	private static int findCheapestEdge(int[] offsets, int[] target, float[] cost, int node, int to) {
+		int res = -1;
+		for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+			if (target[i] == to && (res == -1 || cost[i] < cost[res])) {
+				res = i;
+			}
+		}
+		return res;
+	}
+
+	private void collectAccessNode(VehicleRouter router, RouteSegmentPoint pnt, boolean positive, boolean fromPoint,
+			TIntObjectHashMap<AccessPoint> res) {
+		// precise point is the projection on segment [segStart - 1, segStart]
+		RouteDataObject road = pnt.road;
+		int step = positive == fromPoint ? 1 : -1;
+		int ind = step > 0 ? pnt.getSegmentStart() : pnt.getSegmentStart() - 1;
+		float speed = getRoutingSpeed(router, road);
+		float cost = (float) (BinaryRoutePlanner.squareRootDist(pnt.preciseX, pnt.preciseY,
+				road.getPoint31XTile(ind), road.getPoint31YTile(ind)) / speed);
+		while (ind >= 0 && ind < road.getPointsLength()) {
+			int node = findNode(road.getPoint31XTile(ind), road.getPoint31YTile(ind));
+			if (node >= 0) {
+				AccessPoint ap = res.get(node);
+				if (ap == null || ap.cost > cost) {
+					ap = new AccessPoint();
+					ap.cost = cost;
+					ap.nodePoint = ind;
+					ap.endPoint = step > 0 ? pnt.getSegmentStart() - 1 : pnt.getSegmentStart();
+					res.put(node, ap);
+				}
+				return;
+			}
+			int next = ind + step;
+			if (next < 0 || next >= road.getPointsLength()) {
+				return;
+			}
+			float time = positive ? calculateSegmentTime(router, road, Math.min(ind, next), Math.max(ind, next), speed)
+					: calculateSegmentTime(router, road, Math.max(ind, next), Math.min(ind, next), speed);
+			if (time < 0) {
+				return;
+			}
+			cost += time;
+			ind = next;
+		}
+	}
+
+	private static void appendSegment(List<RouteSegmentResult> result, RouteDataObject road, int start, int end) {
+		if (start == end) {
+			return;
+		}
+		if (!result.isEmpty()) {
+			RouteSegmentResult last = result.get(result.size() - 1);
+			if (last.getObject().getId() == road.getId() && last.getEndPointIndex() == start
+					&& (last.getStartPointIndex() < start) == (start < end)) {
+				last.setEndPointIndex(end);
+				return;
+			}
+		}
+		result.add(new RouteSegmentResult(road, start, end));
+	}
+
+	private static boolean checkRestrictions(List<RouteSegmentResult> result) {
+		for (int i = 1; i < result.size(); i++) {
+			RouteDataObject from = result.get(i - 1).getObject();
+			long to = result.get(i).getObject().getId();
+			if (from.getId() == to) {
+				continue;
+			}
+			boolean onlyRestriction = false;
+			boolean onlyAllowed = false;
+			for (int k = 0; k < from.getRestrictionLength(); k++) {
+				int type = from.getRestrictionType(k);
+				boolean only = type == MapRenderingTypes.RESTRICTION_ONLY_LEFT_TURN
+						|| type == MapRenderingTypes.RESTRICTION_ONLY_RIGHT_TURN
+						|| type == MapRenderingTypes.RESTRICTION_ONLY_STRAIGHT_ON;
+				onlyRestriction |= only;
+				if (from.getRestrictionId(k) == to) {
+					if (!only) {
+						return false;
+					}
+					onlyAllowed = true;
+				}
+			}
+			if (onlyRestriction && !onlyAllowed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(routerKey);
+			out.writeInt(fileNames.length);
+			for (int i = 0; i < fileNames.length; i++) {
+				out.writeUTF(fileNames[i]);
+				out.writeLong(fileDates[i]);
+			}
+			writeInts(out, nodeX);
+			writeInts(out, nodeY);
+			writeInts(out, fwdOffsets);
+			writeInts(out, fwdTarget);
+			writeFloats(out, fwdCost);
+			writeInts(out, fwdData);
+			writeInts(out, bwdOffsets);
+			writeInts(out, bwdTarget);
+			writeFloats(out, bwdCost);
+			writeInts(out, bwdData);
+			out.writeInt(pieceRoad.length);
+			for (long l : pieceRoad) {
+				out.writeLong(l);
+			}
+			writeInts(out, pieceStart);
+			writeInts(out, pieceEnd);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return overlay or null if file doesn't exist or has different format version
+	 */
+	public static RouteContractionHierarchy load(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("Routing overlay " + file.getName() + " has unsupported format");
+				return null;
+			}
+			String routerKey = in.readUTF();
+			String[] fileNames = new String[in.readInt()];
+			long[] fileDates = new long[fileNames.length];
+			for (int i = 0; i < fileNames.length; i++) {
+				fileNames[i] = in.readUTF();
+				fileDates[i] = in.readLong();
+			}
+			int[] nodeX = readInts(in);
+			int[] nodeY = readInts(in);
+			int[] fwdOffsets = readInts(in);
+			int[] fwdTarget = readInts(in);
+			float[] fwdCost = readFloats(in);
+			int[] fwdData = readInts(in);
+			int[] bwdOffsets = readInts(in);
+			int[] bwdTarget = readInts(in);
+			float[] bwdCost = readFloats(in);
+			int[] bwdData = readInts(in);
+			long[] pieceRoad = new long[in.readInt()];
+			for (int i = 0; i < pieceRoad.length; i++) {
+				pieceRoad[i] = in.readLong();
+			}
+			int[] pieceStart = readInts(in);
+			int[] pieceEnd = readInts(in);
+			return new RouteContractionHierarchy(routerKey, fileNames, fileDates, nodeX, nodeY,
+					fwdOffsets, fwdTarget, fwdCost, fwdData, bwdOffsets, bwdTarget, bwdCost, bwdData,
+					pieceRoad, pieceStart, pieceEnd);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ar) throws IOException {
+		out.writeInt(ar.length);
+		for (int i : ar) {
+			out.writeInt(i);
+		}
+	}
+
+	private static void writeFloats(DataOutputStream out, float[] ar) throws IOException {
+		out.writeInt(ar.length);
+		for (float f : ar) {
+			out.writeFloat(f);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int[] ar = new int[in.readInt()];
+		for (int i = 0; i < ar.length; i++) {
+			ar[i] = in.readInt();
+		}
+		return ar;
+	}
+
+	private static float[] readFloats(DataInputStream in) throws IOException {
+		float[] ar = new float[in.readInt()];
+		for (int i = 0; i < ar.length; i++) {
+			ar[i] = in.readFloat();
+		}
+		return ar;
+	}
+
+	private static class AccessPoint {
+		float cost;
+		// point of the road where overlay node is located
+		int nodePoint;
+		// point of the road next to the precise point
+		int endPoint;
+	}
+
+	private static class QueryEntry {
+		float dist;
+		int parent = -1;
+		int edge = -1;
+		boolean settled;
+	}
+
+	private static class QueryDirection {
+		final int[] offsets;
+		final int[] target;
+		final float[] cost;
+		final TIntObjectHashMap<QueryEntry> entries = new TIntObjectHashMap<QueryEntry>();
+		final NodeQueue queue = new NodeQueue();
+
+		QueryDirection(int[] offsets, int[] target, float[] cost, TIntObjectHashMap<AccessPoint> seeds) {
+			this.offsets = offsets;
+			this.target = target;
+			this.cost = cost;
+			for (int node : seeds.keys()) {
+				QueryEntry e = new QueryEntry();
+				e.dist = seeds.get(node).cost;
+				entries.put(node, e);
+				queue.push(node, e.dist);
+			}
+		}
+
+		int settleNext() {
+			float key = queue.peekKey();
+			int node = queue.poll();
+			QueryEntry e = entries.get(node);
+			if (e.settled || key > e.dist) {
+				return -1;
+			}
+			e.settled = true;
+			return node;
+		}
+
+		void relax(int node) {
+			float dist = entries.get(node).dist;
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int t = target[i];
+				float d = dist + cost[i];
+				QueryEntry e = entries.get(t);
+				if (e == null) {
+					e = new QueryEntry();
+					entries.put(t, e);
+				} else if (e.dist <= d) {
+					continue;
+				}
+				e.dist = d;
+				e.parent = node;
+				e.edge = i;
+				queue.push(t, d);
+			}
+		}
+	}
+
+	/**
+	 * Binary heap of nodes ordered by float key, outdated entries are not removed.
+	 */
+	static class NodeQueue {
+		private int[] nodes = new int[64];
+		private float[] keys = new float[64];
+		private int size;
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public void clear() {
+			size = 0;
+		}
+
+		public float peekKey() {
+			return keys[0];
+		}
+
+		public void push(int node, float key) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				nodes[i] = nodes[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		public int poll() {
+			int res = nodes[0];
+			size--;
+			int node = nodes[size];
+			float key = keys[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (key <= keys[child]) {
+					break;
+				}
+				nodes[i] = nodes[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+			return res;
+		}
+	}
+}
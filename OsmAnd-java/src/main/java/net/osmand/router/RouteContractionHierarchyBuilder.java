@@ -0,0 +1,443 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.RouteContractionHierarchy.NodeQueue;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Offline preprocessing of routing data into {@link RouteContractionHierarchy}.
+ * Router profile (with its parameters) is fixed at build time, junctions are contracted
+ * in the order of edge difference with lazy updates and limited witness searches.
+ */
+public class RouteContractionHierarchyBuilder {
+
+	private static final Log log = PlatformUtil.getLog(RouteContractionHierarchyBuilder.class);
+
+	// limit of settled nodes for witness search (bigger limit - less shortcuts, slower preprocessing)
+	public int WITNESS_SETTLED_LIMIT = 300;
+
+	private final GeneralRouter router;
+	private final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+	private final TLongHashSet roadIds = new TLongHashSet();
+	private final List<String> fileNames = new ArrayList<String>();
+	private final TLongArrayList fileDates = new TLongArrayList();
+
+	// graph under contraction
+	private int[] edgeFrom = new int[1024];
+	private int[] edgeTo = new int[1024];
+	private float[] edgeCost = new float[1024];
+	private int[] edgeData = new int[1024];
+	private int edgeCount;
+	private TIntArrayList[] outEdges;
+	private TIntArrayList[] inEdges;
+	private int[] rank;
+
+	// witness search state
+	private float[] witnessDist;
+	private int[] witnessStamp;
+	private int witnessRun;
+	private final NodeQueue witnessQueue = new NodeQueue();
+
+	public RouteContractionHierarchyBuilder(GeneralRouter router) {
+		this.router = router;
+	}
+
+	public void addReader(BinaryMapIndexReader reader) throws IOException {
+		List<RouteRegion> regions = reader.getRoutingIndexes();
+		if (regions.isEmpty()) {
+			return;
+		}
+		fileNames.add(reader.getFile().getName());
+		fileDates.add(reader.getDateCreated());
+		SearchRequest<RouteDataObject> request = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+				0, Integer.MAX_VALUE, null);
+		for (RouteRegion reg : regions) {
+			for (RouteSubregion sub : reg.getSubregions()) {
+				List<RouteSubregion> tiles = reader.searchRouteIndexTree(request,
+						Collections.singletonList(new RouteSubregion(sub)));
+				for (RouteSubregion tile : tiles) {
+					for (RouteDataObject ro : reader.loadRouteIndexData(tile)) {
+						if (ro != null && ro.getPointsLength() > 1 && !roadIds.contains(ro.getId())
+								&& router.acceptLine(ro)) {
+							roadIds.add(ro.getId());
+							roads.add(ro);
+						}
+					}
+				}
+			}
+		}
+		log.info("Routing overlay: " + roads.size() + " roads after " + reader.getFile().getName());
+	}
+
+	public RouteContractionHierarchy build() {
+		long time = System.currentTimeMillis();
+		long[] nodeKeys = collectJunctions(roads);
+		int nodes = nodeKeys.length;
+		initGraph(nodes);
+		TLongArrayList pieceRoad = new TLongArrayList();
+		TIntArrayList pieceStart = new TIntArrayList();
+		TIntArrayList pieceEnd = new TIntArrayList();
+		for (RouteDataObject road : roads) {
+			int prevNode = -1;
+			int prevPoint = -1;
+			for (int i = 0; i < road.getPointsLength(); i++) {
+				int node = Arrays.binarySearch(nodeKeys,
+						RouteContractionHierarchy.pointKey(road.getPoint31XTile(i), road.getPoint31YTile(i)));
+				if (node < 0) {
+					continue;
+				}
+				if (prevNode >= 0 && prevNode != node) {
+					int oneway = router.isOneWay(road);
+					if (oneway >= 0) {
+						addPiece(road, prevPoint, i, prevNode, node, pieceRoad, pieceStart, pieceEnd);
+					}
+					if (oneway <= 0) {
+						addPiece(road, i, prevPoint, node, prevNode, pieceRoad, pieceStart, pieceEnd);
+					}
+				}
+				prevNode = node;
+				prevPoint = i;
+			}
+		}
+		roads.clear();
+		log.info(String.format("Routing overlay: graph %d nodes, %d edges is prepared in %d ms", nodes, edgeCount,
+				System.currentTimeMillis() - time));
+		return buildHierarchy(nodeKeys, pieceRoad, pieceStart, pieceEnd);
+	}
+
+	void initGraph(int nodes) {
+		outEdges = new TIntArrayList[nodes];
+		inEdges = new TIntArrayList[nodes];
+		edgeCount = 0;
+	}
+
+	RouteContractionHierarchy buildHierarchy(long[] nodeKeys, TLongArrayList pieceRoad, TIntArrayList pieceStart,
+			TIntArrayList pieceEnd) {
+		long time = System.currentTimeMillis();
+		int nodes = nodeKeys.length;
+		int baseEdges = edgeCount;
+		contract(nodes);
+		log.info(String.format("Routing overlay: contracted with %d shortcuts in %d ms", edgeCount - baseEdges,
+				System.currentTimeMillis() - time));
+
+		int[] nodeX = new int[nodes];
+		int[] nodeY = new int[nodes];
+		for (int i = 0; i < nodes; i++) {
+			nodeX[rank[i]] = (int) (nodeKeys[i] >> 31);
+			nodeY[rank[i]] = (int) (nodeKeys[i] - (((long) nodeX[rank[i]]) << 31));
+		}
+		int[] fwdOffsets = new int[nodes + 1];
+		int[] bwdOffsets = new int[nodes + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			int from = rank[edgeFrom[e]];
+			int to = rank[edgeTo[e]];
+			if (from < to) {
+				fwdOffsets[from + 1]++;
+			} else {
+				bwdOffsets[to + 1]++;
+			}
+		}
+		for (int i = 0; i < nodes; i++) {
+			fwdOffsets[i + 1] += fwdOffsets[i];
+			bwdOffsets[i + 1] += bwdOffsets[i];
+		}
+		int[] fwdTarget = new int[fwdOffsets[nodes]];
+		float[] fwdCost = new float[fwdTarget.length];
+		int[] fwdData = new int[fwdTarget.length];
+		int[] bwdTarget = new int[bwdOffsets[nodes]];
+		float[] bwdCost = new float[bwdTarget.length];
+		int[] bwdData = new int[bwdTarget.length];
+		int[] fwdFill = Arrays.copyOf(fwdOffsets, nodes);
+		int[] bwdFill = Arrays.copyOf(bwdOffsets, nodes);
+		for (int e = 0; e < edgeCount; e++) {
+			int from = rank[edgeFrom[e]];
+			int to = rank[edgeTo[e]];
+			int data = edgeData[e] >= 0 ? rank[edgeData[e]] : edgeData[e];
+			if (from < to) {
+				int p = fwdFill[from]++;
+				fwdTarget[p] = to;
+				fwdCost[p] = edgeCost[e];
+				fwdData[p] = data;
+			} else {
+				int p = bwdFill[to]++;
+				bwdTarget[p] = from;
+				bwdCost[p] = edgeCost[e];
+				bwdData[p] = data;
+			}
+		}
+		edgeFrom = edgeTo = edgeData = null;
+		edgeCost = null;
+		outEdges = inEdges = null;
+		return new RouteContractionHierarchy(RouteContractionHierarchy.getRouterKey(router),
+				fileNames.toArray(new String[0]), fileDates.toArray(), nodeX, nodeY,
+				fwdOffsets, fwdTarget, fwdCost, fwdData, bwdOffsets, bwdTarget, bwdCost, bwdData,
+				pieceRoad.toArray(), pieceStart.toArray(), pieceEnd.toArray());
+	}
+
+	static long[] collectJunctions(List<RouteDataObject> roads) {
+		// junction is a point shared by 2 roads (or used twice by one road) or the end of road
+		TLongArrayList points = new TLongArrayList();
+		for (RouteDataObject road : roads) {
+			int last = road.getPointsLength() - 1;
+			for (int i = 0; i <= last; i++) {
+				long key = RouteContractionHierarchy.pointKey(road.getPoint31XTile(i), road.getPoint31YTile(i));
+				points.add(key);
+				if (i == 0 || i == last) {
+					points.add(key);
+				}
+			}
+		}
+		long[] sorted = points.toArray();
+		Arrays.sort(sorted);
+		TLongArrayList junctions = new TLongArrayList();
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] == sorted[i - 1] && (junctions.isEmpty() || junctions.get(junctions.size() - 1) != sorted[i])) {
+				junctions.add(sorted[i]);
+			}
+		}
+		return junctions.toArray();
+	}
+
+	private void addPiece(RouteDataObject road, int start, int end, int from, int to,
+			TLongArrayList pieceRoad, TIntArrayList pieceStart, TIntArrayList pieceEnd) {
+		float speed = RouteContractionHierarchy.getRoutingSpeed(router, road);
+		float cost = 0;
+		int step = start < end ? 1 : -1;
+		for (int i = start; i != end; i += step) {
+			float time = RouteContractionHierarchy.calculateSegmentTime(router, road, i, i + step, speed);
+			if (time < 0) {
+				return;
+			}
+			cost += time;
+		}
+		addEdge(from, to, cost, -(pieceRoad.size() + 1));
+		pieceRoad.add(road.getId());
+		pieceStart.add(start);
+		pieceEnd.add(end);
+	}
+
+	void addEdge(int from, int to, float cost, int data) {
+		if (edgeCount == edgeFrom.length) {
+			int l = edgeCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, l);
+			edgeTo = Arrays.copyOf(edgeTo, l);
+			edgeCost = Arrays.copyOf(edgeCost, l);
+			edgeData = Arrays.copyOf(edgeData, l);
+		}
+		int e = edgeCount++;
+		edgeFrom[e] = from;
+		edgeTo[e] = to;
+		edgeCost[e] = cost;
+		edgeData[e] = data;
+		if (outEdges[from] == null) {
+			outEdges[from] = new TIntArrayList(4);
+		}
+		outEdges[from].add(e);
+		if (inEdges[to] == null) {
+			inEdges[to] = new TIntArrayList(4);
+		}
+		inEdges[to].add(e);
+	}
+
+	private void contract(int nodes) {
+		rank = new int[nodes];
+		Arrays.fill(rank, -1);
+		witnessDist = new float[nodes];
+		witnessStamp = new int[nodes];
+		int[] contractedNeighbours = new int[nodes];
+		NodeQueue queue = new NodeQueue();
+		for (int v = 0; v < nodes; v++) {
+			queue.push(v, priority(v, contractedNeighbours));
+		}
+		int order = 0;
+		while (!queue.isEmpty()) {
+			int v = queue.poll();
+			if (rank[v] >= 0) {
+				continue;
+			}
+			// lazy update: priority could only grow after neighbours were contracted
+			float p = priority(v, contractedNeighbours);
+			if (!queue.isEmpty() && p > queue.peekKey()) {
+				queue.push(v, p);
+				continue;
+			}
+			contractNode(v, true);
+			rank[v] = order++;
+			markNeighbours(v, outEdges[v], false, contractedNeighbours);
+			markNeighbours(v, inEdges[v], true, contractedNeighbours);
+			if (order % 100000 == 0) {
+				log.info("Routing overlay: " + order + " of " + nodes + " nodes contracted, " + edgeCount + " edges");
+			}
+		}
+	}
+
+	private void markNeighbours(int v, TIntArrayList edges, boolean in, int[] contractedNeighbours) {
+		if (edges != null) {
+			for (int i = 0; i < edges.size(); i++) {
+				int e = edges.get(i);
+				contractedNeighbours[in ? edgeFrom[e] : edgeTo[e]]++;
+			}
+		}
+	}
+
+	private float priority(int v, int[] contractedNeighbours) {
+		int degree = liveDegree(outEdges[v], false) + liveDegree(inEdges[v], true);
+		return contractNode(v, false) - degree + contractedNeighbours[v];
+	}
+
+	private int liveDegree(TIntArrayList edges, boolean in) {
+		int degree = 0;
+		if (edges != null) {
+			for (int i = 0; i < edges.size(); i++) {
+				int e = edges.get(i);
+				if (rank[in ? edgeFrom[e] : edgeTo[e]] < 0) {
+					degree++;
+				}
+			}
+		}
+		return degree;
+	}
+
+	/**
+	 * @return number of shortcuts required to contract node v (they are added if addShortcuts is set)
+	 */
+	private int contractNode(int v, boolean addShortcuts) {
+		TIntArrayList in = inEdges[v];
+		TIntArrayList out = outEdges[v];
+		if (in == null || out == null) {
+			return 0;
+		}
+		TIntArrayList targets = new TIntArrayList();
+		float[] targetCosts = new float[out.size()];
+		for (int i = 0; i < out.size(); i++) {
+			int e = out.get(i);
+			int w = edgeTo[e];
+			if (rank[w] >= 0 || w == v) {
+				continue;
+			}
+			int ind = targets.indexOf(w);
+			if (ind < 0) {
+				targetCosts[targets.size()] = edgeCost[e];
+				targets.add(w);
+			} else if (targetCosts[ind] > edgeCost[e]) {
+				targetCosts[ind] = edgeCost[e];
+			}
+		}
+		if (targets.isEmpty()) {
+			return 0;
+		}
+		TIntArrayList sources = new TIntArrayList();
+		int shortcuts = 0;
+		for (int i = 0; i < in.size(); i++) {
+			int u = edgeFrom[in.get(i)];
+			if (rank[u] >= 0 || u == v || sources.contains(u)) {
+				continue;
+			}
+			sources.add(u);
+			float inCost = Float.POSITIVE_INFINITY;
+			for (int j = i; j < in.size(); j++) {
+				if (edgeFrom[in.get(j)] == u) {
+					inCost = Math.min(inCost, edgeCost[in.get(j)]);
+				}
+			}
+			float maxCost = 0;
+			for (int j = 0; j < targets.size(); j++) {
+				if (targets.get(j) != u) {
+					maxCost = Math.max(maxCost, inCost + targetCosts[j]);
+				}
+			}
+			witnessSearch(u, v, maxCost);
+			for (int j = 0; j < targets.size(); j++) {
+				int w = targets.get(j);
+				float cost = inCost + targetCosts[j];
+				if (w != u && getWitnessDist(w) > cost) {
+					shortcuts++;
+					if (addShortcuts) {
+						addEdge(u, w, cost, v);
+					}
+				}
+			}
+		}
+		return shortcuts;
+	}
+
+	private float getWitnessDist(int node) {
+		return witnessStamp[node] == witnessRun ? witnessDist[node] : Float.POSITIVE_INFINITY;
+	}
+
+	private void witnessSearch(int source, int excluded, float maxCost) {
+		witnessRun++;
+		witnessQueue.clear();
+		witnessStamp[source] = witnessRun;
+		witnessDist[source] = 0;
+		witnessQueue.push(source, 0);
+		int settled = 0;
+		while (!witnessQueue.isEmpty()) {
+			float d = witnessQueue.peekKey();
+			int x = witnessQueue.poll();
+			if (d > getWitnessDist(x)) {
+				continue;
+			}
+			if (d > maxCost || ++settled > WITNESS_SETTLED_LIMIT) {
+				break;
+			}
+			TIntArrayList out = outEdges[x];
+			if (out == null) {
+				continue;
+			}
+			for (int i = 0; i < out.size(); i++) {
+				int e = out.get(i);
+				int y = edgeTo[e];
+				if (y == excluded || rank[y] >= 0) {
+					continue;
+				}
+				float nd = d + edgeCost[e];
+				if (nd < getWitnessDist(y)) {
+					witnessStamp[y] = witnessRun;
+					witnessDist[y] = nd;
+					witnessQueue.push(y, nd);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: <routing profile> <output file> <obf file> [<obf file> ...]");
+			return;
+		}
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build(args[0],
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT));
+		RouteContractionHierarchyBuilder builder = new RouteContractionHierarchyBuilder(config.router);
+		for (int i = 2; i < args.length; i++) {
+			File f = new File(args[i]);
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f);
+			builder.addReader(reader);
+			reader.close();
+		}
+		RouteContractionHierarchy ch = builder.build();
+		ch.save(new File(args[1]));
+		System.out.println("Routing overlay " + args[1] + ": " + ch.getNodeCount() + " nodes, " + ch.getEdgeCount()
+				+ " edges");
+	}
+}
@@ -0,0 +1,195 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of evaluated router attribute values by region and types combination.
+ * Lookups are lock-free and don't allocate, so one router could be shared between routing threads.
+ * Values for interned types combinations (see {@link net.osmand.binary.RouteDataObject#getTypesCombinationId()}) are stored
+ * in flat array indexed by combination id, other combinations go to open addressing table.
+ * Entries are inserted with CAS, value put concurrently with resize could be lost (it will be evaluated again).
+ */
+class RouteEvalCache {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final ConcurrentHashMap<RouteRegion, RegionCache> regions = new ConcurrentHashMap<RouteRegion, RegionCache>();
+
+	/**
+	 * @return cached value or NaN if value is not cached
+	 */
+	public float get(RouteRegion reg, int typesId) {
+		RegionCache rc = regions.get(reg);
+		if (rc == null) {
+			return Float.NaN;
+		}
+		float[] v = rc.byId;
+		return typesId < v.length ? v[typesId] : Float.NaN;
+	}
+
+	public void put(RouteRegion reg, int typesId, float value) {
+		RegionCache rc = getRegionCache(reg);
+		float[] v = rc.byId;
+		if (typesId >= v.length) {
+			synchronized (rc) {
+				v = rc.byId;
+				if (typesId >= v.length) {
+					int l = Math.max(Math.max(v.length * 2, typesId + 1), reg.getTypesCombinationsCount());
+					float[] n = Arrays.copyOf(v, l);
+					Arrays.fill(n, v.length, l, Float.NaN);
+					rc.byId = v = n;
+				}
+			}
+		}
+		v[typesId] = value;
+	}
+
+	/**
+	 * @return cached value or NaN if value is not cached
+	 */
+	public float get(RouteRegion reg, int[] types, boolean extra) {
+		RegionCache rc = regions.get(reg);
+		if (rc == null) {
+			return Float.NaN;
+		}
+		return rc.table.get(types, extra, hash(types, extra));
+	}
+
+	public void put(RouteRegion reg, int[] types, boolean extra, float value) {
+		RegionCache rc = getRegionCache(reg);
+		int hash = hash(types, extra);
+		Entry e = new Entry(types.clone(), extra, hash, value);
+		Table t = rc.table;
+		if (!t.put(e)) {
+			synchronized (rc) {
+				if (rc.table == t) {
+					rc.table = t.resize();
+				}
+				rc.table.put(e);
+			}
+		}
+	}
+
+	private RegionCache getRegionCache(RouteRegion reg) {
+		RegionCache rc = regions.get(reg);
+		if (rc == null) {
+			rc = new RegionCache();
+			RegionCache ex = regions.putIfAbsent(reg, rc);
+			if (ex != null) {
+				rc = ex;
+			}
+		}
+		return rc;
+	}
+
+	public int size() {
+		int s = 0;
+		for (RegionCache rc : regions.values()) {
+			s += rc.table.size.get();
+			for (float f : rc.byId) {
+				if (!Float.isNaN(f)) {
+					s++;
+				}
+			}
+		}
+		return s;
+	}
+
+	public void clear() {
+		regions.clear();
+	}
+
+	static int hash(int[] types, boolean extra) {
+		int h = extra ? 1 : 0;
+		for (int i = 0; i < types.length; i++) {
+			h = 31 * h + types[i];
+		}
+		// spread bits as low bits are used for index
+		return h ^ (h >>> 16);
+	}
+
+	private static class RegionCache {
+		volatile Table table = new Table(INITIAL_CAPACITY);
+		volatile float[] byId = new float[0];
+	}
+
+	private static class Entry {
+		final int[] types;
+		final boolean extra;
+		final int hash;
+		final float value;
+
+		Entry(int[] types, boolean extra, int hash, float value) {
+			this.types = types;
+			this.extra = extra;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	private static class Table {
+		final AtomicReferenceArray<Entry> entries;
+		final AtomicInteger size = new AtomicInteger();
+		final int mask;
+
+		Table(int capacity) {
+			entries = new AtomicReferenceArray<Entry>(capacity);
+			mask = capacity - 1;
+		}
+
+		float get(int[] types, boolean extra, int hash) {
+			int i = hash & mask;
+			Entry e;
+			// table is at most half full, probes are bounded just in case
+			for (int probes = 0; probes <= mask && (e = entries.get(i)) != null; probes++) {
+				if (e.hash == hash && e.extra == extra && Arrays.equals(e.types, types)) {
+					return e.value;
+				}
+				i = (i + 1) & mask;
+			}
+			return Float.NaN;
+		}
+
+		/**
+		 * @return false if table is too full and needs to be resized
+		 */
+		boolean put(Entry n) {
+			// slot is reserved before probing, so concurrent puts can't fill table more than half
+			if (size.incrementAndGet() * 2 > entries.length()) {
+				size.decrementAndGet();
+				return false;
+			}
+			int i = n.hash & mask;
+			while (true) {
+				Entry e = entries.get(i);
+				if (e == null) {
+					if (entries.compareAndSet(i, null, n)) {
+						return true;
+					}
+					continue;
+				}
+				if (e.hash == n.hash && e.extra == n.extra && Arrays.equals(e.types, n.types)) {
+					size.decrementAndGet();
+					return true;
+				}
+				i = (i + 1) & mask;
+			}
+		}
+
+		Table resize() {
+			Table t = new Table(entries.length() * 2);
+			for (int i = 0; i < entries.length(); i++) {
+				Entry e = entries.get(i);
+				if (e != null) {
+					t.put(e);
+				}
+			}
+			return t;
+		}
+	}
+}
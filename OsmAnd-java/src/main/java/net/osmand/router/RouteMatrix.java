@@ -0,0 +1,32 @@
+package net.osmand.router;
+
+/**
+ * Travel times (seconds) and distances (meters) of the fastest routes between every source and target,
+ * -1 means that target is not reachable from the source (or point is not attached to the road network).
+ */
+public class RouteMatrix {
+
+	public final float[][] times;
+	public final float[][] distances;
+
+	public RouteMatrix(int sources, int targets) {
+		times = new float[sources][targets];
+		distances = new float[sources][targets];
+	}
+
+	public int getSourcesCount() {
+		return times.length;
+	}
+
+	public int getTargetsCount() {
+		return times.length == 0 ? 0 : times[0].length;
+	}
+
+	public float getTime(int source, int target) {
+		return times[source][target];
+	}
+
+	public float getDistance(int source, int target) {
+		return distances[source][target];
+	}
+}
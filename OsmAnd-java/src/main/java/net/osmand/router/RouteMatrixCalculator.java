@@ -0,0 +1,476 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RouteContractionHierarchy.NodeQueue;
+
+import org.apache.commons.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates many-to-many matrix of travel times over the roads of the loaded area.
+ * Roads are compressed once into immutable graph of junctions, then every source runs single Dijkstra search
+ * until all targets are settled. Sources are spread over {@link ForkJoinPool} and searches share the graph read-only.
+ * Turn restrictions and turn penalties are not taken into account.
+ */
+class RouteMatrixCalculator {
+
+	private static final Log log = PlatformUtil.getLog(RouteMatrixCalculator.class);
+
+	private final VehicleRouter router;
+	private final long[] nodeKeys;
+	// outgoing edges of the node i are [offsets[i], offsets[i + 1])
+	private final int[] offsets;
+	private final int[] edgeTarget;
+	private final float[] edgeTime;
+	private final float[] edgeDistance;
+
+	RouteMatrixCalculator(VehicleRouter router, List<RouteDataObject> loadedRoads) {
+		long time = System.currentTimeMillis();
+		this.router = router;
+		List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+		for (RouteDataObject ro : loadedRoads) {
+			if (ro.getPointsLength() > 1 && router.acceptLine(ro)) {
+				roads.add(ro);
+			}
+		}
+		nodeKeys = RouteContractionHierarchyBuilder.collectJunctions(roads);
+		EdgeList edges = new EdgeList();
+		for (RouteDataObject road : roads) {
+			int oneway = router.isOneWay(road);
+			int prevNode = -1;
+			int prevPoint = -1;
+			for (int i = 0; i < road.getPointsLength(); i++) {
+				int node = findNode(road.getPoint31XTile(i), road.getPoint31YTile(i));
+				if (node < 0) {
+					continue;
+				}
+				if (prevNode >= 0 && prevNode != node) {
+					if (oneway >= 0) {
+						addPiece(edges, road, prevPoint, i, prevNode, node);
+					}
+					if (oneway <= 0) {
+						addPiece(edges, road, i, prevPoint, node, prevNode);
+					}
+				}
+				prevNode = node;
+				prevPoint = i;
+			}
+		}
+		int nodes = nodeKeys.length;
+		offsets = new int[nodes + 1];
+		for (int e = 0; e < edges.size; e++) {
+			offsets[edges.from[e] + 1]++;
+		}
+		for (int i = 0; i < nodes; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		edgeTarget = new int[edges.size];
+		edgeTime = new float[edges.size];
+		edgeDistance = new float[edges.size];
+		int[] fill = Arrays.copyOf(offsets, nodes);
+		for (int e = 0; e < edges.size; e++) {
+			int p = fill[edges.from[e]]++;
+			edgeTarget[p] = edges.to[e];
+			edgeTime[p] = edges.time[e];
+			edgeDistance[p] = edges.distance[e];
+		}
+		log.info(String.format("Route matrix: graph %d nodes, %d edges is prepared in %d ms", nodes, edges.size,
+				System.currentTimeMillis() - time));
+	}
+
+	int getNodeCount() {
+		return nodeKeys.length;
+	}
+
+	private int findNode(int x31, int y31) {
+		int ind = Arrays.binarySearch(nodeKeys, RouteContractionHierarchy.pointKey(x31, y31));
+		return ind < 0 ? -1 : ind;
+	}
+
+	private void addPiece(EdgeList edges, RouteDataObject road, int start, int end, int from, int to) {
+		float speed = RouteContractionHierarchy.getRoutingSpeed(router, road);
+		float time = 0;
+		float distance = 0;
+		int step = start < end ? 1 : -1;
+		for (int i = start; i != end; i += step) {
+			float t = RouteContractionHierarchy.calculateSegmentTime(router, road, i, i + step, speed);
+			if (t < 0) {
+				return;
+			}
+			time += t;
+			distance += segmentDistance(road, i, i + step);
+		}
+		edges.add(from, to, time, distance);
+	}
+
+	private static float segmentDistance(RouteDataObject road, int from, int to) {
+		return (float) BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+				road.getPoint31XTile(to), road.getPoint31YTile(to));
+	}
+
+	/**
+	 * @param sources points of sources (null if point is not attached to any road)
+	 * @param targets points of targets (null if point is not attached to any road)
+	 * @return matrix or null if calculation was cancelled
+	 */
+	RouteMatrix calculate(List<RouteSegmentPoint> sources, List<RouteSegmentPoint> targets, int threads,
+			RouteCalculationProgress progress) {
+		long time = System.currentTimeMillis();
+		RouteMatrix matrix = new RouteMatrix(sources.size(), targets.size());
+		List<AccessPoint> sourceAccess = new ArrayList<AccessPoint>();
+		for (RouteSegmentPoint s : sources) {
+			sourceAccess.add(s == null ? null : collectAccessNodes(s, true));
+		}
+		TargetIndex targetIndex = new TargetIndex(nodeKeys.length, targets.size());
+		for (int t = 0; t < targets.size(); t++) {
+			RouteSegmentPoint p = targets.get(t);
+			if (p != null) {
+				for (AccessPoint a = collectAccessNodes(p, false); a != null; a = a.next) {
+					targetIndex.add(a.node, t, a.time, a.distance);
+				}
+			}
+		}
+		MatrixJob job = new MatrixJob(sources, sourceAccess, targets, targetIndex, matrix, progress);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+		try {
+			int leafSize = Math.max(1, sources.size() / (Math.max(1, threads) * 4));
+			pool.invoke(new SourcesTask(job, 0, sources.size(), leafSize));
+		} finally {
+			pool.shutdown();
+		}
+		if (progress != null && progress.isCancelled) {
+			return null;
+		}
+		log.info(String.format("Route matrix: %dx%d is calculated in %d ms", sources.size(), targets.size(),
+				System.currentTimeMillis() - time));
+		return matrix;
+	}
+
+	private void searchSource(SearchState state, RouteSegmentPoint source, AccessPoint access,
+			List<RouteSegmentPoint> targets, TargetIndex targetIndex, float[] times, float[] distances) {
+		Arrays.fill(times, -1);
+		Arrays.fill(distances, -1);
+		if (source == null) {
+			return;
+		}
+		int reached = 0;
+		int reachable = 0;
+		for (int t = 0; t < targets.size(); t++) {
+			RouteSegmentPoint target = targets.get(t);
+			if (target == null) {
+				continue;
+			}
+			if (targetIndex.hasAccess(t)) {
+				reachable++;
+			}
+			if (target.road.getId() == source.road.getId()) {
+				calculateAlongRoad(source, target, state);
+				if (state.alongTime >= 0) {
+					times[t] = state.alongTime;
+					distances[t] = state.alongDistance;
+					reached++;
+					if (!targetIndex.hasAccess(t)) {
+						reachable++;
+					}
+				}
+			}
+		}
+		state.startSearch();
+		for (AccessPoint a = access; a != null; a = a.next) {
+			state.relax(a.node, a.time, a.distance);
+		}
+		float threshold = 0;
+		NodeQueue queue = state.queue;
+		while (!queue.isEmpty() && reachable > 0) {
+			float key = queue.peekKey();
+			int node = queue.poll();
+			if (key > state.time[node]) {
+				continue;
+			}
+			if (reached == reachable && key >= threshold) {
+				// all targets are reached and upper bound could be outdated, values only decrease
+				threshold = 0;
+				for (int t = 0; t < times.length; t++) {
+					threshold = Math.max(threshold, times[t]);
+				}
+				if (key >= threshold) {
+					break;
+				}
+			}
+			for (int e = targetIndex.first[node]; e >= 0; e = targetIndex.next[e]) {
+				int t = targetIndex.target[e];
+				float tm = key + targetIndex.time[e];
+				if (times[t] < 0 || tm < times[t]) {
+					if (times[t] < 0) {
+						reached++;
+					}
+					times[t] = tm;
+					distances[t] = state.distance[node] + targetIndex.distance[e];
+				}
+			}
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				state.relax(edgeTarget[e], key + edgeTime[e], state.distance[node] + edgeDistance[e]);
+			}
+		}
+	}
+
+	/**
+	 * Nodes reachable from the point (or nodes the point is reachable from) moving along its road.
+	 */
+	private AccessPoint collectAccessNodes(RouteSegmentPoint pnt, boolean fromPoint) {
+		int oneway = router.isOneWay(pnt.road);
+		AccessPoint res = null;
+		if (oneway >= 0) {
+			res = collectAccessNode(pnt, true, fromPoint, res);
+		}
+		if (oneway <= 0) {
+			res = collectAccessNode(pnt, false, fromPoint, res);
+		}
+		return res;
+	}
+
+	private AccessPoint collectAccessNode(RouteSegmentPoint pnt, boolean positive, boolean fromPoint,
+			AccessPoint list) {
+		// precise point is the projection on segment [segStart - 1, segStart]
+		RouteDataObject road = pnt.road;
+		int step = positive == fromPoint ? 1 : -1;
+		int ind = step > 0 ? pnt.getSegmentStart() : pnt.getSegmentStart() - 1;
+		float speed = RouteContractionHierarchy.getRoutingSpeed(router, road);
+		float distance = (float) BinaryRoutePlanner.squareRootDist(pnt.preciseX, pnt.preciseY,
+				road.getPoint31XTile(ind), road.getPoint31YTile(ind));
+		float time = distance / speed;
+		while (ind >= 0 && ind < road.getPointsLength()) {
+			int node = findNode(road.getPoint31XTile(ind), road.getPoint31YTile(ind));
+			if (node >= 0) {
+				return new AccessPoint(node, time, distance, list);
+			}
+			int next = ind + step;
+			if (next < 0 || next >= road.getPointsLength()) {
+				break;
+			}
+			float t = positive ? RouteContractionHierarchy.calculateSegmentTime(router, road, Math.min(ind, next),
+					Math.max(ind, next), speed) : RouteContractionHierarchy.calculateSegmentTime(router, road,
+					Math.max(ind, next), Math.min(ind, next), speed);
+			if (t < 0) {
+				break;
+			}
+			time += t;
+			distance += segmentDistance(road, ind, next);
+			ind = next;
+		}
+		return list;
+	}
+
+	private void calculateAlongRoad(RouteSegmentPoint source, RouteSegmentPoint target, SearchState state) {
+		state.alongTime = -1;
+		state.alongDistance = -1;
+		RouteDataObject road = source.road;
+		int oneway = router.isOneWay(road);
+		int s = source.getSegmentStart();
+		int t = target.getSegmentStart();
+		boolean positive;
+		if (s == t) {
+			int px = road.getPoint31XTile(s - 1);
+			int py = road.getPoint31YTile(s - 1);
+			positive = BinaryRoutePlanner.squareRootDist(px, py, source.preciseX, source.preciseY) <= BinaryRoutePlanner
+					.squareRootDist(px, py, target.preciseX, target.preciseY);
+		} else {
+			positive = s < t;
+		}
+		if ((positive && oneway < 0) || (!positive && oneway > 0)) {
+			return;
+		}
+		float speed = RouteContractionHierarchy.getRoutingSpeed(router, road);
+		if (s == t) {
+			state.alongDistance = (float) BinaryRoutePlanner.squareRootDist(source.preciseX, source.preciseY,
+					target.preciseX, target.preciseY);
+			state.alongTime = state.alongDistance / speed;
+			return;
+		}
+		// points next to the precise points in the direction of movement
+		int start = positive ? s : s - 1;
+		int end = positive ? t - 1 : t;
+		int step = positive ? 1 : -1;
+		float distance = (float) (BinaryRoutePlanner.squareRootDist(source.preciseX, source.preciseY,
+				road.getPoint31XTile(start), road.getPoint31YTile(start))
+				+ BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(end), road.getPoint31YTile(end),
+						target.preciseX, target.preciseY));
+		float time = distance / speed;
+		for (int i = start; i != end; i += step) {
+			float tm = RouteContractionHierarchy.calculateSegmentTime(router, road, i, i + step, speed);
+			if (tm < 0) {
+				return;
+			}
+			time += tm;
+			distance += segmentDistance(road, i, i + step);
+		}
+		state.alongTime = time;
+		state.alongDistance = distance;
+	}
+
+	private static class AccessPoint {
+		final int node;
+		final float time;
+		final float distance;
+		final AccessPoint next;
+
+		AccessPoint(int node, float time, float distance, AccessPoint next) {
+			this.node = node;
+			this.time = time;
+			this.distance = distance;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Targets attached to the nodes as linked lists in arrays
+	 */
+	private static class TargetIndex {
+		final int[] first;
+		final boolean[] access;
+		int[] next = new int[16];
+		int[] target = new int[16];
+		float[] time = new float[16];
+		float[] distance = new float[16];
+		int size;
+
+		TargetIndex(int nodes, int targets) {
+			first = new int[nodes];
+			Arrays.fill(first, -1);
+			access = new boolean[targets];
+		}
+
+		void add(int node, int t, float tm, float dist) {
+			if (size == next.length) {
+				next = Arrays.copyOf(next, size * 2);
+				target = Arrays.copyOf(target, size * 2);
+				time = Arrays.copyOf(time, size * 2);
+				distance = Arrays.copyOf(distance, size * 2);
+			}
+			next[size] = first[node];
+			target[size] = t;
+			time[size] = tm;
+			distance[size] = dist;
+			first[node] = size++;
+			access[t] = true;
+		}
+
+		boolean hasAccess(int t) {
+			return access[t];
+		}
+	}
+
+	/**
+	 * Search arrays of one worker, reused between its sources
+	 */
+	private static class SearchState {
+		final float[] time;
+		final float[] distance;
+		final int[] visited;
+		final NodeQueue queue = new NodeQueue();
+		int run;
+		float alongTime;
+		float alongDistance;
+
+		SearchState(int nodes) {
+			time = new float[nodes];
+			distance = new float[nodes];
+			visited = new int[nodes];
+		}
+
+		void startSearch() {
+			run++;
+			queue.clear();
+		}
+
+		void relax(int node, float tm, float dist) {
+			if (visited[node] != run || tm < time[node]) {
+				visited[node] = run;
+				time[node] = tm;
+				distance[node] = dist;
+				queue.push(node, tm);
+			}
+		}
+	}
+
+	private static class EdgeList {
+		int[] from = new int[1024];
+		int[] to = new int[1024];
+		float[] time = new float[1024];
+		float[] distance = new float[1024];
+		int size;
+
+		void add(int f, int t, float tm, float dist) {
+			if (size == from.length) {
+				int l = size * 2;
+				from = Arrays.copyOf(from, l);
+				to = Arrays.copyOf(to, l);
+				time = Arrays.copyOf(time, l);
+				distance = Arrays.copyOf(distance, l);
+			}
+			from[size] = f;
+			to[size] = t;
+			time[size] = tm;
+			distance[size] = dist;
+			size++;
+		}
+	}
+
+	private static class MatrixJob {
+		final List<RouteSegmentPoint> sources;
+		final List<AccessPoint> sourceAccess;
+		final List<RouteSegmentPoint> targets;
+		final TargetIndex targetIndex;
+		final RouteMatrix matrix;
+		final RouteCalculationProgress progress;
+
+		MatrixJob(List<RouteSegmentPoint> sources, List<AccessPoint> sourceAccess, List<RouteSegmentPoint> targets,
+				TargetIndex targetIndex, RouteMatrix matrix, RouteCalculationProgress progress) {
+			this.sources = sources;
+			this.sourceAccess = sourceAccess;
+			this.targets = targets;
+			this.targetIndex = targetIndex;
+			this.matrix = matrix;
+			this.progress = progress;
+		}
+	}
+
+	private class SourcesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final MatrixJob job;
+		private final int from;
+		private final int to;
+		private final int leafSize;
+
+		SourcesTask(MatrixJob job, int from, int to, int leafSize) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > leafSize) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SourcesTask(job, from, middle, leafSize), new SourcesTask(job, middle, to, leafSize));
+				return;
+			}
+			SearchState state = new SearchState(nodeKeys.length);
+			for (int s = from; s < to; s++) {
+				if (job.progress != null && job.progress.isCancelled) {
+					return;
+				}
+				searchSource(state, job.sources.get(s), job.sourceAccess.get(s), job.targets, job.targetIndex,
+						job.matrix.times[s], job.matrix.distances[s]);
+			}
+		}
+	}
+}
@@ -10,6 +10,7 @@ import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.data.QuadPoint;
+import net.osmand.data.QuadRect;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.router.GeneralRouter.RoutingParameter;
@@ -34,8 +35,17 @@ public class RoutePlannerFrontEnd {
 	protected static final Log log = PlatformUtil.getLog(RoutePlannerFrontEnd.class);
 	// Check issue #8649
 	protected static final double GPS_POSSIBLE_ERROR = 7;
+	// area loaded for route matrix is extended by part of its size (but not less than minimal margin in 31 tile units)
+	protected static final double MATRIX_MARGIN = 0.2;
+	protected static final double MATRIX_MIN_MARGIN_31 = 1 << 16;
+	// max width and height of area loaded for route matrix in meters, all its roads are kept in memory
+	public static final double MATRIX_MAX_AREA_SIZE = 300000;
 	public boolean useSmartRouteRecalculation = true;
 	public boolean useNativeApproximation = true;
+	// match gpx points with hidden markov model instead of routing between points step by step (java only)
+	public boolean useHmmApproximation = false;
+	// long tracks are cut into chunks approximated in parallel (java only)
+	public int gpxApproximationThreads = 1;
 
 	
 	public RoutePlannerFrontEnd() {
@@ -44,7 +54,9 @@ public class RoutePlannerFrontEnd {
 	public enum RouteCalculationMode {
 		BASE,
 		NORMAL,
-		COMPLEX
+		COMPLEX,
+		// answer queries with precalculated RouteContractionHierarchy
+		CONTRACTION
 	}
 	
 	public static class GpxRouteApproximation {
@@ -229,6 +241,61 @@ public class RoutePlannerFrontEnd {
 		return searchRoute(ctx, start, end, intermediates, null);
 	}
 
+	/**
+	 * Calculates travel times and distances between all sources and targets.
+	 * Road data of the area covering all points (with margin) is loaded once into the context,
+	 * then searches from different sources run in parallel on {@code threads} workers.
+	 * Area is limited by {@link #MATRIX_MAX_AREA_SIZE} and its roads by memory limit of routing configuration.
+	 * Matrix is an approximation for ordering points: turn restrictions and turn penalties are not taken into account,
+	 * so times could be less than times of calculated routes.
+	 * @return matrix or null if calculation was cancelled, area of points is too big or its roads don't fit memory limit
+	 */
+	public RouteMatrix searchRouteMatrix(final RoutingContext ctx, List<LatLon> sources, List<LatLon> targets,
+			int threads) throws IOException {
+		List<RouteSegmentPoint> sourcePoints = new ArrayList<RouteSegmentPoint>();
+		List<RouteSegmentPoint> targetPoints = new ArrayList<RouteSegmentPoint>();
+		QuadRect bbox = new QuadRect(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 0);
+		for (LatLon l : sources) {
+			sourcePoints.add(findMatrixPoint(ctx, l, bbox));
+		}
+		for (LatLon l : targets) {
+			targetPoints.add(findMatrixPoint(ctx, l, bbox));
+		}
+		List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+		if (bbox.left <= bbox.right) {
+			double margin = Math.max(MATRIX_MIN_MARGIN_31, Math.max(bbox.width(), bbox.height()) * MATRIX_MARGIN);
+			int left = (int) Math.max(0, bbox.left - margin);
+			int top = (int) Math.max(0, bbox.top - margin);
+			int right = (int) Math.min(Integer.MAX_VALUE, bbox.right + margin);
+			int bottom = (int) Math.min(Integer.MAX_VALUE, bbox.bottom + margin);
+			if (MapUtils.measuredDist31(left, top, right, top) > MATRIX_MAX_AREA_SIZE
+					|| MapUtils.measuredDist31(left, top, left, bottom) > MATRIX_MAX_AREA_SIZE) {
+				log.info("Route matrix is not calculated: area of points is too big");
+				return null;
+			}
+			if (!ctx.loadTileDataInBox(left, top, right, bottom, roads, ctx.config.memoryLimitation)) {
+				log.info("Route matrix is not calculated: roads of area exceed memory limit");
+				return null;
+			}
+		}
+		if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+			return null;
+		}
+		RouteMatrixCalculator calculator = new RouteMatrixCalculator(ctx.getRouter(), roads);
+		return calculator.calculate(sourcePoints, targetPoints, threads, ctx.calculationProgress);
+	}
+
+	private RouteSegmentPoint findMatrixPoint(RoutingContext ctx, LatLon l, QuadRect bbox) throws IOException {
+		RouteSegmentPoint p = findRouteSegment(l.getLatitude(), l.getLongitude(), ctx, null);
+		if (p != null) {
+			bbox.left = Math.min(bbox.left, p.preciseX);
+			bbox.right = Math.max(bbox.right, p.preciseX);
+			bbox.top = Math.min(bbox.top, p.preciseY);
+			bbox.bottom = Math.max(bbox.bottom, p.preciseY);
+		}
+		return p;
+	}
+
 	public void setUseFastRecalculation(boolean use) {
 		useSmartRouteRecalculation = use;
 	}
@@ -237,6 +304,14 @@ public class RoutePlannerFrontEnd {
 		this.useNativeApproximation = useNativeApproximation;
 	}
 
+	public void setUseHmmApproximation(boolean useHmmApproximation) {
+		this.useHmmApproximation = useHmmApproximation;
+	}
+
+	public void setGpxApproximationThreads(int gpxApproximationThreads) {
+		this.gpxApproximationThreads = gpxApproximationThreads;
+	}
+
 	public GpxRouteApproximation searchGpxRoute(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, ResultMatcher<GpxRouteApproximation> resultMatcher) throws IOException, InterruptedException {
 		long timeToCalculate = System.nanoTime();
 		NativeLibrary nativeLib = gctx.ctx.nativeLib;
@@ -247,82 +322,10 @@ public class RoutePlannerFrontEnd {
 			if (gctx.ctx.calculationProgress == null) {
 				gctx.ctx.calculationProgress = new RouteCalculationProgress();
 			}
-			GpxPoint start = null;
-			GpxPoint prev = null;
-			if (gpxPoints.size() > 0) {
-				gctx.ctx.calculationProgress.totalIterations =
-						(int) (gpxPoints.get(gpxPoints.size() - 1).cumDist / gctx.ctx.config.maxStepApproximation + 1);
-				start = gpxPoints.get(0);
-			}
-			while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
-				double routeDist = gctx.ctx.config.maxStepApproximation;
-				GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-				boolean routeFound = false;
-				if (next != null && initRoutingPoint(start, gctx, gctx.ctx.config.minPointApproximation)) {
-					gctx.ctx.calculationProgress.totalEstimatedDistance = 0;
-					gctx.ctx.calculationProgress.iteration = (int) (next.cumDist / gctx.ctx.config.maxStepApproximation);
-					while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
-						routeFound = initRoutingPoint(next, gctx, gctx.ctx.config.minPointApproximation);
-						if (routeFound) {
-							routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
-							if (routeFound) {
-								routeFound = isRouteCloseToGpxPoints(gctx, gpxPoints, start, next);
-								if (!routeFound) {
-									start.routeToTarget = null;
-								}
-							}
-							if (routeFound && next.ind == gpxPoints.size() - 1) {
-								// last point - last route found
-								makeSegmentPointPrecise(start.routeToTarget.get(start.routeToTarget.size() - 1),
-										next.loc, false);
-							} else if (routeFound) {
-								// route is found - cut the end of the route and move to next iteration
-								// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
-								// boolean stepBack = true;
-								boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
-								if (!stepBack) {
-									// not supported case (workaround increase routing.xml maxStepApproximation)
-									log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
-									start.routeToTarget = null;
-									routeFound = false;
-								} else {
-									if (gctx.ctx.getVisitor() != null) {
-										gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
-												next);
-									}
-								}
-							}
-						}
-						if (!routeFound) {
-							// route is not found move next point closer to start point (distance / 2)
-							routeDist = routeDist / 2;
-							if (routeDist < gctx.ctx.config.minStepApproximation
-									&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
-								routeDist = gctx.ctx.config.minStepApproximation;
-							}
-							next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-							if (next != null) {
-								routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
-							}
-						}
-					}
-				}
-				// route is not found skip segment and keep it as straight line on display
-				if (!routeFound && next != null) {
-					// route is not found, move start point by
-					next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
-					if (prev != null) {
-						prev.routeToTarget.addAll(prev.stepBackRoute);
-						makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
-						if (next != null) {
-							log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
-						}
-					}
-					prev = null;
-				} else {
-					prev = start;
-				}
-				start = next;
+			if (gpxApproximationThreads > 1 && nativeLib == null) {
+				new ParallelGpxApproximation(this, gctx, gpxApproximationThreads).approximate(gpxPoints);
+			} else {
+				approximateGpxPoints(gctx, gpxPoints);
 			}
 			if (gctx.ctx.calculationProgress != null) {
 				gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
@@ -340,6 +343,98 @@ public class RoutePlannerFrontEnd {
 		return gctx;
 	}
 
+	void approximateGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		if (useHmmApproximation && gctx.ctx.nativeLib == null) {
+			createMapMatcher(gctx).matchGpxPoints(gpxPoints);
+		} else {
+			searchGpxRouteByRouting(gctx, gpxPoints);
+		}
+	}
+
+	GpxMapMatcher createMapMatcher(GpxRouteApproximation gctx) {
+		return new GpxMapMatcher(this, gctx);
+	}
+
+	private void searchGpxRouteByRouting(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		GpxPoint start = null;
+		GpxPoint prev = null;
+		if (gpxPoints.size() > 0) {
+			gctx.ctx.calculationProgress.totalIterations =
+					(int) (gpxPoints.get(gpxPoints.size() - 1).cumDist / gctx.ctx.config.maxStepApproximation + 1);
+			start = gpxPoints.get(0);
+		}
+		while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
+			double routeDist = gctx.ctx.config.maxStepApproximation;
+			GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+			boolean routeFound = false;
+			if (next != null && initRoutingPoint(start, gctx, gctx.ctx.config.minPointApproximation)) {
+				gctx.ctx.calculationProgress.totalEstimatedDistance = 0;
+				gctx.ctx.calculationProgress.iteration = (int) (next.cumDist / gctx.ctx.config.maxStepApproximation);
+				while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
+					routeFound = initRoutingPoint(next, gctx, gctx.ctx.config.minPointApproximation);
+					if (routeFound) {
+						routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
+						if (routeFound) {
+							routeFound = isRouteCloseToGpxPoints(gctx, gpxPoints, start, next);
+							if (!routeFound) {
+								start.routeToTarget = null;
+							}
+						}
+						if (routeFound && next.ind == gpxPoints.size() - 1) {
+							// last point - last route found
+							makeSegmentPointPrecise(start.routeToTarget.get(start.routeToTarget.size() - 1),
+									next.loc, false);
+						} else if (routeFound) {
+							// route is found - cut the end of the route and move to next iteration
+							// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
+							// boolean stepBack = true;
+							boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
+							if (!stepBack) {
+								// not supported case (workaround increase routing.xml maxStepApproximation)
+								log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
+								start.routeToTarget = null;
+								routeFound = false;
+							} else {
+								if (gctx.ctx.getVisitor() != null) {
+									gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
+											next);
+								}
+							}
+						}
+					}
+					if (!routeFound) {
+						// route is not found move next point closer to start point (distance / 2)
+						routeDist = routeDist / 2;
+						if (routeDist < gctx.ctx.config.minStepApproximation
+								&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
+							routeDist = gctx.ctx.config.minStepApproximation;
+						}
+						next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+						if (next != null) {
+							routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
+						}
+					}
+				}
+			}
+			// route is not found skip segment and keep it as straight line on display
+			if (!routeFound && next != null) {
+				// route is not found, move start point by
+				next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
+				if (prev != null) {
+					prev.routeToTarget.addAll(prev.stepBackRoute);
+					makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
+					if (next != null) {
+						log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+					}
+				}
+				prev = null;
+			} else {
+				prev = start;
+			}
+			start = next;
+		}
+	}
+
 	private boolean isRouteCloseToGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints,
 	                                        GpxPoint start, GpxPoint next) {
 		boolean routeIsClose = true;
@@ -784,7 +879,7 @@ public class RoutePlannerFrontEnd {
 			ctx.calculationProgressFirstPhase = RouteCalculationProgress.capture(ctx.calculationProgress);
 		}
 		List<RouteSegmentResult> res ;
-		if (intermediatesEmpty && ctx.nativeLib != null) {
+		if (intermediatesEmpty && ctx.nativeLib != null && !useContractionHierarchy(ctx)) {
 			ctx.startX = MapUtils.get31TileNumberX(start.getLongitude());
 			ctx.startY = MapUtils.get31TileNumberY(start.getLatitude());
 			ctx.targetX = MapUtils.get31TileNumberX(end.getLongitude());
@@ -841,7 +936,7 @@ public class RoutePlannerFrontEnd {
 		return currentsDist;
 	}
 
-	private void makeSegmentPointPrecise(RouteSegmentResult routeSegmentResult, LatLon point, boolean st) {
+	void makeSegmentPointPrecise(RouteSegmentResult routeSegmentResult, LatLon point, boolean st) {
 		int px = MapUtils.get31TileNumberX(point.getLongitude());
 		int py = MapUtils.get31TileNumberY(point.getLatitude());
 		int pind = st ? routeSegmentResult.getStartPointIndex() : routeSegmentResult.getEndPointIndex();
@@ -929,6 +1024,13 @@ public class RoutePlannerFrontEnd {
 		if (routeDirection != null) {
 			ctx.precalculatedRouteDirection = routeDirection.adopt(ctx);
 		}
+		if (recalculationEnd == null && useContractionHierarchy(ctx)) {
+			List<RouteSegmentResult> res = ctx.contractionHierarchy.searchRoute(ctx, start, end);
+			if (res != null) {
+				return new RouteResultPreparation().prepareResult(ctx, res, false);
+			}
+			log.info("Route is not found with routing overlay, use regular routing");
+		}
 		if (ctx.nativeLib != null) {
 			ctx.startX = start.preciseX;
 			ctx.startY = start.preciseY;
@@ -948,6 +1050,11 @@ public class RoutePlannerFrontEnd {
 		}
 	}
 
+	private boolean useContractionHierarchy(RoutingContext ctx) {
+		return ctx.calculationMode == RouteCalculationMode.CONTRACTION && ctx.contractionHierarchy != null
+				&& ctx.contractionHierarchy.isValidFor(ctx);
+	}
+
 	public RouteSegmentPoint getRecalculationEnd(final RoutingContext ctx) {
 		RouteSegmentPoint recalculationEnd = null;
 		boolean runRecalculation = ctx.previouslyCalculatedRoute != null && ctx.previouslyCalculatedRoute.size() > 0
@@ -1071,6 +1178,7 @@ public class RoutePlannerFrontEnd {
 			makeStartEndPointsPrecise(res, points.get(i).getPreciseLatLon(), points.get(i + 1).getPreciseLatLon(), null);
 			results.addAll(res);
 			ctx.routingTime += local.routingTime;
+			local.releaseSharedTiles();
 //			local.unloadAllData(ctx);
 			if (restPartRecalculatedRoute != null) {
 				results.addAll(restPartRecalculatedRoute);
@@ -42,6 +42,10 @@ public class RoutingConfiguration {
 	public int ZOOM_TO_LOAD_TILES = 16;
 	public long memoryLimitation;
 	public long nativeMemoryLimitation;
+	// decoded tiles shared between routing contexts (optional)
+	public RoutingTileCache tileCache;
+	// decoded tiles persisted between sessions (optional)
+	public RoutingTileDiskCache tileDiskCache;
 
 	// 1.2 Build A* graph in backward/forward direction (can affect results)
 	// 0 - 2 ways, 1 - direct way, -1 - reverse way
@@ -136,6 +140,8 @@ public class RoutingConfiguration {
 		private Map<String, String> attributes = new LinkedHashMap<>();
 		private Set<Long> impassableRoadLocations = new HashSet<>();
 		private QuadTree<Node> directionPointsBuilder;
+		private RoutingTileCache tileCache;
+		private RoutingTileDiskCache tileDiskCache;
 
 		public Builder() {
 		}
@@ -228,9 +234,21 @@ public class RoutingConfiguration {
 					i.directionPoints.insert(dp, new QuadRect(x, y, x, y));
 				}
 			}
+			i.tileCache = tileCache;
+			i.tileDiskCache = tileDiskCache;
 //			i.planRoadDirection = 1;
 			return i;
 		}
+
+		public Builder setTileCache(RoutingTileCache tileCache) {
+			this.tileCache = tileCache;
+			return this;
+		}
+
+		public Builder setTileDiskCache(RoutingTileDiskCache tileDiskCache) {
+			this.tileDiskCache = tileDiskCache;
+			return this;
+		}
 		
 		public Builder setDirectionPoints(QuadTree<Node> directionPoints) {
 			this.directionPointsBuilder = directionPoints;
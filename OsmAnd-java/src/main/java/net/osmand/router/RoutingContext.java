@@ -23,6 +23,8 @@ import net.osmand.NativeLibrary.NativeRouteSearchResult;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapReadersIndex;
+import net.osmand.binary.BinaryMapReadersIndex.IndexType;
 import net.osmand.binary.BinaryMapRouteReaderAdapter;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
@@ -52,6 +54,8 @@ public class RoutingContext {
 	public final NativeLibrary nativeLib;
 	public final Map<BinaryMapIndexReader, List<RouteSubregion>> map = new LinkedHashMap<BinaryMapIndexReader, List<RouteSubregion>>();
 	public final Map<RouteRegion, BinaryMapIndexReader> reverseMap = new LinkedHashMap<RouteRegion, BinaryMapIndexReader>();
+	// readers by bounds of route subregions used for calculation mode
+	private final BinaryMapReadersIndex readersIndex;
 	
 	// 0. Reference to native routingcontext for multiple routes
 	public long nativeRoutingContext;
@@ -77,6 +81,9 @@ public class RoutingContext {
 	public boolean leftSideNavigation;
 	public List<RouteSegmentResult> previouslyCalculatedRoute;
 	public PrecalculatedRouteDirection precalculatedRouteDirection;
+	// overlay used in RouteCalculationMode.CONTRACTION (regular routing is used if it's missing or stale),
+	// it's opt-in and set only by callers which have built it for their files
+	public RouteContractionHierarchy contractionHierarchy;
 	
 	
 	// 2. Routing memory cache (big objects)
@@ -112,9 +119,11 @@ public class RoutingContext {
 		this.calculationMode = cp.calculationMode;
 		this.leftSideNavigation = cp.leftSideNavigation;
 		this.reverseMap.putAll(cp.reverseMap);
+		this.readersIndex = cp.readersIndex;
 		this.nativeLib = cp.nativeLib;
 		this.visitor = cp.visitor;
 		this.calculationProgress = cp.calculationProgress;
+		this.contractionHierarchy = cp.contractionHierarchy;
 	}
 	
 	RoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] map, RouteCalculationMode calcMode) {
@@ -132,6 +141,7 @@ public class RoutingContext {
 			}
 			this.map.put(mr, subregions);
 		}
+		this.readersIndex = new BinaryMapReadersIndex(this.map.keySet());
 		this.config = config;
 		this.nativeLib = nativeLibrary;
 	}
@@ -216,6 +226,7 @@ public class RoutingContext {
 					global.size -= tl.tileStatistics.size;
 				}
 			}
+			tl.releaseShared();
 		}
 		subregionTiles.clear();
 		indexedSubregions.clear();
@@ -291,7 +302,17 @@ public class RoutingContext {
 			try {
 				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
 				ts.setLoadedNonNative();
-				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
+				List<RouteDataObject> res;
+				// direction points are inserted into loaded objects, so they can't be shared
+				boolean shared = config.tileCache != null && points.isEmpty();
+				if (shared) {
+					res = config.tileCache.borrow(reader, ts.subregion, config.tileDiskCache);
+					ts.sharedCache = config.tileCache;
+				} else if (config.tileDiskCache != null) {
+					res = config.tileDiskCache.loadRouteIndexData(reader, ts.subregion);
+				} else {
+					res = reader.loadRouteIndexData(ts.subregion);
+				}
 				
 				if (toLoad != null) {
 					toLoad.addAll(res);
@@ -299,6 +320,9 @@ public class RoutingContext {
 					for (RouteDataObject ro : res) {
 						if (ro != null) {
 							if (config.routeCalculationTime != 0) {
+								if (shared) {
+									ro = copyForUpdate(ro);
+								}
 								ro.processConditionalTags(config.routeCalculationTime);
 							}
 							if (config.router.acceptLine(ro)) {
@@ -354,6 +378,29 @@ public class RoutingContext {
 		}
 	}
 	
+	private static RouteDataObject copyForUpdate(RouteDataObject ro) {
+		RouteDataObject copy = new RouteDataObject(ro);
+		if (copy.getTypesCombinationId() < 0) {
+			copy.types = ro.types.clone();
+		}
+		if (ro.pointTypes != null) {
+			copy.pointTypes = new int[ro.pointTypes.length][];
+			for (int i = 0; i < ro.pointTypes.length; i++) {
+				copy.pointTypes[i] = ro.pointTypes[i] == null ? null : ro.pointTypes[i].clone();
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns borrowed tiles to the shared cache, loaded objects stay valid for this context
+	 */
+	public void releaseSharedTiles() {
+		for (RoutingSubregionTile tl : subregionTiles) {
+			tl.releaseShared();
+		}
+	}
+
 	public List<RoutingSubregionTile> loadAllSubregionTiles(BinaryMapIndexReader reader, RouteSubregion reg) throws IOException {
 		List<RoutingSubregionTile> list = new ArrayList<RoutingContext.RoutingSubregionTile>();
 		SearchRequest<RouteDataObject> request = BinaryMapIndexReader.buildSearchRouteRequest(0,
@@ -374,11 +421,15 @@ public class RoutingContext {
 		SearchRequest<RouteDataObject> request = BinaryMapIndexReader.buildSearchRouteRequest(tileX << zoomToLoad,
 				(tileX + 1) << zoomToLoad, tileY << zoomToLoad, (tileY + 1) << zoomToLoad, null);
 		List<RoutingSubregionTile> collection = null;
-		for (Entry<BinaryMapIndexReader, List<RouteSubregion>> r : map.entrySet()) {
+		IndexType indexType = calculationMode == RouteCalculationMode.BASE ? IndexType.BASE_ROUTE : IndexType.ROUTE;
+		List<BinaryMapIndexReader> readers = readersIndex.getReaders(indexType, tileX << zoomToLoad,
+				tileY << zoomToLoad, (tileX + 1) << zoomToLoad, (tileY + 1) << zoomToLoad, -1);
+		for (BinaryMapIndexReader reader : readers) {
+			List<RouteSubregion> readerSubregions = map.get(reader);
 			// NOTE: load headers same as we do in non-native (it is not native optimized)
 			try {
 				boolean intersect = false;
-				for (RouteSubregion rs : r.getValue()) {
+				for (RouteSubregion rs : readerSubregions) {
 					if (request.intersects(rs.left, rs.top, rs.right, rs.bottom)) {
 						intersect = true;
 						break;
@@ -388,7 +439,7 @@ public class RoutingContext {
 //					long now = System.nanoTime();
 					// int rg = r.getValue().get(0).routeReg.regionsRead;
 					
-					List<RouteSubregion> subregs = r.getKey().searchRouteIndexTree(request, r.getValue());
+					List<RouteSubregion> subregs = reader.searchRouteIndexTree(request, readerSubregions);
 //					if (calculationProgress != null) {
 //						calculationProgress.timeToLoadHeaders += (System.nanoTime() - now);
 //					}
@@ -450,6 +501,32 @@ public class RoutingContext {
 		}
 	}
 	
+	/**
+	 * Loads all roads of tiles intersecting the box. Tiles could be unloaded meanwhile, but roads stay referenced
+	 * by the list, so their estimated size is limited separately.
+	 * @param memoryLimit limit of estimated size of loaded roads in bytes
+	 * @return false if loading is stopped as roads exceed memory limit
+	 */
+	public boolean loadTileDataInBox(int left31, int top31, int right31, int bottom31, final List<RouteDataObject> toFillIn,
+	                                 long memoryLimit) {
+		int zmShift = 31 - config.ZOOM_TO_LOAD_TILES;
+		TLongObjectHashMap<RouteDataObject> excludeDuplications = new TLongObjectHashMap<RouteDataObject>();
+		long size = 0;
+		for (int tileX = left31 >> zmShift; tileX <= right31 >> zmShift; tileX++) {
+			for (int tileY = top31 >> zmShift; tileY <= bottom31 >> zmShift; tileY++) {
+				int loaded = toFillIn.size();
+				getAllObjects(getRoutingTile(tileX << zmShift, tileY << zmShift, 0), toFillIn, excludeDuplications);
+				for (int i = loaded; i < toFillIn.size(); i++) {
+					size += getEstimatedSize(toFillIn.get(i));
+				}
+				if (size > memoryLimit) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	@SuppressWarnings("unused")
 	private long getRoutingTile(int x31, int y31, long memoryLimit) {
 		// long now = System.nanoTime();
@@ -739,6 +816,7 @@ public class RoutingContext {
 		private int isLoaded = 0;
 		private TLongObjectMap<RouteSegment> routes = null;
 		private TLongHashSet excludedIds = null;
+		private RoutingTileCache sharedCache = null;
 
 		public RoutingSubregionTile(RouteSubregion subregion) {
 			this.subregion = subregion;
@@ -844,6 +922,14 @@ public class RoutingContext {
 			searchResult = null;
 			routes = null;
 			excludedIds = null;
+			releaseShared();
+		}
+
+		private void releaseShared() {
+			if (sharedCache != null) {
+				sharedCache.release(subregion);
+				sharedCache = null;
+			}
 		}
 		
 		public void setLoadedNonNative(){
@@ -972,6 +1058,7 @@ public class RoutingContext {
 	@Override
 	protected void finalize() throws Throwable {
 		deleteNativeRoutingContext();
+		releaseSharedTiles();
 		super.finalize();
 	}
 
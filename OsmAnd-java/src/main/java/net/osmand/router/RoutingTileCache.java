@@ -0,0 +1,218 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process wide cache of decoded routing tiles shared by routing contexts (see {@link RoutingConfiguration#tileCache}).
+ * Contexts borrow decoded objects of the tile and release them when the tile is unloaded, objects must be treated as read-only.
+ * Released tiles stay in memory while total estimated size fits memory limit, then they are evicted
+ * with second chance (clock) policy. Borrowed tiles are never evicted.
+ */
+public class RoutingTileCache {
+
+	private static final Log log = PlatformUtil.getLog(RoutingTileCache.class);
+
+	private final long memoryLimit;
+	private final Map<TileKey, TileEntry> tiles = new HashMap<TileKey, TileEntry>();
+	// clock of entries for eviction
+	private final List<TileEntry> clock = new ArrayList<TileEntry>();
+	private int clockHand;
+	private long size;
+
+	private int hits;
+	private int misses;
+	private int evicted;
+
+	public RoutingTileCache(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Returns decoded objects of the tile, loads the tile if it's not in cache.
+	 * Every call should be followed by {@link #release(RouteSubregion)}.
+	 */
+	public List<RouteDataObject> borrow(BinaryMapIndexReader reader, RouteSubregion subregion) throws IOException {
+		return borrow(reader, subregion, null);
+	}
+
+	/**
+	 * @param diskCache - persistent cache to load tile from if it's not in memory (optional)
+	 */
+	public List<RouteDataObject> borrow(BinaryMapIndexReader reader, RouteSubregion subregion,
+	                                    RoutingTileDiskCache diskCache) throws IOException {
+		TileKey key = new TileKey(subregion);
+		TileEntry e;
+		synchronized (this) {
+			e = tiles.get(key);
+			if (e == null) {
+				e = new TileEntry(key);
+				tiles.put(key, e);
+				e.clockIndex = clock.size();
+				clock.add(e);
+			}
+			e.refs++;
+			e.referenced = true;
+		}
+		// other contexts wait while the same tile is decoded
+		synchronized (e) {
+			if (e.objects != null) {
+				synchronized (this) {
+					hits++;
+				}
+				return e.objects;
+			}
+			List<RouteDataObject> objects;
+			try {
+				objects = diskCache != null ? diskCache.loadRouteIndexData(reader, subregion)
+						: reader.loadRouteIndexData(subregion);
+			} catch (IOException ex) {
+				release(key);
+				throw ex;
+			}
+			int sz = 0;
+			for (RouteDataObject o : objects) {
+				if (o != null) {
+					sz += RoutingContext.getEstimatedSize(o);
+				}
+			}
+			e.objects = Collections.unmodifiableList(objects);
+			synchronized (this) {
+				misses++;
+				e.size = sz;
+				size += sz;
+				evictUnused();
+			}
+			return e.objects;
+		}
+	}
+
+	public void release(RouteSubregion subregion) {
+		release(new TileKey(subregion));
+	}
+
+	private synchronized void release(TileKey key) {
+		TileEntry e = tiles.get(key);
+		if (e != null && e.refs > 0) {
+			e.refs--;
+			if (e.refs == 0 && e.objects == null) {
+				// loading failed
+				remove(e);
+			}
+			evictUnused();
+		}
+	}
+
+	private void evictUnused() {
+		int steps = 2 * clock.size();
+		while (size > memoryLimit && steps-- > 0 && !clock.isEmpty()) {
+			if (clockHand >= clock.size()) {
+				clockHand = 0;
+			}
+			TileEntry e = clock.get(clockHand);
+			if (e.refs > 0 || e.objects == null) {
+				clockHand++;
+			} else if (e.referenced) {
+				e.referenced = false;
+				clockHand++;
+			} else {
+				remove(e);
+				evicted++;
+			}
+		}
+	}
+
+	private void remove(TileEntry e) {
+		tiles.remove(e.key);
+		TileEntry last = clock.remove(clock.size() - 1);
+		if (last != e) {
+			clock.set(e.clockIndex, last);
+			last.clockIndex = e.clockIndex;
+		}
+		size -= e.size;
+	}
+
+	public synchronized void clear() {
+		List<TileEntry> unused = new ArrayList<TileEntry>();
+		for (TileEntry e : clock) {
+			if (e.refs == 0) {
+				unused.add(e);
+			}
+		}
+		for (TileEntry e : unused) {
+			remove(e);
+		}
+	}
+
+	public synchronized long getEstimatedSize() {
+		return size;
+	}
+
+	public synchronized int getTilesCount() {
+		return tiles.size();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	public synchronized void logStatistics() {
+		log.info(String.format("Routing tile cache: %d tiles, %.1f MB of %.1f MB, hits %d, misses %d, evicted %d",
+				tiles.size(), size / (float) (1 << 20), memoryLimit / (float) (1 << 20), hits, misses, evicted));
+	}
+
+	private static class TileKey {
+		final RouteRegion region;
+		final long pointer;
+
+		TileKey(RouteSubregion subregion) {
+			this.region = subregion.routeReg;
+			this.pointer = ((long) subregion.filePointer) + subregion.shiftToData;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(region) * 31 + (int) (pointer ^ (pointer >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey o = (TileKey) obj;
+			return o.region == region && o.pointer == pointer;
+		}
+	}
+
+	private static class TileEntry {
+		final TileKey key;
+		// guarded by cache
+		int refs;
+		boolean referenced;
+		int clockIndex;
+		int size;
+		// guarded by entry
+		volatile List<RouteDataObject> objects;
+
+		TileEntry(TileKey key) {
+			this.key = key;
+		}
+	}
+}
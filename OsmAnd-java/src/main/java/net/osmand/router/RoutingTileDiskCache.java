@@ -0,0 +1,447 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.util.Algorithms;
+
+import org.apache.commons.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of decoded routing tiles (see {@link RoutingConfiguration#tileDiskCache}), so tiles around
+ * usual area are not parsed from protobuf again after restart. Every obf file has own cache file in cache directory,
+ * which is valid while date created and size of obf file are the same. Tiles are appended in primitive format
+ * (arrays of ints, longs and utf-8 strings) keyed by file pointer of route subregion data,
+ * cache file is memory mapped on first access and objects are created directly from mapped buffer.
+ */
+public class RoutingTileDiskCache {
+
+	private static final Log log = PlatformUtil.getLog(RoutingTileDiskCache.class);
+
+	public static final String CACHE_EXT = ".rtcache";
+	static final int MAGIC = 0x52544331;
+	static final int VERSION = 1;
+	// magic, version, date created, obf length
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+	// pointer, length
+	private static final int RECORD_HEADER_SIZE = 8 + 4;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File dir;
+	private final long maxFileSize;
+	private final Map<String, CacheFile> files = new HashMap<String, CacheFile>();
+
+	private int hits;
+	private int misses;
+
+	/**
+	 * @param maxFileSize - tiles are not appended to cache file after it reaches this size
+	 */
+	public RoutingTileDiskCache(File dir, long maxFileSize) {
+		this.dir = dir;
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * Returns decoded objects of the tile from disk cache or loads them with reader and stores them in cache
+	 */
+	public List<RouteDataObject> loadRouteIndexData(BinaryMapIndexReader reader, RouteSubregion subregion)
+			throws IOException {
+		CacheFile cf = getCacheFile(reader);
+		long pointer = getPointer(subregion);
+		if (cf != null) {
+			try {
+				List<RouteDataObject> res = cf.read(pointer, subregion.routeReg);
+				if (res != null) {
+					synchronized (this) {
+						hits++;
+					}
+					return res;
+				}
+			} catch (RuntimeException e) {
+				// broken record (buffer underflow and etc)
+				log.error("Broken routing tile cache " + cf.file.getName(), e);
+				cf.reset();
+			}
+		}
+		List<RouteDataObject> res = reader.loadRouteIndexData(subregion);
+		synchronized (this) {
+			misses++;
+		}
+		if (cf != null) {
+			try {
+				cf.append(pointer, res);
+			} catch (IOException e) {
+				log.error("Failed to write routing tile cache " + cf.file.getName(), e);
+			}
+		}
+		return res;
+	}
+
+	private static long getPointer(RouteSubregion subregion) {
+		return ((long) subregion.filePointer) + subregion.shiftToData;
+	}
+
+	private synchronized CacheFile getCacheFile(BinaryMapIndexReader reader) {
+		File obf = reader.getFile();
+		if (obf == null) {
+			return null;
+		}
+		String name = obf.getName();
+		CacheFile cf = files.get(name);
+		if (cf != null && (cf.dateCreated != reader.getDateCreated() || cf.obfLength != obf.length())) {
+			cf.close();
+			cf = null;
+		}
+		if (cf == null) {
+			try {
+				dir.mkdirs();
+				cf = new CacheFile(new File(dir, name + CACHE_EXT), reader.getDateCreated(), obf.length());
+			} catch (IOException e) {
+				log.error("Failed to open routing tile cache for " + name, e);
+				return null;
+			}
+			files.put(name, cf);
+		}
+		return cf;
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	public synchronized void close() {
+		for (CacheFile cf : files.values()) {
+			cf.close();
+		}
+		files.clear();
+	}
+
+	private class CacheFile {
+
+		final File file;
+		final long dateCreated;
+		final long obfLength;
+		// pointer -> {offset of data, length}
+		final TLongObjectHashMap<int[]> records = new TLongObjectHashMap<int[]>();
+		RandomAccessFile raf;
+		MappedByteBuffer mapped;
+		long length;
+
+		CacheFile(File file, long dateCreated, long obfLength) throws IOException {
+			this.file = file;
+			this.dateCreated = dateCreated;
+			this.obfLength = obfLength;
+			raf = new RandomAccessFile(file, "rw");
+			length = raf.length();
+			if (!readHeader()) {
+				writeHeader();
+			} else {
+				mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				scanRecords();
+			}
+		}
+
+		private boolean readHeader() throws IOException {
+			if (length < HEADER_SIZE) {
+				return false;
+			}
+			raf.seek(0);
+			return raf.readInt() == MAGIC && raf.readInt() == VERSION && raf.readLong() == dateCreated
+					&& raf.readLong() == obfLength;
+		}
+
+		private void writeHeader() throws IOException {
+			records.clear();
+			mapped = null;
+			raf.setLength(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeLong(dateCreated);
+			raf.writeLong(obfLength);
+			length = HEADER_SIZE;
+		}
+
+		private void scanRecords() throws IOException {
+			int pos = HEADER_SIZE;
+			while (pos + RECORD_HEADER_SIZE <= length) {
+				long pointer = mapped.getLong(pos);
+				int len = mapped.getInt(pos + 8);
+				if (len < 0 || pos + RECORD_HEADER_SIZE + (long) len > length) {
+					break;
+				}
+				records.put(pointer, new int[] {pos + RECORD_HEADER_SIZE, len});
+				pos += RECORD_HEADER_SIZE + len;
+			}
+			if (pos < length) {
+				// last record was not written completely
+				mapped = null;
+				raf.setLength(pos);
+				length = pos;
+				mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+		}
+
+		synchronized List<RouteDataObject> read(long pointer, RouteRegion region) throws IOException {
+			if (raf == null) {
+				return null;
+			}
+			int[] rec = records.get(pointer);
+			if (rec == null) {
+				return null;
+			}
+			ByteBuffer buf;
+			if (mapped != null && rec[0] + rec[1] <= mapped.capacity()) {
+				buf = mapped.duplicate();
+				buf.position(rec[0]);
+				buf.limit(rec[0] + rec[1]);
+			} else {
+				// appended after file was mapped
+				byte[] bytes = new byte[rec[1]];
+				raf.seek(rec[0]);
+				raf.readFully(bytes);
+				buf = ByteBuffer.wrap(bytes);
+			}
+			return readObjects(buf, region);
+		}
+
+		synchronized void append(long pointer, List<RouteDataObject> objects) throws IOException {
+			if (raf == null || length >= maxFileSize || records.containsKey(pointer)) {
+				return;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeLong(pointer);
+			out.writeInt(0);
+			writeObjects(out, objects);
+			out.flush();
+			byte[] data = bytes.toByteArray();
+			int len = data.length - RECORD_HEADER_SIZE;
+			ByteBuffer.wrap(data).putInt(8, len);
+			raf.seek(length);
+			raf.write(data);
+			records.put(pointer, new int[] {(int) length + RECORD_HEADER_SIZE, len});
+			length += data.length;
+		}
+
+		synchronized void reset() {
+			try {
+				if (raf != null) {
+					writeHeader();
+				}
+			} catch (IOException e) {
+				log.error("Failed to reset routing tile cache " + file.getName(), e);
+				close();
+			}
+		}
+
+		synchronized void close() {
+			mapped = null;
+			records.clear();
+			Algorithms.closeStream(raf);
+			raf = null;
+		}
+	}
+
+	static void writeObjects(DataOutputStream out, List<RouteDataObject> objects) throws IOException {
+		out.writeInt(objects.size());
+		for (RouteDataObject o : objects) {
+			if (o == null) {
+				out.writeByte(0);
+				continue;
+			}
+			out.writeByte(1);
+			out.writeLong(o.id);
+			writeInts(out, o.types);
+			writeInts(out, o.pointsX);
+			writeInts(out, o.pointsY);
+			writeLongs(out, o.restrictions);
+			writeLongs(out, o.restrictionsVia);
+			writeInts(out, o.nameIds);
+			if (o.names == null) {
+				out.writeInt(-1);
+			} else {
+				int[] keys = o.names.keys();
+				out.writeInt(keys.length);
+				for (int key : keys) {
+					out.writeInt(key);
+					writeString(out, o.names.get(key));
+				}
+			}
+			writeIntArrays(out, o.pointTypes);
+			writeIntArrays(out, o.pointNameTypes);
+			if (o.pointNames == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(o.pointNames.length);
+				for (String[] names : o.pointNames) {
+					if (names == null) {
+						out.writeInt(-1);
+					} else {
+						out.writeInt(names.length);
+						for (String s : names) {
+							writeString(out, s);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	static List<RouteDataObject> readObjects(ByteBuffer buf, RouteRegion region) {
+		int size = buf.getInt();
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>(size);
+		for (int i = 0; i < size; i++) {
+			if (buf.get() == 0) {
+				res.add(null);
+				continue;
+			}
+			RouteDataObject o = new RouteDataObject(region);
+			o.id = buf.getLong();
+			o.types = readInts(buf);
+			if (o.types != null) {
+				o.internTypes();
+			}
+			o.pointsX = readInts(buf);
+			o.pointsY = readInts(buf);
+			o.restrictions = readLongs(buf);
+			o.restrictionsVia = readLongs(buf);
+			o.nameIds = readInts(buf);
+			int names = buf.getInt();
+			if (names >= 0) {
+				o.names = new TIntObjectHashMap<String>();
+				for (int k = 0; k < names; k++) {
+					int key = buf.getInt();
+					o.names.put(key, readString(buf));
+				}
+			}
+			o.pointTypes = readIntArrays(buf);
+			o.pointNameTypes = readIntArrays(buf);
+			int pointNames = buf.getInt();
+			if (pointNames >= 0) {
+				o.pointNames = new String[pointNames][];
+				for (int k = 0; k < pointNames; k++) {
+					int len = buf.getInt();
+					if (len >= 0) {
+						o.pointNames[k] = new String[len];
+						for (int j = 0; j < len; j++) {
+							o.pointNames[k][j] = readString(buf);
+						}
+					}
+				}
+			}
+			res.add(o);
+		}
+		return res;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ar) throws IOException {
+		if (ar == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(ar.length);
+		for (int v : ar) {
+			out.writeInt(v);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+		int[] ar = new int[len];
+		buf.asIntBuffer().get(ar);
+		buf.position(buf.position() + len * 4);
+		return ar;
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] ar) throws IOException {
+		if (ar == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(ar.length);
+		for (long v : ar) {
+			out.writeLong(v);
+		}
+	}
+
+	private static long[] readLongs(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+		long[] ar = new long[len];
+		buf.asLongBuffer().get(ar);
+		buf.position(buf.position() + len * 8);
+		return ar;
+	}
+
+	private static void writeIntArrays(DataOutputStream out, int[][] ar) throws IOException {
+		if (ar == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(ar.length);
+		for (int[] a : ar) {
+			writeInts(out, a);
+		}
+	}
+
+	private static int[][] readIntArrays(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+		int[][] ar = new int[len][];
+		for (int i = 0; i < len; i++) {
+			ar[i] = readInts(buf);
+		}
+		return ar;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		buf.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
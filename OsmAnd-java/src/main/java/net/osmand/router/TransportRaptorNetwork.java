@@ -0,0 +1,331 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport network in flat arrays for {@link TransportRaptorPlanner}.
+ * Every {@link TransportRoute} is a route of stops, times at the stops are offsets from trip start (seconds).
+ * Route with schedule has sorted trip starts, route without schedule runs any time (boarding time is waiting time).
+ * Stops have index of routes passing them and walking transfers to the stops within walk change radius
+ * (taken from {@link TransportTransferGraph} if it's available),
+ * all stored as CSR arrays (start index of element i is {@code start[i]}, end is {@code start[i + 1]}).
+ */
+public class TransportRaptorNetwork {
+
+	final TransportRoutingConfiguration cfg;
+
+	// stops
+	final TransportStop[] stops;
+	final int[] stopX;
+	final int[] stopY;
+	// routes passing stop: route and position of the stop in the route
+	final int[] stopRoutesStart;
+	final int[] stopRoutes;
+	final int[] stopRoutePositions;
+	// walking transfers
+	final int[] transfersStart;
+	final int[] transferStops;
+	final int[] transferDistances;
+
+	// routes
+	final TransportRoute[] routes;
+	final int[] routeStopsStart;
+	final int[] routeStops;
+	// offset from trip start, -1 if the stop is not reached by schedule
+	final int[] routeStopTimes;
+	// trips sorted by start, route without trips doesn't have schedule
+	final int[] routeTripsStart;
+	final int[] tripStarts;
+
+	private final StopsGrid grid;
+
+	private TransportRaptorNetwork(TransportRoutingConfiguration cfg, List<TransportRoute> routeList,
+	                               TransportTransferGraph transferGraph) {
+		this.cfg = cfg;
+		TLongObjectHashMap<Integer> stopIndexes = new TLongObjectHashMap<Integer>();
+		List<TransportStop> stopList = new ArrayList<TransportStop>();
+		TIntArrayList rStopsStart = new TIntArrayList();
+		TIntArrayList rStops = new TIntArrayList();
+		TIntArrayList rTimes = new TIntArrayList();
+		TIntArrayList rTripsStart = new TIntArrayList();
+		TIntArrayList trips = new TIntArrayList();
+		List<TransportRoute> accepted = new ArrayList<TransportRoute>();
+		for (TransportRoute r : routeList) {
+			List<TransportStop> fs = r.getForwardStops();
+			int[] times = routeTimes(r);
+			if (fs.size() < 2 || times == null) {
+				continue;
+			}
+			accepted.add(r);
+			rStopsStart.add(rStops.size());
+			rTripsStart.add(trips.size());
+			for (TransportStop s : fs) {
+				Integer ind = stopIndexes.get(s.getId());
+				if (ind == null) {
+					ind = stopList.size();
+					stopIndexes.put(s.getId(), ind);
+					stopList.add(s);
+				}
+				rStops.add(ind);
+			}
+			rTimes.add(times);
+			if (cfg.useSchedule) {
+				int t = 0;
+				TIntArrayList ti = r.getSchedule().tripIntervals;
+				for (int i = 0; i < ti.size(); i++) {
+					t += ti.getQuick(i) * 10;
+					trips.add(t);
+				}
+				trips.sort(rTripsStart.get(rTripsStart.size() - 1), trips.size());
+			}
+		}
+		rStopsStart.add(rStops.size());
+		rTripsStart.add(trips.size());
+		routes = accepted.toArray(new TransportRoute[accepted.size()]);
+		routeStopsStart = rStopsStart.toArray();
+		routeStops = rStops.toArray();
+		routeStopTimes = rTimes.toArray();
+		routeTripsStart = rTripsStart.toArray();
+		tripStarts = trips.toArray();
+
+		stops = stopList.toArray(new TransportStop[stopList.size()]);
+		stopX = new int[stops.length];
+		stopY = new int[stops.length];
+		for (int i = 0; i < stops.length; i++) {
+			TransportStop s = stops[i];
+			if (s.x31 == 0 && s.y31 == 0) {
+				stopX[i] = MapUtils.get31TileNumberX(s.getLocation().getLongitude());
+				stopY[i] = MapUtils.get31TileNumberY(s.getLocation().getLatitude());
+			} else {
+				stopX[i] = s.x31;
+				stopY[i] = s.y31;
+			}
+		}
+
+		// routes of stops
+		stopRoutesStart = new int[stops.length + 1];
+		for (int i = 0; i < routeStops.length; i++) {
+			stopRoutesStart[routeStops[i] + 1]++;
+		}
+		for (int i = 0; i < stops.length; i++) {
+			stopRoutesStart[i + 1] += stopRoutesStart[i];
+		}
+		stopRoutes = new int[routeStops.length];
+		stopRoutePositions = new int[routeStops.length];
+		int[] fill = Arrays.copyOf(stopRoutesStart, stops.length);
+		for (int r = 0; r < routes.length; r++) {
+			for (int i = routeStopsStart[r]; i < routeStopsStart[r + 1]; i++) {
+				int k = fill[routeStops[i]]++;
+				stopRoutes[k] = r;
+				stopRoutePositions[k] = i - routeStopsStart[r];
+			}
+		}
+
+		grid = new StopsGrid(stopX, stopY);
+
+		// transfers
+		int radius31 = (int) (cfg.walkChangeRadius / MapUtils.getTileDistanceWidth(31));
+		TIntArrayList tStart = new TIntArrayList();
+		TIntArrayList tStops = new TIntArrayList();
+		TIntArrayList tDist = new TIntArrayList();
+		TIntArrayList near = new TIntArrayList();
+		for (int i = 0; i < stops.length; i++) {
+			tStart.add(tStops.size());
+			int graphInd = transferGraph == null ? -1 : transferGraph.indexOf(stops[i].getId());
+			if (graphInd >= 0) {
+				for (int j = transferGraph.transfersStart[graphInd]; j < transferGraph.transfersStart[graphInd + 1]; j++) {
+					Integer s = stopIndexes.get(transferGraph.stopIds[transferGraph.transferStops[j]]);
+					if (s != null) {
+						tStops.add(s);
+						tDist.add(transferGraph.transferDistances[j]);
+					}
+				}
+				continue;
+			}
+			near.clear();
+			searchStops(stopX[i], stopY[i], radius31, near);
+			for (int j = 0; j < near.size(); j++) {
+				int s = near.get(j);
+				if (s != i) {
+					double d = MapUtils.measuredDist31(stopX[i], stopY[i], stopX[s], stopY[s]);
+					if (d <= cfg.walkChangeRadius) {
+						tStops.add(s);
+						tDist.add((int) d);
+					}
+				}
+			}
+		}
+		tStart.add(tStops.size());
+		transfersStart = tStart.toArray();
+		transferStops = tStops.toArray();
+		transferDistances = tDist.toArray();
+	}
+
+	/**
+	 * Builds network of routes passing stops in the box
+	 */
+	public static TransportRaptorNetwork build(TransportRoutingContext ctx, int left31, int top31, int right31,
+	                                           int bottom31) throws IOException {
+		long time = System.nanoTime();
+		SearchRequest<TransportStop> sr = BinaryMapIndexReader.buildSearchTransportRequest(left31, right31, top31,
+				bottom31, -1, null);
+		Collection<TransportStop> stops = ctx.transportStopsReader.readMergedTransportStops(sr);
+		Map<Long, TransportRoute> routes = new LinkedHashMap<Long, TransportRoute>();
+		for (TransportStop s : stops) {
+			if (s.isDeleted() || s.getRoutes() == null) {
+				continue;
+			}
+			for (TransportRoute r : s.getRoutes()) {
+				routes.put(r.getId(), r);
+			}
+		}
+		ctx.readTime += System.nanoTime() - time;
+		return build(ctx.cfg, routes.values(), ctx.transferGraph);
+	}
+
+	public static TransportRaptorNetwork build(TransportRoutingConfiguration cfg, Collection<TransportRoute> routes) {
+		return build(cfg, routes, null);
+	}
+
+	/**
+	 * @param transferGraph walking transfers of stops, transfers of other stops are straight lines within walk change radius
+	 */
+	public static TransportRaptorNetwork build(TransportRoutingConfiguration cfg, Collection<TransportRoute> routes,
+	                                           TransportTransferGraph transferGraph) {
+		return new TransportRaptorNetwork(cfg, new ArrayList<TransportRoute>(routes), transferGraph);
+	}
+
+	public int getStopsCount() {
+		return stops.length;
+	}
+
+	public int getRoutesCount() {
+		return routes.length;
+	}
+
+	public int getTransfersCount() {
+		return transferStops.length;
+	}
+
+	/**
+	 * @return times of stops from trip start in seconds or null if route can't be used
+	 */
+	private int[] routeTimes(TransportRoute r) {
+		List<TransportStop> fs = r.getForwardStops();
+		int[] times = new int[fs.size()];
+		if (cfg.useSchedule) {
+			TransportSchedule sc = r.getSchedule();
+			if (sc == null || sc.tripIntervals.isEmpty()) {
+				return null;
+			}
+			for (int i = 1; i < times.length; i++) {
+				times[i] = sc.avgStopIntervals.size() >= i && times[i - 1] >= 0 ?
+						times[i - 1] + sc.avgStopIntervals.getQuick(i - 1) * 10 : -1;
+			}
+		} else {
+			float speed = cfg.router == null ? cfg.defaultTravelSpeed : cfg.getSpeedByRouteType(r.getType());
+			if (speed <= 0) {
+				return null;
+			}
+			double t = 0;
+			for (int i = 1; i < times.length; i++) {
+				t += cfg.stopTime + MapUtils.getDistance(fs.get(i - 1).getLocation(), fs.get(i).getLocation()) / speed;
+				times[i] = (int) t;
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * Adds stops within the box of radius around the point
+	 */
+	void searchStops(int x31, int y31, int radius31, TIntArrayList res) {
+		grid.search(x31, y31, radius31, res);
+	}
+
+	/**
+	 * Grid index of points sorted by cells
+	 */
+	static class StopsGrid {
+		private static final int CELL_SHIFT = 14;
+
+		private final int[] x;
+		private final int[] y;
+		private final long[] cellKeys;
+		private final int[] cellStart;
+		private final int[] cellStops;
+
+		StopsGrid(int[] x, int[] y) {
+			this.x = x;
+			this.y = y;
+			final long[] keys = new long[x.length];
+			Integer[] order = new Integer[x.length];
+			for (int i = 0; i < x.length; i++) {
+				keys[i] = cellKey(x[i] >> CELL_SHIFT, y[i] >> CELL_SHIFT);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Long.compare(keys[o1], keys[o2]);
+				}
+			});
+			TLongArrayList cKeys = new TLongArrayList();
+			TIntArrayList cStart = new TIntArrayList();
+			cellStops = new int[x.length];
+			for (int i = 0; i < order.length; i++) {
+				cellStops[i] = order[i];
+				if (cKeys.isEmpty() || cKeys.get(cKeys.size() - 1) != keys[order[i]]) {
+					cKeys.add(keys[order[i]]);
+					cStart.add(i);
+				}
+			}
+			cStart.add(x.length);
+			cellKeys = cKeys.toArray();
+			cellStart = cStart.toArray();
+		}
+
+		void search(int x31, int y31, int radius31, TIntArrayList res) {
+			int lx = (x31 - radius31) >> CELL_SHIFT;
+			int rx = (x31 + radius31) >> CELL_SHIFT;
+			int ty = (y31 - radius31) >> CELL_SHIFT;
+			int by = (y31 + radius31) >> CELL_SHIFT;
+			for (int cx = lx; cx <= rx; cx++) {
+				for (int cy = ty; cy <= by; cy++) {
+					int c = Arrays.binarySearch(cellKeys, cellKey(cx, cy));
+					if (c < 0) {
+						continue;
+					}
+					for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+						int s = cellStops[i];
+						if (Math.abs(x[s] - x31) <= radius31 && Math.abs(y[s] - y31) <= radius31) {
+							res.add(s);
+						}
+					}
+				}
+			}
+		}
+
+		private static long cellKey(int cx, int cy) {
+			return (((long) cx) << 31) | cy;
+		}
+	}
+}
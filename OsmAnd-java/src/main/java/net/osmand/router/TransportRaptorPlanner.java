@@ -0,0 +1,327 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.PlatformUtil;
+import net.osmand.data.LatLon;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Round based public transport router (RAPTOR), alternative to {@link TransportRoutePlanner}.
+ * Round k finds earliest arrival to every stop with k rides: routes passing stops improved in previous round
+ * are scanned once from the first improved stop, boarding the earliest trip, then walking transfers are relaxed.
+ * Result of every round which arrives earlier than results with less rides is returned,
+ * so results are Pareto optimal by number of changes and arrival time.
+ * Times are in seconds, with {@link TransportRoutingConfiguration#useSchedule} departure is
+ * {@link TransportRoutingConfiguration#scheduleTimeOfDay}, otherwise routes run any time and boarding time is waiting time.
+ */
+public class TransportRaptorPlanner {
+
+	private static final Log log = PlatformUtil.getLog(TransportRaptorPlanner.class);
+
+	private static final int INF = Integer.MAX_VALUE;
+	private static final byte ACCESS = 1;
+	private static final byte RIDE = 2;
+	private static final byte TRANSFER = 3;
+	// network is loaded around start and end extended by part of distance between them
+	private static final double NETWORK_MARGIN = 0.2;
+
+	private final TransportRaptorNetwork network;
+
+	// labels of rounds, index is round * stops + stop
+	private int[] arrival;
+	private byte[] kind;
+	// ride: route, boarding position, alighting position, trip;
+	// transfer: the same of the ride to the stop where walk starts
+	private int[] parentA;
+	private int[] parentB;
+	private int[] parentC;
+	private int[] tripStart;
+	// access and transfer: walk distance
+	private int[] walkDist;
+	private int[] bestArrival;
+	private boolean[] markedStops;
+	private int[] routeScanPosition;
+
+	public TransportRaptorPlanner(TransportRaptorNetwork network) {
+		this.network = network;
+	}
+
+	/**
+	 * Builds network around start and end and calculates routes
+	 */
+	public static List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end)
+			throws IOException, InterruptedException {
+		ctx.startCalcTime = System.currentTimeMillis();
+		int sx = MapUtils.get31TileNumberX(start.getLongitude());
+		int sy = MapUtils.get31TileNumberY(start.getLatitude());
+		int ex = MapUtils.get31TileNumberX(end.getLongitude());
+		int ey = MapUtils.get31TileNumberY(end.getLatitude());
+		int margin = (int) (ctx.cfg.walkRadius / MapUtils.getTileDistanceWidth(31)
+				+ NETWORK_MARGIN * Math.max(Math.abs(sx - ex), Math.abs(sy - ey)));
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(ctx,
+				Math.max(0, Math.min(sx, ex) - margin), Math.max(0, Math.min(sy, ey) - margin),
+				(int) Math.min(Integer.MAX_VALUE, (long) Math.max(sx, ex) + margin),
+				(int) Math.min(Integer.MAX_VALUE, (long) Math.max(sy, ey) + margin));
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(start, end, ctx.calculationProgress);
+		log.info(String.format(Locale.US, "RAPTOR calculated %.1f seconds (%d ms read), found %s results, "
+						+ "network %d stops / %d routes / %d transfers",
+				(System.currentTimeMillis() - ctx.startCalcTime) / 1000.0, ctx.readTime / (1000 * 1000),
+				res == null ? "-" : String.valueOf(res.size()), network.getStopsCount(), network.getRoutesCount(),
+				network.getTransfersCount()));
+		return res;
+	}
+
+	public List<TransportRouteResult> buildRoute(LatLon start, LatLon end, RouteCalculationProgress progress)
+			throws InterruptedException {
+		TransportRoutingConfiguration cfg = network.cfg;
+		int stopsCount = network.stops.length;
+		int rounds = cfg.maxNumberOfChanges + 1;
+		init(rounds, stopsCount);
+		int departure = cfg.useSchedule ? cfg.scheduleTimeOfDay * 10 : 0;
+		int maxArrival = departure + cfg.maxRouteTime;
+
+		TIntArrayList accessStops = new TIntArrayList();
+		int walkRadius31 = (int) (cfg.walkRadius / MapUtils.getTileDistanceWidth(31));
+		network.searchStops(MapUtils.get31TileNumberX(start.getLongitude()), MapUtils.get31TileNumberY(start.getLatitude()),
+				walkRadius31, accessStops);
+		for (int i = 0; i < accessStops.size(); i++) {
+			int s = accessStops.get(i);
+			double d = MapUtils.getDistance(network.stops[s].getLocation(), start);
+			if (d <= cfg.walkRadius) {
+				int t = departure + (int) (d / cfg.walkSpeed);
+				arrival[s] = t;
+				kind[s] = ACCESS;
+				walkDist[s] = (int) d;
+				bestArrival[s] = t;
+				markedStops[s] = true;
+			}
+		}
+		TIntArrayList egressStops = new TIntArrayList();
+		network.searchStops(MapUtils.get31TileNumberX(end.getLongitude()), MapUtils.get31TileNumberY(end.getLatitude()),
+				walkRadius31, egressStops);
+		TIntArrayList egressDistances = new TIntArrayList();
+		for (int i = egressStops.size() - 1; i >= 0; i--) {
+			double d = MapUtils.getDistance(network.stops[egressStops.get(i)].getLocation(), end);
+			if (d > cfg.walkRadius) {
+				egressStops.removeAt(i);
+			}
+		}
+		for (int i = 0; i < egressStops.size(); i++) {
+			egressDistances.add((int) MapUtils.getDistance(network.stops[egressStops.get(i)].getLocation(), end));
+		}
+
+		List<TransportRouteResult> results = new ArrayList<TransportRouteResult>();
+		int bestTarget = maxArrival;
+		for (int k = 1; k <= rounds; k++) {
+			if (progress != null && progress.isCancelled) {
+				return null;
+			}
+			if (!scanRoutes(k, bestTarget)) {
+				break;
+			}
+			relaxTransfers(k, bestTarget);
+			int bestStop = -1;
+			int bestEgress = 0;
+			for (int i = 0; i < egressStops.size(); i++) {
+				int s = egressStops.get(i);
+				int a = arrival[k * stopsCount + s];
+				if (a != INF) {
+					long t = a + (long) (egressDistances.get(i) / cfg.walkSpeed);
+					if (t < bestTarget) {
+						bestTarget = (int) t;
+						bestStop = s;
+						bestEgress = egressDistances.get(i);
+					}
+				}
+			}
+			if (bestStop != -1) {
+				results.add(prepareResult(k, bestStop, bestEgress, bestTarget - departure));
+			}
+		}
+		Collections.reverse(results);
+		return results;
+	}
+
+	private void init(int rounds, int stopsCount) {
+		int size = (rounds + 1) * stopsCount;
+		if (arrival == null || arrival.length < size) {
+			arrival = new int[size];
+			kind = new byte[size];
+			parentA = new int[size];
+			parentB = new int[size];
+			parentC = new int[size];
+			tripStart = new int[size];
+			walkDist = new int[size];
+			bestArrival = new int[stopsCount];
+			markedStops = new boolean[stopsCount];
+			routeScanPosition = new int[network.routes.length];
+		}
+		Arrays.fill(arrival, INF);
+		Arrays.fill(kind, (byte) 0);
+		Arrays.fill(bestArrival, INF);
+		Arrays.fill(markedStops, false);
+	}
+
+	private boolean scanRoutes(int k, int bestTarget) {
+		TransportRoutingConfiguration cfg = network.cfg;
+		int stopsCount = network.stops.length;
+		// routes to scan from the first marked stop
+		Arrays.fill(routeScanPosition, INF);
+		boolean marked = false;
+		for (int s = 0; s < stopsCount; s++) {
+			if (markedStops[s]) {
+				marked = true;
+				markedStops[s] = false;
+				for (int i = network.stopRoutesStart[s]; i < network.stopRoutesStart[s + 1]; i++) {
+					int r = network.stopRoutes[i];
+					routeScanPosition[r] = Math.min(routeScanPosition[r], network.stopRoutePositions[i]);
+				}
+			}
+		}
+		if (!marked) {
+			return false;
+		}
+		int prevRound = (k - 1) * stopsCount;
+		int round = k * stopsCount;
+		int waitTime = k > 1 ? cfg.getChangeTime() : 0;
+		for (int r = 0; r < network.routes.length; r++) {
+			if (routeScanPosition[r] == INF) {
+				continue;
+			}
+			int rs = network.routeStopsStart[r];
+			int re = network.routeStopsStart[r + 1];
+			boolean scheduled = network.routeTripsStart[r] < network.routeTripsStart[r + 1];
+			int trip = INF;
+			int boardPos = -1;
+			for (int p = routeScanPosition[r]; p < re - rs; p++) {
+				int s = network.routeStops[rs + p];
+				int time = network.routeStopTimes[rs + p];
+				if (time < 0) {
+					break;
+				}
+				if (trip != INF && p > boardPos) {
+					int a = trip + time;
+					if (a < bestArrival[s] && a < bestTarget) {
+						arrival[round + s] = a;
+						bestArrival[s] = a;
+						kind[round + s] = RIDE;
+						parentA[round + s] = r;
+						parentB[round + s] = boardPos;
+						parentC[round + s] = p;
+						tripStart[round + s] = trip;
+						markedStops[s] = true;
+					}
+				}
+				int prev = arrival[prevRound + s];
+				if (prev != INF) {
+					int ready = prev + waitTime + (scheduled ? 0 : cfg.getBoardingTime()) - time;
+					int t = scheduled ? findTrip(r, ready) : ready;
+					if (t < trip) {
+						trip = t;
+						boardPos = p;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private int findTrip(int r, int earliestStart) {
+		int from = network.routeTripsStart[r];
+		int to = network.routeTripsStart[r + 1];
+		int ind = Arrays.binarySearch(network.tripStarts, from, to, earliestStart);
+		if (ind < 0) {
+			ind = -(ind + 1);
+		} else {
+			// the first trip with equal start
+			while (ind > from && network.tripStarts[ind - 1] == earliestStart) {
+				ind--;
+			}
+		}
+		return ind < to ? network.tripStarts[ind] : INF;
+	}
+
+	private void relaxTransfers(int k, int bestTarget) {
+		TransportRoutingConfiguration cfg = network.cfg;
+		int round = k * network.stops.length;
+		// only stops reached by ride in this round, their labels are copied before they could be
+		// replaced by transfers, so walks are never chained
+		TIntArrayList rideStops = new TIntArrayList();
+		for (int s = 0; s < network.stops.length; s++) {
+			if (markedStops[s] && kind[round + s] == RIDE) {
+				rideStops.add(s);
+			}
+		}
+		int[] rides = new int[rideStops.size() * 5];
+		for (int i = 0; i < rideStops.size(); i++) {
+			int l = round + rideStops.get(i);
+			rides[i * 5] = arrival[l];
+			rides[i * 5 + 1] = parentA[l];
+			rides[i * 5 + 2] = parentB[l];
+			rides[i * 5 + 3] = parentC[l];
+			rides[i * 5 + 4] = tripStart[l];
+		}
+		for (int i = 0; i < rideStops.size(); i++) {
+			int s = rideStops.get(i);
+			int a = rides[i * 5];
+			for (int j = network.transfersStart[s]; j < network.transfersStart[s + 1]; j++) {
+				int t = network.transferStops[j];
+				int d = network.transferDistances[j];
+				int ta = a + (int) (d / cfg.walkSpeed);
+				if (ta < bestArrival[t] && ta < bestTarget) {
+					arrival[round + t] = ta;
+					bestArrival[t] = ta;
+					kind[round + t] = TRANSFER;
+					parentA[round + t] = rides[i * 5 + 1];
+					parentB[round + t] = rides[i * 5 + 2];
+					parentC[round + t] = rides[i * 5 + 3];
+					tripStart[round + t] = rides[i * 5 + 4];
+					walkDist[round + t] = d;
+					markedStops[t] = true;
+				}
+			}
+		}
+	}
+
+	private TransportRouteResult prepareResult(int k, int stop, int egressDist, int routeTime) {
+		TransportRoutingConfiguration cfg = network.cfg;
+		int stopsCount = network.stops.length;
+		TransportRouteResult res = new TransportRouteResult(cfg);
+		// egress stop reached by transfer is left by the walk of transfer and egress
+		int last = k * stopsCount + stop;
+		res.setFinishWalkDist(kind[last] == TRANSFER ? walkDist[last] + egressDist : egressDist);
+		res.setRouteTime(routeTime);
+		int s = stop;
+		for (int round = k; round > 0; round--) {
+			// transfer label keeps the ride before the walk
+			int l = round * stopsCount + s;
+			int r = parentA[l];
+			int rs = network.routeStopsStart[r];
+			TransportRouteResultSegment sg = new TransportRouteResultSegment();
+			sg.route = network.routes[r];
+			sg.start = parentB[l];
+			sg.end = parentC[l];
+			boolean scheduled = network.routeTripsStart[r] < network.routeTripsStart[r + 1];
+			sg.depTime = scheduled ? (tripStart[l] + network.routeStopTimes[rs + sg.start]) / 10 : -1;
+			sg.travelTime = network.routeStopTimes[rs + sg.end] - network.routeStopTimes[rs + sg.start];
+			sg.travelDistApproximate = sg.getTravelDist();
+			s = network.routeStops[rs + sg.start];
+			int pl = (round - 1) * stopsCount + s;
+			sg.walkDist = kind[pl] == ACCESS || kind[pl] == TRANSFER ? walkDist[pl] : 0;
+			sg.walkTime = sg.walkDist / cfg.walkSpeed;
+			res.segments.add(0, sg);
+		}
+		return res;
+	}
+}
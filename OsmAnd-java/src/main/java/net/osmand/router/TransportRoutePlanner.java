@@ -95,6 +95,7 @@ public class TransportRoutePlanner {
 			}
 			TransportStop prevStop = segment.getStop(segment.segStart);
 			List<TransportRouteSegment> sgms = new ArrayList<TransportRouteSegment>();
+			TIntArrayList walkDistances = new TIntArrayList();
 			for (int ind = 1 + segment.segStart; ind < segment.getLength(); ind++) {
 				if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
 					return null;
@@ -116,9 +117,14 @@ public class TransportRoutePlanner {
 					break;
 				}
 				sgms.clear();
-				sgms = ctx.getTransportStops(stop.x31, stop.y31, true, sgms);
+				walkDistances.clear();
+				boolean transfers = ctx.getTransferSegments(stop, sgms, walkDistances);
+				if (!transfers) {
+					sgms = ctx.getTransportStops(stop.x31, stop.y31, true, sgms);
+				}
 				ctx.visitedStops++;
-				for (TransportRouteSegment sgm : sgms) {
+				for (int k = 0; k < sgms.size(); k++) {
+					TransportRouteSegment sgm = sgms.get(k);
 					if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
 						return null;
 					}
@@ -128,7 +134,8 @@ public class TransportRoutePlanner {
 					TransportRouteSegment nextSegment = new TransportRouteSegment(sgm);
 					nextSegment.parentRoute = segment;
 					nextSegment.parentStop = ind;
-					nextSegment.walkDist = MapUtils.getDistance(nextSegment.getLocation(), stop.getLocation());
+					nextSegment.walkDist = transfers ? walkDistances.get(k) :
+							MapUtils.getDistance(nextSegment.getLocation(), stop.getLocation());
 					nextSegment.parentTravelTime = travelTime;
 					nextSegment.parentTravelDist = travelDist;
 					double walkTime = nextSegment.walkDist / ctx.cfg.walkSpeed
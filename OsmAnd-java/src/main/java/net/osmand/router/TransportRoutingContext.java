@@ -30,6 +30,11 @@ public class TransportRoutingContext {
 	public Map<TransportStop, List<TransportRoute>> missingStopsCache = new HashMap<TransportStop, List<TransportRoute>>();
 
 	public TLongObjectHashMap<List<TransportRouteSegment>> quadTree;
+	// walking transfers between stops, if it's set transfers are not searched around visited stops.
+	// Optional, it's not set by default: graph is built once by TransportTransferGraph.loadOrBuild with pedestrian routing
+	public TransportTransferGraph transferGraph;
+	// segments of loaded tiles by stop id
+	private final TLongObjectHashMap<List<TransportRouteSegment>> stopSegments = new TLongObjectHashMap<List<TransportRouteSegment>>();
 	// Here we don't limit files by bbox, so it could be an issue while searching for multiple unused files
 	// Incomplete routes usually don't need more files than around Max-BBOX of start/end,
 	// so here an improvement could be introduced
@@ -76,12 +81,7 @@ public class TransportRoutingContext {
 		int by = (sy + d ) >> (31 - cfg.ZOOM_TO_LOAD_TILES);
 		for(int x = lx; x <= rx; x++) {
 			for(int y = ty; y <= by; y++) {
-				long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
-				List<TransportRouteSegment> list = quadTree.get(tileId);
-				if(list == null) {
-					list = loadTile(x, y);
-					quadTree.put(tileId, list);
-				}
+				List<TransportRouteSegment> list = getTile(x, y);
 				for(TransportRouteSegment r : list) {
 					TransportStop st = r.getStop(r.segStart);
 					if (Math.abs(st.x31 - sx) > walkRadiusIn31 || Math.abs(st.y31 - sy) > walkRadiusIn31) {
@@ -98,6 +98,47 @@ public class TransportRoutingContext {
 	}
 
 
+	/**
+	 * Adds segments of the stop and stops connected by {@link #transferGraph} with their walk distances
+	 * @return false if the stop is not in transfer graph
+	 */
+	public boolean getTransferSegments(TransportStop stop, List<TransportRouteSegment> res, TIntArrayList walkDistances) throws IOException {
+		int ind = transferGraph == null ? -1 : transferGraph.indexOf(stop.getId());
+		if (ind < 0) {
+			return false;
+		}
+		long nanoTime = System.nanoTime();
+		addStopSegments(ind, 0, res, walkDistances);
+		for (int i = transferGraph.transfersStart[ind]; i < transferGraph.transfersStart[ind + 1]; i++) {
+			addStopSegments(transferGraph.transferStops[i], transferGraph.transferDistances[i], res, walkDistances);
+		}
+		loadTime += System.nanoTime() - nanoTime;
+		return true;
+	}
+
+	private void addStopSegments(int graphInd, int walkDist, List<TransportRouteSegment> res, TIntArrayList walkDistances) throws IOException {
+		int pz = 31 - cfg.ZOOM_TO_LOAD_TILES;
+		getTile(transferGraph.stopX[graphInd] >> pz, transferGraph.stopY[graphInd] >> pz);
+		List<TransportRouteSegment> list = stopSegments.get(transferGraph.stopIds[graphInd]);
+		if (list != null) {
+			for (TransportRouteSegment r : list) {
+				res.add(r);
+				walkDistances.add(walkDist);
+			}
+			loadedWays += list.size();
+		}
+	}
+
+	private List<TransportRouteSegment> getTile(int x, int y) throws IOException {
+		long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
+		List<TransportRouteSegment> list = quadTree.get(tileId);
+		if(list == null) {
+			list = loadTile(x, y);
+			quadTree.put(tileId, list);
+		}
+		return list;
+	}
+
 	private List<TransportRouteSegment> loadTile(int x, int y) throws IOException {
 		long nanoTime = System.nanoTime();
 		List<TransportRouteSegment> lst = new ArrayList<TransportRouteSegment>();
@@ -115,6 +156,7 @@ public class TransportRoutingContext {
 			if (s.isDeleted() || s.getRoutes() == null) {
 				continue;
 			}
+			int segmentsStart = lst.size();
 			for (TransportRoute route : s.getRoutes()) {
 				int stopIndex = -1;
 				double dist = TransportRoute.SAME_STOP;
@@ -142,6 +184,9 @@ public class TransportRoutingContext {
 							s.toString(), route.getRef(), route.getId() / 2));
 				}
 			}
+			if (lst.size() > segmentsStart) {
+				stopSegments.put(s.getId(), new ArrayList<TransportRouteSegment>(lst.subList(segmentsStart, lst.size())));
+			}
 		}
 	}
 
@@ -0,0 +1,425 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.TransportStop;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.TransportRaptorNetwork.StopsGrid;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Walking transfers between transport stops of the set of files, calculated once by pedestrian routing
+ * and stored in CSR arrays (transfers of stop i are {@code transfersStart[i]} .. {@code transfersStart[i + 1]}).
+ * Stops are sorted by id. Transfer distance is walking distance in meters over the road network to the stops
+ * within walk change radius, stops which are not reachable within {@link #MAX_DETOUR} of the radius are not connected.
+ * Stops without roads around are connected by straight lines.
+ * Used by {@link TransportRoutingContext#transferGraph} instead of searching stops around every visited stop.
+ */
+public class TransportTransferGraph {
+
+	private static final Log log = PlatformUtil.getLog(TransportTransferGraph.class);
+
+	public static final int VERSION = 1;
+	public static final String FILE_EXT = ".transfers";
+	// walking route could be longer than walk change radius
+	public static final double MAX_DETOUR = 2;
+	private static final int MAX_SEARCH_VERTICES = 5000;
+
+	final String[] fileNames;
+	final long[] fileDates;
+	final int walkChangeRadius;
+
+	final long[] stopIds;
+	final int[] stopX;
+	final int[] stopY;
+	final int[] transfersStart;
+	final int[] transferStops;
+	final int[] transferDistances;
+
+	TransportTransferGraph(String[] fileNames, long[] fileDates, int walkChangeRadius, long[] stopIds, int[] stopX,
+	                       int[] stopY, int[] transfersStart, int[] transferStops, int[] transferDistances) {
+		this.fileNames = fileNames;
+		this.fileDates = fileDates;
+		this.walkChangeRadius = walkChangeRadius;
+		this.stopIds = stopIds;
+		this.stopX = stopX;
+		this.stopY = stopY;
+		this.transfersStart = transfersStart;
+		this.transferStops = transferStops;
+		this.transferDistances = transferDistances;
+	}
+
+	/**
+	 * @return index of the stop or -1
+	 */
+	public int indexOf(long stopId) {
+		int ind = Arrays.binarySearch(stopIds, stopId);
+		return ind < 0 ? -1 : ind;
+	}
+
+	public int getStopsCount() {
+		return stopIds.length;
+	}
+
+	public int getTransfersCount() {
+		return transferStops.length;
+	}
+
+	/**
+	 * @return walking distance between stops or -1 if they are not connected
+	 */
+	public int getTransferDistance(long fromStopId, long toStopId) {
+		int from = indexOf(fromStopId);
+		int to = indexOf(toStopId);
+		if (from < 0 || to < 0) {
+			return -1;
+		}
+		for (int i = transfersStart[from]; i < transfersStart[from + 1]; i++) {
+			if (transferStops[i] == to) {
+				return transferDistances[i];
+			}
+		}
+		return -1;
+	}
+
+	public boolean isGraphOf(BinaryMapIndexReader[] readers, int walkChangeRadius) {
+		if (readers.length != fileNames.length || this.walkChangeRadius != walkChangeRadius) {
+			return false;
+		}
+		for (BinaryMapIndexReader r : readers) {
+			int ind = Arrays.asList(fileNames).indexOf(r.getFile().getName());
+			if (ind < 0 || fileDates[ind] != r.getDateCreated()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the graph from cache file if it was built for the same files, otherwise builds the graph and writes it
+	 * @param ctx pedestrian routing context over the same files
+	 */
+	public static TransportTransferGraph loadOrBuild(File cacheFile, RoutePlannerFrontEnd planner, RoutingContext ctx,
+	                                                 int walkChangeRadius) throws IOException {
+		if (cacheFile.exists()) {
+			try {
+				TransportTransferGraph graph = readFromFile(cacheFile);
+				if (graph != null && graph.isGraphOf(ctx.getMaps(), walkChangeRadius)) {
+					return graph;
+				}
+			} catch (IOException e) {
+				log.warn("Can't read transfers " + cacheFile.getName() + ": " + e.getMessage());
+			}
+		}
+		TransportTransferGraph graph = build(planner, ctx, walkChangeRadius);
+		graph.writeToFile(cacheFile);
+		return graph;
+	}
+
+	/**
+	 * Builds transfers between all stops of the files of pedestrian routing context
+	 */
+	public static TransportTransferGraph build(RoutePlannerFrontEnd planner, RoutingContext ctx,
+	                                           int walkChangeRadius) throws IOException {
+		long time = System.currentTimeMillis();
+		BinaryMapIndexReader[] readers = ctx.getMaps();
+		String[] fileNames = new String[readers.length];
+		long[] fileDates = new long[readers.length];
+		TLongObjectHashMap<TransportStop> stopsById = new TLongObjectHashMap<TransportStop>();
+		for (int i = 0; i < readers.length; i++) {
+			fileNames[i] = readers[i].getFile().getName();
+			fileDates[i] = readers[i].getDateCreated();
+			SearchRequest<TransportStop> req = BinaryMapIndexReader.buildSearchTransportRequest(0, Integer.MAX_VALUE,
+					0, Integer.MAX_VALUE, -1, null);
+			for (TransportStop s : readers[i].searchTransportIndex(req)) {
+				if (!s.isDeleted() && !stopsById.containsKey(s.getId())) {
+					stopsById.put(s.getId(), s);
+				}
+			}
+		}
+		long[] ids = stopsById.keys();
+		Arrays.sort(ids);
+		List<TransportStop> stops = new ArrayList<TransportStop>(ids.length);
+		for (long id : ids) {
+			stops.add(stopsById.get(id));
+		}
+		TransportTransferGraph graph = build(planner, ctx, stops, walkChangeRadius, fileNames, fileDates);
+		log.info(String.format("Transfer graph of %d stops, %d transfers is built in %d ms", graph.getStopsCount(),
+				graph.getTransfersCount(), System.currentTimeMillis() - time));
+		return graph;
+	}
+
+	/**
+	 * @param stops sorted by id
+	 */
+	static TransportTransferGraph build(RoutePlannerFrontEnd planner, RoutingContext ctx, List<TransportStop> stops,
+	                                    int walkChangeRadius, String[] fileNames, long[] fileDates) throws IOException {
+		int n = stops.size();
+		long[] stopIds = new long[n];
+		final int[] x = new int[n];
+		final int[] y = new int[n];
+		for (int i = 0; i < n; i++) {
+			TransportStop s = stops.get(i);
+			stopIds[i] = s.getId();
+			x[i] = s.x31 != 0 || s.y31 != 0 ? s.x31 : MapUtils.get31TileNumberX(s.getLocation().getLongitude());
+			y[i] = s.x31 != 0 || s.y31 != 0 ? s.y31 : MapUtils.get31TileNumberY(s.getLocation().getLatitude());
+		}
+		// stops are processed by cells, so road tiles around are loaded once
+		List<Integer> order = new ArrayList<Integer>(n);
+		for (int i = 0; i < n; i++) {
+			order.add(i);
+		}
+		final int shift = 31 - ctx.config.ZOOM_TO_LOAD_TILES;
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int c = Integer.compare(x[o1] >> shift, x[o2] >> shift);
+				return c != 0 ? c : Integer.compare(y[o1] >> shift, y[o2] >> shift);
+			}
+		});
+		StopsGrid grid = new StopsGrid(x, y);
+		RouteSegmentPoint[] points = new RouteSegmentPoint[n];
+		boolean[] snapped = new boolean[n];
+		TransferSearch search = new TransferSearch(ctx);
+		int radius31 = (int) (walkChangeRadius / MapUtils.getTileDistanceWidth(31));
+		int[][] rowStops = new int[n][];
+		int[][] rowDistances = new int[n][];
+		TIntArrayList near = new TIntArrayList();
+		TIntArrayList targets = new TIntArrayList();
+		for (int i : order) {
+			if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+				return null;
+			}
+			near.clear();
+			grid.search(x[i], y[i], radius31, near);
+			targets.clear();
+			for (int k = 0; k < near.size(); k++) {
+				int t = near.get(k);
+				if (t != i && MapUtils.measuredDist31(x[i], y[i], x[t], y[t]) <= walkChangeRadius) {
+					targets.add(t);
+				}
+			}
+			targets.add(i);
+			for (int k = 0; k < targets.size(); k++) {
+				int t = targets.get(k);
+				if (!snapped[t]) {
+					snapped[t] = true;
+					points[t] = planner.findRouteSegment(MapUtils.get31LatitudeY(y[t]), MapUtils.get31LongitudeX(x[t]),
+							ctx, null, true);
+				}
+			}
+			targets.removeAt(targets.size() - 1);
+			double[] dist = new double[targets.size()];
+			if (points[i] != null) {
+				search.search(points[i], x[i], y[i], targets, points, x, y, walkChangeRadius * MAX_DETOUR, dist);
+			} else {
+				for (int k = 0; k < targets.size(); k++) {
+					int t = targets.get(k);
+					dist[k] = MapUtils.measuredDist31(x[i], y[i], x[t], y[t]);
+				}
+			}
+			TIntArrayList rs = new TIntArrayList();
+			TIntArrayList rd = new TIntArrayList();
+			for (int k = 0; k < targets.size(); k++) {
+				if (dist[k] >= 0 && dist[k] <= walkChangeRadius * MAX_DETOUR) {
+					rs.add(targets.get(k));
+					rd.add((int) Math.round(dist[k]));
+				}
+			}
+			rowStops[i] = rs.toArray();
+			rowDistances[i] = rd.toArray();
+			if (ctx.checkIfMemoryLimitCritical(ctx.config.memoryLimitation)) {
+				ctx.unloadUnusedTiles(ctx.config.memoryLimitation);
+			}
+		}
+		int[] transfersStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			transfersStart[i + 1] = transfersStart[i] + rowStops[i].length;
+		}
+		int[] transferStops = new int[transfersStart[n]];
+		int[] transferDistances = new int[transfersStart[n]];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(rowStops[i], 0, transferStops, transfersStart[i], rowStops[i].length);
+			System.arraycopy(rowDistances[i], 0, transferDistances, transfersStart[i], rowDistances[i].length);
+		}
+		return new TransportTransferGraph(fileNames, fileDates, walkChangeRadius, stopIds, x, y, transfersStart,
+				transferStops, transferDistances);
+	}
+
+	/**
+	 * Search over road points from the stop to target stops
+	 */
+	private static class TransferSearch extends RoadPointsSearch {
+		private final RoutingContext ctx;
+		private final TLongObjectHashMap<TIntArrayList> entries = new TLongObjectHashMap<TIntArrayList>();
+		private TIntArrayList targets;
+		private RouteSegmentPoint[] points;
+		private int[] stopX;
+		private int[] stopY;
+		private double[] dist;
+
+		TransferSearch(RoutingContext ctx) {
+			super(ctx.getRouter(), true);
+			this.ctx = ctx;
+		}
+
+		/**
+		 * Fills distances to targets, -1 if target is not reached
+		 */
+		void search(RouteSegmentPoint src, int sx, int sy, TIntArrayList targets, RouteSegmentPoint[] points,
+		            int[] x, int[] y, double maxDist, double[] dist) {
+			this.targets = targets;
+			this.points = points;
+			this.stopX = x;
+			this.stopY = y;
+			this.dist = dist;
+			entries.clear();
+			Arrays.fill(dist, -1);
+			double srcWalk = MapUtils.measuredDist31(sx, sy, src.preciseX, src.preciseY);
+			for (int k = 0; k < targets.size(); k++) {
+				int t = targets.get(k);
+				RouteSegmentPoint tp = points[t];
+				if (tp == null) {
+					dist[k] = MapUtils.measuredDist31(sx, sy, x[t], y[t]);
+					continue;
+				}
+				double walk = MapUtils.measuredDist31(x[t], y[t], tp.preciseX, tp.preciseY);
+				if (tp.road.getId() == src.road.getId() && tp.getSegmentStart() == src.getSegmentStart()) {
+					dist[k] = srcWalk + walk + MapUtils.measuredDist31(src.preciseX, src.preciseY, tp.preciseX, tp.preciseY);
+				}
+				addEntry(tp.road.getPoint31XTile(tp.getSegmentStart() - 1), tp.road.getPoint31YTile(tp.getSegmentStart() - 1), k);
+				addEntry(tp.road.getPoint31XTile(tp.getSegmentStart()), tp.road.getPoint31YTile(tp.getSegmentStart()), k);
+			}
+			search(src, srcWalk, maxDist, MAX_SEARCH_VERTICES);
+		}
+
+		@Override
+		RouteSegment loadRouteSegment(int x31, int y31) {
+			return ctx.loadRouteSegment(x31, y31, ctx.config.memoryLimitation);
+		}
+
+		@Override
+		boolean visit(int v, float key) {
+			TIntArrayList reached = entries.get(RouteContractionHierarchy.pointKey(x[v], y[v]));
+			if (reached != null) {
+				for (int j = 0; j < reached.size(); j++) {
+					int k = reached.get(j);
+					int t = targets.get(k);
+					RouteSegmentPoint tp = points[t];
+					double d = key + MapUtils.measuredDist31(x[v], y[v], tp.preciseX, tp.preciseY)
+							+ MapUtils.measuredDist31(stopX[t], stopY[t], tp.preciseX, tp.preciseY);
+					if (dist[k] < 0 || d < dist[k]) {
+						dist[k] = d;
+					}
+				}
+			}
+			return true;
+		}
+
+		private void addEntry(int px, int py, int target) {
+			long k = RouteContractionHierarchy.pointKey(px, py);
+			TIntArrayList l = entries.get(k);
+			if (l == null) {
+				l = new TIntArrayList(2);
+				entries.put(k, l);
+			}
+			l.add(target);
+		}
+	}
+
+	public void writeToFile(File f) throws IOException {
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(VERSION);
+			out.writeInt(walkChangeRadius);
+			out.writeInt(fileNames.length);
+			for (int i = 0; i < fileNames.length; i++) {
+				out.writeUTF(fileNames[i]);
+				out.writeLong(fileDates[i]);
+			}
+			out.writeInt(stopIds.length);
+			for (int i = 0; i < stopIds.length; i++) {
+				out.writeLong(stopIds[i]);
+				out.writeInt(stopX[i]);
+				out.writeInt(stopY[i]);
+				out.writeInt(transfersStart[i + 1]);
+			}
+			for (int i = 0; i < transferStops.length; i++) {
+				out.writeInt(transferStops[i]);
+				out.writeInt(transferDistances[i]);
+			}
+		} finally {
+			out.close();
+		}
+		if (f.exists()) {
+			f.delete();
+		}
+		if (!tmp.renameTo(f)) {
+			tmp.delete();
+			throw new IOException("Can't write transfers " + f.getName());
+		}
+	}
+
+	/**
+	 * Returns null if the file was written by another version
+	 */
+	public static TransportTransferGraph readFromFile(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			int walkChangeRadius = in.readInt();
+			int files = in.readInt();
+			String[] fileNames = new String[files];
+			long[] fileDates = new long[files];
+			for (int i = 0; i < files; i++) {
+				fileNames[i] = in.readUTF();
+				fileDates[i] = in.readLong();
+			}
+			int n = in.readInt();
+			long[] stopIds = new long[n];
+			int[] stopX = new int[n];
+			int[] stopY = new int[n];
+			int[] transfersStart = new int[n + 1];
+			for (int i = 0; i < n; i++) {
+				stopIds[i] = in.readLong();
+				stopX[i] = in.readInt();
+				stopY[i] = in.readInt();
+				transfersStart[i + 1] = in.readInt();
+			}
+			int[] transferStops = new int[transfersStart[n]];
+			int[] transferDistances = new int[transfersStart[n]];
+			for (int i = 0; i < transferStops.length; i++) {
+				transferStops[i] = in.readInt();
+				transferDistances[i] = in.readInt();
+			}
+			return new TransportTransferGraph(fileNames, fileDates, walkChangeRadius, stopIds, stopX, stopY,
+					transfersStart, transferStops, transferDistances);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -43,7 +43,9 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -61,6 +63,7 @@ public class SearchUICore {
 
 	private ThreadPoolExecutor singleThreadedExecutor;
 	private LinkedBlockingQueue<Runnable> taskQueue;
+	private volatile ThreadPoolExecutor filesSearchExecutor;
 	private Runnable onSearchStart = null;
 	private Runnable onResultsComplete = null;
 	private AtomicInteger requestNumber = new AtomicInteger();
@@ -85,6 +88,35 @@ public class SearchUICore {
 		singleThreadedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, taskQueue);
 	}
 
+	/**
+	 * Sets number of threads to read different files of one search in parallel, 1 to read files one by one.
+	 * Running search keeps using previous executor, it's not shut down, idle threads of it are stopped by timeout.
+	 */
+	public void setFilesSearchThreads(int threads) {
+		if (threads > 1) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "SearchFiles-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			filesSearchExecutor = executor;
+		} else {
+			filesSearchExecutor = null;
+		}
+	}
+
+	public int getFilesSearchThreads() {
+		ThreadPoolExecutor executor = filesSearchExecutor;
+		return executor == null ? 1 : executor.getMaximumPoolSize();
+	}
+
 	public static void setDebugMode(boolean debugMode) {
 		SearchUICore.debugMode = debugMode;
 	}
@@ -328,6 +360,7 @@ public class SearchUICore {
 			preparePhrase(sphrase);
 			AtomicInteger ai = new AtomicInteger();
 			SearchResultMatcher rm = new SearchResultMatcher(matcher, sphrase, ai.get(), ai, totalLimit);
+			rm.setFilesSearchExecutor(filesSearchExecutor);
 			api.search(sphrase, rm);
 
 			SearchResultCollection collection = new SearchResultCollection(
@@ -447,6 +480,7 @@ public class SearchUICore {
 		searchSettings = searchSettings.setOriginalLocation(loc);
 		final SearchPhrase phrase = this.phrase.generateNewPhrase(text, searchSettings);
 		final SearchResultMatcher rm = new SearchResultMatcher(null, phrase, requestNumber.get(), requestNumber, totalLimit);
+		rm.setFilesSearchExecutor(filesSearchExecutor);
 		searchInternal(phrase, rm);
 		SearchResultCollection collection = new SearchResultCollection(phrase);
 		collection.addSearchResults(rm.getRequestResults(), true, true);
@@ -473,6 +507,7 @@ public class SearchUICore {
 						onSearchStart.run();
 					}
 					final SearchResultMatcher rm = new SearchResultMatcher(matcher, phrase, request, requestNumber, totalLimit);
+					rm.setFilesSearchExecutor(filesSearchExecutor);
 					if (debugMode) {
 						LOG.info("Starting search <" + phrase.toString() + ">");
 					}
@@ -684,6 +719,7 @@ public class SearchUICore {
 		private SearchPhrase phrase;
 		private List<MapObject> exportedObjects;
 		private List<City> exportedCities;
+		private ExecutorService filesSearchExecutor;
 
 		public SearchResultMatcher(ResultMatcher<SearchResult> matcher, SearchPhrase phrase, int request,
 								   AtomicInteger requestNumber, int totalLimit) {
@@ -704,6 +740,21 @@ public class SearchUICore {
 			return parentSearchResult;
 		}
 
+		/**
+		 * Executor to read files in parallel (see {@link net.osmand.search.core.ParallelFilesSearch}),
+		 * null if files are read one by one. Objects are exported only in one thread, so executor is not used then.
+		 */
+		public ExecutorService getFilesSearchExecutor() {
+			if (phrase != null && phrase.getSettings().isExportObjects()) {
+				return null;
+			}
+			return filesSearchExecutor;
+		}
+
+		public void setFilesSearchExecutor(ExecutorService filesSearchExecutor) {
+			this.filesSearchExecutor = filesSearchExecutor;
+		}
+
 		public List<SearchResult> getRequestResults() {
 			return requestResults;
 		}
@@ -0,0 +1,133 @@
+package net.osmand.search.core;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs per file part of search API on files search executor of {@link SearchResultMatcher}.
+ * Files are read in parallel, but read results are processed in the search thread in order of completion,
+ * so {@link SearchResultMatcher} and API state are used only by one thread.
+ * Without executor files are read and processed one by one.
+ */
+public class ParallelFilesSearch {
+
+	public abstract static class FileSearch<T> {
+
+		private volatile boolean stopped;
+
+		/**
+		 * Reads file in worker thread, should use only read-only state of API, {@link #isStopped()}
+		 * and {@link SearchResultMatcher#isCancelled()}
+		 */
+		public abstract T readFile(BinaryMapIndexReader r) throws IOException;
+
+		/**
+		 * Processes read data in search thread
+		 */
+		public abstract void fileRead(BinaryMapIndexReader r, T data) throws IOException;
+
+		/**
+		 * Checked in search thread after processed file, other files are not read when limit of results is reached
+		 */
+		protected boolean isLimitReached() {
+			return false;
+		}
+
+		/**
+		 * @return true if results of files which are read are not needed anymore (search is cancelled or limit is reached)
+		 */
+		public boolean isStopped() {
+			return stopped;
+		}
+	}
+
+	public static <T> void search(Iterator<BinaryMapIndexReader> files, SearchResultMatcher resultMatcher,
+	                              FileSearch<T> search) throws IOException {
+		ExecutorService executor = resultMatcher.getFilesSearchExecutor();
+		if (executor == null) {
+			while (files.hasNext() && !search.stopped) {
+				BinaryMapIndexReader r = files.next();
+				search.fileRead(r, search.readFile(r));
+				search.stopped = resultMatcher.isCancelled() || search.isLimitReached();
+			}
+			return;
+		}
+		List<BinaryMapIndexReader> list = new ArrayList<>();
+		while (files.hasNext()) {
+			list.add(files.next());
+		}
+		if (list.size() == 1) {
+			BinaryMapIndexReader r = list.get(0);
+			search.fileRead(r, search.readFile(r));
+			return;
+		}
+		searchParallel(executor, list, resultMatcher, search);
+	}
+
+	private static <T> void searchParallel(ExecutorService executor, List<BinaryMapIndexReader> files,
+	                                       SearchResultMatcher resultMatcher, final FileSearch<T> search) throws IOException {
+		CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		Map<Future<T>, BinaryMapIndexReader> futures = new IdentityHashMap<>();
+		try {
+			for (final BinaryMapIndexReader r : files) {
+				Future<T> f = completionService.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						return search.stopped ? null : search.readFile(r);
+					}
+				});
+				futures.put(f, r);
+			}
+			while (!futures.isEmpty()) {
+				Future<T> f = completionService.take();
+				BinaryMapIndexReader r = futures.remove(f);
+				if (resultMatcher.isCancelled()) {
+					break;
+				}
+				T data;
+				try {
+					data = f.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IOException(cause);
+				}
+				search.fileRead(r, data);
+				if (search.isLimitReached()) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			search.stopped = true;
+			// files could be read by next search, so wait for running tasks
+			if (!Thread.currentThread().isInterrupted()) {
+				try {
+					for (int i = 0; i < futures.size(); i++) {
+						completionService.take();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
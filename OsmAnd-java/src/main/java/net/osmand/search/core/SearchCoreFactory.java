@@ -26,6 +26,7 @@ import net.osmand.osm.MapPoiTypes;
 import net.osmand.osm.PoiCategory;
 import net.osmand.osm.PoiType;
 import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.ParallelFilesSearch.FileSearch;
 import net.osmand.search.core.SearchPhrase.NameStringMatcher;
 import net.osmand.search.core.SearchPhrase.SearchPhraseDataType;
 import net.osmand.util.Algorithms;
@@ -338,13 +339,23 @@ public class SearchCoreFactory {
 		private void initAndSearchCities(final SearchPhrase phrase, final SearchResultMatcher resultMatcher) throws IOException {
 			QuadRect bbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 20);
 			Iterator<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes(bbox, SearchPhraseDataType.ADDRESS);
+			List<BinaryMapIndexReader> newIndexes = new ArrayList<>();
 			while (offlineIndexes.hasNext()) {
 				BinaryMapIndexReader r = offlineIndexes.next();
 				if (!townCities.containsKey(r)) {
-					BinaryMapIndexReader.buildAddressRequest(null);
-					List<City> l = r.getCities(null, BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
+					newIndexes.add(r);
+				}
+			}
+			ParallelFilesSearch.search(newIndexes.iterator(), resultMatcher, new FileSearch<List<City>>() {
+				@Override
+				public List<City> readFile(BinaryMapIndexReader r) throws IOException {
+					return r.getCities(null, BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
+				}
+
+				@Override
+				public void fileRead(BinaryMapIndexReader r, List<City> l) {
 					townCities.put(r, l);
-					for (City c  : l) {
+					for (City c : l) {
 						LatLon cl = c.getLocation();
 						c.setReferenceFile(r);
 						int y = MapUtils.get31TileNumberY(cl.getLatitude());
@@ -353,7 +364,7 @@ public class SearchCoreFactory {
 						townCitiesQR.insert(c, qr);
 					}
 				}
-			}
+			});
 			if (phrase.isNoSelectedType() && bbox != null
 					&& (phrase.isUnknownSearchWordPresent() || phrase.isEmptyQueryAllowed())
 					&& phrase.isSearchTypeAllowed(ObjectType.CITY)) {
@@ -393,7 +404,7 @@ public class SearchCoreFactory {
 			if (phrase.getRadiusLevel() > 1 || phrase.getUnknownWordToSearch().length() > 3 ||
 					phrase.hasMoreThanOneUnknownSearchWord()|| phrase.isSearchTypeAllowed(ObjectType.POSTCODE, true)) {
 				final boolean locSpecified = phrase.getLastTokenLocation() != null;
-				LatLon loc = phrase.getLastTokenLocation();
+				final LatLon loc = phrase.getLastTokenLocation();
 				final List<SearchResult> immediateResults = new ArrayList<>();
 				final QuadRect streetBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS);
 				final QuadRect postcodeBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5);
@@ -403,7 +414,7 @@ public class SearchCoreFactory {
 						SEARCH_ADDRESS_BY_NAME_PRIORITY : SEARCH_ADDRESS_BY_NAME_PRIORITY_RADIUS2;
 				final BinaryMapIndexReader[] currentFile = new BinaryMapIndexReader[1];
 
-				ResultMatcher<MapObject> rm = new ResultMatcher<MapObject>() {
+				final ResultMatcher<MapObject> rm = new ResultMatcher<MapObject>() {
 					int limit = 0;
 					@Override
 					public boolean publish(MapObject object) {
@@ -515,28 +526,64 @@ public class SearchCoreFactory {
 
 				Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(DEFAULT_ADDRESS_BBOX_RADIUS * 5,
 						SearchPhraseDataType.ADDRESS);
-				String wordToSearch = phrase.getUnknownWordToSearch();
-				while (offlineIterator.hasNext() && wordToSearch.length() > 0) {
-					BinaryMapIndexReader r = offlineIterator.next();
-					currentFile[0] = r;
-					immediateResults.clear();
-					SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, rawDataCollector, wordToSearch.toLowerCase(),
-							phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
-									: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
-					if (locSpecified) {
-						req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
-								phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
+				final String wordToSearch = phrase.getUnknownWordToSearch();
+				if (wordToSearch.length() == 0) {
+					return;
+				}
+				final ResultMatcher<MapObject> dataCollector = rawDataCollector;
+				ParallelFilesSearch.search(offlineIterator, resultMatcher, new FileSearch<List<MapObject>>() {
+					@Override
+					public List<MapObject> readFile(BinaryMapIndexReader r) throws IOException {
+						final List<MapObject> objects = new ArrayList<>();
+						// objects are filtered by rm in search thread
+						ResultMatcher<MapObject> collector = new ResultMatcher<MapObject>() {
+							@Override
+							public boolean publish(MapObject object) {
+								objects.add(object);
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return resultMatcher.isCancelled() || isStopped();
+							}
+						};
+						SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(collector, dataCollector,
+								wordToSearch.toLowerCase(), phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
+										: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+						if (locSpecified) {
+							req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
+									phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
+						}
+						r.searchAddressDataByName(req);
+						return objects;
 					}
-					r.searchAddressDataByName(req);
-					for (SearchResult res : immediateResults) {
-						if (res.objectType == ObjectType.STREET) {
-							subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
-						} else {
-							subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
+
+					@Override
+					public void fileRead(BinaryMapIndexReader r, List<MapObject> objects) throws IOException {
+						currentFile[0] = r;
+						immediateResults.clear();
+						for (MapObject object : objects) {
+							if (rm.isCancelled()) {
+								break;
+							}
+							rm.publish(object);
+						}
+						for (SearchResult res : immediateResults) {
+							if (res.objectType == ObjectType.STREET) {
+								subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
+							} else {
+								subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
+							}
 						}
+						resultMatcher.apiSearchRegionFinished(SearchAddressByNameAPI.this, r, phrase);
 					}
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
+
+					@Override
+					protected boolean isLimitReached() {
+						return rm.isCancelled();
+					}
+				});
 			}
 		}
 	}
@@ -566,9 +613,9 @@ public class SearchCoreFactory {
 			final BinaryMapIndexReader[] currentFile = new BinaryMapIndexReader[1];
 			Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(BBOX_RADIUS,
 					SearchPhraseDataType.POI);
-			String searchWord = phrase.getUnknownWordToSearch();
+			final String searchWord = phrase.getUnknownWordToSearch();
 			final NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
-			QuadRect bbox = phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
+			final QuadRect bbox = phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
 			final Set<String> ids = new HashSet<String>();
 
 			ResultMatcher<Amenity> rawDataCollector = null;
@@ -586,64 +633,87 @@ public class SearchCoreFactory {
 					}
 				};
 			}
-			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
-					(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
-					(int) bbox.bottom, new ResultMatcher<Amenity>() {
-						int limit = 0;
+			final ResultMatcher<Amenity> publisher = new ResultMatcher<Amenity>() {
+				int limit = 0;
 
-						@Override
-						public boolean publish(Amenity object) {
-							if (phrase.getSettings().isExportObjects()) {
-								resultMatcher.exportObject(phrase, object);
-							}
-							if (limit++ > LIMIT) {
-								return false;
-							}
-							String poiID = object.getType().getKeyName() + "_" + object.getId();
-							if (ids.contains(poiID)) {
-								return false;
-							}
-							SearchResult sr = new SearchResult(phrase);
-							sr.otherNames = object.getOtherNames(true);
-							sr.localeName = object.getName(phrase.getSettings().getLang(),
-									phrase.getSettings().isTransliterate());
-							if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
-									&& !nm.matches(object.getAdditionalInfoValues(false))) {
-								return false;
-							}
-							sr.object = object;
-							sr.preferredZoom = 17;
-							sr.file = currentFile[0];
-							sr.location = object.getLocation();
-							if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
-								sr.preferredZoom = object.getSubType().equals("country") ? 7 : 13;
-							} else if (object.getSubType().equals("town")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
-							} else {
-								sr.priorityDistance = 1;
-							}
-							sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
-							phrase.countUnknownWordsMatchMainResult(sr);
-							sr.objectType = ObjectType.POI;
-							resultMatcher.publish(sr);
-							ids.add(poiID);
-							return false;
-						}
+				@Override
+				public boolean publish(Amenity object) {
+					if (phrase.getSettings().isExportObjects()) {
+						resultMatcher.exportObject(phrase, object);
+					}
+					if (limit++ > LIMIT) {
+						return false;
+					}
+					String poiID = object.getType().getKeyName() + "_" + object.getId();
+					if (ids.contains(poiID)) {
+						return false;
+					}
+					SearchResult sr = new SearchResult(phrase);
+					sr.otherNames = object.getOtherNames(true);
+					sr.localeName = object.getName(phrase.getSettings().getLang(),
+							phrase.getSettings().isTransliterate());
+					if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
+							&& !nm.matches(object.getAdditionalInfoValues(false))) {
+						return false;
+					}
+					sr.object = object;
+					sr.preferredZoom = 17;
+					sr.file = currentFile[0];
+					sr.location = object.getLocation();
+					if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
+						sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
+						sr.preferredZoom = object.getSubType().equals("country") ? 7 : 13;
+					} else if (object.getSubType().equals("town")) {
+						sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
+					} else {
+						sr.priorityDistance = 1;
+					}
+					sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
+					phrase.countUnknownWordsMatchMainResult(sr);
+					sr.objectType = ObjectType.POI;
+					resultMatcher.publish(sr);
+					ids.add(poiID);
+					return false;
+				}
 
-						@Override
-						public boolean isCancelled() {
-							return resultMatcher.isCancelled() && (limit < LIMIT);
-						}
-					}, rawDataCollector);
+				@Override
+				public boolean isCancelled() {
+					return resultMatcher.isCancelled() && (limit < LIMIT);
+				}
+			};
+			final ResultMatcher<Amenity> dataCollector = rawDataCollector;
+			ParallelFilesSearch.search(offlineIterator, resultMatcher, new FileSearch<List<Amenity>>() {
+				@Override
+				public List<Amenity> readFile(BinaryMapIndexReader r) throws IOException {
+					final List<Amenity> amenities = new ArrayList<>();
+					// amenities are filtered and published by publisher in search thread
+					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
+							(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
+							(int) bbox.bottom, new ResultMatcher<Amenity>() {
+								@Override
+								public boolean publish(Amenity object) {
+									amenities.add(object);
+									return false;
+								}
 
-			while (offlineIterator.hasNext()) {
-				BinaryMapIndexReader r = offlineIterator.next();
-				currentFile[0] = r;
-				r.searchPoiByName(req);
+								@Override
+								public boolean isCancelled() {
+									return resultMatcher.isCancelled() || isStopped();
+								}
+							}, dataCollector);
+					r.searchPoiByName(req);
+					return amenities;
+				}
 
-				resultMatcher.apiSearchRegionFinished(this, r, phrase);
-			}
+				@Override
+				public void fileRead(BinaryMapIndexReader r, List<Amenity> amenities) {
+					currentFile[0] = r;
+					for (Amenity a : amenities) {
+						publisher.publish(a);
+					}
+					resultMatcher.apiSearchRegionFinished(SearchAmenityByNameAPI.this, r, phrase);
+				}
+			});
 			return true;
 		}
 
@@ -1021,7 +1091,7 @@ public class SearchCoreFactory {
 			SearchPoiTypeFilter poiTypeFilter = null;
 			String nameFilter = null;
 			int countExtraWords = 0;
-			Set<String> poiAdditionals = new LinkedHashSet<>();
+			final Set<String> poiAdditionals = new LinkedHashSet<>();
 			if (phrase.isLastWord(ObjectType.POI_TYPE)) {
 				Object obj = phrase.getLastSelectedWord().getResult().object;
 				if (obj instanceof AbstractPoiType) {
@@ -1077,20 +1147,50 @@ public class SearchCoreFactory {
 						radius = BBOX_RADIUS_NEAREST;
 					}
 				}
-				QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
+				final QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
 				List<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes();
-				Set<String> searchedPois = new TreeSet<>();
-				for (BinaryMapIndexReader r : offlineIndexes) {
-					ResultMatcher<Amenity> rm = getResultMatcher(phrase, poiTypeFilter, resultMatcher, nameFilter, r,
-							searchedPois, poiAdditionals, countExtraWords);
-					if (poiTypeFilter instanceof CustomSearchPoiFilter) {
-						rm = ((CustomSearchPoiFilter) poiTypeFilter).wrapResultMatcher(rm);
+				final Set<String> searchedPois = new TreeSet<>();
+				final SearchPoiTypeFilter typeFilter = poiTypeFilter;
+				final String filter = nameFilter;
+				final int extraWords = countExtraWords;
+				ParallelFilesSearch.search(offlineIndexes.iterator(), resultMatcher, new FileSearch<List<Amenity>>() {
+					@Override
+					public List<Amenity> readFile(BinaryMapIndexReader r) throws IOException {
+						final List<Amenity> amenities = new ArrayList<>();
+						// amenities accepted by type filter are published by result matcher in search thread
+						SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
+								(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, typeFilter, new ResultMatcher<Amenity>() {
+									@Override
+									public boolean publish(Amenity object) {
+										amenities.add(object);
+										return false;
+									}
+
+									@Override
+									public boolean isCancelled() {
+										return resultMatcher.isCancelled() || isStopped();
+									}
+								});
+						r.searchPoi(req);
+						return amenities;
 					}
-					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
-							(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, poiTypeFilter, rm);
-					r.searchPoi(req);
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
+
+					@Override
+					public void fileRead(BinaryMapIndexReader r, List<Amenity> amenities) {
+						ResultMatcher<Amenity> rm = getResultMatcher(phrase, typeFilter, resultMatcher, filter, r,
+								searchedPois, poiAdditionals, extraWords);
+						if (typeFilter instanceof CustomSearchPoiFilter) {
+							rm = ((CustomSearchPoiFilter) typeFilter).wrapResultMatcher(rm);
+						}
+						for (Amenity a : amenities) {
+							if (rm.isCancelled()) {
+								break;
+							}
+							rm.publish(a);
+						}
+						resultMatcher.apiSearchRegionFinished(SearchAmenityByTypeAPI.this, r, phrase);
+					}
+				});
 			}
 			return true;
 		}
@@ -11,6 +11,8 @@ import net.osmand.StringMatcher;
 import net.osmand.binary.Abbreviations;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapReadersIndex;
+import net.osmand.binary.BinaryMapReadersIndex.IndexType;
 import net.osmand.binary.CommonWords;
 import net.osmand.data.LatLon;
 import net.osmand.data.QuadRect;
@@ -416,13 +418,20 @@ public class SearchPhrase {
 	public Iterator<BinaryMapIndexReader> getOfflineIndexes(final QuadRect rect, final SearchPhraseDataType dt) {
 		List<BinaryMapIndexReader> list = indexes != null ? indexes : settings.getOfflineIndexes();
 		final Iterator<BinaryMapIndexReader> lit = list.iterator();
+		final BinaryMapReadersIndex readersIndex = rect != null ? settings.getOfflineIndexesIndex() : null;
+		final Set<BinaryMapIndexReader> intersected = rect != null ? new HashSet<>(readersIndex.getReaders(
+				getIndexType(dt), (int) rect.left, (int) rect.top, (int) rect.right, (int) rect.bottom, 15)) : null;
 		return new Iterator<BinaryMapIndexReader>() {
 			BinaryMapIndexReader next = null;
 			@Override
 			public boolean hasNext() {
 				while (lit.hasNext()) {
 					next = lit.next();
-					if(rect != null) {
+					if (rect != null && readersIndex.containsReader(next)) {
+						if (intersected.contains(next) && (dt != SearchPhraseDataType.ADDRESS || next.containsAddressData())) {
+							return true;
+						}
+					} else if(rect != null) {
 						if(dt == SearchPhraseDataType.POI) {
 							if(next.containsPoiData((int)rect.left, (int)rect.top, (int)rect.right, (int)rect.bottom)) {
 								return true;
@@ -460,6 +469,16 @@ public class SearchPhrase {
 		};
 	}
 	
+	private static IndexType getIndexType(SearchPhraseDataType dt) {
+		if (dt == SearchPhraseDataType.POI || dt == SearchPhraseDataType.ADDRESS) {
+			// containsAddressData not all maps supported
+			return IndexType.POI;
+		} else if (dt == SearchPhraseDataType.ROUTING) {
+			return IndexType.ROUTE;
+		}
+		return IndexType.MAP;
+	}
+
 	public List<BinaryMapIndexReader> getOfflineIndexes() {
 		if(indexes != null) {
 			return indexes; 
@@ -3,6 +3,7 @@ package net.osmand.search.core;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapDataObject;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapReadersIndex;
 import net.osmand.data.LatLon;
 import net.osmand.map.OsmandRegions;
 import net.osmand.map.WorldRegion;
@@ -29,6 +30,7 @@ public class SearchSettings {
 	private OsmandRegions regions;
 	private String regionLang;
 	private List<BinaryMapIndexReader> offlineIndexes = new ArrayList<>();
+	private volatile BinaryMapReadersIndex offlineIndexesIndex;
 	private int radiusLevel = 1;
 	private int totalLimit = -1;
 	private String lang;
@@ -45,6 +47,7 @@ public class SearchSettings {
 			this.transliterateIfMissing = s.transliterateIfMissing;
 			this.totalLimit = s.totalLimit;
 			this.offlineIndexes = s.offlineIndexes;
+			this.offlineIndexesIndex = s.offlineIndexesIndex;
 			this.originalLocation = s.originalLocation;
 			this.regions = s.regions;
 			this.regionLang = s.regionLang;
@@ -65,6 +68,16 @@ public class SearchSettings {
 
 	public void setOfflineIndexes(List<? extends BinaryMapIndexReader> offlineIndexes) {
 		this.offlineIndexes = Collections.unmodifiableList(offlineIndexes);
+		this.offlineIndexesIndex = null;
+	}
+
+	public BinaryMapReadersIndex getOfflineIndexesIndex() {
+		BinaryMapReadersIndex index = offlineIndexesIndex;
+		if (index == null) {
+			index = new BinaryMapReadersIndex(offlineIndexes);
+			offlineIndexesIndex = index;
+		}
+		return index;
 	}
 
 	public int getRadiusLevel() {
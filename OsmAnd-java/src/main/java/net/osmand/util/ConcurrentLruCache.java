@@ -0,0 +1,174 @@
+package net.osmand.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache limited by weight (usually size in bytes) of stored values.
+ * Lookups don't take any lock, they only update access time of the entry.
+ * When weight limit is exceeded, one of the writers sorts entries by access time
+ * and removes least recently used ones until weight is below {@link #EVICTION_RATIO} of limit (approximate LRU).
+ */
+public class ConcurrentLruCache<K, V> {
+
+	public static final float EVICTION_RATIO = 0.75f;
+
+	public interface Weigher<K, V> {
+
+		long weigh(K key, V value);
+	}
+
+	private final ConcurrentHashMap<K, Entry<V>> map;
+	private final Weigher<K, V> weigher;
+	private final AtomicLong weight = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private volatile long maxWeight;
+
+	public ConcurrentLruCache(long maxWeight, Weigher<K, V> weigher) {
+		this(maxWeight, weigher, 16);
+	}
+
+	public ConcurrentLruCache(long maxWeight, Weigher<K, V> weigher, int concurrencyLevel) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.map = new ConcurrentHashMap<>(16, 0.75f, concurrencyLevel);
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		evictIfNeeded();
+	}
+
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public V get(K key, long accessTime) {
+		Entry<V> entry = map.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.accessTime < accessTime) {
+			entry.accessTime = accessTime;
+		}
+		return entry.value;
+	}
+
+	public boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+
+	public V put(K key, V value, long accessTime) {
+		long w = weigher.weigh(key, value);
+		Entry<V> old = map.put(key, new Entry<>(value, w, accessTime));
+		weight.addAndGet(old == null ? w : w - old.weight);
+		evictIfNeeded();
+		return old == null ? null : old.value;
+	}
+
+	public V remove(K key) {
+		Entry<V> old = map.remove(key);
+		if (old == null) {
+			return null;
+		}
+		weight.addAndGet(-old.weight);
+		return old.value;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
+	public void clear() {
+		for (K key : map.keySet()) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Removes half of least recently used entries
+	 */
+	public void trim() {
+		evictionLock.lock();
+		try {
+			evict(weight.get() / 2);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void evictIfNeeded() {
+		// only one thread evicts, others continue as weight is checked again after next put
+		if (weight.get() > maxWeight && evictionLock.tryLock()) {
+			try {
+				if (weight.get() > maxWeight) {
+					evict((long) (maxWeight * EVICTION_RATIO));
+				}
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	private void evict(long targetWeight) {
+		// access time is captured as it could change concurrently during sorting
+		List<EvictionCandidate<K, V>> list = new ArrayList<>(map.size());
+		for (Map.Entry<K, Entry<V>> e : map.entrySet()) {
+			list.add(new EvictionCandidate<>(e.getKey(), e.getValue()));
+		}
+		Collections.sort(list, new Comparator<EvictionCandidate<K, V>>() {
+			@Override
+			public int compare(EvictionCandidate<K, V> o1, EvictionCandidate<K, V> o2) {
+				return Long.compare(o1.accessTime, o2.accessTime);
+			}
+		});
+		for (int i = 0; i < list.size() && weight.get() > targetWeight; i++) {
+			EvictionCandidate<K, V> c = list.get(i);
+			// entry could be replaced concurrently by newer value
+			if (map.remove(c.key, c.entry)) {
+				weight.addAndGet(-c.entry.weight);
+			}
+		}
+	}
+
+	private static class EvictionCandidate<K, V> {
+
+		final K key;
+		final Entry<V> entry;
+		final long accessTime;
+
+		EvictionCandidate(K key, Entry<V> entry) {
+			this.key = key;
+			this.entry = entry;
+			this.accessTime = entry.accessTime;
+		}
+	}
+
+	private static class Entry<V> {
+
+		final V value;
+		final long weight;
+		volatile long accessTime;
+
+		Entry(V value, long weight, long accessTime) {
+			this.value = value;
+			this.weight = weight;
+			this.accessTime = accessTime;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package net.osmand;
+
+import net.osmand.GPXUtilities.GPXFile;
+import net.osmand.GPXUtilities.GPXTrackAnalysis;
+import net.osmand.GPXUtilities.Track;
+import net.osmand.GPXUtilities.TrackPointColumns;
+import net.osmand.GPXUtilities.TrkSegment;
+import net.osmand.GPXUtilities.WptPt;
+import net.osmand.data.QuadRect;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class GPXTrackPointsReaderTest {
+
+	private String gpx;
+
+	@Before
+	public void setUp() {
+		Random rnd = new Random(5);
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<gpx version=\"1.1\" creator=\"test\">\n");
+		sb.append("<wpt lat=\"1.0\" lon=\"2.0\"><name>wpt</name><ele>10</ele></wpt>\n");
+		sb.append("<trk><name>track</name>\n");
+		long time = 1600000000000L;
+		double lat = 52.1;
+		double lon = 4.3;
+		double ele = 100;
+		for (int s = 0; s < 3; s++) {
+			sb.append("<trkseg>\n");
+			for (int i = 0; i < 500; i++) {
+				lat += (rnd.nextDouble() - 0.3) * 0.0005;
+				lon += (rnd.nextDouble() - 0.3) * 0.0005;
+				ele += rnd.nextGaussian() * 2;
+				time += 1000 + rnd.nextInt(5000);
+				sb.append(String.format(Locale.US, "<trkpt lat=\"%.7f\" lon=\"%.7f\">", lat, lon));
+				if (i % 7 != 0) {
+					sb.append(String.format(Locale.US, "<ele>%.1f</ele>", ele));
+				}
+				sb.append("<time>").append(GPXUtilities.formatTime(time)).append("</time>");
+				if (s == 1) {
+					sb.append(String.format(Locale.US, "<hdop>%.1f</hdop>", 1 + rnd.nextDouble() * 5));
+					sb.append(String.format(Locale.US, "<extensions><speed>%.2f</speed></extensions>", rnd.nextDouble() * 10));
+				}
+				sb.append("</trkpt>\n");
+			}
+			sb.append("</trkseg>\n");
+		}
+		sb.append("</trk>\n</gpx>\n");
+		gpx = sb.toString();
+	}
+
+	private InputStream stream() {
+		return new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSamePointsAsLoadedFile() throws IOException, XmlPullParserException {
+		GPXFile file = GPXUtilities.loadGPXFile(stream());
+		List<TrkSegment> segments = getTrack(file).segments;
+		List<TrackPointColumns> columns = GPXUtilities.readTrackColumns(stream());
+		Assert.assertEquals(segments.size(), columns.size());
+		for (int s = 0; s < segments.size(); s++) {
+			List<WptPt> points = segments.get(s).points;
+			TrackPointColumns c = columns.get(s);
+			Assert.assertEquals(points.size(), c.size());
+			for (int i = 0; i < points.size(); i++) {
+				WptPt pt = points.get(i);
+				Assert.assertEquals(pt.lat, c.getLatitude(i), 0);
+				Assert.assertEquals(pt.lon, c.getLongitude(i), 0);
+				Assert.assertEquals(pt.ele, c.getElevation(i), 0);
+				Assert.assertEquals(pt.time, c.getTime(i));
+				Assert.assertEquals(pt.speed, c.getSpeed(i), 0);
+				Assert.assertEquals(pt.hdop, c.getHdop(i), 0);
+			}
+			QuadRect expected = GPXUtilities.calculateBounds(points);
+			QuadRect bounds = GPXUtilities.calculateBounds(c);
+			Assert.assertEquals(expected.left, bounds.left, 0);
+			Assert.assertEquals(expected.top, bounds.top, 0);
+			Assert.assertEquals(expected.right, bounds.right, 0);
+			Assert.assertEquals(expected.bottom, bounds.bottom, 0);
+		}
+	}
+
+	@Test
+	public void testSameAnalysisAsLoadedFile() throws IOException, XmlPullParserException {
+		GPXFile file = GPXUtilities.loadGPXFile(stream());
+		List<TrkSegment> segments = getTrack(file).segments;
+		List<TrackPointColumns> columns = GPXUtilities.readTrackColumns(stream());
+		for (int s = 0; s < segments.size(); s++) {
+			assertSameAnalysis(GPXTrackAnalysis.segment(0, segments.get(s)), columns.get(s).getAnalysis(0));
+			List<GPXTrackAnalysis> expected = segments.get(s).splitByDistance(1000, false);
+			List<GPXTrackAnalysis> splits = columns.get(s).splitByDistance(1000);
+			Assert.assertEquals(expected.size(), splits.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameAnalysis(expected.get(i), splits.get(i));
+			}
+			expected = segments.get(s).splitByTime(300, false);
+			splits = columns.get(s).splitByTime(300);
+			Assert.assertEquals(expected.size(), splits.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameAnalysis(expected.get(i), splits.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testPointsWithoutSegment() throws IOException, XmlPullParserException {
+		String gpx = "<gpx><trk><trkpt lat=\"1.5\" lon=\"2.5\"><ele>3</ele></trkpt>"
+				+ "<trkpt lat=\"1.6\" lon=\"2.6\"/></trk>"
+				+ "<rte><rtept lat=\"5\" lon=\"5\"/></rte></gpx>";
+		List<TrackPointColumns> columns = GPXUtilities.readTrackColumns(
+				new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+		Assert.assertEquals(1, columns.size());
+		Assert.assertEquals(2, columns.get(0).size());
+		Assert.assertEquals(3, columns.get(0).getElevation(0), 0);
+		Assert.assertTrue(Double.isNaN(columns.get(0).getElevation(1)));
+		Assert.assertEquals(2.6, columns.get(0).getLongitude(1), 0);
+	}
+
+	private static Track getTrack(GPXFile file) {
+		for (Track track : file.tracks) {
+			if (!track.generalTrack) {
+				return track;
+			}
+		}
+		return null;
+	}
+
+	private static void assertSameAnalysis(GPXTrackAnalysis expected, GPXTrackAnalysis analysis) {
+		Assert.assertEquals(expected.points, analysis.points);
+		Assert.assertEquals(expected.totalDistance, analysis.totalDistance, 0);
+		Assert.assertEquals(expected.startTime, analysis.startTime);
+		Assert.assertEquals(expected.endTime, analysis.endTime);
+		Assert.assertEquals(expected.timeMoving, analysis.timeMoving);
+		Assert.assertEquals(expected.totalDistanceMoving, analysis.totalDistanceMoving, 0);
+		Assert.assertEquals(expected.diffElevationUp, analysis.diffElevationUp, 0);
+		Assert.assertEquals(expected.diffElevationDown, analysis.diffElevationDown, 0);
+		Assert.assertEquals(expected.avgElevation, analysis.avgElevation, 0);
+		Assert.assertEquals(expected.minElevation, analysis.minElevation, 0);
+		Assert.assertEquals(expected.maxElevation, analysis.maxElevation, 0);
+		Assert.assertEquals(expected.avgSpeed, analysis.avgSpeed, 0);
+		Assert.assertEquals(expected.maxSpeed, analysis.maxSpeed, 0);
+		Assert.assertEquals(expected.minHdop, analysis.minHdop, 0);
+		Assert.assertEquals(expected.maxHdop, analysis.maxHdop, 0);
+		Assert.assertEquals(expected.metricEnd, analysis.metricEnd, 0);
+		Assert.assertEquals(expected.left, analysis.left, 0);
+		Assert.assertEquals(expected.top, analysis.top, 0);
+		Assert.assertEquals(expected.right, analysis.right, 0);
+		Assert.assertEquals(expected.bottom, analysis.bottom, 0);
+		Assert.assertEquals(expected.locationStart.lat, analysis.locationStart.lat, 0);
+		Assert.assertEquals(expected.locationEnd.lon, analysis.locationEnd.lon, 0);
+		Assert.assertEquals(expected.elevationData.size(), analysis.elevationData.size());
+	}
+}
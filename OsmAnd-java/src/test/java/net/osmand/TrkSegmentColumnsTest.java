@@ -0,0 +1,155 @@
+package net.osmand;
+
+import net.osmand.GPXUtilities.GPXFile;
+import net.osmand.GPXUtilities.GPXTrackAnalysis;
+import net.osmand.GPXUtilities.Track;
+import net.osmand.GPXUtilities.TrkSegment;
+import net.osmand.GPXUtilities.WptPt;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+public class TrkSegmentColumnsTest {
+
+	private GPXFile points;
+	private GPXFile columns;
+
+	@Before
+	public void setUp() {
+		points = createFile(false);
+		columns = createFile(true);
+	}
+
+	private static GPXFile createFile(boolean compact) {
+		Random rnd = new Random(17);
+		GPXFile file = new GPXFile("test");
+		Track track = new Track();
+		file.tracks.add(track);
+		long time = 1600000000000L;
+		double lat = 48.1;
+		double lon = 11.5;
+		double ele = 500;
+		for (int s = 0; s < 3; s++) {
+			TrkSegment segment = new TrkSegment();
+			for (int i = 0; i < 400; i++) {
+				lat += (rnd.nextDouble() - 0.3) * 0.0005;
+				lon += (rnd.nextDouble() - 0.3) * 0.0005;
+				ele += rnd.nextGaussian() * 2;
+				time += 1000 + rnd.nextInt(5000);
+				WptPt pt = new WptPt(lat, lon, time, i % 9 == 0 ? Double.NaN : ele,
+						s == 1 ? rnd.nextDouble() * 10 : 0, s == 2 ? 1 + rnd.nextInt(5) : Double.NaN);
+				segment.points.add(pt);
+			}
+			if (compact) {
+				Assert.assertTrue(segment.compactPoints());
+				Assert.assertNotNull(segment.getColumns());
+			}
+			track.segments.add(segment);
+		}
+		file.addGeneralTrack();
+		return file;
+	}
+
+	@Test
+	public void testSameAnalysis() {
+		assertSameAnalysis(points.getAnalysis(0), columns.getAnalysis(0));
+		assertSameAnalysis(points.getAnalysis(0, 1000.0, 5000.0), columns.getAnalysis(0, 1000.0, 5000.0));
+		Assert.assertNotNull(columns.getGeneralSegment().getColumns());
+		List<GPXTrackAnalysis> expected = points.getGeneralSegment().splitByDistance(500, false);
+		List<GPXTrackAnalysis> splits = columns.getGeneralSegment().splitByDistance(500, false);
+		Assert.assertEquals(expected.size(), splits.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameAnalysis(expected.get(i), splits.get(i));
+		}
+		expected = points.getGeneralSegment().splitByTime(600, true);
+		splits = columns.getGeneralSegment().splitByTime(600, true);
+		Assert.assertEquals(expected.size(), splits.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameAnalysis(expected.get(i), splits.get(i));
+		}
+	}
+
+	@Test
+	public void testSameOutput() {
+		StringWriter expected = new StringWriter();
+		GPXUtilities.writeGpx(expected, points, null);
+		StringWriter output = new StringWriter();
+		GPXUtilities.writeGpx(output, columns, null);
+		Assert.assertEquals(expected.toString(), output.toString());
+	}
+
+	@Test
+	public void testViewChangesAreVisible() {
+		TrkSegment segment = columns.getTracks(false).get(0).segments.get(1);
+		WptPt pt = segment.points.get(10);
+		Assert.assertSame(pt, segment.points.get(10));
+		pt.ele = 5000;
+		pt.name = "peak";
+		Assert.assertEquals(5000, GPXTrackAnalysis.segment(0, segment).maxElevation, 0);
+		Assert.assertTrue(writeGpx(columns).contains("<name>peak</name>"));
+
+		WptPt last = new WptPt(48.2, 11.6, 0, 7000, 0, Double.NaN);
+		segment.points.add(last);
+		Assert.assertNotNull(segment.getColumns());
+		Assert.assertSame(last, segment.points.get(segment.points.size() - 1));
+		Assert.assertEquals(7000, GPXTrackAnalysis.segment(0, segment).maxElevation, 0);
+
+		WptPt first = segment.points.get(0);
+		segment.points.add(0, new WptPt(48.3, 11.7, 0, 0, 0, Double.NaN));
+		Assert.assertNull(segment.getColumns());
+		Assert.assertEquals(402, segment.points.size());
+		Assert.assertSame(first, segment.points.get(1));
+		Assert.assertSame(pt, segment.points.get(11));
+		Assert.assertSame(last, segment.points.get(401));
+	}
+
+	@Test
+	public void testCompactOnlySimplePoints() {
+		TrkSegment segment = new TrkSegment();
+		segment.points.add(new WptPt(1, 2, 0, 3, 0, Double.NaN));
+		WptPt named = new WptPt(1, 3, 0, 3, 0, Double.NaN);
+		named.name = "point";
+		segment.points.add(named);
+		Assert.assertFalse(segment.compactPoints());
+		Assert.assertNull(segment.getColumns());
+		named.name = null;
+		named.getExtensionsToWrite().put("speed", "1");
+		Assert.assertTrue(segment.compactPoints());
+		Assert.assertEquals(2, segment.points.size());
+		Assert.assertEquals(3, segment.points.get(1).lon, 0);
+	}
+
+	private static String writeGpx(GPXFile file) {
+		StringWriter output = new StringWriter();
+		GPXUtilities.writeGpx(output, file, null);
+		return output.toString();
+	}
+
+	private static void assertSameAnalysis(GPXTrackAnalysis expected, GPXTrackAnalysis analysis) {
+		Assert.assertEquals(expected.points, analysis.points);
+		Assert.assertEquals(expected.totalDistance, analysis.totalDistance, 0);
+		Assert.assertEquals(expected.totalDistanceWithoutGaps, analysis.totalDistanceWithoutGaps, 0);
+		Assert.assertEquals(expected.timeSpan, analysis.timeSpan);
+		Assert.assertEquals(expected.timeSpanWithoutGaps, analysis.timeSpanWithoutGaps);
+		Assert.assertEquals(expected.timeMoving, analysis.timeMoving);
+		Assert.assertEquals(expected.timeMovingWithoutGaps, analysis.timeMovingWithoutGaps);
+		Assert.assertEquals(expected.diffElevationUp, analysis.diffElevationUp, 0);
+		Assert.assertEquals(expected.diffElevationDown, analysis.diffElevationDown, 0);
+		Assert.assertEquals(expected.avgSpeed, analysis.avgSpeed, 0);
+		Assert.assertEquals(expected.minHdop, analysis.minHdop, 0);
+		Assert.assertEquals(expected.metricEnd, analysis.metricEnd, 0);
+		Assert.assertEquals(expected.secondaryMetricEnd, analysis.secondaryMetricEnd, 0);
+		Assert.assertEquals(expected.left, analysis.left, 0);
+		Assert.assertEquals(expected.bottom, analysis.bottom, 0);
+		Assert.assertEquals(expected.elevationData.size(), analysis.elevationData.size());
+		for (int i = 0; i < expected.elevationData.size(); i++) {
+			Assert.assertEquals(expected.elevationData.get(i).firstPoint, analysis.elevationData.get(i).firstPoint);
+			Assert.assertEquals(expected.elevationData.get(i).lastPoint, analysis.elevationData.get(i).lastPoint);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package net.osmand;
+
+import net.osmand.data.LatLon;
+import net.osmand.util.MapUtils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares path length and time of {@link TspLocalSearch} with {@link TspAnt} and {@link TspHeldKarp} (exact,
+ * only for small instances) on fixed instances: start point and random points grouped in a few clusters
+ * (like delivery stops in several districts), path ends at any point.
+ * Run as java application: TspBenchmark [sizes, default 10,15,20,50,100,150] [local search time limit ms]
+ */
+public class TspBenchmark {
+
+	private static final int HELD_KARP_MAX_SIZE = 20;
+	private static final int ANT_MAX_SIZE = 100;
+
+	public static void main(String[] args) {
+		String sizes = args.length > 0 ? args[0] : "10,15,20,50,100,150";
+		long timeLimit = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		out.println(String.format("%6s %-12s %12s %8s %10s", "points", "solver", "length, m", "gap", "time, ms"));
+		for (String s : sizes.split(",")) {
+			int n = Integer.parseInt(s.trim());
+			List<LatLon> points = generateInstance(n, new Random(n));
+			LatLon start = points.get(0);
+			List<LatLon> intermediates = points.subList(1, points.size());
+			double[][] dist = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					dist[i][j] = MapUtils.getDistance(points.get(i), points.get(j));
+				}
+			}
+			List<String> names = new ArrayList<String>();
+			List<double[]> results = new ArrayList<double[]>();
+
+			long time = System.currentTimeMillis();
+			int[] tour = new TspLocalSearch().readGraph(intermediates, start, null).setTimeLimit(timeLimit).solve();
+			addResult(names, results, "local search", pathLength(dist, tour), System.currentTimeMillis() - time);
+
+			// solvers print progress
+			silence();
+			try {
+				if (n <= ANT_MAX_SIZE) {
+					time = System.currentTimeMillis();
+					try {
+						tour = new TspAnt().readGraph(intermediates, start, null).solve();
+						addResult(names, results, "ant", pathLength(dist, tour), System.currentTimeMillis() - time);
+					} catch (RuntimeException e) {
+						// probabilities of approximate pow could underflow on large instances
+						addResult(names, results, "ant (failed)", Double.NaN, System.currentTimeMillis() - time);
+					}
+				}
+				if (n <= HELD_KARP_MAX_SIZE) {
+					time = System.currentTimeMillis();
+					tour = solveHeldKarp(dist);
+					addResult(names, results, "held-karp", pathLength(dist, tour), System.currentTimeMillis() - time);
+				}
+			} finally {
+				System.setOut(out);
+				System.setErr(err);
+			}
+			double best = Double.MAX_VALUE;
+			for (double[] r : results) {
+				if (!Double.isNaN(r[0])) {
+					best = Math.min(best, r[0]);
+				}
+			}
+			for (int i = 0; i < results.size(); i++) {
+				double[] r = results.get(i);
+				out.println(String.format("%6d %-12s %12.0f %7.2f%% %10d", n, names.get(i), r[0],
+						(r[0] / best - 1) * 100, (long) r[1]));
+			}
+		}
+	}
+
+	private static List<LatLon> generateInstance(int n, Random rnd) {
+		List<LatLon> points = new ArrayList<LatLon>();
+		points.add(new LatLon(52.37, 4.89));
+		int clusters = 1 + n / 25;
+		double[][] centers = new double[clusters][2];
+		for (int c = 0; c < clusters; c++) {
+			centers[c][0] = 52.37 + (rnd.nextDouble() - 0.5) * 0.2;
+			centers[c][1] = 4.89 + (rnd.nextDouble() - 0.5) * 0.3;
+		}
+		for (int i = 1; i < n; i++) {
+			double[] c = centers[rnd.nextInt(clusters)];
+			points.add(new LatLon(c[0] + rnd.nextGaussian() * 0.01, c[1] + rnd.nextGaussian() * 0.015));
+		}
+		return points;
+	}
+
+	private static void addResult(List<String> names, List<double[]> results, String name, double length, long time) {
+		names.add(name);
+		results.add(new double[] {length, time});
+	}
+
+	private static double pathLength(double[][] dist, int[] tour) {
+		double length = 0;
+		for (int i = 0; i < tour.length - 1; i++) {
+			length += dist[tour[i]][tour[i + 1]];
+		}
+		return length;
+	}
+
+	// exact closed tour solver: dummy point connected with start by 0 and with others by big cost
+	// makes closed tour from open path
+	private static int[] solveHeldKarp(double[][] dist) {
+		int n = dist.length;
+		double big = 0;
+		double[][] cost = new double[n + 1][n + 1];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				cost[i][j] = Math.rint(dist[i][j]);
+				big += cost[i][j];
+			}
+		}
+		for (int i = 1; i < n; i++) {
+			cost[i][n] = cost[n][i] = big;
+		}
+		int[] order = new TspHeldKarp().readCostMatrix(cost).solve();
+		int[] tour = new int[n];
+		if (order[n] == n) {
+			System.arraycopy(order, 0, tour, 0, n);
+		} else {
+			tour[0] = 0;
+			for (int i = 1; i < n; i++) {
+				tour[i] = order[n + 1 - i];
+			}
+		}
+		return tour;
+	}
+
+	private static void silence() {
+		PrintStream nul = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		System.setOut(nul);
+		System.setErr(nul);
+	}
+}
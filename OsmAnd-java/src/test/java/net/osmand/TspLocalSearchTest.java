@@ -0,0 +1,139 @@
+package net.osmand;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteMatrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TspLocalSearchTest {
+
+	private static double[][] randomMatrix(Random rnd, int n, boolean asymmetric) {
+		double[][] x = new double[n][2];
+		for (int i = 0; i < n; i++) {
+			x[i][0] = rnd.nextDouble() * 1000;
+			x[i][1] = rnd.nextDouble() * 1000;
+		}
+		double[][] cost = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				cost[i][j] = Math.hypot(x[i][0] - x[j][0], x[i][1] - x[j][1]);
+				if (asymmetric && i != j) {
+					// one ways, uphill
+					cost[i][j] *= 1 + rnd.nextDouble();
+				}
+			}
+		}
+		return cost;
+	}
+
+	private static double bruteForce(double[][] cost, boolean keepEndPoint) {
+		int n = cost.length;
+		int[] tour = new int[n];
+		for (int i = 0; i < n; i++) {
+			tour[i] = i;
+		}
+		return permute(cost, tour, 1, keepEndPoint ? n - 1 : n);
+	}
+
+	private static double permute(double[][] cost, int[] tour, int k, int end) {
+		if (k >= end - 1) {
+			double length = 0;
+			for (int i = 0; i < tour.length - 1; i++) {
+				length += cost[tour[i]][tour[i + 1]];
+			}
+			return length;
+		}
+		double best = Double.MAX_VALUE;
+		for (int i = k; i < end; i++) {
+			swap(tour, k, i);
+			best = Math.min(best, permute(cost, tour, k + 1, end));
+			swap(tour, k, i);
+		}
+		return best;
+	}
+
+	private static void swap(int[] tour, int i, int j) {
+		int t = tour[i];
+		tour[i] = tour[j];
+		tour[j] = t;
+	}
+
+	private static void checkTour(int[] tour, int n, boolean keepEndPoint) {
+		Assert.assertEquals(n, tour.length);
+		Assert.assertEquals(0, tour[0]);
+		if (keepEndPoint) {
+			Assert.assertEquals(n - 1, tour[n - 1]);
+		}
+		boolean[] visited = new boolean[n];
+		for (int i : tour) {
+			Assert.assertFalse(visited[i]);
+			visited[i] = true;
+		}
+	}
+
+	@Test
+	public void testOptimalOnSmallInstances() {
+		Random rnd = new Random(1);
+		for (int test = 0; test < 20; test++) {
+			boolean keepEndPoint = test % 2 == 0;
+			boolean asymmetric = test % 4 < 2;
+			int n = 3 + test % 6;
+			double[][] cost = randomMatrix(rnd, n, asymmetric);
+			TspLocalSearch tsp = new TspLocalSearch().readCostMatrix(cost, keepEndPoint).setThreads(1)
+					.setTimeLimit(0).setMaxIterations(200);
+			int[] tour = tsp.solve();
+			checkTour(tour, n, keepEndPoint);
+			Assert.assertEquals(tsp.getTourLength(tour), tsp.getBestTourLength(), 1e-6);
+			Assert.assertEquals(bruteForce(cost, keepEndPoint), tsp.getBestTourLength(), 1e-6);
+		}
+	}
+
+	@Test
+	public void testTinyInstances() {
+		for (int n = 1; n <= 3; n++) {
+			for (boolean keepEndPoint : new boolean[] {false, true}) {
+				double[][] cost = randomMatrix(new Random(n), n, true);
+				checkTour(new TspLocalSearch().readCostMatrix(cost, keepEndPoint).solve(), n, keepEndPoint);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelRestartsWithTimeLimit() {
+		int n = 150;
+		double[][] cost = randomMatrix(new Random(2), n, true);
+		TspLocalSearch tsp = new TspLocalSearch().readCostMatrix(cost, true).setThreads(4).setRestarts(8)
+				.setMaxIterations(Integer.MAX_VALUE).setTimeLimit(300);
+		long start = System.currentTimeMillis();
+		int[] tour = tsp.solve();
+		Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+		checkTour(tour, n, true);
+		// not worse than plain nearest neighbor path
+		int[] nn = new TspLocalSearch().readCostMatrix(cost, true).setThreads(1).setMaxIterations(0).solve();
+		Assert.assertTrue(tsp.getBestTourLength() <= tsp.getTourLength(nn));
+	}
+
+	@Test
+	public void testRouteMatrixWithUnreachablePoints() {
+		List<LatLon> points = new ArrayList<LatLon>();
+		for (int i = 0; i < 6; i++) {
+			points.add(new LatLon(52 + i * 0.01, 4));
+		}
+		RouteMatrix matrix = new RouteMatrix(6, 6);
+		for (int i = 0; i < 6; i++) {
+			for (int j = 0; j < 6; j++) {
+				// road goes along the points, point 3 is not attached to roads
+				matrix.times[i][j] = i == 3 || j == 3 ? -1 : Math.abs(i - j) * 60;
+			}
+		}
+		TspLocalSearch tsp = new TspLocalSearch().readRouteMatrix(matrix, points, false).setThreads(1);
+		int[] tour = tsp.solve();
+		checkTour(tour, 6, false);
+		Assert.assertArrayEquals(new int[] {0, 1, 2, 5, 4, 3}, tour);
+	}
+}
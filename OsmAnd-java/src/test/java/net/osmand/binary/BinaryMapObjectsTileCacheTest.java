@@ -0,0 +1,165 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BinaryMapObjectsTileCacheTest {
+
+	private static final int ZOOM = 15;
+	private static final int WORLD_SIZE = 1 << 22;
+	private static final int LINE_TYPE = 2;
+
+	private final AtomicInteger searches = new AtomicInteger();
+	private final List<BinaryMapDataObject> world = new ArrayList<>();
+	private File file;
+	private MapIndex mapIndex;
+	private BinaryMapIndexReader reader;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("tiles", ".obf");
+		mapIndex = new MapIndex();
+		mapIndex.initMapEncodingRule(0, 1, "highway", "primary");
+		mapIndex.initMapEncodingRule(0, 2, "building", "yes");
+		Random rnd = new Random(1);
+		for (int i = 0; i < 3000; i++) {
+			int x = rnd.nextInt(WORLD_SIZE);
+			int y = rnd.nextInt(WORLD_SIZE);
+			// some objects are long and cross several tiles
+			int len = i % 10 == 0 ? 1 << 18 : 1 << 10;
+			int[] coordinates = {x, y, x + rnd.nextInt(len), y + rnd.nextInt(len)};
+			BinaryMapDataObject o = new BinaryMapDataObject(i % 500 == 0 ? -1 : i, coordinates, null,
+					LINE_TYPE, false, new int[] {1 + i % 2}, null, 0, 0);
+			o.setMapIndex(mapIndex);
+			world.add(o);
+		}
+		reader = createReader();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private BinaryMapIndexReader createReader() throws IOException {
+		return new TestMapIndexReader(file, world) {
+			@Override
+			public List<BinaryMapDataObject> searchMapIndex(SearchRequest<BinaryMapDataObject> req) throws IOException {
+				searches.incrementAndGet();
+				return super.searchMapIndex(req);
+			}
+
+			@Override
+			protected BinaryMapDataObject decode(BinaryMapDataObject o) {
+				// every search decodes new instance
+				BinaryMapDataObject copy = new BinaryMapDataObject(o.getId(), o.getCoordinates().clone(), null,
+						o.getObjectType(), o.isArea(), o.getTypes().clone(), null, 0, 0);
+				copy.setMapIndex(o.getMapIndex());
+				return copy;
+			}
+		};
+	}
+
+	private static TreeSet<String> keys(List<BinaryMapDataObject> objects) {
+		TreeSet<String> keys = new TreeSet<>();
+		for (BinaryMapDataObject o : objects) {
+			int[] c = o.getCoordinates();
+			Assert.assertTrue("Duplicate " + o.getId(), keys.add(o.getId() + " " + c[0] + " " + c[1]));
+		}
+		return keys;
+	}
+
+	private TreeSet<String> directSearch(int left, int top, int right, int bottom) throws IOException {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(left, right, top, bottom,
+				ZOOM, null);
+		return keys(reader.searchMapIndex(req));
+	}
+
+	@Test
+	public void testSameObjectsAsDirectSearch() throws IOException {
+		BinaryMapObjectsTileCache cache = new BinaryMapObjectsTileCache(Long.MAX_VALUE);
+		Random rnd = new Random(2);
+		for (int i = 0; i < 30; i++) {
+			int left = rnd.nextInt(WORLD_SIZE);
+			int top = rnd.nextInt(WORLD_SIZE);
+			int right = left + rnd.nextInt(1 << 18);
+			int bottom = top + rnd.nextInt(1 << 18);
+			SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(left, right, top, bottom,
+					ZOOM, null);
+			TreeSet<String> cached = keys(cache.searchMapIndex(reader, req).getObjects());
+			TreeSet<String> expected = directSearch(left, top, right, bottom);
+			// objects of tiles outside of requested box are not returned
+			Assert.assertEquals(expected, cached);
+		}
+		// whole world is covered by tiles
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(0, WORLD_SIZE * 2, 0,
+				WORLD_SIZE * 2, ZOOM, null);
+		Assert.assertEquals(directSearch(0, 0, WORLD_SIZE * 2, WORLD_SIZE * 2),
+				keys(cache.searchMapIndex(reader, req).getObjects()));
+	}
+
+	@Test
+	public void testPanReadsOnlyNewTiles() throws IOException {
+		BinaryMapObjectsTileCache cache = new BinaryMapObjectsTileCache(Long.MAX_VALUE);
+		int tileSize = 1 << (31 - ZOOM + BinaryMapObjectsTileCache.TILE_ZOOM_DELTA);
+		int left = tileSize * 3 + tileSize / 2;
+		int top = tileSize * 5 + tileSize / 2;
+		int width = tileSize * 2;
+		cache.searchMapIndex(reader, BinaryMapIndexReader.buildSearchRequest(left, left + width, top, top + width,
+				ZOOM, null));
+		// 3 x 3 tiles
+		Assert.assertEquals(9, searches.get());
+		Assert.assertEquals(9, cache.getMisses());
+		int shift = tileSize / 2;
+		BinaryMapObjectsTileCache.SearchResult res = cache.searchMapIndex(reader, BinaryMapIndexReader.buildSearchRequest(
+				left + shift, left + shift + width, top, top + width, ZOOM, null));
+		// only new column is read
+		Assert.assertEquals(12, searches.get());
+		Assert.assertEquals(6, cache.getHits());
+		Assert.assertEquals(directSearch(left + shift, top, left + shift + width, top + width), keys(res.getObjects()));
+		Assert.assertEquals(12, cache.getTilesCount());
+
+		// other zoom has own tiles
+		cache.searchMapIndex(reader, BinaryMapIndexReader.buildSearchRequest(left, left, top, top, ZOOM + 1, null));
+		Assert.assertEquals(13, cache.getTilesCount());
+		cache.removeReader(reader);
+		Assert.assertEquals(0, cache.getTilesCount());
+	}
+
+	@Test
+	public void testMemoryBudget() throws IOException {
+		long budget = 32 << 10;
+		BinaryMapObjectsTileCache cache = new BinaryMapObjectsTileCache(budget);
+		for (int i = 0; i < 100; i++) {
+			int left = i * (WORLD_SIZE / 100);
+			cache.searchMapIndex(reader, BinaryMapIndexReader.buildSearchRequest(left, left + (1 << 16), 0,
+					WORLD_SIZE, ZOOM, null));
+			Assert.assertTrue(cache.getWeight() <= budget);
+		}
+		Assert.assertTrue(cache.getTilesCount() > 0);
+	}
+
+	@Test
+	public void testCancelledTileIsNotCached() throws IOException {
+		BinaryMapObjectsTileCache cache = new BinaryMapObjectsTileCache(Long.MAX_VALUE);
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(0, WORLD_SIZE, 0,
+				WORLD_SIZE, ZOOM, null);
+		req.setInterrupted(true);
+		cache.searchMapIndex(reader, req);
+		Assert.assertEquals(1, searches.get());
+		Assert.assertEquals(0, cache.getTilesCount());
+	}
+}
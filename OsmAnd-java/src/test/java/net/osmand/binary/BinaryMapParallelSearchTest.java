@@ -0,0 +1,265 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.SearchFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class BinaryMapParallelSearchTest {
+
+	private static final int FILES = 6;
+	private static final int WORLD_SIZE = 1 << 22;
+
+	private final List<File> files = new ArrayList<>();
+	private final List<BinaryMapIndexReader> readers = new ArrayList<>();
+	private final AtomicInteger createdCursors = new AtomicInteger();
+	private final AtomicInteger closedCursors = new AtomicInteger();
+	private final Set<Object> readingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+	private BinaryMapParallelSearch search;
+	// called by cursors before reading
+	private volatile Runnable onCursorSearch;
+
+	@Before
+	public void setUp() throws IOException {
+		Random rnd = new Random(1);
+		for (int f = 0; f < FILES; f++) {
+			File file = File.createTempFile("parallel" + f, ".obf");
+			files.add(file);
+			MapIndex mapIndex = new MapIndex();
+			mapIndex.initMapEncodingRule(0, 1, "highway", "primary");
+			mapIndex.initMapEncodingRule(0, 2, "building", "yes");
+			List<BinaryMapDataObject> world = new ArrayList<>();
+			for (int i = 0; i < 2000; i++) {
+				int x = rnd.nextInt(WORLD_SIZE);
+				int y = rnd.nextInt(WORLD_SIZE);
+				BinaryMapDataObject o = new BinaryMapDataObject(f * 10000 + i, new int[] {x, y, x + 100, y + 100},
+						null, 2, false, new int[] {1 + i % 2}, null, 0, 0);
+				o.setMapIndex(mapIndex);
+				world.add(o);
+			}
+			readers.add(createReader(file, world, false));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		if (search != null) {
+			search.close();
+		}
+		for (File file : files) {
+			file.delete();
+		}
+	}
+
+	private BinaryMapIndexReader createReader(File file, final List<BinaryMapDataObject> world, final boolean cursor)
+			throws IOException {
+		return new TestMapIndexReader(file, world) {
+
+			// cursor must be used only by one thread at a time
+			private final AtomicInteger users = new AtomicInteger();
+
+			@Override
+			public List<BinaryMapDataObject> searchMapIndex(SearchRequest<BinaryMapDataObject> req) throws IOException {
+				Assert.assertEquals(1, users.incrementAndGet());
+				try {
+					Runnable onSearch = onCursorSearch;
+					if (cursor && onSearch != null) {
+						onSearch.run();
+					}
+					readingThreads.add(Thread.currentThread());
+					return super.searchMapIndex(req);
+				} finally {
+					users.decrementAndGet();
+				}
+			}
+
+			@Override
+			public BinaryMapIndexReader createCursor() throws IOException {
+				createdCursors.incrementAndGet();
+				return createReader(getFile(), world, true);
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (cursor) {
+					closedCursors.incrementAndGet();
+				}
+				super.close();
+			}
+		};
+	}
+
+	private static SearchFilter buildingsFilter() {
+		return new SearchFilter() {
+			@Override
+			public boolean accept(TIntArrayList types, MapIndex index) {
+				return index.decodeType(types.get(0)).value.equals("yes");
+			}
+		};
+	}
+
+	private static List<String> ids(List<BinaryMapParallelSearch.FileResult> results) {
+		List<String> ids = new ArrayList<>();
+		for (BinaryMapParallelSearch.FileResult r : results) {
+			Assert.assertNull(r.getError());
+			ids.add("file " + r.getReader().getFile().getName());
+			for (BinaryMapDataObject o : r.getObjects()) {
+				ids.add(String.valueOf(o.getId()));
+			}
+		}
+		return ids;
+	}
+
+	private List<BinaryMapParallelSearch.FileResult> searchAll(int left, int top, int right, int bottom,
+	                                                            BinaryMapParallelSearch.SearchFilterFactory filters) {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(left, right, top, bottom,
+				15, null);
+		return search.searchMapIndex(readers, req, filters);
+	}
+
+	@Test
+	public void testSameResultsAsSequentialSearch() {
+		BinaryMapParallelSearch.SearchFilterFactory filters = new BinaryMapParallelSearch.SearchFilterFactory() {
+			@Override
+			public SearchFilter createFilter() {
+				return buildingsFilter();
+			}
+		};
+		BinaryMapParallelSearch sequential = new BinaryMapParallelSearch(1, null);
+		search = new BinaryMapParallelSearch(3, null);
+		Assert.assertEquals(3, search.getThreads());
+		Random rnd = new Random(2);
+		for (int i = 0; i < 20; i++) {
+			int left = rnd.nextInt(WORLD_SIZE);
+			int top = rnd.nextInt(WORLD_SIZE);
+			int right = left + rnd.nextInt(1 << 20);
+			int bottom = top + rnd.nextInt(1 << 20);
+			List<BinaryMapParallelSearch.FileResult> expected = sequential.searchMapIndex(readers,
+					BinaryMapIndexReader.buildSearchRequest(left, right, top, bottom, 15, null), filters);
+			readingThreads.clear();
+			List<BinaryMapParallelSearch.FileResult> actual = searchAll(left, top, right, bottom, filters);
+			// results in order of files
+			Assert.assertEquals(ids(expected), ids(actual));
+			Assert.assertFalse(readingThreads.contains(Thread.currentThread()));
+			for (BinaryMapParallelSearch.FileResult r : actual) {
+				for (BinaryMapDataObject o : r.getObjects()) {
+					Assert.assertEquals(1, o.getId() % 2);
+				}
+			}
+		}
+		Assert.assertTrue(createdCursors.get() >= 1 && createdCursors.get() <= 3 * FILES);
+		sequential.close();
+	}
+
+	@Test
+	public void testSequentialSearchUsesReaders() {
+		search = new BinaryMapParallelSearch(1, null);
+		List<BinaryMapParallelSearch.FileResult> results = searchAll(0, 0, WORLD_SIZE, WORLD_SIZE, null);
+		Assert.assertEquals(FILES, results.size());
+		Assert.assertEquals(FILES * (2000 + 1), ids(results).size());
+		Assert.assertEquals(Collections.singleton(Thread.currentThread()), readingThreads);
+		Assert.assertEquals(0, createdCursors.get());
+	}
+
+	@Test
+	public void testCursorsReusedAndClosed() throws IOException {
+		search = new BinaryMapParallelSearch(2, new BinaryMapObjectsTileCache(Long.MAX_VALUE));
+		for (int i = 0; i < 10; i++) {
+			int left = i * (WORLD_SIZE / 10);
+			searchAll(left, 0, left + (1 << 16), 1 << 16, null);
+		}
+		int created = createdCursors.get();
+		// at most one cursor per file and thread
+		Assert.assertTrue(created >= FILES && created <= 2 * FILES);
+		search.removeReader(readers.get(0));
+		Assert.assertTrue(closedCursors.get() >= 1);
+		search.close();
+		Assert.assertEquals(created, closedCursors.get());
+	}
+
+	@Test
+	public void testCursorsOfRemovedReadersClosed() {
+		BinaryMapObjectsTileCache tilesCache = new BinaryMapObjectsTileCache(Long.MAX_VALUE);
+		search = new BinaryMapParallelSearch(2, tilesCache);
+		final List<BinaryMapIndexReader> removed = readers.subList(0, 2);
+		// files are removed while they are read
+		onCursorSearch = new Runnable() {
+			@Override
+			public void run() {
+				for (BinaryMapIndexReader r : removed) {
+					search.removeReader(r);
+				}
+			}
+		};
+		search.searchMapIndex(removed, BinaryMapIndexReader.buildSearchRequest(0, 1 << 16, 0, 1 << 16, 15, null),
+				null);
+		Assert.assertTrue(createdCursors.get() >= 2);
+		Assert.assertEquals(createdCursors.get(), closedCursors.get());
+		Assert.assertEquals(0, tilesCache.getTilesCount());
+	}
+
+	@Test
+	public void testNotMappedFilesReadWithoutCursors() throws IOException {
+		search = new BinaryMapParallelSearch(3, null);
+		final Set<Object> notMappedThreads = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		List<BinaryMapIndexReader> mixed = new ArrayList<>(readers);
+		// files are not memory mapped
+		for (int i = 0; i < FILES; i += 2) {
+			final BinaryMapIndexReader mapped = readers.get(i);
+			mixed.set(i, new BinaryMapIndexReader(new RandomAccessFile(files.get(i), "r"), files.get(i), false) {
+				@Override
+				public List<BinaryMapDataObject> searchMapIndex(SearchRequest<BinaryMapDataObject> req) throws IOException {
+					notMappedThreads.add(Thread.currentThread());
+					return mapped.searchMapIndex(req);
+				}
+
+				@Override
+				public BinaryMapIndexReader createCursor() {
+					throw new IllegalStateException("Cursor of file which is not memory mapped");
+				}
+			});
+		}
+		List<BinaryMapParallelSearch.FileResult> expected = searchAll(0, 0, WORLD_SIZE, WORLD_SIZE, null);
+		List<BinaryMapParallelSearch.FileResult> actual = search.searchMapIndex(mixed,
+				BinaryMapIndexReader.buildSearchRequest(0, WORLD_SIZE, 0, WORLD_SIZE, 15, null), null);
+		for (int i = 0; i < FILES; i++) {
+			Assert.assertEquals(expected.get(i).getObjects().size(), actual.get(i).getObjects().size());
+			Assert.assertSame(mixed.get(i), actual.get(i).getReader());
+		}
+		Assert.assertEquals(Collections.singleton(Thread.currentThread()), notMappedThreads);
+		for (int i = 0; i < FILES; i += 2) {
+			mixed.get(i).close();
+		}
+	}
+
+	@Test
+	public void testCancelledSearch() {
+		search = new BinaryMapParallelSearch(3, null);
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(0, WORLD_SIZE, 0,
+				WORLD_SIZE, 15, null);
+		req.setInterrupted(true);
+		List<BinaryMapParallelSearch.FileResult> results = search.searchMapIndex(readers, req, null);
+		Assert.assertEquals(FILES, results.size());
+		for (BinaryMapParallelSearch.FileResult r : results) {
+			Assert.assertTrue(r.getObjects().isEmpty());
+		}
+		BinaryMapParallelSearch.logTimings(results, 0);
+	}
+}
@@ -0,0 +1,172 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapReadersIndex.IndexType;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class BinaryMapReadersIndexTest {
+
+	private File file;
+	private final List<BinaryMapIndexReader> readers = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("index", ".obf");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader reader : readers) {
+			reader.close();
+		}
+		file.delete();
+	}
+
+	private BinaryMapIndexReader createReader(Random rnd) throws IOException {
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, false);
+		readers.add(reader);
+		if (rnd.nextBoolean()) {
+			MapIndex mi = new MapIndex();
+			for (int zoom = 5; zoom <= 20; zoom += 5) {
+				MapRoot root = new MapRoot();
+				int[] bbox = randomBox(rnd);
+				root.left = bbox[0];
+				root.top = bbox[1];
+				root.right = bbox[2];
+				root.bottom = bbox[3];
+				root.minZoom = zoom - rnd.nextInt(5);
+				root.maxZoom = zoom;
+				mi.roots.add(root);
+			}
+			reader.mapIndexes.add(mi);
+		}
+		if (rnd.nextBoolean()) {
+			RouteRegion rr = new RouteRegion();
+			for (int i = 0; i < 3; i++) {
+				RouteSubregion sub = new RouteSubregion(rr);
+				int[] bbox = randomBox(rnd);
+				sub.left = bbox[0];
+				sub.top = bbox[1];
+				sub.right = bbox[2];
+				sub.bottom = bbox[3];
+				if (i == 0) {
+					rr.basesubregions.add(sub);
+				} else {
+					rr.subregions.add(sub);
+				}
+			}
+			reader.routingIndexes.add(rr);
+		}
+		if (rnd.nextBoolean()) {
+			PoiRegion pr = new PoiRegion();
+			int[] bbox = randomBox(rnd);
+			pr.left31 = bbox[0];
+			pr.top31 = bbox[1];
+			pr.right31 = bbox[2];
+			pr.bottom31 = bbox[3];
+			reader.poiIndexes.add(pr);
+		}
+		if (rnd.nextBoolean()) {
+			AddressRegion ar = new AddressRegion();
+			int[] bbox = randomBox(rnd);
+			ar.left31 = bbox[0];
+			ar.top31 = bbox[1];
+			ar.right31 = bbox[2];
+			ar.bottom31 = bbox[3];
+			reader.addressIndexes.add(ar);
+		}
+		return reader;
+	}
+
+	private static int[] randomBox(Random rnd) {
+		int size = 1 << (20 + rnd.nextInt(9));
+		int left = rnd.nextInt(Integer.MAX_VALUE - size);
+		int top = rnd.nextInt(Integer.MAX_VALUE - size);
+		return new int[] {left, top, left + rnd.nextInt(size), top + rnd.nextInt(size)};
+	}
+
+	private static List<BinaryMapIndexReader> linearSearch(List<BinaryMapIndexReader> readers, IndexType type,
+	                                                       int[] bbox, int zoom) {
+		List<BinaryMapIndexReader> res = new ArrayList<>();
+		for (BinaryMapIndexReader r : readers) {
+			boolean contains;
+			if (type == IndexType.MAP) {
+				contains = r.containsMapData(bbox[0], bbox[1], bbox[2], bbox[3], zoom);
+			} else if (type == IndexType.ROUTE) {
+				contains = r.containsRouteData(bbox[0], bbox[1], bbox[2], bbox[3], zoom);
+			} else if (type == IndexType.POI) {
+				contains = r.containsPoiData(bbox[0], bbox[1], bbox[2], bbox[3]);
+			} else {
+				contains = r.containsAddressData(bbox[0], bbox[1], bbox[2], bbox[3]);
+			}
+			if (contains) {
+				res.add(r);
+			}
+		}
+		return res;
+	}
+
+	@Test
+	public void testSameAsLinearSearch() throws IOException {
+		Random rnd = new Random(1);
+		BinaryMapReadersIndex index = new BinaryMapReadersIndex();
+		List<BinaryMapIndexReader> expectedReaders = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			BinaryMapIndexReader r = createReader(rnd);
+			index.addReader(r);
+			expectedReaders.add(r);
+		}
+		for (int i = 0; i < 1000; i++) {
+			int[] bbox = randomBox(rnd);
+			int zoom = 1 + rnd.nextInt(21);
+			for (IndexType type : Arrays.asList(IndexType.MAP, IndexType.ROUTE, IndexType.POI, IndexType.ADDRESS)) {
+				Assert.assertEquals(type.toString(), linearSearch(expectedReaders, type, bbox, zoom),
+						index.getReaders(type, bbox[0], bbox[1], bbox[2], bbox[3], zoom));
+			}
+		}
+	}
+
+	@Test
+	public void testAddRemoveReaders() throws IOException {
+		Random rnd = new Random(2);
+		BinaryMapReadersIndex index = new BinaryMapReadersIndex();
+		BinaryMapIndexReader a = createReader(rnd);
+		BinaryMapIndexReader b = createReader(rnd);
+		for (BinaryMapIndexReader r : Arrays.asList(a, b)) {
+			PoiRegion pr = new PoiRegion();
+			pr.left31 = 100;
+			pr.top31 = 100;
+			pr.right31 = 200;
+			pr.bottom31 = 200;
+			r.poiIndexes.add(pr);
+		}
+		Assert.assertTrue(index.getPoiReaders(150, 150, 150, 150).isEmpty());
+		index.addReader(b);
+		index.addReader(a);
+		Assert.assertEquals(Arrays.asList(b, a), index.getPoiReaders(150, 150, 150, 150));
+		Assert.assertEquals(Arrays.asList(b, a), index.getPoiReaders(0, 0, 100, 100));
+		Assert.assertTrue(index.getPoiReaders(201, 0, 300, 300).isEmpty());
+		Assert.assertTrue(index.removeReader(b));
+		Assert.assertFalse(index.containsReader(b));
+		Assert.assertEquals(Arrays.asList(a), index.getPoiReaders(150, 150, 150, 150));
+		index.clear();
+		Assert.assertTrue(index.getPoiReaders(150, 150, 150, 150).isEmpty());
+	}
+}
@@ -0,0 +1,123 @@
+package net.osmand.binary;
+
+import net.osmand.binary.OsmandIndex.FileIndex;
+import net.osmand.binary.OsmandIndex.MapLevel;
+import net.osmand.binary.OsmandIndex.MapPart;
+import net.osmand.binary.OsmandIndex.OsmAndStoredIndex;
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class CachedOsmandIndexesTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("cache", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		Algorithms.removeAllFiles(dir);
+	}
+
+	private File createObf(String name, int size) throws IOException {
+		File f = new File(dir, name);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength(size);
+		raf.close();
+		return f;
+	}
+
+	private static FileIndex fileIndex(String name, int size, int offset) {
+		MapLevel level = MapLevel.newBuilder().setSize(10).setOffset(offset + 5).setLeft(1).setRight(2)
+				.setTop(3).setBottom(4).setMinzoom(5).setMaxzoom(10).build();
+		MapPart map = MapPart.newBuilder().setSize(100).setOffset(offset).setName(name).addLevels(level).build();
+		return FileIndex.newBuilder().setSize(size).setDateModified(1000).setFileName(name).setVersion(2)
+				.addMapIndex(map).build();
+	}
+
+	private static void assertFileIndex(FileIndex expected, FileIndex actual) {
+		Assert.assertNotNull(actual);
+		Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	private File writeCache(int version, FileIndex... indexes) throws IOException {
+		OsmAndStoredIndex.Builder builder = OsmAndStoredIndex.newBuilder().setVersion(version).setDateCreated(1);
+		for (FileIndex fi : indexes) {
+			builder.addFileIndex(fi);
+		}
+		File cache = new File(dir, CachedOsmandIndexes.INDEXES_DEFAULT_FILENAME);
+		FileOutputStream out = new FileOutputStream(cache);
+		builder.build().writeTo(out);
+		out.close();
+		return cache;
+	}
+
+	@Test
+	public void testLazyFileIndexes() throws IOException {
+		File a = createObf("A.obf", 500);
+		File b = createObf("B.obf", 700);
+		File cache = writeCache(CachedOsmandIndexes.VERSION, fileIndex("A.obf", 500, 20), fileIndex("B.obf", 700, 30));
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		FileIndex fa = indexes.getFileIndex(a, false);
+		assertFileIndex(fileIndex("A.obf", 500, 20), fa);
+		assertFileIndex(fileIndex("B.obf", 700, 30), indexes.getFileIndex(b, false));
+		// size is changed
+		Assert.assertNull(indexes.getFileIndex(createObf("A.obf", 600), false));
+
+		BinaryMapIndexReader reader = indexes.getReader(b, true);
+		Assert.assertEquals(1, reader.getMapIndexes().size());
+		Assert.assertEquals(30, reader.getMapIndexes().get(0).getFilePointer());
+		Assert.assertEquals(10, reader.getMapIndexes().get(0).getRoots().get(0).getMaxZoom());
+		reader.close();
+	}
+
+	@Test
+	public void testWriteKeepsEntries() throws IOException {
+		File b = createObf("B.obf", 700);
+		File cache = writeCache(CachedOsmandIndexes.VERSION, fileIndex("A.obf", 500, 20), fileIndex("B.obf", 700, 30));
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		// A is not parsed and copied as is, C is added
+		indexes.getFileIndex(b, false);
+		BinaryMapIndexReader reader = indexes.getReader(b, true);
+		indexes.addToCache(reader, createObf("C.obf", 900));
+		reader.close();
+		indexes.writeToFile(cache);
+
+		CachedOsmandIndexes read = new CachedOsmandIndexes();
+		read.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		assertFileIndex(fileIndex("A.obf", 500, 20), read.getFileIndex(createObf("A.obf", 500), false));
+		assertFileIndex(fileIndex("B.obf", 700, 30), read.getFileIndex(b, false));
+		FileIndex c = read.getFileIndex(new File(dir, "C.obf"), false);
+		Assert.assertNotNull(c);
+		Assert.assertEquals(30, c.getMapIndex(0).getOffset());
+		OsmAndStoredIndex stored = OsmAndStoredIndex.parseFrom(Algorithms.readBytesFromInputStream(
+				new FileInputStream(cache)));
+		Assert.assertEquals(3, stored.getFileIndexCount());
+		Assert.assertEquals(CachedOsmandIndexes.VERSION, stored.getVersion());
+	}
+
+	@Test
+	public void testVersionMismatch() throws IOException {
+		File a = createObf("A.obf", 500);
+		File cache = writeCache(CachedOsmandIndexes.VERSION - 1, fileIndex("A.obf", 500, 20));
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		Assert.assertNull(indexes.getFileIndex(a, false));
+	}
+}
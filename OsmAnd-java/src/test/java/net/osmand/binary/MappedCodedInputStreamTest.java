@@ -0,0 +1,168 @@
+package net.osmand.binary;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+public class MappedCodedInputStreamTest {
+
+	private static final int VALUES = 20000;
+	private static final int BLOB_SIZE = 12 * 1024;
+
+	private File writeTestFile() throws IOException {
+		File file = File.createTempFile("mapped", ".bin");
+		file.deleteOnExit();
+		FileOutputStream fous = new FileOutputStream(file);
+		CodedOutputStream out = CodedOutputStream.newInstance(fous);
+		for (int i = 0; i < VALUES; i++) {
+			out.writeUInt32NoTag(i * 31);
+		}
+		byte[] blob = new byte[BLOB_SIZE];
+		for (int i = 0; i < blob.length; i++) {
+			blob[i] = (byte) i;
+		}
+		out.writeUInt32NoTag(blob.length);
+		out.writeRawBytes(blob);
+		out.writeStringNoTag("end");
+		out.flush();
+		fous.close();
+		return file;
+	}
+
+	// empty obf file: version, date and version confirmation, optionally padded with zeros up to size
+	private File writeObfFile(long size) throws IOException {
+		File file = File.createTempFile("mapped", ".obf");
+		file.deleteOnExit();
+		FileOutputStream fous = new FileOutputStream(file);
+		CodedOutputStream out = CodedOutputStream.newInstance(fous);
+		out.writeUInt32(OsmandOdb.OsmAndStructure.VERSION_FIELD_NUMBER, 2);
+		out.writeInt64(OsmandOdb.OsmAndStructure.DATECREATED_FIELD_NUMBER, 12345);
+		out.writeUInt32(OsmandOdb.OsmAndStructure.VERSIONCONFIRM_FIELD_NUMBER, 2);
+		out.flush();
+		fous.close();
+		if (size > file.length()) {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(size);
+			raf.close();
+		}
+		return file;
+	}
+
+	private void readAll(CodedInputStream is) throws IOException {
+		for (int i = 0; i < VALUES; i++) {
+			Assert.assertEquals(i * 31, is.readRawVarint32());
+		}
+		int size = is.readRawVarint32();
+		Assert.assertEquals(BLOB_SIZE, size);
+		byte[] blob = is.readRawBytes(size);
+		for (int i = 0; i < blob.length; i++) {
+			Assert.assertEquals((byte) i, blob[i]);
+		}
+		Assert.assertEquals("end", is.readString());
+		Assert.assertTrue(is.isAtEnd());
+	}
+
+	@Test
+	public void testMappedReadsSameAsFile() throws IOException {
+		File file = writeTestFile();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		readAll(CodedInputStream.newInstance(raf));
+		raf.close();
+		readAll(CodedInputStream.newInstance(BinaryMapIndexReader.mapFile(file)));
+	}
+
+	@Test
+	public void testMappedReader() throws IOException, InterruptedException {
+		File file = writeObfFile(0);
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		BinaryMapIndexReader reader = indexes.getMappedReader(file, false);
+		Assert.assertTrue(reader.isMemoryMapped());
+		Assert.assertNull(reader.getRaf());
+		Assert.assertEquals(2, reader.getVersion());
+		Assert.assertEquals(12345, reader.getDateCreated());
+		BinaryMapIndexReader cursor = reader.createCursor();
+		Assert.assertTrue(cursor.isMemoryMapped());
+		Assert.assertEquals(12345, cursor.getDateCreated());
+		cursor.close();
+		reader.close();
+
+		// initialized from stored index
+		reader = indexes.getMappedReader(file, true);
+		Assert.assertTrue(reader.isMemoryMapped());
+		Assert.assertEquals(12345, reader.getDateCreated());
+		reader.close();
+
+		indexes.setMemoryMappedReaders(true);
+		Map<File, BinaryMapIndexReader> readers = indexes.getReaders(Collections.singletonList(file),
+				Collections.<File>emptyList(), 1);
+		Assert.assertTrue(readers.get(file).isMemoryMapped());
+		readers.get(file).close();
+	}
+
+	@Test
+	public void testBigFileIsNotMapped() throws IOException {
+		// sparse file, it doesn't take disk space
+		File file = writeObfFile(Integer.MAX_VALUE + 1L);
+		try {
+			Assert.assertFalse(new CachedOsmandIndexes().canMapFile(file));
+			try {
+				BinaryMapIndexReader.mapFile(file);
+				Assert.fail();
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+		// reader of file which can't be mapped works with file handle
+		file = writeObfFile(0);
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes() {
+			@Override
+			boolean canMapFile(File f) {
+				return false;
+			}
+		};
+		BinaryMapIndexReader reader = indexes.getMappedReader(file, false);
+		Assert.assertFalse(reader.isMemoryMapped());
+		Assert.assertNotNull(reader.getRaf());
+		Assert.assertEquals(12345, reader.getDateCreated());
+		BinaryMapIndexReader cursor = reader.createCursor();
+		Assert.assertFalse(cursor.isMemoryMapped());
+		Assert.assertEquals(12345, cursor.getDateCreated());
+		cursor.close();
+		reader.close();
+	}
+
+	@Test
+	public void testCursorsShareMapping() throws IOException {
+		File file = writeTestFile();
+		ByteBuffer mapped = BinaryMapIndexReader.mapFile(file);
+		CodedInputStream first = CodedInputStream.newInstance(mapped);
+		CodedInputStream second = CodedInputStream.newInstance(mapped);
+		for (int i = 0; i < VALUES / 2; i++) {
+			first.readRawVarint32();
+		}
+		int position = first.getTotalBytesRead();
+		int value = first.readRawVarint32();
+		readAll(second);
+
+		first.seek(0);
+		Assert.assertEquals(0, first.readRawVarint32());
+		first.seek(position);
+		Assert.assertEquals(value, first.readRawVarint32());
+		first.seek(position);
+		first.skipRawBytes(8 * 1024);
+		second.seek(position + 8 * 1024);
+		Assert.assertEquals(second.readRawVarint32(), first.readRawVarint32());
+	}
+}
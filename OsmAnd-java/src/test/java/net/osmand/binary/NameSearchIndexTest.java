@@ -0,0 +1,158 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.data.MapObject;
+import net.osmand.util.TransliterationHelper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class NameSearchIndexTest {
+
+	private static final int STREET = BinaryMapAddressReaderAdapter.STREET_TYPE;
+	private static final int CITY = BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE;
+
+	private NameSearchIndex.AddressNames buildAddressNames() {
+		NameSearchIndex.AddressNamesBuilder builder = new NameSearchIndex.AddressNamesBuilder(100);
+		builder.addAtom("amsterdam", CITY, 1000, 0, 0, false, "Amsterdam", null);
+		builder.addAtom("hoofdstraat", STREET, 2000, 1000, 0, false, "Hoofdstraat", null);
+		builder.addAtom("müllerstraße", STREET, 3000, 1000, 0, false, "Müllerstraße", "Mullerstrasse");
+		builder.addAtom("van", STREET, 4000, 1000, 0, false, "Van Goghstraat", null);
+		builder.addAtom("goghstraat", STREET, 4000, 1000, 0, false, "Van Goghstraat", null);
+		builder.addAtom("main", STREET, 5000, 1000, 0, false, null, null);
+		return builder.build();
+	}
+
+	private static TIntArrayList offsets(NameSearchIndex.AddressNames names, TIntArrayList ids) {
+		TIntArrayList res = new TIntArrayList();
+		for (int i = 0; i < ids.size(); i++) {
+			res.add(names.offsets[ids.get(i)]);
+		}
+		res.sort();
+		return res;
+	}
+
+	@Test
+	public void testAddressCandidates() {
+		NameSearchIndex.AddressNames names = buildAddressNames();
+		Assert.assertEquals(5, names.size());
+		// word start
+		Assert.assertEquals(new TIntArrayList(new int[] {4000}),
+				offsets(names, names.getCandidates("gogh", StringMatcherMode.CHECK_STARTS_FROM_SPACE)));
+		// transliterated and ß
+		Assert.assertEquals(new TIntArrayList(new int[] {3000}),
+				offsets(names, names.getCandidates("Mullerstrasse", StringMatcherMode.CHECK_ONLY_STARTS_WITH)));
+		// middle of the word only for contains
+		Assert.assertEquals(0, names.getCandidates("straat", StringMatcherMode.CHECK_STARTS_FROM_SPACE).size());
+		Assert.assertEquals(new TIntArrayList(new int[] {2000, 4000}),
+				offsets(names, names.getCandidates("straat", StringMatcherMode.CHECK_CONTAINS)));
+		// short queries use keys
+		Assert.assertEquals(new TIntArrayList(new int[] {1000}),
+				offsets(names, names.getCandidates("am", StringMatcherMode.CHECK_STARTS_FROM_SPACE)));
+		Assert.assertNull(names.getCandidates("am", StringMatcherMode.CHECK_CONTAINS));
+		// the longest key which query starts with
+		Assert.assertEquals(new TIntArrayList(new int[] {5000}),
+				offsets(names, names.getCandidates("mainstreet", StringMatcherMode.CHECK_STARTS_FROM_SPACE)));
+	}
+
+	@Test
+	public void testAddressRefs() {
+		NameSearchIndex.AddressNames names = buildAddressNames();
+		SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(null, "straat",
+				StringMatcherMode.CHECK_CONTAINS);
+		TIntArrayList[] refs = new TIntArrayList[5];
+		TIntArrayList[] refsContainer = new TIntArrayList[5];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = new TIntArrayList();
+			refsContainer[i] = new TIntArrayList();
+		}
+		Assert.assertTrue(names.collectRefs(req, null, refs, refsContainer));
+		refs[STREET].sort();
+		Assert.assertEquals(new TIntArrayList(new int[] {2000, 4000}), refs[STREET]);
+		Assert.assertEquals(new TIntArrayList(new int[] {1000, 1000}), refsContainer[STREET]);
+		Assert.assertTrue(refs[CITY].isEmpty());
+	}
+
+	@Test
+	public void testPoiOffsets() {
+		NameSearchIndex.PoiNamesBuilder builder = new NameSearchIndex.PoiNamesBuilder(10);
+		builder.addAtom("cafe", 1, 100, 100);
+		builder.addAtom("café", 2, 200, 200);
+		builder.addAtom("central", 2, 200, 200);
+		builder.addAtom("central", 3, 300, 300);
+		builder.addAtom("cent", 4, 400, 400);
+		NameSearchIndex.PoiNames names = builder.build();
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, "caf", 0, Integer.MAX_VALUE,
+				0, Integer.MAX_VALUE, null);
+		TIntLongHashMap offsets = names.getOffsets("caf", req);
+		Assert.assertEquals(2, offsets.size());
+		Assert.assertEquals(400, offsets.get(2));
+		// intersection of words
+		offsets = names.getOffsets("Café Central", req);
+		Assert.assertEquals(1, offsets.size());
+		Assert.assertTrue(offsets.containsKey(2));
+		// only the longest key which word starts with
+		offsets = names.getOffsets("centro", req);
+		Assert.assertEquals(1, offsets.size());
+		Assert.assertTrue(offsets.containsKey(4));
+		// bbox of request
+		req = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, "central", 250, 350, 250, 350, null);
+		offsets = names.getOffsets("central", req);
+		Assert.assertEquals(1, offsets.size());
+		Assert.assertTrue(offsets.containsKey(3));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		File obf = File.createTempFile("test", ".obf");
+		File f = File.createTempFile("test", NameSearchIndex.FILE_EXT);
+		try {
+			NameSearchIndex index = new NameSearchIndex(obf.getName(), obf.length(), 123);
+			index.addressNames.add(buildAddressNames());
+			NameSearchIndex.PoiNamesBuilder builder = new NameSearchIndex.PoiNamesBuilder(10);
+			builder.addAtom("cafe", 1, 100, 100);
+			index.poiNames.add(builder.build());
+			index.writeToFile(f);
+
+			NameSearchIndex read = NameSearchIndex.readFromFile(f);
+			Assert.assertNotNull(read);
+			Assert.assertTrue(read.isIndexOf(obf, 123));
+			Assert.assertFalse(read.isIndexOf(obf, 124));
+			NameSearchIndex.AddressNames names = read.addressNames.get(0);
+			Assert.assertEquals(100, names.indexNameOffset);
+			Assert.assertEquals(new TIntArrayList(new int[] {2000, 4000}),
+					offsets(names, names.getCandidates("straat", StringMatcherMode.CHECK_CONTAINS)));
+			Assert.assertEquals(10, read.poiNames.get(0).filePointer);
+			Assert.assertArrayEquals(new String[] {"cafe"}, read.poiNames.get(0).keys.keys);
+		} finally {
+			obf.delete();
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testTransliterationMode() throws IOException {
+		File obf = File.createTempFile("test", ".obf");
+		File f = File.createTempFile("test", NameSearchIndex.FILE_EXT);
+		try {
+			NameSearchIndex index = new NameSearchIndex(obf.getName(), obf.length(), 123, false);
+			index.writeToFile(f);
+			Assert.assertTrue(NameSearchIndex.readFromFile(f).isTransliterationActual());
+			TransliterationHelper.setJapanese(true);
+			// keys normalized without transliteration of japanese mode don't match queries
+			Assert.assertFalse(NameSearchIndex.readFromFile(f).isTransliterationActual());
+		} finally {
+			TransliterationHelper.setJapanese(false);
+			obf.delete();
+			f.delete();
+		}
+	}
+}
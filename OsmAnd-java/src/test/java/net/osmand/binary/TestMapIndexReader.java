@@ -0,0 +1,73 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Memory mapped reader without file data for tests: map objects are searched in the given list,
+ * route tiles are empty unless {@link #loadRouteIndexData(RouteSubregion)} is overridden.
+ */
+public class TestMapIndexReader extends BinaryMapIndexReader {
+
+	private final List<BinaryMapDataObject> objects;
+
+	public TestMapIndexReader(File file) throws IOException {
+		this(file, Collections.<BinaryMapDataObject>emptyList());
+	}
+
+	public TestMapIndexReader(File file, List<BinaryMapDataObject> objects) throws IOException {
+		super(ByteBuffer.allocate(0), file, false);
+		this.objects = objects;
+	}
+
+	/**
+	 * Objects intersecting bbox of request and accepted by its search filter
+	 */
+	@Override
+	public List<BinaryMapDataObject> searchMapIndex(SearchRequest<BinaryMapDataObject> req) throws IOException {
+		for (BinaryMapDataObject o : objects) {
+			if (req.isCancelled()) {
+				break;
+			}
+			if (intersects(o, req) && (req.searchFilter == null
+					|| req.searchFilter.accept(new TIntArrayList(o.getTypes()), o.getMapIndex()))) {
+				req.publish(decode(o));
+			}
+		}
+		return req.getSearchResults();
+	}
+
+	/**
+	 * @return published instance of the object
+	 */
+	protected BinaryMapDataObject decode(BinaryMapDataObject o) {
+		return o;
+	}
+
+	@Override
+	public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
+		return Collections.emptyList();
+	}
+
+	private static boolean intersects(BinaryMapDataObject o, SearchRequest<BinaryMapDataObject> req) {
+		int[] c = o.getCoordinates();
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for (int i = 0; i + 1 < c.length; i += 2) {
+			minX = Math.min(minX, c[i]);
+			maxX = Math.max(maxX, c[i]);
+			minY = Math.min(minY, c[i + 1]);
+			maxY = Math.max(maxY, c[i + 1]);
+		}
+		return maxX >= req.left && minX <= req.right && maxY >= req.top && minY <= req.bottom;
+	}
+}
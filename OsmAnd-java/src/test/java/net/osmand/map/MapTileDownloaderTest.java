@@ -0,0 +1,215 @@
+package net.osmand.map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+import net.osmand.map.MapTileDownloader.IMapDownloaderCallback;
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MapTileDownloaderTest {
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private File dir;
+	private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private volatile CountDownLatch block;
+	// downloader keeps weak references to callbacks
+	private final List<IMapDownloaderCallback> callbacks = new ArrayList<IMapDownloaderCallback>();
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("tiles", "");
+		dir.delete();
+		dir.mkdirs();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				int current = inFlight.incrementAndGet();
+				int max;
+				while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+				}
+				requested.add(path);
+				CountDownLatch b = block;
+				if (b != null) {
+					try {
+						b.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = path.getBytes("UTF-8");
+				exchange.sendResponseHeaders(path.startsWith("/error") ? 500 : 200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+				inFlight.decrementAndGet();
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		Algorithms.removeAllFiles(dir);
+	}
+
+	private DownloadRequest request(String path, int x, int y, int zoom) {
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+		return new DownloadRequest(url, new File(dir, path.replace('/', '_')), path, x, y, zoom);
+	}
+
+	private void countDownOnDownload(MapTileDownloader downloader, final CountDownLatch done) {
+		IMapDownloaderCallback callback = new IMapDownloaderCallback() {
+			@Override
+			public void tileDownloaded(DownloadRequest request) {
+				done.countDown();
+			}
+		};
+		callbacks.add(callback);
+		downloader.addDownloaderCallback(callback);
+	}
+
+	private static void await(CountDownLatch latch) throws InterruptedException {
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+	}
+
+	private static void waitFor(Callable<Boolean> condition) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.call()) {
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private Callable<Boolean> requestedAtLeast(final int count) {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return requested.size() >= count;
+			}
+		};
+	}
+
+	@Test
+	public void testPriorityAndDeduplication() throws Exception {
+		MapTileDownloader downloader = new MapTileDownloader(1);
+		final CountDownLatch done = new CountDownLatch(4);
+		countDownOnDownload(downloader, done);
+		downloader.setViewport(10, 100, 100);
+		block = new CountDownLatch(1);
+		// occupies the only worker
+		downloader.requestToDownload(request("/first", 100, 100, 10));
+		waitFor(requestedAtLeast(1));
+		downloader.requestToDownload(request("/far", 200, 200, 10));
+		downloader.requestToDownload(request("/near", 101, 100, 10));
+		downloader.requestToDownload(request("/near", 101, 100, 10));
+		downloader.requestToDownload(request("/other-zoom", 202, 200, 11));
+		Assert.assertEquals(4, downloader.getRemainingWorkers());
+		block.countDown();
+		await(done);
+		Assert.assertEquals(4, requested.size());
+		Assert.assertEquals("/near", requested.get(1));
+		Assert.assertEquals("/other-zoom", requested.get(2));
+		Assert.assertEquals("/far", requested.get(3));
+		Assert.assertTrue(new File(dir, "_near").exists());
+	}
+
+	@Test
+	public void testInFlightLimit() throws Exception {
+		MapTileDownloader downloader = new MapTileDownloader(8);
+		downloader.setMaxConnectionsPerHost(2);
+		final CountDownLatch done = new CountDownLatch(6);
+		countDownOnDownload(downloader, done);
+		block = new CountDownLatch(1);
+		for (int i = 0; i < 6; i++) {
+			downloader.requestToDownload(request("/tile" + i, i, 0, 10));
+		}
+		waitFor(requestedAtLeast(2));
+		block.countDown();
+		await(done);
+		Assert.assertEquals(6, requested.size());
+		Assert.assertEquals(2, maxInFlight.get());
+	}
+
+	@Test
+	public void testHostBackoff() throws Exception {
+		final MapTileDownloader downloader = new MapTileDownloader(1);
+		downloader.setMaxErrorsPerTimeout(2);
+		final CountDownLatch done = new CountDownLatch(1);
+		countDownOnDownload(downloader, done);
+		for (int i = 0; i < 3; i++) {
+			downloader.requestToDownload(request("/error" + i, i, 0, 10));
+		}
+		final String url = request("/error", 0, 0, 10).url;
+		// errors are counted after responses are read
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return downloader.getRemainingWorkers() == 0 && downloader.shouldSkipRequests(url);
+			}
+		});
+		Assert.assertEquals(3, requested.size());
+		Assert.assertTrue(downloader.shouldSkipRequests());
+		downloader.requestToDownload(request("/error3", 3, 0, 10));
+		Assert.assertEquals(0, downloader.getRemainingWorkers());
+		// other host is not affected
+		DownloadRequest other = new DownloadRequest("http://localhost:" + server.getAddress().getPort() + "/ok",
+				new File(dir, "ok"), "ok", 0, 0, 10);
+		downloader.requestToDownload(other);
+		await(done);
+		Assert.assertFalse(downloader.shouldSkipRequests());
+		Assert.assertEquals(4, requested.size());
+	}
+
+	@Test
+	public void testSkippedRequestIsNotHostError() throws Exception {
+		final MapTileDownloader downloader = new MapTileDownloader(1);
+		downloader.setMaxErrorsPerTimeout(0);
+		final CountDownLatch done = new CountDownLatch(1);
+		countDownOnDownload(downloader, done);
+		DownloadRequest noFile = new DownloadRequest("http://127.0.0.1:" + server.getAddress().getPort() + "/no-file",
+				null, "no-file", 0, 0, 10);
+		downloader.requestToDownload(noFile);
+		// skipped request is finished before the next one is sent
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return downloader.getRemainingWorkers() == 0;
+			}
+		});
+		Assert.assertFalse(downloader.shouldSkipRequests(noFile.url));
+		downloader.requestToDownload(request("/ok", 1, 0, 10));
+		await(done);
+		Assert.assertFalse(downloader.shouldSkipRequests(noFile.url));
+		Assert.assertEquals(Collections.singletonList("/ok"), requested);
+	}
+}
@@ -0,0 +1,234 @@
+package net.osmand.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Uses fake JDBC connections recording statements, so no sqlite driver is needed
+ */
+public class SQLiteTileDatabaseTest {
+
+	private static final byte[] DATA = {1, 2, 3};
+
+	@Test
+	public void testExportSchemaAndRows() throws SQLException {
+		// BigPlanet numbering: file zoom 16 is zoom 1, 15 is zoom 2
+		FakeConnection source = new FakeConnection(new String[] {"tilenumbering", "BigPlanet"}, Arrays.<Object[]>asList(
+				new Object[] {1, 0, 16, DATA},
+				new Object[] {3, 1, 15, DATA}));
+		FakeConnection mbtiles = new FakeConnection(null, null);
+		SQLiteTileDatabase db = new SQLiteTileDatabase(source.proxy());
+		Assert.assertTrue(db.isInversiveZoom());
+
+		Assert.assertEquals(2, db.exportToMBTiles(mbtiles.proxy(), "test", ".png", 1));
+		Assert.assertTrue(mbtiles.executed.contains("CREATE TABLE IF NOT EXISTS metadata (name text, value text)"));
+		Assert.assertTrue(mbtiles.executed.contains("CREATE TABLE IF NOT EXISTS tiles (zoom_level integer, "
+				+ "tile_column integer, tile_row integer, tile_data blob)"));
+		Assert.assertTrue(mbtiles.executed.contains(
+				"CREATE UNIQUE INDEX IF NOT EXISTS tile_index on tiles (zoom_level, tile_column, tile_row)"));
+		// rows are flipped to TMS scheme
+		List<List<Object>> tiles = mbtiles.batches.get(
+				"INSERT OR REPLACE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)");
+		Assert.assertEquals(2, tiles.size());
+		Assert.assertEquals(Arrays.<Object>asList(1, 1, 1, DATA), tiles.get(0));
+		Assert.assertEquals(Arrays.<Object>asList(2, 3, 2, DATA), tiles.get(1));
+		// batch of one tile is committed per tile and once at the end
+		Assert.assertEquals(3, mbtiles.commits);
+
+		Map<String, String> metadata = new HashMap<String, String>();
+		for (List<Object> row : mbtiles.batches.get("INSERT INTO metadata (name, value) VALUES (?, ?)")) {
+			metadata.put((String) row.get(0), (String) row.get(1));
+		}
+		Assert.assertEquals("test", metadata.get("name"));
+		Assert.assertEquals("png", metadata.get("format"));
+		Assert.assertEquals("1", metadata.get("minzoom"));
+		Assert.assertEquals("2", metadata.get("maxzoom"));
+		String[] bounds = metadata.get("bounds").split(",");
+		Assert.assertEquals(0, Double.parseDouble(bounds[0]), 1e-9);
+		Assert.assertEquals(0, Double.parseDouble(bounds[1]), 1e-9);
+		Assert.assertEquals(180, Double.parseDouble(bounds[2]), 1e-9);
+		Assert.assertEquals(85.0511, Double.parseDouble(bounds[3]), 1e-4);
+	}
+
+	@Test
+	public void testSimpleNumbering() throws SQLException {
+		FakeConnection source = new FakeConnection(new String[] {"tilenumbering", "simple", "timecolumn", "yes"},
+				Arrays.<Object[]>asList(new Object[] {5, 6, 3, DATA}));
+		FakeConnection mbtiles = new FakeConnection(null, null);
+		SQLiteTileDatabase db = new SQLiteTileDatabase(source.proxy());
+		Assert.assertFalse(db.isInversiveZoom());
+		Assert.assertTrue(db.isTimeSupported());
+		Assert.assertEquals(1, db.exportToMBTiles(mbtiles.proxy(), "test", "jpg", SQLiteTileDatabase.DEFAULT_BATCH_SIZE));
+		List<List<Object>> tiles = mbtiles.batches.get(
+				"INSERT OR REPLACE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)");
+		Assert.assertEquals(Arrays.<Object>asList(3, 5, 1, DATA), tiles.get(0));
+	}
+
+	@Test
+	public void testBatchSizeIsValidated() throws SQLException {
+		FakeConnection source = new FakeConnection(new String[] {"tilenumbering", "simple"},
+				Arrays.<Object[]>asList(new Object[] {0, 0, 1, DATA}));
+		FakeConnection mbtiles = new FakeConnection(null, null);
+		SQLiteTileDatabase db = new SQLiteTileDatabase(source.proxy());
+		try {
+			db.exportToMBTiles(mbtiles.proxy(), "test", "png", 0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			db.createWriter(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		Assert.assertTrue(mbtiles.executed.isEmpty());
+	}
+
+	/**
+	 * Records executed statements and batched parameters, serves info row and rows of tiles (x, y, z, image)
+	 */
+	private static class FakeConnection {
+		final String[] info;
+		final List<Object[]> tiles;
+		final List<String> executed = new ArrayList<String>();
+		final Map<String, List<List<Object>>> batches = new HashMap<String, List<List<Object>>>();
+		int commits;
+
+		FakeConnection(String[] info, List<Object[]> tiles) {
+			this.info = info;
+			this.tiles = tiles;
+		}
+
+		Connection proxy() {
+			return create(Connection.class, new Handler() {
+				@Override
+				Object call(String name, Object[] args) {
+					if (name.equals("createStatement")) {
+						return statement(null);
+					} else if (name.equals("prepareStatement")) {
+						return statement((String) args[0]);
+					} else if (name.equals("getAutoCommit")) {
+						return true;
+					} else if (name.equals("commit")) {
+						commits++;
+					}
+					return null;
+				}
+			});
+		}
+
+		private Statement statement(final String sql) {
+			final TreeMap<Integer, Object> params = new TreeMap<Integer, Object>();
+			Class<? extends Statement> cl = sql == null ? Statement.class : PreparedStatement.class;
+			return create(cl, new Handler() {
+				@Override
+				Object call(String name, Object[] args) {
+					if (name.equals("execute") && sql == null) {
+						executed.add((String) args[0]);
+					} else if (name.equals("executeQuery")) {
+						String query = (String) args[0];
+						if (query.equals("SELECT * FROM info")) {
+							return resultSet(info == null ? new ArrayList<Object[]>() : infoRow(), infoColumns());
+						} else if (query.equals("SELECT x, y, z, image FROM tiles")) {
+							return resultSet(tiles, null);
+						}
+						throw new IllegalArgumentException(query);
+					} else if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+						params.put((Integer) args[0], args[1]);
+					} else if (name.equals("addBatch") || name.equals("execute")) {
+						List<List<Object>> l = batches.get(sql);
+						if (l == null) {
+							l = new ArrayList<List<Object>>();
+							batches.put(sql, l);
+						}
+						l.add(new ArrayList<Object>(params.values()));
+						params.clear();
+					} else if (name.equals("executeBatch")) {
+						return new int[0];
+					}
+					return null;
+				}
+			});
+		}
+
+		private List<Object[]> infoRow() {
+			Object[] row = new Object[info.length / 2];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = info[i * 2 + 1];
+			}
+			return Arrays.<Object[]>asList(row);
+		}
+
+		private String[] infoColumns() {
+			String[] columns = new String[info == null ? 0 : info.length / 2];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = info[i * 2];
+			}
+			return columns;
+		}
+
+		private ResultSet resultSet(final List<Object[]> rows, final String[] columns) {
+			final int[] row = {-1};
+			return create(ResultSet.class, new Handler() {
+				@Override
+				Object call(String name, Object[] args) {
+					if (name.equals("next")) {
+						return ++row[0] < rows.size();
+					} else if (name.startsWith("get") && args != null && args.length == 1) {
+						return rows.get(row[0])[(Integer) args[0] - 1];
+					} else if (name.equals("getMetaData")) {
+						return create(ResultSetMetaData.class, new Handler() {
+							@Override
+							Object call(String name, Object[] args) {
+								if (name.equals("getColumnCount")) {
+									return columns.length;
+								} else if (name.equals("getColumnName")) {
+									return columns[(Integer) args[0] - 1];
+								}
+								return null;
+							}
+						});
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	private abstract static class Handler implements InvocationHandler {
+
+		abstract Object call(String name, Object[] args);
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Object res = call(method.getName(), args);
+			Class<?> type = method.getReturnType();
+			if (res == null && type.isPrimitive() && type != void.class) {
+				return type == boolean.class ? Boolean.FALSE : type == long.class ? Long.valueOf(0) : Integer.valueOf(0);
+			}
+			return res;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T create(Class<T> cl, Handler handler) {
+		return (T) Proxy.newProxyInstance(SQLiteTileDatabaseTest.class.getClassLoader(), new Class<?>[] {cl}, handler);
+	}
+}
@@ -0,0 +1,171 @@
+package net.osmand.render;
+
+import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RenderingRuleSearchCacheTest {
+
+	private static final String[][] TAG_VALUES = {{"highway", "primary"}, {"highway", "residential"},
+			{"highway", "track"}, {"building", "yes"}, {"amenity", "cafe"}, {"natural", "water"}};
+	private static final int[] STATES = {RenderingRulesStorage.ORDER_RULES, RenderingRulesStorage.LINE_RULES,
+			RenderingRulesStorage.POLYGON_RULES, RenderingRulesStorage.TEXT_RULES, RenderingRulesStorage.POINT_RULES};
+
+	private RenderingRulesStorage storage;
+	private List<BinaryMapDataObject> objects;
+
+	@Before
+	public void setUp() throws XmlPullParserException, IOException {
+		storage = new RenderingRulesStorage("test", null);
+		storage.parseRulesFromXmlInputStream(new ByteArrayInputStream(
+				RenderingRulesProgramTest.STYLE.getBytes("UTF-8")), null);
+		MapIndex mapIndex = new MapIndex();
+		mapIndex.initMapEncodingRule(0, 1, "surface", "unpaved");
+		mapIndex.initMapEncodingRule(0, 2, "surface", "paved");
+		objects = new ArrayList<BinaryMapDataObject>();
+		for (int[] additional : new int[][] {{}, {1}, {2}, {2, 1}}) {
+			BinaryMapDataObject obj = new BinaryMapDataObject(1, new int[] {0, 0, 10, 10}, null, 2, false,
+					new int[0], additional, 0, 0);
+			obj.setMapIndex(mapIndex);
+			objects.add(obj);
+		}
+		objects.add(null);
+	}
+
+	private RenderingRuleSearchRequest createRequest(boolean nightMode, String roadStyle, boolean cache) {
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, nightMode);
+		req.setStringFilter(storage.PROPS.get("roadStyle"), roadStyle);
+		req.setStringFilter(storage.PROPS.R_ADDITIONAL, "surface=unpaved");
+		req.saveState();
+		req.setUseSearchCache(cache);
+		return req;
+	}
+
+	/**
+	 * Searches like renderer does: state is not cleared between objects for order rules
+	 * and results are written into trace to compare.
+	 */
+	private static void searchAll(RenderingRuleSearchRequest req, List<BinaryMapDataObject> objects, List<String> trace) {
+		for (int state : STATES) {
+			req.clearState();
+			for (BinaryMapDataObject obj : objects) {
+				for (String[] tv : TAG_VALUES) {
+					for (int zoom = 7; zoom <= 17; zoom += 2) {
+						if (state == RenderingRulesStorage.ORDER_RULES) {
+							req.setTagValueZoomLayer(tv[0], tv[1], zoom, zoom % 3 - 1, obj);
+							req.setBooleanFilter(req.ALL.R_AREA, zoom > 12);
+						} else {
+							req.setInitialTagValueZoom(tv[0], tv[1], zoom, obj);
+							req.setIntFilter(req.ALL.R_TEXT_LENGTH, zoom % 4);
+						}
+						boolean found = req.search(state);
+						StringBuilder sb = new StringBuilder();
+						sb.append(state).append(' ').append(tv[0]).append('=').append(tv[1]).append(" z")
+								.append(zoom).append(' ').append(found);
+						for (RenderingRuleProperty p : req.getProperties()) {
+							sb.append(' ').append(req.getIntPropertyValue(p))
+									.append('/').append(req.getFloatPropertyValue(p));
+						}
+						trace.add(sb.toString());
+						if (state == RenderingRulesStorage.ORDER_RULES && req.isSpecified(req.ALL.R_SHADOW_LEVEL)) {
+							req.clearValue(req.ALL.R_SHADOW_LEVEL);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void assertSameAsUncached(boolean nightMode, String roadStyle) {
+		List<String> expected = new ArrayList<String>();
+		searchAll(createRequest(nightMode, roadStyle, false), objects, expected);
+		RenderingRuleSearchRequest cached = createRequest(nightMode, roadStyle, true);
+		for (int i = 0; i < 2; i++) {
+			List<String> actual = new ArrayList<String>();
+			searchAll(cached, objects, actual);
+			Assert.assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testSameResultsAsWithoutCache() {
+		RenderingRuleSearchCache cache = storage.getSearchCache();
+		assertSameAsUncached(false, "");
+		int size = cache.size();
+		Assert.assertTrue(size > 0);
+		// second run over the same objects is served from cache
+		assertSameAsUncached(false, "");
+		Assert.assertEquals(size, cache.size());
+	}
+
+	@Test
+	public void testParametersChange() {
+		assertSameAsUncached(false, "");
+		assertSameAsUncached(true, "");
+		assertSameAsUncached(true, "orange");
+		assertSameAsUncached(false, "");
+
+		RenderingRuleSearchRequest req = createRequest(false, "", true);
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, true);
+		req.saveState();
+		List<String> actual = new ArrayList<String>();
+		searchAll(req, objects, actual);
+		List<String> expected = new ArrayList<String>();
+		searchAll(createRequest(true, "", false), objects, expected);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testRulesModified() {
+		assertSameAsUncached(false, "");
+		RenderingRule primary = storage.getRule(RenderingRulesStorage.LINE_RULES,
+				storage.getTagValueKey("highway", "primary"));
+		primary.removeIfElseChildren(primary.getIfElseChildren().get(0));
+		assertSameAsUncached(false, "");
+	}
+
+	@Test
+	public void testConcurrentRenderers() throws InterruptedException {
+		final List<String> expected = new ArrayList<String>();
+		searchAll(createRequest(false, "orange", false), objects, expected);
+		final RenderingRuleSearchRequest shared = createRequest(false, "orange", true);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(shared);
+						for (int i = 0; i < 3; i++) {
+							List<String> actual = new ArrayList<String>();
+							searchAll(req, objects, actual);
+							Assert.assertEquals(expected, actual);
+						}
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package net.osmand.render;
+
+import net.osmand.render.RenderingRulesStorage.RenderingRulesStorageResolver;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares rendering rules search throughput of rules tree interpreter, compiled rules program
+ * and compiled rules program with search results cache.
+ * Searches are generated from tag/value pairs of the style for all rule states and zooms 10-19
+ * (plus some pairs not present in the style), results of both evaluators are checked to be identical.
+ * Dependent styles are resolved from the same folder.
+ * Run as java application: RenderingRulesBenchmark style.render.xml [searches]
+ */
+public class RenderingRulesBenchmark {
+
+	private static final int WARMUP = 3;
+	private static final int ITERATIONS = 5;
+	private static final int[] STATES = {RenderingRulesStorage.ORDER_RULES, RenderingRulesStorage.POINT_RULES,
+			RenderingRulesStorage.LINE_RULES, RenderingRulesStorage.POLYGON_RULES, RenderingRulesStorage.TEXT_RULES};
+
+	public static void main(String[] args) throws XmlPullParserException, IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: RenderingRulesBenchmark style.render.xml [searches]");
+			return;
+		}
+		final File styleFile = new File(args[0]);
+		int searches = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		RenderingRulesStorage storage = loadStorage(styleFile);
+
+		List<String[]> tagValues = new ArrayList<String[]>();
+		for (int state : STATES) {
+			if (storage.tagValueGlobalRules[state] != null) {
+				for (int key : storage.tagValueGlobalRules[state].keys()) {
+					tagValues.add(new String[] {storage.getTagString(key), storage.getValueString(key)});
+				}
+			}
+		}
+		int missing = tagValues.size() / 4;
+		for (int i = 0; i < missing; i++) {
+			tagValues.add(new String[] {"unknown_tag", "value" + i});
+		}
+		Collections.shuffle(tagValues, new Random(1));
+		System.out.println(String.format("%d rules, %d compiled nodes", tagValues.size() - missing,
+				storage.getCompiledRules().getNodesCount()));
+
+		RenderingRuleSearchRequest interpreted = createRequest(storage, false);
+		RenderingRuleSearchRequest compiled = createRequest(storage, true);
+		RenderingRuleSearchRequest cached = createRequest(storage, true);
+		cached.setUseSearchCache(true);
+		for (String[] tv : tagValues) {
+			for (int state : STATES) {
+				for (int zoom = 10; zoom < 20; zoom++) {
+					boolean found = search(interpreted, tv, state, zoom);
+					if (found != search(compiled, tv, state, zoom) || !sameValues(interpreted, compiled)
+							|| found != search(cached, tv, state, zoom) || !sameValues(interpreted, cached)) {
+						throw new IllegalStateException("Different results for " + tv[0] + "=" + tv[1]
+								+ " state " + state + " zoom " + zoom);
+					}
+				}
+			}
+		}
+
+		double interpretedOps = 0;
+		double compiledOps = 0;
+		double cachedOps = 0;
+		for (int it = 0; it < WARMUP + ITERATIONS; it++) {
+			double i = run(interpreted, tagValues, searches);
+			double c = run(compiled, tagValues, searches);
+			double m = run(cached, tagValues, searches);
+			if (it >= WARMUP) {
+				interpretedOps += i / ITERATIONS;
+				compiledOps += c / ITERATIONS;
+				cachedOps += m / ITERATIONS;
+			}
+		}
+		System.out.println(String.format("interpreter %.2f M searches/s, compiled %.2f M searches/s (x%.1f), "
+						+ "cached %.2f M searches/s (x%.1f)", interpretedOps / 1e6, compiledOps / 1e6,
+				compiledOps / interpretedOps, cachedOps / 1e6, cachedOps / interpretedOps));
+	}
+
+	private static RenderingRulesStorage loadStorage(final File styleFile) throws XmlPullParserException, IOException {
+		RenderingRulesStorageResolver resolver = new RenderingRulesStorageResolver() {
+			@Override
+			public RenderingRulesStorage resolve(String name, RenderingRulesStorageResolver ref)
+					throws XmlPullParserException, IOException {
+				return parse(name, new File(styleFile.getParentFile(), name + ".render.xml"), ref);
+			}
+		};
+		return parse("benchmark", styleFile, resolver);
+	}
+
+	private static RenderingRulesStorage parse(String name, File file, RenderingRulesStorageResolver resolver)
+			throws XmlPullParserException, IOException {
+		RenderingRulesStorage storage = new RenderingRulesStorage(name, null);
+		InputStream is = new FileInputStream(file);
+		try {
+			storage.parseRulesFromXmlInputStream(is, resolver);
+		} finally {
+			is.close();
+		}
+		return storage;
+	}
+
+	private static RenderingRuleSearchRequest createRequest(RenderingRulesStorage storage, boolean compiled) {
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		req.setUseCompiledRules(compiled);
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, false);
+		req.saveState();
+		return req;
+	}
+
+	private static boolean search(RenderingRuleSearchRequest req, String[] tv, int state, int zoom) {
+		req.setInitialTagValueZoom(tv[0], tv[1], zoom, null);
+		return req.search(state);
+	}
+
+	private static boolean sameValues(RenderingRuleSearchRequest a, RenderingRuleSearchRequest b) {
+		for (RenderingRuleProperty p : a.getProperties()) {
+			if (a.getIntPropertyValue(p) != b.getIntPropertyValue(p)
+					|| Float.floatToIntBits(a.getFloatPropertyValue(p)) != Float.floatToIntBits(b.getFloatPropertyValue(p))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double run(RenderingRuleSearchRequest req, List<String[]> tagValues, int searches) {
+		long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < searches; i++) {
+			String[] tv = tagValues.get(i % tagValues.size());
+			if (search(req, tv, STATES[i % STATES.length], 10 + (i / STATES.length) % 10)) {
+				found++;
+			}
+		}
+		long time = System.nanoTime() - start;
+		if (found < 0) {
+			System.out.println(found);
+		}
+		return searches * 1e9 / time;
+	}
+}
@@ -0,0 +1,157 @@
+package net.osmand.render;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class RenderingRulesProgramTest {
+
+	static final String STYLE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+			+ "<renderingStyle name=\"test\" depends=\"\" defaultColor=\"#f1eee8\" version=\"1\">\n"
+			+ "  <renderingProperty attr=\"hideBuildings\" name=\"Hide\" type=\"boolean\" possibleValues=\"\"/>\n"
+			+ "  <renderingProperty attr=\"roadStyle\" name=\"Roads\" type=\"string\" possibleValues=\"orange,germanRoadAtlas\"/>\n"
+			+ "  <renderingConstant name=\"buildingColor\" value=\"#ffc0c0c0\"/>\n"
+			+ "  <renderingAttribute name=\"defaultColor\">\n"
+			+ "    <case nightMode=\"true\" attrColorValue=\"#ff0f0f0f\"/>\n"
+			+ "    <case attrColorValue=\"#fff1eee8\"/>\n"
+			+ "  </renderingAttribute>\n"
+			+ "  <renderingAttribute name=\"primaryWidth\">\n"
+			+ "    <case maxzoom=\"12\" attrIntValue=\"3:1\"/>\n"
+			+ "    <case roadStyle=\"orange\" attrIntValue=\"5\"/>\n"
+			+ "    <case attrIntValue=\"4:2\"/>\n"
+			+ "  </renderingAttribute>\n"
+			+ "  <renderingAttribute name=\"showRoadMapsAttribute\">\n"
+			+ "    <case minzoom=\"10\" attrIntValue=\"1\"/>\n"
+			+ "  </renderingAttribute>\n"
+			+ "  <order>\n"
+			+ "    <switch>\n"
+			+ "      <case tag=\"highway\" value=\"primary\" order=\"50\"/>\n"
+			+ "      <case tag=\"highway\" value=\"\" order=\"40\"/>\n"
+			+ "      <case tag=\"building\" value=\"yes\" layer=\"1\" order=\"70\"/>\n"
+			+ "      <case tag=\"building\" value=\"yes\" order=\"60\"/>\n"
+			+ "      <apply objectType=\"2\"/>\n"
+			+ "    </switch>\n"
+			+ "    <case tag=\"\" value=\"\" order=\"1\" objectType=\"1\"/>\n"
+			+ "  </order>\n"
+			+ "  <line>\n"
+			+ "    <switch minzoom=\"8\">\n"
+			+ "      <case tag=\"highway\" value=\"primary\" color=\"#ffff0000\" strokeWidth=\"$primaryWidth\">\n"
+			+ "        <case maxzoom=\"9\" disable=\"true\"/>\n"
+			+ "        <apply nightMode=\"true\" color=\"#ff800000\" cap=\"ROUND\"/>\n"
+			+ "        <apply additional=\"surface=unpaved\" pathEffect=\"4_4\"/>\n"
+			+ "      </case>\n"
+			+ "      <case tag=\"highway\" value=\"residential\" color=\"$defaultColor\" strokeWidth=\"2\"/>\n"
+			+ "      <case tag=\"highway\" value=\"\" color=\"#ff00ff00\" strokeWidth=\"1.5\"/>\n"
+			+ "      <apply_if minzoom=\"14\" strokeWidth_2=\"0.5\" color_2=\"#ff000000\"/>\n"
+			+ "    </switch>\n"
+			+ "    <switch roadStyle=\"orange\">\n"
+			+ "      <case tag=\"highway\" value=\"primary\" color=\"#ffffa500\"/>\n"
+			+ "    </switch>\n"
+			+ "  </line>\n"
+			+ "  <polygon>\n"
+			+ "    <case tag=\"building\" value=\"yes\" minzoom=\"15\" hideBuildings=\"false\" color=\"$buildingColor\"/>\n"
+			+ "    <case tag=\"building\" value=\"yes\" minzoom=\"13\" maxzoom=\"14\" color=\"#ffa0a0a0\" shadowLevel=\"1\"/>\n"
+			+ "  </polygon>\n"
+			+ "  <text>\n"
+			+ "    <switch textLength=\"3\">\n"
+			+ "      <case tag=\"highway\" value=\"primary\" textSize=\"12\" textColor=\"$defaultColor\" textOrder=\"20\"/>\n"
+			+ "      <case tag=\"highway\" value=\"\" textSize=\"10\" textOrder=\"30\"/>\n"
+			+ "    </switch>\n"
+			+ "    <case tag=\"highway\" value=\"residential\" textSize=\"9\" textOnPath=\"true\"/>\n"
+			+ "  </text>\n"
+			+ "  <point>\n"
+			+ "    <case tag=\"amenity\" value=\"cafe\" icon=\"cafe\" iconOrder=\"10\" minzoom=\"16\"/>\n"
+			+ "  </point>\n"
+			+ "</renderingStyle>\n";
+
+	private static final String[][] TAG_VALUES = {{"highway", "primary"}, {"highway", "residential"},
+			{"highway", "track"}, {"building", "yes"}, {"amenity", "cafe"}, {"natural", "water"}, {"", ""}};
+
+	private RenderingRulesStorage storage;
+
+	@Before
+	public void setUp() throws XmlPullParserException, IOException {
+		storage = new RenderingRulesStorage("test", null);
+		storage.parseRulesFromXmlInputStream(new ByteArrayInputStream(STYLE.getBytes("UTF-8")), null);
+	}
+
+	private RenderingRuleSearchRequest createRequest(boolean compiled, Random rnd) {
+		RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(storage);
+		req.setUseCompiledRules(compiled);
+		req.setBooleanFilter(storage.PROPS.R_NIGHT_MODE, rnd.nextBoolean());
+		req.setBooleanFilter(storage.PROPS.get("hideBuildings"), rnd.nextBoolean());
+		req.setStringFilter(storage.PROPS.get("roadStyle"), rnd.nextBoolean() ? "orange" : "");
+		req.setStringFilter(storage.PROPS.R_ADDITIONAL, rnd.nextBoolean() ? "surface=unpaved" : "surface=paved");
+		req.saveState();
+		return req;
+	}
+
+	private static void assertSameResult(String msg, RenderingRuleSearchRequest expected, RenderingRuleSearchRequest actual) {
+		Assert.assertEquals(msg, expected.isFound(), actual.isFound());
+		for (RenderingRuleProperty p : expected.getProperties()) {
+			Assert.assertEquals(msg + " " + p.getAttrName(), expected.getIntPropertyValue(p), actual.getIntPropertyValue(p));
+			Assert.assertEquals(msg + " " + p.getAttrName(), Float.floatToIntBits(expected.getFloatPropertyValue(p)),
+					Float.floatToIntBits(actual.getFloatPropertyValue(p)));
+		}
+	}
+
+	private void checkSearches(long seed) {
+		Random rnd = new Random(seed);
+		for (int it = 0; it < 8; it++) {
+			long reqSeed = rnd.nextLong();
+			RenderingRuleSearchRequest interpreted = createRequest(false, new Random(reqSeed));
+			RenderingRuleSearchRequest compiled = createRequest(true, new Random(reqSeed));
+			for (int state = RenderingRulesStorage.POINT_RULES; state <= RenderingRulesStorage.ORDER_RULES; state++) {
+				for (String[] tv : TAG_VALUES) {
+					for (int zoom = 5; zoom <= 18; zoom++) {
+						int layer = rnd.nextInt(3) - 1;
+						boolean loadOutput = rnd.nextInt(4) != 0;
+						for (RenderingRuleSearchRequest req : new RenderingRuleSearchRequest[] {interpreted, compiled}) {
+							req.setInitialTagValueZoom(tv[0], tv[1], zoom, null);
+							req.setIntFilter(storage.PROPS.R_LAYER, layer);
+							req.setIntFilter(storage.PROPS.R_TEXT_LENGTH, 3);
+							req.search(state, loadOutput);
+						}
+						assertSameResult(state + " " + tv[0] + "=" + tv[1] + " z" + zoom, interpreted, compiled);
+					}
+				}
+			}
+			for (String attr : storage.getRenderingAttributeNames()) {
+				for (RenderingRuleSearchRequest req : new RenderingRuleSearchRequest[] {interpreted, compiled}) {
+					req.clearState();
+					req.setIntFilter(storage.PROPS.R_MINZOOM, 11);
+					req.setIntFilter(storage.PROPS.R_MAXZOOM, 11);
+					req.searchRenderingAttribute(attr);
+				}
+				assertSameResult(attr, interpreted, compiled);
+			}
+		}
+	}
+
+	@Test
+	public void testSameResultsAsInterpreter() {
+		RenderingRulesProgram program = storage.getCompiledRules();
+		Assert.assertTrue(program.getNodesCount() > 0);
+		Assert.assertTrue(program.getRule(RenderingRulesStorage.LINE_RULES,
+				storage.getTagValueKey("highway", "primary")) >= 0);
+		Assert.assertEquals(-1, program.getRule(RenderingRulesStorage.LINE_RULES,
+				storage.getTagValueKey("natural", "water")));
+		checkSearches(1);
+	}
+
+	@Test
+	public void testRecompiledAfterRulesModified() {
+		RenderingRulesProgram program = storage.getCompiledRules();
+		Assert.assertSame(program, storage.getCompiledRules());
+		RenderingRule primary = storage.getRule(RenderingRulesStorage.LINE_RULES,
+				storage.getTagValueKey("highway", "primary"));
+		primary.removeIfElseChildren(primary.getIfElseChildren().get(0));
+		Assert.assertNotSame(program, storage.getCompiledRules());
+		checkSearches(2);
+	}
+}
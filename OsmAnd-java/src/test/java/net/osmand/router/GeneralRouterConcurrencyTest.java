@@ -0,0 +1,166 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteAttributeContext;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class GeneralRouterConcurrencyTest {
+
+	private static final String[] HIGHWAYS = {"motorway", "primary", "secondary", "residential", "track"};
+	private static final int THREADS = 8;
+	private static final int OBJECTS = 2000;
+
+	private GeneralRouter base;
+	private List<RouteDataObject> objects;
+
+	@Before
+	public void setUp() {
+		RouteRegion region = new RouteRegion();
+		int id = 1;
+		for (String h : HIGHWAYS) {
+			region.initRouteEncodingRule(id++, "highway", h);
+		}
+		int maxspeed = id++;
+		region.initRouteEncodingRule(maxspeed, "maxspeed", "30");
+		int oneway = id++;
+		region.initRouteEncodingRule(oneway, "oneway", "yes");
+		int unpaved = id++;
+		region.initRouteEncodingRule(unpaved, "surface", "unpaved");
+
+		base = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		base.addAttribute("maxSpeed", "150");
+		RouteAttributeContext speed = base.getObjContext(RouteDataObjectAttribute.ROAD_SPEED);
+		speed.registerNewRule("$maxspeed", "speed").registerAndTagValueCondition("maxspeed", null, false);
+		for (int i = 0; i < HIGHWAYS.length; i++) {
+			speed.registerNewRule(String.valueOf(110 - i * 20), "speed")
+					.registerAndTagValueCondition("highway", HIGHWAYS[i], false);
+		}
+		RouteAttributeContext priority = base.getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES);
+		priority.registerNewRule(":unpaved_priority", null).registerAndTagValueCondition("surface", "unpaved", false);
+		priority.registerNewRule("1", null);
+		base.getObjContext(RouteDataObjectAttribute.ONEWAY).registerNewRule("1", null)
+				.registerAndTagValueCondition("oneway", "yes", false);
+
+		Random rnd = new Random(17);
+		objects = new ArrayList<RouteDataObject>();
+		for (int i = 0; i < OBJECTS; i++) {
+			RouteDataObject ro = new RouteDataObject(region);
+			ro.id = i;
+			List<Integer> types = new ArrayList<Integer>();
+			types.add(1 + rnd.nextInt(HIGHWAYS.length));
+			if (rnd.nextInt(4) == 0) {
+				types.add(maxspeed);
+			}
+			if (rnd.nextInt(3) == 0) {
+				types.add(oneway);
+			}
+			if (rnd.nextInt(3) == 0) {
+				types.add(unpaved);
+			}
+			ro.types = new int[types.size()];
+			for (int k = 0; k < ro.types.length; k++) {
+				ro.types[k] = types.get(k);
+			}
+			objects.add(ro);
+		}
+	}
+
+	private GeneralRouter build(String unpavedPriority) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put("unpaved_priority", unpavedPriority);
+		return base.build(params);
+	}
+
+	private static float[] evaluate(GeneralRouter router, RouteDataObject ro) {
+		return new float[] {router.defineRoutingSpeed(ro), router.defineSpeedPriority(ro), router.isOneWay(ro),
+				router.defineObstacle(ro, 0, true)};
+	}
+
+	@Test
+	public void testConcurrentEvaluationSameAsSequential() throws Exception {
+		GeneralRouter reference = build("0.5");
+		final GeneralRouter shared = build("0.5");
+		final List<float[]> expected = new ArrayList<float[]>();
+		for (RouteDataObject ro : objects) {
+			expected.add(evaluate(reference, ro));
+		}
+		ExecutorService service = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS; t++) {
+				final long seed = t;
+				futures.add(service.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						List<Integer> order = new ArrayList<Integer>();
+						for (int i = 0; i < objects.size(); i++) {
+							order.add(i);
+						}
+						Collections.shuffle(order, new Random(seed));
+						int mismatches = 0;
+						for (int i : order) {
+							float[] res = evaluate(shared, objects.get(i));
+							for (int k = 0; k < res.length; k++) {
+								if (res[k] != expected.get(i)[k]) {
+									mismatches++;
+								}
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				Assert.assertEquals(0, f.get().intValue());
+			}
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testInternedTypesSameAsNotInterned() {
+		GeneralRouter reference = build("0.5");
+		GeneralRouter interned = build("0.5");
+		for (RouteDataObject ro : objects) {
+			RouteDataObject copy = new RouteDataObject(ro);
+			copy.types = ro.types.clone();
+			copy.internTypes();
+			Assert.assertTrue(copy.getTypesCombinationId() >= 0);
+			Assert.assertArrayEquals(evaluate(reference, ro), evaluate(interned, copy), 0f);
+			Assert.assertArrayEquals(evaluate(reference, ro), evaluate(interned, copy), 0f);
+		}
+		Assert.assertTrue(objects.get(0).region.getTypesCombinationsCount() <= 40);
+	}
+
+	@Test
+	public void testParameterValuePerRouter() {
+		GeneralRouter first = build("0.3");
+		GeneralRouter second = build("0.7");
+		for (RouteDataObject ro : objects) {
+			float p1 = first.defineSpeedPriority(ro);
+			float p2 = second.defineSpeedPriority(ro);
+			if (p1 != 1) {
+				Assert.assertEquals(0.3f, p1, 1e-6);
+				Assert.assertEquals(0.7f, p2, 1e-6);
+			}
+		}
+	}
+}
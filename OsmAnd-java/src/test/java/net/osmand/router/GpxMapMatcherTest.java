@@ -0,0 +1,144 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class GpxMapMatcherTest {
+
+	private static final double LAT = 52;
+
+	private final TestRoadNetwork network = new TestRoadNetwork();
+	private final List<GpxPoint[]> chains = new ArrayList<GpxPoint[]>();
+	private final List<List<RouteSegmentResult>> routes = new ArrayList<List<RouteSegmentResult>>();
+
+	private void match(List<GpxPoint> points) throws IOException {
+		for (int i = 0; i < points.size(); i++) {
+			points.get(i).ind = i;
+		}
+		RoutingContext ctx = new RoutingContext(new RoutingConfiguration(), null, new BinaryMapIndexReader[0],
+				RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		GpxRouteApproximation gctx = new GpxRouteApproximation(ctx);
+		new GpxMapMatcher(new RoutePlannerFrontEnd(), gctx) {
+
+			@Override
+			RouteSegmentPoint findRouteSegment(GpxPoint p) {
+				return network.project(p.loc);
+			}
+
+			@Override
+			RouteSegment loadRouteSegment(int x31, int y31) {
+				return network.loadRouteSegment(x31, y31);
+			}
+
+			@Override
+			void publishChain(GpxPoint start, GpxPoint target, List<RouteSegmentResult> res) {
+				chains.add(new GpxPoint[] {start, target});
+				routes.add(res);
+			}
+		}.matchGpxPoints(points);
+	}
+
+	@Test
+	public void testRouteThroughJunction() throws IOException {
+		network.addRoad(1, LAT, 4.0, LAT, 4.01);
+		// north from the end of the first road
+		network.addRoad(2, LAT, 4.01, LAT + 0.006, 4.01);
+		List<GpxPoint> points = TestRoadNetwork.track(LAT + 0.00005, 4.0005, LAT + 0.00005, 4.0095, 0.0006);
+		points.addAll(TestRoadNetwork.track(LAT + 0.0005, 4.01005, LAT + 0.0055, 4.01005, 0.0004));
+		match(points);
+		Assert.assertEquals(1, chains.size());
+		Assert.assertEquals(0, chains.get(0)[0].ind);
+		Assert.assertEquals(points.size() - 1, chains.get(0)[1].ind);
+		Assert.assertEquals(Arrays.asList(1L, 2L), TestRoadNetwork.roadIds(routes.get(0)));
+	}
+
+	@Test
+	public void testViterbiKeepsConnectedRoad() throws IOException {
+		network.addRoad(1, LAT, 4.0, LAT, 4.01);
+		// closer parallel road in the middle, not connected with the main road
+		network.addRoad(3, LAT + 0.00025, 4.003, LAT + 0.00025, 4.007);
+		List<GpxPoint> points = TestRoadNetwork.track(LAT + 0.00018, 4.0005, LAT + 0.00018, 4.0095, 0.0006);
+		match(points);
+		Assert.assertEquals(1, chains.size());
+		Assert.assertEquals(points.size() - 1, chains.get(0)[1].ind);
+		Assert.assertEquals(Collections.singletonList(1L), TestRoadNetwork.roadIds(routes.get(0)));
+		for (GpxPoint p : points) {
+			if (p.pnt != null) {
+				Assert.assertEquals(1, p.pnt.getRoad().getId());
+			}
+		}
+	}
+
+	@Test
+	public void testGapInTheMiddleOfTrack() throws IOException {
+		network.addRoad(1, LAT, 4.0, LAT, 4.01);
+		// not connected with the first road, every point of the track is close to some road
+		network.addRoad(2, LAT, 4.0108, LAT, 4.0208);
+		List<GpxPoint> points = TestRoadNetwork.track(LAT + 0.00005, 4.0005, LAT + 0.00005, 4.0203, 0.0006);
+		match(points);
+		Assert.assertEquals(2, chains.size());
+		Assert.assertEquals(0, chains.get(0)[0].ind);
+		Assert.assertEquals(Collections.singletonList(1L), TestRoadNetwork.roadIds(routes.get(0)));
+		// track after the gap is matched too
+		Assert.assertEquals(points.size() - 1, chains.get(1)[1].ind);
+		Assert.assertEquals(Collections.singletonList(2L), TestRoadNetwork.roadIds(routes.get(1)));
+		Assert.assertEquals(2, points.get(points.size() - 1).pnt.getRoad().getId());
+	}
+
+	private static RouteDataObject createRoad(long id, int points) {
+		RouteDataObject ro = new RouteDataObject(new RouteRegion());
+		ro.id = id;
+		ro.types = new int[0];
+		ro.pointsX = new int[points];
+		ro.pointsY = new int[points];
+		for (int i = 0; i < points; i++) {
+			ro.pointsX[i] = (1 << 30) + i * 1000;
+			ro.pointsY[i] = 1 << 29;
+		}
+		return ro;
+	}
+
+	private static void assertPiece(RouteSegmentResult r, long id, int start, int end) {
+		Assert.assertEquals(id, r.getObject().getId());
+		Assert.assertEquals(start, r.getStartPointIndex());
+		Assert.assertEquals(end, r.getEndPointIndex());
+	}
+
+	@Test
+	public void testAppendPiece() {
+		RouteDataObject a = createRoad(1, 6);
+		RouteDataObject b = createRoad(2, 4);
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		GpxMapMatcher.appendPiece(res, a, 0, 1);
+		// continuation of the same road
+		GpxMapMatcher.appendPiece(res, a, 1, 3);
+		// segment of matched point is the end of one route and the start of the next one
+		GpxMapMatcher.appendPiece(res, a, 2, 3);
+		GpxMapMatcher.appendPiece(res, a, 2, 4);
+		Assert.assertEquals(1, res.size());
+		assertPiece(res.get(0), 1, 0, 4);
+		// u-turn on the same road
+		GpxMapMatcher.appendPiece(res, a, 4, 2);
+		GpxMapMatcher.appendPiece(res, b, 3, 0);
+		GpxMapMatcher.appendPiece(res, b, 0, 0);
+		Assert.assertEquals(3, res.size());
+		assertPiece(res.get(1), 1, 4, 2);
+		assertPiece(res.get(2), 2, 3, 0);
+	}
+}
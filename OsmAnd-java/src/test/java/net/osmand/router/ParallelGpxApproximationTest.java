@@ -0,0 +1,167 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelGpxApproximationTest {
+
+	private static final double LAT = 52;
+	private static final int THREADS = 3;
+
+	private final TestRoadNetwork network = new TestRoadNetwork();
+
+	private final RoutePlannerFrontEnd planner = new RoutePlannerFrontEnd() {
+
+		@Override
+		public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx,
+				List<RouteSegmentPoint> list, boolean transportStop) {
+			return network.project(new LatLon(lat, lon));
+		}
+
+		@Override
+		GpxMapMatcher createMapMatcher(GpxRouteApproximation gctx) {
+			return new GpxMapMatcher(this, gctx) {
+
+				@Override
+				RouteSegmentPoint findRouteSegment(GpxPoint p) {
+					return network.project(p.loc);
+				}
+
+				@Override
+				RouteSegment loadRouteSegment(int x31, int y31) {
+					return network.loadRouteSegment(x31, y31);
+				}
+
+				@Override
+				void publishChain(GpxPoint start, GpxPoint target, List<RouteSegmentResult> res) {
+					start.routeToTarget = res;
+					start.targetInd = target.ind;
+				}
+			};
+		}
+	};
+
+	// zigzag of roads to the east and to the north
+	private List<GpxPoint> createTrack() {
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		double lat = LAT;
+		double lon = 4;
+		for (int i = 0; i < 6; i++) {
+			double lat2 = i % 2 == 0 ? lat : lat + 0.01;
+			double lon2 = i % 2 == 0 ? lon + 0.02 : lon;
+			network.addRoad(i + 1, lat, lon, lat2, lon2);
+			List<GpxPoint> leg = i % 2 == 0 ? TestRoadNetwork.track(lat + 0.00004, lon + 0.0003, lat + 0.00004, lon2 - 0.0003, 0.0006)
+					: TestRoadNetwork.track(lat + 0.0003, lon + 0.00006, lat2 - 0.0003, lon + 0.00006, 0.0004);
+			points.addAll(leg);
+			lat = lat2;
+			lon = lon2;
+		}
+		for (int i = 0; i < points.size(); i++) {
+			GpxPoint p = points.get(i);
+			p.ind = i;
+			p.cumDist = i == 0 ? 0 : points.get(i - 1).cumDist + MapUtils.getDistance(points.get(i - 1).loc, p.loc);
+		}
+		return points;
+	}
+
+	private static List<GpxPoint> copy(List<GpxPoint> points) {
+		List<GpxPoint> res = new ArrayList<GpxPoint>();
+		for (GpxPoint p : points) {
+			res.add(new GpxPoint(p));
+		}
+		return res;
+	}
+
+	private GpxRouteApproximation createContext() {
+		RoutingConfiguration config = new RoutingConfiguration();
+		// short chunks for short track
+		config.maxStepApproximation = 300;
+		RoutingContext ctx = new RoutingContext(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		return new GpxRouteApproximation(ctx);
+	}
+
+	// pieces of all routes from the first point following targets, the same piece list doesn't depend on chunks
+	private static List<RouteSegmentResult> collectRoute(List<GpxPoint> points, TIntArrayList joins) {
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		int ind = 0;
+		while (points.get(ind).routeToTarget != null) {
+			GpxPoint p = points.get(ind);
+			Assert.assertTrue(p.targetInd > ind);
+			for (RouteSegmentResult r : p.routeToTarget) {
+				GpxMapMatcher.appendPiece(res, r.getObject(), r.getStartPointIndex(), r.getEndPointIndex());
+			}
+			joins.add(p.targetInd);
+			ind = p.targetInd;
+		}
+		Assert.assertEquals(points.size() - 1, ind);
+		return res;
+	}
+
+	private static void assertOnSegment(RouteSegmentPoint p, int pointInd) {
+		Assert.assertTrue(pointInd == p.getSegmentStart() || pointInd == p.getSegmentStart() - 1);
+	}
+
+	@Test
+	public void testSameResultAsSequential() throws IOException, InterruptedException {
+		List<GpxPoint> sequential = createTrack();
+		List<GpxPoint> parallel = copy(sequential);
+		planner.setUseHmmApproximation(true);
+
+		planner.approximateGpxPoints(createContext(), sequential);
+		GpxRouteApproximation gctx = createContext();
+		ParallelGpxApproximation approximation = new ParallelGpxApproximation(planner, gctx, THREADS);
+		TIntArrayList cuts = approximation.findAnchors(parallel);
+		Assert.assertTrue("Track is cut into several chunks", cuts.size() > 3);
+		approximation.approximate(parallel);
+
+		TIntArrayList sequentialJoins = new TIntArrayList();
+		TIntArrayList parallelJoins = new TIntArrayList();
+		List<RouteSegmentResult> expected = collectRoute(sequential, sequentialJoins);
+		List<RouteSegmentResult> actual = collectRoute(parallel, parallelJoins);
+		Assert.assertEquals(1, sequentialJoins.size());
+		// chunks are joined at anchors
+		cuts.removeAt(0);
+		Assert.assertEquals(cuts, parallelJoins);
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getObject().getId(), actual.get(i).getObject().getId());
+			Assert.assertEquals(expected.get(i).getStartPointIndex(), actual.get(i).getStartPointIndex());
+			Assert.assertEquals(expected.get(i).getEndPointIndex(), actual.get(i).getEndPointIndex());
+		}
+		for (int i = 0; i < sequential.size(); i++) {
+			RouteSegmentPoint e = sequential.get(i).pnt;
+			RouteSegmentPoint a = parallel.get(i).pnt;
+			Assert.assertEquals(e.getRoad().getId(), a.getRoad().getId());
+			Assert.assertEquals(e.getSegmentStart(), a.getSegmentStart());
+			Assert.assertEquals(e.preciseX, a.preciseX);
+			Assert.assertEquals(e.preciseY, a.preciseY);
+		}
+		for (int i = 0; i < cuts.size() - 1; i++) {
+			// route of the chunk ends and the next one starts on the segment of the anchor
+			RouteSegmentPoint anchor = parallel.get(cuts.get(i)).pnt;
+			List<RouteSegmentResult> prev = parallel.get(i == 0 ? 0 : cuts.get(i - 1)).routeToTarget;
+			RouteSegmentResult last = prev.get(prev.size() - 1);
+			RouteSegmentResult first = parallel.get(cuts.get(i)).routeToTarget.get(0);
+			Assert.assertEquals(anchor.getRoad().getId(), last.getObject().getId());
+			Assert.assertEquals(anchor.getRoad().getId(), first.getObject().getId());
+			assertOnSegment(anchor, last.getEndPointIndex());
+			assertOnSegment(anchor, first.getStartPointIndex());
+		}
+	}
+}
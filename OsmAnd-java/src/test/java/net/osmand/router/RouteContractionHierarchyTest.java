@@ -0,0 +1,136 @@
+package net.osmand.router;
+
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+public class RouteContractionHierarchyTest {
+
+	private static final int SIZE = 25;
+	private static final int STEP = 100;
+
+	private int nodes;
+	private TIntArrayList from = new TIntArrayList();
+	private TIntArrayList to = new TIntArrayList();
+	private float[] costs = new float[SIZE * SIZE * 8];
+
+	private RouteContractionHierarchy buildGrid(long seed) {
+		Random rnd = new Random(seed);
+		nodes = SIZE * SIZE;
+		long[] keys = new long[nodes];
+		for (int i = 0; i < nodes; i++) {
+			keys[i] = RouteContractionHierarchy.pointKey((i / SIZE) * STEP, (i % SIZE) * STEP);
+		}
+		RouteContractionHierarchyBuilder builder = new RouteContractionHierarchyBuilder(
+				new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>()));
+		builder.initGraph(nodes);
+		TLongArrayList pieceRoad = new TLongArrayList();
+		TIntArrayList pieceStart = new TIntArrayList();
+		TIntArrayList pieceEnd = new TIntArrayList();
+		for (int i = 0; i < nodes; i++) {
+			int x = i / SIZE;
+			int y = i % SIZE;
+			if (x + 1 < SIZE) {
+				addRoad(builder, rnd, i, i + SIZE, pieceRoad, pieceStart, pieceEnd);
+			}
+			if (y + 1 < SIZE) {
+				addRoad(builder, rnd, i, i + 1, pieceRoad, pieceStart, pieceEnd);
+			}
+		}
+		return builder.buildHierarchy(keys, pieceRoad, pieceStart, pieceEnd);
+	}
+
+	private void addRoad(RouteContractionHierarchyBuilder builder, Random rnd, int a, int b,
+			TLongArrayList pieceRoad, TIntArrayList pieceStart, TIntArrayList pieceEnd) {
+		int oneway = rnd.nextInt(10) == 0 ? (rnd.nextBoolean() ? 1 : -1) : 0;
+		float cost = 1 + rnd.nextInt(100);
+		if (oneway >= 0) {
+			addEdge(builder, a, b, cost, pieceRoad, pieceStart, pieceEnd);
+		}
+		if (oneway <= 0) {
+			addEdge(builder, b, a, cost, pieceRoad, pieceStart, pieceEnd);
+		}
+	}
+
+	private void addEdge(RouteContractionHierarchyBuilder builder, int a, int b, float cost,
+			TLongArrayList pieceRoad, TIntArrayList pieceStart, TIntArrayList pieceEnd) {
+		costs[from.size()] = cost;
+		from.add(a);
+		to.add(b);
+		builder.addEdge(a, b, cost, -(pieceRoad.size() + 1));
+		pieceRoad.add(pieceRoad.size());
+		pieceStart.add(0);
+		pieceEnd.add(1);
+	}
+
+	private float dijkstra(int start, int end) {
+		float[] dist = new float[nodes];
+		boolean[] settled = new boolean[nodes];
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		dist[start] = 0;
+		while (true) {
+			int min = -1;
+			for (int i = 0; i < nodes; i++) {
+				if (!settled[i] && dist[i] != Float.POSITIVE_INFINITY && (min == -1 || dist[i] < dist[min])) {
+					min = i;
+				}
+			}
+			if (min == -1) {
+				return -1;
+			}
+			if (min == end) {
+				return dist[end];
+			}
+			settled[min] = true;
+			for (int e = 0; e < from.size(); e++) {
+				if (from.get(e) == min && dist[min] + costs[e] < dist[to.get(e)]) {
+					dist[to.get(e)] = dist[min] + costs[e];
+				}
+			}
+		}
+	}
+
+	private int node(RouteContractionHierarchy ch, int ind) {
+		return ch.findNode((ind / SIZE) * STEP, (ind % SIZE) * STEP);
+	}
+
+	@Test
+	public void testSameDistancesAsDijkstra() {
+		RouteContractionHierarchy ch = buildGrid(7);
+		Assert.assertEquals(nodes, ch.getNodeCount());
+		Random rnd = new Random(11);
+		for (int i = 0; i < 200; i++) {
+			int a = rnd.nextInt(nodes);
+			int b = rnd.nextInt(nodes);
+			Assert.assertEquals(dijkstra(a, b), ch.calculateDistance(node(ch, a), node(ch, b)), 0.01);
+		}
+	}
+
+	@Test
+	public void testSaveLoad() throws IOException {
+		RouteContractionHierarchy ch = buildGrid(3);
+		File file = File.createTempFile("routing", RouteContractionHierarchy.FILE_EXT);
+		file.deleteOnExit();
+		ch.save(file);
+		RouteContractionHierarchy loaded = RouteContractionHierarchy.load(file);
+		Assert.assertEquals(ch.routerKey, loaded.routerKey);
+		Assert.assertEquals(ch.getEdgeCount(), loaded.getEdgeCount());
+		Random rnd = new Random(5);
+		for (int i = 0; i < 50; i++) {
+			int a = rnd.nextInt(nodes);
+			int b = rnd.nextInt(nodes);
+			Assert.assertEquals(ch.calculateDistance(node(ch, a), node(ch, b)),
+					loaded.calculateDistance(node(loaded, a), node(loaded, b)), 0.0);
+		}
+	}
+}
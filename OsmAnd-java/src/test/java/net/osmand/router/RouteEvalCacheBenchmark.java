@@ -0,0 +1,133 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares router evaluation cache with previous map of maps cache (HashMap with boxed key and value).
+ * Run as java application: RouteEvalCacheBenchmark [objects] [iterations]
+ */
+public class RouteEvalCacheBenchmark {
+
+	private static final int TYPES = 300;
+	private static final int COMBINATIONS = 3000;
+	private static final int WARMUP = 5;
+
+	public static void main(String[] args) {
+		int objectsCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		RouteRegion region = new RouteRegion();
+		for (int i = 1; i <= TYPES; i++) {
+			region.initRouteEncodingRule(i, "tag" + (i % 30), "value" + i);
+		}
+		Random rnd = new Random(1);
+		int[][] combinations = new int[COMBINATIONS][];
+		for (int i = 0; i < COMBINATIONS; i++) {
+			combinations[i] = new int[2 + rnd.nextInt(8)];
+			for (int k = 0; k < combinations[i].length; k++) {
+				combinations[i][k] = 1 + rnd.nextInt(TYPES);
+			}
+		}
+		RouteDataObject[] plain = new RouteDataObject[objectsCount];
+		RouteDataObject[] interned = new RouteDataObject[objectsCount];
+		for (int i = 0; i < objectsCount; i++) {
+			int[] types = combinations[rnd.nextInt(COMBINATIONS)];
+			plain[i] = new RouteDataObject(region);
+			plain[i].types = types.clone();
+			interned[i] = new RouteDataObject(region);
+			interned[i].types = types.clone();
+			interned[i].internTypes();
+		}
+
+		for (int it = 0; it < WARMUP + iterations; it++) {
+			boolean measure = it >= WARMUP;
+			long t = System.nanoTime();
+			double s1 = runMapOfMaps(plain);
+			long mapTime = System.nanoTime() - t;
+			t = System.nanoTime();
+			double s2 = runEvalCache(plain, false);
+			long hashTime = System.nanoTime() - t;
+			t = System.nanoTime();
+			double s3 = runEvalCache(interned, true);
+			long idTime = System.nanoTime() - t;
+			if (s1 != s2 || s1 != s3) {
+				throw new IllegalStateException("Different results " + s1 + " " + s2 + " " + s3);
+			}
+			if (measure) {
+				System.out.println(String.format("map of maps %.1f ns/op, types hash %.1f ns/op, types id %.1f ns/op",
+						mapTime / (double) objectsCount, hashTime / (double) objectsCount,
+						idTime / (double) objectsCount));
+			}
+		}
+	}
+
+	private static float evaluate(int[] types) {
+		return Arrays.hashCode(types) % 100;
+	}
+
+	private static double runMapOfMaps(RouteDataObject[] objects) {
+		Map<RouteRegion, Map<IntHolder, Float>> cache = new HashMap<RouteRegion, Map<IntHolder, Float>>();
+		double sum = 0;
+		for (RouteDataObject ro : objects) {
+			Map<IntHolder, Float> rM = cache.get(ro.region);
+			Float res = rM == null ? null : rM.get(new IntHolder(ro.types, false));
+			if (res == null) {
+				res = evaluate(ro.types);
+				if (rM == null) {
+					rM = new HashMap<IntHolder, Float>();
+					cache.put(ro.region, rM);
+				}
+				rM.put(new IntHolder(ro.types, false), res);
+			}
+			sum += res;
+		}
+		return sum;
+	}
+
+	private static double runEvalCache(RouteDataObject[] objects, boolean byId) {
+		RouteEvalCache cache = new RouteEvalCache();
+		double sum = 0;
+		for (RouteDataObject ro : objects) {
+			int typesId = ro.getTypesCombinationId();
+			float res = byId ? cache.get(ro.region, typesId) : cache.get(ro.region, ro.types, false);
+			if (Float.isNaN(res)) {
+				res = evaluate(ro.types);
+				if (byId) {
+					cache.put(ro.region, typesId, res);
+				} else {
+					cache.put(ro.region, ro.types, false, res);
+				}
+			}
+			sum += res;
+		}
+		return sum;
+	}
+
+	private static class IntHolder {
+		private final int[] array;
+		private final boolean extra;
+
+		IntHolder(int[] ts, boolean extra) {
+			array = ts;
+			this.extra = extra;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(array) + (extra ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof IntHolder)) {
+				return false;
+			}
+			return ((IntHolder) other).extra == extra && Arrays.equals(array, ((IntHolder) other).array);
+		}
+	}
+}
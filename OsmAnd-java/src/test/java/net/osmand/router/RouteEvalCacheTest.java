@@ -0,0 +1,84 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RouteEvalCacheTest {
+
+	private static final int THREADS = 4;
+	private static final int COMBINATIONS = 5000;
+
+	private static int[] types(int combination) {
+		return new int[] {combination, combination + 1};
+	}
+
+	@Test
+	public void testConcurrentPuts() throws InterruptedException {
+		final RouteEvalCache cache = new RouteEvalCache();
+		final RouteRegion region = new RouteRegion();
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger wrongValues = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			Thread th = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					// threads put the same and different combinations, tables are resized meanwhile
+					for (int i = thread; i < COMBINATIONS; i++) {
+						cache.put(region, types(i), false, i);
+						float v = cache.get(region, types(i), false);
+						if (!Float.isNaN(v) && v != i) {
+							wrongValues.incrementAndGet();
+						}
+					}
+				}
+			});
+			th.start();
+			threads.add(th);
+		}
+		start.countDown();
+		for (Thread th : threads) {
+			th.join();
+		}
+		Assert.assertEquals(0, wrongValues.get());
+		// values put concurrently with resize could be lost, the rest is found
+		int found = 0;
+		for (int i = 0; i < COMBINATIONS; i++) {
+			float v = cache.get(region, types(i), false);
+			if (!Float.isNaN(v)) {
+				Assert.assertEquals(i, v, 0);
+				found++;
+			}
+			Assert.assertTrue(Float.isNaN(cache.get(region, types(i), true)));
+		}
+		Assert.assertEquals(found, cache.size());
+		Assert.assertTrue(found > 0);
+	}
+
+	@Test
+	public void testMissingValueInFullTable() {
+		RouteEvalCache cache = new RouteEvalCache();
+		RouteRegion region = new RouteRegion();
+		for (int i = 0; i < COMBINATIONS; i++) {
+			cache.put(region, types(i), false, i);
+		}
+		for (int i = 0; i < COMBINATIONS; i++) {
+			Assert.assertEquals(i, cache.get(region, types(i), false), 0);
+		}
+		Assert.assertTrue(Float.isNaN(cache.get(region, types(COMBINATIONS), false)));
+		Assert.assertEquals(COMBINATIONS, cache.size());
+	}
+}
@@ -0,0 +1,218 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteAttributeContext;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+public class RouteMatrixCalculatorTest {
+
+	private static final String[] HIGHWAYS = {"primary", "secondary", "residential"};
+	private static final int SIZE = 12;
+	private static final int STEP = 2000;
+	private static final int X0 = 1 << 30;
+	private static final int Y0 = 1 << 29;
+
+	private GeneralRouter router;
+	private List<RouteDataObject> roads;
+
+	@Before
+	public void setUp() {
+		RouteRegion region = new RouteRegion();
+		int id = 1;
+		for (String h : HIGHWAYS) {
+			region.initRouteEncodingRule(id++, "highway", h);
+		}
+		int oneway = id++;
+		region.initRouteEncodingRule(oneway, "oneway", "yes");
+		router = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		router.addAttribute("maxSpeed", "150");
+		RouteAttributeContext speed = router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED);
+		for (int i = 0; i < HIGHWAYS.length; i++) {
+			speed.registerNewRule(String.valueOf(90 - i * 30), "speed")
+					.registerAndTagValueCondition("highway", HIGHWAYS[i], false);
+		}
+		router.getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).registerNewRule("1", null);
+		router.getObjContext(RouteDataObjectAttribute.ONEWAY).registerNewRule("1", null)
+				.registerAndTagValueCondition("oneway", "yes", false);
+
+		Random rnd = new Random(3);
+		roads = new ArrayList<RouteDataObject>();
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				if (x + 1 < SIZE) {
+					roads.add(createRoad(region, rnd, oneway, x, y, x + 1, y));
+				}
+				if (y + 1 < SIZE) {
+					roads.add(createRoad(region, rnd, oneway, x, y, x, y + 1));
+				}
+			}
+		}
+	}
+
+	private RouteDataObject createRoad(RouteRegion region, Random rnd, int oneway, int x1, int y1, int x2, int y2) {
+		RouteDataObject ro = new RouteDataObject(region);
+		ro.id = roads.size() + 1;
+		int[] types = rnd.nextInt(8) == 0 ? new int[] {1 + rnd.nextInt(HIGHWAYS.length), oneway}
+				: new int[] {1 + rnd.nextInt(HIGHWAYS.length)};
+		ro.types = types;
+		// middle point is shifted, so it's not a junction
+		ro.pointsX = new int[] {X0 + x1 * STEP, X0 + (x1 + x2) * STEP / 2 + 300, X0 + x2 * STEP};
+		ro.pointsY = new int[] {Y0 + y1 * STEP, Y0 + (y1 + y2) * STEP / 2 + 300, Y0 + y2 * STEP};
+		return ro;
+	}
+
+	private float[] referenceSearch(RouteSegmentPoint source) {
+		// plain Dijkstra on grid nodes
+		int nodes = SIZE * SIZE;
+		float[] dist = new float[nodes];
+		boolean[] settled = new boolean[nodes];
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		dist[gridNode(source.preciseX, source.preciseY)] = 0;
+		while (true) {
+			int min = -1;
+			for (int i = 0; i < nodes; i++) {
+				if (!settled[i] && dist[i] != Float.POSITIVE_INFINITY && (min == -1 || dist[i] < dist[min])) {
+					min = i;
+				}
+			}
+			if (min == -1) {
+				return dist;
+			}
+			settled[min] = true;
+			for (RouteDataObject ro : roads) {
+				int oneway = router.isOneWay(ro);
+				float speed = RouteContractionHierarchy.getRoutingSpeed(router, ro);
+				int a = gridNode(ro.pointsX[0], ro.pointsY[0]);
+				int b = gridNode(ro.pointsX[2], ro.pointsY[2]);
+				if (a == min && oneway >= 0) {
+					float t = RouteContractionHierarchy.calculateSegmentTime(router, ro, 0, 1, speed)
+							+ RouteContractionHierarchy.calculateSegmentTime(router, ro, 1, 2, speed);
+					dist[b] = Math.min(dist[b], dist[min] + t);
+				}
+				if (b == min && oneway <= 0) {
+					float t = RouteContractionHierarchy.calculateSegmentTime(router, ro, 2, 1, speed)
+							+ RouteContractionHierarchy.calculateSegmentTime(router, ro, 1, 0, speed);
+					dist[a] = Math.min(dist[a], dist[min] + t);
+				}
+			}
+		}
+	}
+
+	private static int gridNode(int x31, int y31) {
+		return ((x31 - X0) / STEP) * SIZE + (y31 - Y0) / STEP;
+	}
+
+	private List<RouteSegmentPoint> junctionPoints(Random rnd, int count) {
+		List<RouteSegmentPoint> res = new ArrayList<RouteSegmentPoint>();
+		while (res.size() < count) {
+			RouteDataObject ro = roads.get(rnd.nextInt(roads.size()));
+			// on oneway road the end point could be reached only along the road itself
+			if (router.isOneWay(ro) == 0) {
+				res.add(new RouteSegmentPoint(ro, 2, 0));
+			}
+		}
+		return res;
+	}
+
+	@Test
+	public void testSameTimesAsDijkstra() {
+		RouteMatrixCalculator calculator = new RouteMatrixCalculator(router, roads);
+		Random rnd = new Random(7);
+		List<RouteSegmentPoint> sources = junctionPoints(rnd, 15);
+		List<RouteSegmentPoint> targets = junctionPoints(rnd, 20);
+		RouteMatrix matrix = calculator.calculate(sources, targets, 1, null);
+		for (int s = 0; s < sources.size(); s++) {
+			float[] ref = referenceSearch(sources.get(s));
+			for (int t = 0; t < targets.size(); t++) {
+				RouteSegmentPoint target = targets.get(t);
+				float expected = ref[gridNode(target.preciseX, target.preciseY)];
+				if (expected == Float.POSITIVE_INFINITY) {
+					Assert.assertEquals(-1, matrix.getTime(s, t), 0);
+				} else {
+					Assert.assertEquals(expected, matrix.getTime(s, t), 0.01);
+					Assert.assertTrue(matrix.getDistance(s, t) >= 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelSameAsSequential() {
+		RouteMatrixCalculator calculator = new RouteMatrixCalculator(router, roads);
+		Random rnd = new Random(11);
+		List<RouteSegmentPoint> points = junctionPoints(rnd, 40);
+		points.add(null);
+		RouteMatrix sequential = calculator.calculate(points, points, 1, null);
+		RouteMatrix parallel = calculator.calculate(points, points, 4, null);
+		for (int s = 0; s < points.size(); s++) {
+			Assert.assertArrayEquals(sequential.times[s], parallel.times[s], 0);
+			Assert.assertArrayEquals(sequential.distances[s], parallel.distances[s], 0);
+		}
+		Assert.assertEquals(-1, sequential.getTime(points.size() - 1, 0), 0);
+		Assert.assertEquals(-1, sequential.getTime(0, points.size() - 1), 0);
+	}
+
+	@Test
+	public void testPointsOnSameRoad() {
+		RouteMatrixCalculator calculator = new RouteMatrixCalculator(router, roads);
+		RouteDataObject ro = null;
+		for (RouteDataObject r : roads) {
+			if (router.isOneWay(r) == 0) {
+				ro = r;
+				break;
+			}
+		}
+		RouteSegmentPoint a = new RouteSegmentPoint(ro, 1, 0);
+		a.preciseX = (ro.pointsX[0] + ro.pointsX[1]) / 2;
+		a.preciseY = (ro.pointsY[0] + ro.pointsY[1]) / 2;
+		RouteSegmentPoint b = new RouteSegmentPoint(ro, 2, 0);
+		b.preciseX = (ro.pointsX[1] + ro.pointsX[2]) / 2;
+		b.preciseY = (ro.pointsY[1] + ro.pointsY[2]) / 2;
+		List<RouteSegmentPoint> points = Arrays.asList(a, b);
+		RouteMatrix matrix = calculator.calculate(points, points, 2, null);
+		float speed = RouteContractionHierarchy.getRoutingSpeed(router, ro);
+		double distance = BinaryRoutePlanner.squareRootDist(a.preciseX, a.preciseY, ro.pointsX[1], ro.pointsY[1])
+				+ BinaryRoutePlanner.squareRootDist(ro.pointsX[1], ro.pointsY[1], b.preciseX, b.preciseY);
+		Assert.assertEquals(0, matrix.getTime(0, 0), 0);
+		Assert.assertEquals(distance / speed, matrix.getTime(0, 1), 0.01);
+		Assert.assertEquals(distance, matrix.getDistance(1, 0), 0.1);
+	}
+
+	@Test
+	public void testTooBigAreaIsNotLoaded() throws IOException {
+		RoutePlannerFrontEnd planner = new RoutePlannerFrontEnd() {
+			@Override
+			public RouteSegmentPoint findRouteSegment(double lat, double lon, RoutingContext ctx,
+					List<RouteSegmentPoint> list) {
+				RouteSegmentPoint p = new RouteSegmentPoint(roads.get(0), 1, 0);
+				p.preciseX = MapUtils.get31TileNumberX(lon);
+				p.preciseY = MapUtils.get31TileNumberY(lat);
+				return p;
+			}
+		};
+		RoutingContext ctx = new RoutingContext(new RoutingConfiguration(), null, new BinaryMapIndexReader[0],
+				RouteCalculationMode.NORMAL);
+		List<LatLon> near = Arrays.asList(new LatLon(52, 4), new LatLon(52.5, 4.5));
+		Assert.assertNotNull(planner.searchRouteMatrix(ctx, near, near, 1));
+		List<LatLon> far = Arrays.asList(new LatLon(52, 4), new LatLon(55, 4.5));
+		Assert.assertNull(planner.searchRouteMatrix(ctx, far, far, 1));
+	}
+}
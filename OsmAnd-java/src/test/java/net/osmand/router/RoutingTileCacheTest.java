@@ -0,0 +1,135 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapIndexReader;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoutingTileCacheTest {
+
+	private static final int TILES = 20;
+	private static final int OBJECTS_PER_TILE = 50;
+
+	private final AtomicInteger decoded = new AtomicInteger();
+	private BinaryMapIndexReader reader;
+	private List<RouteSubregion> tiles;
+
+	@Before
+	public void setUp() throws IOException {
+		final RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		reader = new TestMapIndexReader(new File("test.obf")) {
+			@Override
+			public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
+				decoded.incrementAndGet();
+				List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+				for (int i = 0; i < OBJECTS_PER_TILE; i++) {
+					RouteDataObject ro = new RouteDataObject(region);
+					ro.id = rs.filePointer * OBJECTS_PER_TILE + i;
+					ro.types = new int[] {1};
+					ro.pointsX = new int[] {rs.left, rs.right};
+					ro.pointsY = new int[] {rs.top, rs.bottom};
+					res.add(ro);
+				}
+				return res;
+			}
+		};
+		tiles = new ArrayList<RouteSubregion>();
+		for (int i = 0; i < TILES; i++) {
+			RouteSubregion rs = new RouteSubregion(region);
+			rs.filePointer = i;
+			rs.left = rs.top = i * 1000;
+			rs.right = rs.bottom = i * 1000 + 500;
+			tiles.add(rs);
+		}
+	}
+
+	@Test
+	public void testWarmBorrowDoesNotDecode() throws IOException {
+		RoutingTileCache cache = new RoutingTileCache(Long.MAX_VALUE);
+		List<RouteDataObject> first = cache.borrow(reader, tiles.get(0));
+		// another context has its own copy of subregion
+		List<RouteDataObject> second = cache.borrow(reader, new RouteSubregion(tiles.get(0)));
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, decoded.get());
+		Assert.assertEquals(1, cache.getHits());
+		cache.release(tiles.get(0));
+		cache.release(tiles.get(0));
+		cache.borrow(reader, tiles.get(0));
+		Assert.assertEquals(1, decoded.get());
+	}
+
+	@Test
+	public void testConcurrentBorrowDecodesOnce() throws Exception {
+		final RoutingTileCache cache = new RoutingTileCache(Long.MAX_VALUE);
+		ExecutorService service = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(service.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws IOException {
+						int objects = 0;
+						for (RouteSubregion rs : tiles) {
+							objects += cache.borrow(reader, new RouteSubregion(rs)).size();
+							cache.release(rs);
+						}
+						return objects;
+					}
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				Assert.assertEquals(TILES * OBJECTS_PER_TILE, f.get().intValue());
+			}
+		} finally {
+			service.shutdown();
+		}
+		Assert.assertEquals(TILES, decoded.get());
+		Assert.assertEquals(TILES, cache.getTilesCount());
+	}
+
+	@Test
+	public void testEvictionKeepsBorrowedTiles() throws IOException {
+		RoutingTileCache measure = new RoutingTileCache(Long.MAX_VALUE);
+		measure.borrow(reader, tiles.get(0));
+		long tileSize = measure.getEstimatedSize();
+		decoded.set(0);
+
+		RoutingTileCache cache = new RoutingTileCache(tileSize * 3);
+		for (int i = 0; i < 5; i++) {
+			cache.borrow(reader, tiles.get(i));
+		}
+		// borrowed tiles are not evicted even if limit is exceeded
+		Assert.assertEquals(5, cache.getTilesCount());
+		for (int i = 0; i < 5; i++) {
+			cache.release(tiles.get(i));
+		}
+		Assert.assertTrue(cache.getEstimatedSize() <= tileSize * 3);
+		Assert.assertEquals(3, cache.getTilesCount());
+		for (int i = 0; i < TILES; i++) {
+			cache.borrow(reader, tiles.get(i));
+			cache.release(tiles.get(i));
+			Assert.assertTrue(cache.getEstimatedSize() <= tileSize * 3);
+		}
+		int decodes = decoded.get();
+		cache.clear();
+		Assert.assertEquals(0, cache.getTilesCount());
+		cache.borrow(reader, tiles.get(TILES - 1));
+		Assert.assertEquals(decodes + 1, decoded.get());
+	}
+}
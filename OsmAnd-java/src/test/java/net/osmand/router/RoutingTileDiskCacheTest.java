@@ -0,0 +1,203 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapIndexReader;
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoutingTileDiskCacheTest {
+
+	private static final int TILES = 5;
+	private static final int OBJECTS_PER_TILE = 20;
+
+	private final AtomicInteger decoded = new AtomicInteger();
+	private File dir;
+	private File obf;
+	private RouteRegion region;
+	private BinaryMapIndexReader reader;
+	private List<RouteSubregion> tiles;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("rtcache", "");
+		dir.delete();
+		dir.mkdirs();
+		obf = new File(dir, "test.obf");
+		RandomAccessFile raf = new RandomAccessFile(obf, "rw");
+		raf.setLength(1000);
+		raf.close();
+		region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		region.initRouteEncodingRule(2, "oneway", "yes");
+		reader = createReader(region);
+		tiles = new ArrayList<RouteSubregion>();
+		for (int i = 0; i < TILES; i++) {
+			RouteSubregion rs = new RouteSubregion(region);
+			rs.filePointer = i * 100;
+			rs.shiftToData = 10;
+			rs.left = rs.top = i * 1000;
+			rs.right = rs.bottom = i * 1000 + 500;
+			tiles.add(rs);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		Algorithms.removeAllFiles(dir);
+	}
+
+	private BinaryMapIndexReader createReader(final RouteRegion region) throws IOException {
+		return new TestMapIndexReader(obf) {
+			@Override
+			public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
+				decoded.incrementAndGet();
+				return createObjects(region, rs);
+			}
+		};
+	}
+
+	private static List<RouteDataObject> createObjects(RouteRegion region, RouteSubregion rs) {
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+		for (int i = 0; i < OBJECTS_PER_TILE; i++) {
+			if (i == 3) {
+				res.add(null);
+				continue;
+			}
+			RouteDataObject ro = new RouteDataObject(region);
+			ro.id = rs.filePointer * OBJECTS_PER_TILE + i;
+			ro.types = i % 2 == 0 ? new int[] {1} : new int[] {1, 2};
+			ro.internTypes();
+			ro.pointsX = new int[] {rs.left, rs.left + i, rs.right};
+			ro.pointsY = new int[] {rs.top, rs.top + i, rs.bottom};
+			if (i % 3 == 0) {
+				ro.restrictions = new long[] {ro.id << 3 | 1};
+				ro.restrictionsVia = new long[] {0};
+			}
+			if (i % 4 == 0) {
+				ro.nameIds = new int[] {7};
+				ro.names = new TIntObjectHashMap<String>();
+				ro.names.put(7, "Улица " + i);
+				ro.pointTypes = new int[][] {null, {2}, null};
+				ro.pointNameTypes = new int[][] {{7}, null, null};
+				ro.pointNames = new String[][] {{"Остановка"}, null, null};
+			}
+			res.add(ro);
+		}
+		return res;
+	}
+
+	private static void assertObjects(List<RouteDataObject> expected, List<RouteDataObject> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			RouteDataObject e = expected.get(i);
+			RouteDataObject a = actual.get(i);
+			if (e == null) {
+				Assert.assertNull(a);
+				continue;
+			}
+			Assert.assertEquals(e.id, a.id);
+			Assert.assertSame(e.region, a.region);
+			Assert.assertArrayEquals(e.types, a.types);
+			Assert.assertArrayEquals(e.pointsX, a.pointsX);
+			Assert.assertArrayEquals(e.pointsY, a.pointsY);
+			Assert.assertEquals(String.valueOf(e.restrictions == null ? null : e.restrictions[0]),
+					String.valueOf(a.restrictions == null ? null : a.restrictions[0]));
+			Assert.assertArrayEquals(e.nameIds, a.nameIds);
+			Assert.assertEquals(e.getName(), a.getName());
+			Assert.assertEquals(e.pointTypes == null, a.pointTypes == null);
+			if (e.pointTypes != null) {
+				Assert.assertNull(a.pointTypes[0]);
+				Assert.assertArrayEquals(e.pointTypes[1], a.pointTypes[1]);
+				Assert.assertArrayEquals(e.pointNameTypes[0], a.pointNameTypes[0]);
+				Assert.assertEquals(e.pointNames[0][0], a.pointNames[0][0]);
+				Assert.assertNull(a.pointNames[1]);
+			}
+			Assert.assertEquals(e.getTypesCombinationId(), a.getTypesCombinationId());
+		}
+	}
+
+	@Test
+	public void testTilesAreKeptBetweenSessions() throws IOException {
+		RoutingTileDiskCache cache = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		for (RouteSubregion rs : tiles) {
+			cache.loadRouteIndexData(reader, rs);
+		}
+		// same session, tile is read from appended records
+		assertObjects(createObjects(region, tiles.get(0)), cache.loadRouteIndexData(reader, tiles.get(0)));
+		Assert.assertEquals(TILES, decoded.get());
+		cache.close();
+
+		// restart: new region and reader, tiles are hydrated from mapped file
+		RouteRegion newRegion = new RouteRegion();
+		newRegion.initRouteEncodingRule(1, "highway", "primary");
+		newRegion.initRouteEncodingRule(2, "oneway", "yes");
+		BinaryMapIndexReader newReader = createReader(newRegion);
+		RoutingTileDiskCache restarted = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		for (RouteSubregion rs : tiles) {
+			RouteSubregion copy = new RouteSubregion(newRegion);
+			copy.filePointer = rs.filePointer;
+			copy.shiftToData = rs.shiftToData;
+			copy.left = rs.left;
+			copy.top = rs.top;
+			copy.right = rs.right;
+			copy.bottom = rs.bottom;
+			assertObjects(createObjects(newRegion, copy), restarted.loadRouteIndexData(newReader, copy));
+		}
+		Assert.assertEquals(TILES, decoded.get());
+		Assert.assertEquals(TILES, restarted.getHits());
+		restarted.close();
+	}
+
+	@Test
+	public void testChangedFileInvalidatesCache() throws IOException {
+		RoutingTileDiskCache cache = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		cache.loadRouteIndexData(reader, tiles.get(0));
+		cache.close();
+		RandomAccessFile raf = new RandomAccessFile(obf, "rw");
+		raf.setLength(2000);
+		raf.close();
+		cache = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		cache.loadRouteIndexData(reader, tiles.get(0));
+		Assert.assertEquals(2, decoded.get());
+		Assert.assertEquals(0, cache.getHits());
+		cache.close();
+	}
+
+	@Test
+	public void testIncompleteRecordIsDropped() throws IOException {
+		RoutingTileDiskCache cache = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		cache.loadRouteIndexData(reader, tiles.get(0));
+		cache.loadRouteIndexData(reader, tiles.get(1));
+		cache.close();
+		File file = new File(dir, obf.getName() + RoutingTileDiskCache.CACHE_EXT);
+		long length = file.length();
+		// process was killed while writing record
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1});
+		out.close();
+		cache = new RoutingTileDiskCache(dir, Long.MAX_VALUE);
+		assertObjects(createObjects(region, tiles.get(1)), cache.loadRouteIndexData(reader, tiles.get(1)));
+		Assert.assertEquals(2, decoded.get());
+		Assert.assertEquals(length, file.length());
+		cache.loadRouteIndexData(reader, tiles.get(2));
+		Assert.assertEquals(3, decoded.get());
+		cache.close();
+	}
+}
@@ -0,0 +1,112 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.util.MapUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Straight roads without map files for GPX approximation tests, roads are connected where they share a point
+ */
+class TestRoadNetwork {
+
+	static final double STEP = 0.0005;
+
+	final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+
+	// road along the latitude from lon1 to lon2 (or along the longitude from lat1 to lat2)
+	RouteDataObject addRoad(long id, double lat1, double lon1, double lat2, double lon2) {
+		int points = (int) Math.round(Math.max(Math.abs(lon2 - lon1), Math.abs(lat2 - lat1)) / STEP) + 1;
+		RouteDataObject ro = new RouteDataObject(new RouteRegion());
+		ro.id = id;
+		ro.types = new int[0];
+		ro.pointsX = new int[points];
+		ro.pointsY = new int[points];
+		for (int i = 0; i < points; i++) {
+			double k = points == 1 ? 0 : (double) i / (points - 1);
+			ro.pointsX[i] = MapUtils.get31TileNumberX(lon1 + (lon2 - lon1) * k);
+			ro.pointsY[i] = MapUtils.get31TileNumberY(lat1 + (lat2 - lat1) * k);
+		}
+		roads.add(ro);
+		return ro;
+	}
+
+	static List<GpxPoint> track(double lat1, double lon1, double lat2, double lon2, double step) {
+		List<GpxPoint> res = new ArrayList<GpxPoint>();
+		int points = (int) Math.round(Math.max(Math.abs(lon2 - lon1), Math.abs(lat2 - lat1)) / step) + 1;
+		for (int i = 0; i < points; i++) {
+			double k = (double) i / (points - 1);
+			GpxPoint p = new GpxPoint();
+			p.loc = new LatLon(lat1 + (lat2 - lat1) * k, lon1 + (lon2 - lon1) * k);
+			res.add(p);
+		}
+		return res;
+	}
+
+	// nearest point of every road
+	RouteSegmentPoint project(LatLon l) {
+		int px = MapUtils.get31TileNumberX(l.getLongitude());
+		int py = MapUtils.get31TileNumberY(l.getLatitude());
+		List<RouteSegmentPoint> others = new ArrayList<RouteSegmentPoint>();
+		for (RouteDataObject ro : roads) {
+			RouteSegmentPoint best = null;
+			for (int i = 1; i < ro.getPointsLength(); i++) {
+				int x1 = ro.getPoint31XTile(i - 1);
+				int y1 = ro.getPoint31YTile(i - 1);
+				double dx = ro.getPoint31XTile(i) - x1;
+				double dy = ro.getPoint31YTile(i) - y1;
+				double k = Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy) / (dx * dx + dy * dy)));
+				int x = (int) Math.round(x1 + dx * k);
+				int y = (int) Math.round(y1 + dy * k);
+				double d = (double) (x - px) * (x - px) + (double) (y - py) * (y - py);
+				if (best == null || d < best.distSquare) {
+					best = new RouteSegmentPoint(ro, i, d);
+					best.preciseX = x;
+					best.preciseY = y;
+				}
+			}
+			others.add(best);
+		}
+		Collections.sort(others, new Comparator<RouteSegmentPoint>() {
+			@Override
+			public int compare(RouteSegmentPoint o1, RouteSegmentPoint o2) {
+				return Double.compare(o1.distSquare, o2.distSquare);
+			}
+		});
+		RouteSegmentPoint res = others.get(0);
+		res.others = others;
+		return res;
+	}
+
+	RouteSegment loadRouteSegment(int x31, int y31) {
+		RouteSegment res = null;
+		for (RouteDataObject ro : roads) {
+			for (int i = 0; i < ro.getPointsLength(); i++) {
+				if (ro.getPoint31XTile(i) == x31 && ro.getPoint31YTile(i) == y31) {
+					RouteSegment s = new RouteSegment(ro, i);
+					s.next = res;
+					res = s;
+				}
+			}
+		}
+		return res;
+	}
+
+	static List<Long> roadIds(List<RouteSegmentResult> route) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RouteSegmentResult r : route) {
+			if (ids.isEmpty() || ids.get(ids.size() - 1) != r.getObject().getId()) {
+				ids.add(r.getObject().getId());
+			}
+		}
+		return ids;
+	}
+}
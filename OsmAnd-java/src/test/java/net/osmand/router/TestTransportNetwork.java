@@ -0,0 +1,30 @@
+package net.osmand.router;
+
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Stops and routes without map files for transport routing tests
+ */
+class TestTransportNetwork {
+
+	static TransportStop stop(long id, double lat, double lon) {
+		TransportStop s = new TransportStop();
+		s.setId(id);
+		s.setName("Stop " + id);
+		s.setLocation(lat, lon);
+		return s;
+	}
+
+	static TransportRoute route(long id, TransportStop... stops) {
+		TransportRoute r = new TransportRoute();
+		r.setId(id);
+		r.setRef("R" + id);
+		r.setType("bus");
+		r.setForwardStops(new ArrayList<TransportStop>(Arrays.asList(stops)));
+		return r;
+	}
+}
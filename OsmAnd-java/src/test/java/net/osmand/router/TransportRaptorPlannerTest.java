@@ -0,0 +1,139 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static net.osmand.router.TestTransportNetwork.route;
+import static net.osmand.router.TestTransportNetwork.stop;
+
+public class TransportRaptorPlannerTest {
+
+	@Test
+	public void testParetoByChanges() throws InterruptedException {
+		TransportStop s1 = stop(1, 0, 0);
+		TransportStop s2 = stop(2, 0, 0.05);
+		TransportStop s3 = stop(3, 0, 0.1);
+		TransportStop s4 = stop(4, 0, 0.15);
+		TransportStop s5 = stop(5, 0.2, 0.05);
+		TransportStop s6 = stop(6, 0.2, 0.1);
+		// s3 and its twin are within walk change radius
+		TransportStop s3b = stop(7, 0.001, 0.1);
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(10, s1, s2, s3));
+		routes.add(route(11, s3b, s4));
+		// direct but long route
+		routes.add(route(12, s1, s5, s6, s4));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(cfg, routes);
+		Assert.assertEquals(7, network.getStopsCount());
+		Assert.assertEquals(2, network.getTransfersCount());
+
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(s1.getLocation(),
+				s4.getLocation(), null);
+		Assert.assertEquals(2, res.size());
+		TransportRouteResult fast = res.get(0);
+		Assert.assertEquals(1, fast.getChanges());
+		TransportRouteResultSegment first = fast.getSegments().get(0);
+		TransportRouteResultSegment second = fast.getSegments().get(1);
+		Assert.assertEquals(10, first.route.getId().longValue());
+		Assert.assertEquals(0, first.start);
+		Assert.assertEquals(2, first.end);
+		Assert.assertEquals(11, second.route.getId().longValue());
+		Assert.assertTrue(second.walkDist > 100 && second.walkDist < 120);
+		TransportRouteResult direct = res.get(1);
+		Assert.assertEquals(0, direct.getChanges());
+		Assert.assertEquals(12, direct.getSegments().get(0).route.getId().longValue());
+		Assert.assertTrue(fast.getRouteTime() < direct.getRouteTime());
+		Assert.assertEquals(0, fast.getFinishWalkDist(), 1);
+	}
+
+	@Test
+	public void testTransferBetweenRideStops() throws InterruptedException {
+		TransportStop s1 = stop(1, 0, 0);
+		TransportStop s2 = stop(2, 0, 0.05);
+		TransportStop far = stop(3, 0.02, 0.05);
+		// ~170 m from s2, reached by ride later than by walk from s2
+		TransportStop s3 = stop(4, 0.0015, 0.05);
+		// ~170 m from s3 and too far from s2
+		TransportStop s5 = stop(5, 0.003, 0.05);
+		TransportStop s6 = stop(6, 0.003, 0.1);
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(10, s1, s2, far, s3));
+		routes.add(route(11, s5, s6));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(cfg, routes);
+
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(s1.getLocation(),
+				s6.getLocation(), null);
+		Assert.assertEquals(1, res.size());
+		// walks are not chained: s5 is reached by walk from s3 after the ride to s3
+		List<TransportRouteResultSegment> segments = res.get(0).getSegments();
+		Assert.assertEquals(2, segments.size());
+		Assert.assertEquals(10, segments.get(0).route.getId().longValue());
+		Assert.assertEquals(0, segments.get(0).start);
+		Assert.assertEquals(3, segments.get(0).end);
+		Assert.assertEquals(11, segments.get(1).route.getId().longValue());
+		Assert.assertTrue(segments.get(1).walkDist > 150 && segments.get(1).walkDist < 180);
+	}
+
+	@Test
+	public void testTransferBeforeEgress() throws InterruptedException {
+		TransportStop s1 = stop(1, 0, 0);
+		TransportStop s2 = stop(2, 0, 0.05);
+		// ~170 m from s2
+		TransportStop s3 = stop(3, 0.0015, 0.05);
+		TransportStop s4 = stop(4, 0.1, 0.1);
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(10, s1, s2));
+		routes.add(route(11, s4, s3));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		cfg.walkRadius = 200;
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(cfg, routes);
+		// ~110 m from s3 and too far from s2
+		LatLon end = new LatLon(0.0025, 0.05);
+
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(s1.getLocation(), end, null);
+		Assert.assertEquals(1, res.size());
+		TransportRouteResult r = res.get(0);
+		Assert.assertEquals(1, r.getSegments().size());
+		Assert.assertEquals(10, r.getSegments().get(0).route.getId().longValue());
+		// walk from s2 to s3 and from s3 to the end
+		Assert.assertTrue(r.getFinishWalkDist() > 260 && r.getFinishWalkDist() < 290);
+	}
+
+	@Test
+	public void testSchedule() throws InterruptedException {
+		TransportStop s1 = stop(1, 0, 0);
+		TransportStop s2 = stop(2, 0, 0.05);
+		TransportStop s3 = stop(3, 0, 0.1);
+		TransportRoute r = route(10, s1, s2, s3);
+		// trips at 11:50, 12:10, 12:30 (10 seconds units), 5 minutes between stops
+		r.setSchedule(new TransportSchedule(new TIntArrayList(new int[] {11 * 360 + 300, 120, 120}),
+				new TIntArrayList(new int[] {30, 30}), new TIntArrayList()));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		cfg.useSchedule = true;
+		cfg.scheduleTimeOfDay = 12 * 360;
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(cfg, Arrays.asList(r));
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(s1.getLocation(),
+				s3.getLocation(), null);
+		Assert.assertEquals(1, res.size());
+		TransportRouteResultSegment sg = res.get(0).getSegments().get(0);
+		Assert.assertEquals(12 * 360 + 60, sg.depTime);
+		Assert.assertEquals(600, sg.travelTime, 0);
+		// wait for 12:10 trip and 10 minutes of travel
+		Assert.assertEquals(1200, res.get(0).getRouteTime(), 0);
+	}
+}
@@ -0,0 +1,70 @@
+package net.osmand.router;
+
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static net.osmand.router.TestTransportNetwork.route;
+import static net.osmand.router.TestTransportNetwork.stop;
+
+public class TransportTransferGraphTest {
+
+	// stops 1, 2, 3 (ids), 1 and 2 are connected by 150 m walk, 3 is not connected
+	private static TransportTransferGraph createGraph() {
+		return new TransportTransferGraph(new String[] {"a.obf"}, new long[] {5}, 300,
+				new long[] {1, 2, 3}, new int[] {10, 20, 30}, new int[] {10, 20, 30},
+				new int[] {0, 1, 2, 2}, new int[] {1, 0}, new int[] {150, 150});
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		File f = File.createTempFile("test", TransportTransferGraph.FILE_EXT);
+		try {
+			createGraph().writeToFile(f);
+			TransportTransferGraph graph = TransportTransferGraph.readFromFile(f);
+			Assert.assertNotNull(graph);
+			Assert.assertEquals(3, graph.getStopsCount());
+			Assert.assertEquals(2, graph.getTransfersCount());
+			Assert.assertEquals(150, graph.getTransferDistance(1, 2));
+			Assert.assertEquals(150, graph.getTransferDistance(2, 1));
+			Assert.assertEquals(-1, graph.getTransferDistance(1, 3));
+			Assert.assertEquals(-1, graph.getTransferDistance(1, 4));
+			Assert.assertEquals(300, graph.walkChangeRadius);
+			Assert.assertArrayEquals(new String[] {"a.obf"}, graph.fileNames);
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testRaptorTransfers() throws InterruptedException {
+		TransportStop s1 = stop(10, 0, 0);
+		TransportStop s2 = stop(1, 0, 0.05);
+		// 110 m from stop 1, but not connected by walking network
+		TransportStop s3 = stop(3, 0.001, 0.05);
+		// 110 m from stop 3 and 1, connected to 1
+		TransportStop s4 = stop(2, 0, 0.051);
+		TransportStop s5 = stop(11, 0, 0.1);
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(20, s1, s2));
+		routes.add(route(21, s3, s5));
+		routes.add(route(22, s4, s5));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		TransportRaptorNetwork network = TransportRaptorNetwork.build(cfg, routes, createGraph());
+		List<TransportRouteResult> res = new TransportRaptorPlanner(network).buildRoute(s1.getLocation(),
+				s5.getLocation(), null);
+		Assert.assertEquals(1, res.size());
+		TransportRouteResult r = res.get(0);
+		Assert.assertEquals(1, r.getChanges());
+		Assert.assertEquals(22, r.getSegments().get(1).route.getId().longValue());
+		Assert.assertEquals(150, r.getSegments().get(1).walkDist, 0);
+	}
+}
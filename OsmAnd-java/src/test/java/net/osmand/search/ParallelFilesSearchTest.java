@@ -0,0 +1,187 @@
+package net.osmand.search;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.TestMapIndexReader;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.ParallelFilesSearch;
+import net.osmand.search.core.ParallelFilesSearch.FileSearch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelFilesSearchTest {
+
+	private static final int FILES = 8;
+
+	private ExecutorService executor;
+	private List<BinaryMapIndexReader> files;
+	private AtomicInteger requestNumber;
+	private SearchResultMatcher matcher;
+
+	@Before
+	public void setUp() throws IOException {
+		executor = Executors.newFixedThreadPool(FILES);
+		files = new ArrayList<>();
+		for (int i = 0; i < FILES; i++) {
+			files.add(new TestMapIndexReader(new File("region" + i + ".obf")));
+		}
+		requestNumber = new AtomicInteger(1);
+		matcher = new SearchResultMatcher(null, null, 1, requestNumber, -1);
+		matcher.setFilesSearchExecutor(executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFilesReadInParallel() throws IOException {
+		final CountDownLatch allStarted = new CountDownLatch(FILES);
+		final Thread searchThread = Thread.currentThread();
+		final List<BinaryMapIndexReader> processed = new ArrayList<>();
+		ParallelFilesSearch.search(files.iterator(), matcher, new FileSearch<String>() {
+			@Override
+			public String readFile(BinaryMapIndexReader r) throws IOException {
+				Assert.assertNotSame(searchThread, Thread.currentThread());
+				allStarted.countDown();
+				try {
+					// completes only if all files are read at the same time
+					Assert.assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return r.getFile().getName();
+			}
+
+			@Override
+			public void fileRead(BinaryMapIndexReader r, String data) {
+				Assert.assertSame(searchThread, Thread.currentThread());
+				Assert.assertEquals(r.getFile().getName(), data);
+				processed.add(r);
+			}
+		});
+		Assert.assertEquals(FILES, processed.size());
+		Assert.assertTrue(processed.containsAll(files));
+	}
+
+	@Test
+	public void testCancelledSearchWaitsForRunningReads() throws IOException {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger processed = new AtomicInteger();
+		ParallelFilesSearch.search(files.iterator(), matcher, new FileSearch<Object>() {
+			@Override
+			public Object readFile(BinaryMapIndexReader r) throws IOException {
+				running.incrementAndGet();
+				try {
+					Thread.sleep(r == files.get(0) ? 0 : 100);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					running.decrementAndGet();
+				}
+				return r;
+			}
+
+			@Override
+			public void fileRead(BinaryMapIndexReader r, Object data) {
+				processed.incrementAndGet();
+				// new search request
+				requestNumber.incrementAndGet();
+			}
+		});
+		Assert.assertEquals(1, processed.get());
+		Assert.assertEquals(0, running.get());
+	}
+
+	@Test
+	public void testLimitStopsReadingFiles() throws IOException {
+		final AtomicInteger notStoppedReads = new AtomicInteger();
+		final AtomicInteger processed = new AtomicInteger();
+		ParallelFilesSearch.search(files.iterator(), matcher, new FileSearch<Object>() {
+			@Override
+			public Object readFile(BinaryMapIndexReader r) throws IOException {
+				if (r == files.get(0)) {
+					return r;
+				}
+				// reads until results are not needed
+				long deadline = System.currentTimeMillis() + 10000;
+				while (!isStopped()) {
+					if (System.currentTimeMillis() > deadline) {
+						notStoppedReads.incrementAndGet();
+						break;
+					}
+					Thread.yield();
+				}
+				return r;
+			}
+
+			@Override
+			public void fileRead(BinaryMapIndexReader r, Object data) {
+				processed.incrementAndGet();
+			}
+
+			@Override
+			protected boolean isLimitReached() {
+				return processed.get() > 0;
+			}
+		});
+		Assert.assertEquals(1, processed.get());
+		// reads which are started are stopped, others are not started
+		Assert.assertEquals(0, notStoppedReads.get());
+	}
+
+	@Test
+	public void testReadErrorIsThrown() {
+		try {
+			ParallelFilesSearch.search(files.iterator(), matcher, new FileSearch<Object>() {
+				@Override
+				public Object readFile(BinaryMapIndexReader r) throws IOException {
+					if (r == files.get(3)) {
+						throw new IOException("broken file");
+					}
+					return r;
+				}
+
+				@Override
+				public void fileRead(BinaryMapIndexReader r, Object data) {
+				}
+			});
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("broken file", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSequentialWithoutExecutor() throws IOException {
+		matcher.setFilesSearchExecutor(null);
+		final Thread searchThread = Thread.currentThread();
+		final List<BinaryMapIndexReader> processed = new ArrayList<>();
+		ParallelFilesSearch.search(files.iterator(), matcher, new FileSearch<BinaryMapIndexReader>() {
+			@Override
+			public BinaryMapIndexReader readFile(BinaryMapIndexReader r) {
+				Assert.assertSame(searchThread, Thread.currentThread());
+				return r;
+			}
+
+			@Override
+			public void fileRead(BinaryMapIndexReader r, BinaryMapIndexReader data) {
+				processed.add(data);
+			}
+		});
+		Assert.assertEquals(files, processed);
+	}
+}
@@ -0,0 +1,99 @@
+package net.osmand.util;
+
+import net.osmand.util.ConcurrentLruCache.Weigher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ConcurrentLruCacheTest {
+
+	private static final Weigher<String, byte[]> BYTES_WEIGHER = new Weigher<String, byte[]>() {
+		@Override
+		public long weigh(String key, byte[] value) {
+			return value.length;
+		}
+	};
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		ConcurrentLruCache<String, byte[]> cache = new ConcurrentLruCache<>(1000, BYTES_WEIGHER);
+		for (int i = 0; i < 10; i++) {
+			cache.put("t" + i, new byte[100], i);
+		}
+		Assert.assertEquals(1000, cache.getWeight());
+		// t0 is used recently
+		Assert.assertNotNull(cache.get("t0", 20));
+		cache.put("t10", new byte[100], 21);
+		Assert.assertTrue(cache.getWeight() <= 1000 * ConcurrentLruCache.EVICTION_RATIO);
+		Assert.assertTrue(cache.containsKey("t0"));
+		Assert.assertTrue(cache.containsKey("t10"));
+		Assert.assertFalse(cache.containsKey("t1"));
+		Assert.assertFalse(cache.containsKey("t3"));
+		Assert.assertTrue(cache.containsKey("t9"));
+	}
+
+	@Test
+	public void testWeightAccounting() {
+		ConcurrentLruCache<String, byte[]> cache = new ConcurrentLruCache<>(1000, BYTES_WEIGHER);
+		cache.put("a", new byte[100], 0);
+		cache.put("a", new byte[300], 1);
+		cache.put("b", new byte[200], 1);
+		Assert.assertEquals(500, cache.getWeight());
+		Assert.assertEquals(300, cache.remove("a").length);
+		Assert.assertNull(cache.remove("a"));
+		Assert.assertEquals(200, cache.getWeight());
+		cache.put("c", new byte[100], 2);
+		cache.trim();
+		Assert.assertEquals(1, cache.size());
+		Assert.assertTrue(cache.containsKey("c"));
+		cache.setMaxWeight(50);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final ConcurrentLruCache<String, byte[]> cache = new ConcurrentLruCache<>(50 * 1000, BYTES_WEIGHER);
+		List<Thread> threads = new ArrayList<>();
+		final List<Throwable> errors = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Random rnd = new Random(seed);
+						for (int i = 0; i < 50000; i++) {
+							String key = "t" + rnd.nextInt(300);
+							if (cache.get(key, i) == null) {
+								cache.put(key, new byte[1 + rnd.nextInt(1000)], i);
+							} else if (rnd.nextInt(10) == 0) {
+								cache.remove(key);
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+		long weight = 0;
+		for (String key : cache.keySet()) {
+			weight += cache.get(key, 0).length;
+		}
+		Assert.assertEquals(weight, cache.getWeight());
+		Assert.assertTrue(cache.getWeight() <= 50 * 1000 + 8 * 1000);
+	}
+}
@@ -0,0 +1,163 @@
+package net.osmand.util;
+
+import net.osmand.util.ConcurrentLruCache.Weigher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares tiles cache lookup throughput of concurrent cache with previous implementation
+ * (LinkedHashMap guarded by cache monitor, half of entries removed when count limit is exceeded).
+ * Every thread simulates panning map: looks up tiles around moving center and loads missing ones.
+ * Run as java application: TilesCacheBenchmark [maxThreads] [lookupsPerThread]
+ */
+public class TilesCacheBenchmark {
+
+	private static final int TILE_BYTES = 256 * 256 * 4;
+	private static final int CACHE_TILES = 64;
+	private static final int VIEW_TILES = 5;
+	private static final int WARMUP = 3;
+	private static final int ITERATIONS = 5;
+
+	interface TileStore {
+
+		Object get(String key, long accessTime);
+
+		void put(String key, Object value, long accessTime);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		String[][] keys = new String[64][64];
+		for (int x = 0; x < keys.length; x++) {
+			for (int y = 0; y < keys[x].length; y++) {
+				keys[x][y] = "Mapnik/16/" + x + "/" + y + ".png.tile";
+			}
+		}
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			double syncOps = 0;
+			double concurrentOps = 0;
+			for (int it = 0; it < WARMUP + ITERATIONS; it++) {
+				double s = run(new SynchronizedStore(), keys, threads, lookups);
+				double c = run(new ConcurrentStore(), keys, threads, lookups);
+				if (it >= WARMUP) {
+					syncOps += s / ITERATIONS;
+					concurrentOps += c / ITERATIONS;
+				}
+			}
+			System.out.println(String.format("%d threads: synchronized %.2f M lookups/s, concurrent %.2f M lookups/s (x%.1f)",
+					threads, syncOps / 1e6, concurrentOps / 1e6, concurrentOps / syncOps));
+		}
+	}
+
+	private static double run(final TileStore store, final String[][] keys, int threads, final int lookups)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(threads);
+		final Object tile = new Object();
+		for (int t = 0; t < threads; t++) {
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random rnd = new Random(seed);
+					int cx = keys.length / 2;
+					int cy = keys.length / 2;
+					try {
+						start.await();
+						for (int i = 0; i < lookups; i++) {
+							if (i % 1000 == 0) {
+								cx = Math.max(VIEW_TILES, Math.min(keys.length - VIEW_TILES - 1, cx + rnd.nextInt(3) - 1));
+								cy = Math.max(VIEW_TILES, Math.min(keys.length - VIEW_TILES - 1, cy + rnd.nextInt(3) - 1));
+							}
+							String key = keys[cx + rnd.nextInt(VIEW_TILES) - VIEW_TILES / 2][cy + rnd.nextInt(VIEW_TILES) - VIEW_TILES / 2];
+							// same clock for all threads as map refresh timestamp
+							long time = System.currentTimeMillis();
+							if (store.get(key, time) == null) {
+								store.put(key, tile, time);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						finish.countDown();
+					}
+				}
+			});
+			thread.start();
+		}
+		long time = System.nanoTime();
+		start.countDown();
+		finish.await();
+		time = System.nanoTime() - time;
+		return threads * (double) lookups / time * 1e9;
+	}
+
+	private static class ConcurrentStore implements TileStore {
+
+		private final ConcurrentLruCache<String, Object> cache = new ConcurrentLruCache<>(
+				(long) CACHE_TILES * TILE_BYTES, new Weigher<String, Object>() {
+					@Override
+					public long weigh(String key, Object value) {
+						return TILE_BYTES;
+					}
+				});
+
+		@Override
+		public Object get(String key, long accessTime) {
+			return cache.get(key, accessTime);
+		}
+
+		@Override
+		public void put(String key, Object value, long accessTime) {
+			cache.put(key, value, accessTime);
+		}
+	}
+
+	private static class SynchronizedStore implements TileStore {
+
+		private final Map<String, Entry> cache = new LinkedHashMap<>();
+
+		@Override
+		public synchronized Object get(String key, long accessTime) {
+			Entry entry = cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			entry.accessTime = accessTime;
+			return entry.tile;
+		}
+
+		@Override
+		public synchronized void put(String key, Object value, long accessTime) {
+			if (cache.size() > CACHE_TILES) {
+				List<Map.Entry<String, Entry>> list = new ArrayList<>(cache.entrySet());
+				Collections.sort(list, new Comparator<Map.Entry<String, Entry>>() {
+					@Override
+					public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+						return Long.compare(o1.getValue().accessTime, o2.getValue().accessTime);
+					}
+				});
+				for (int i = 0; i < list.size() / 2; i++) {
+					cache.remove(list.get(i).getKey());
+				}
+			}
+			Entry entry = new Entry();
+			entry.tile = value;
+			entry.accessTime = accessTime;
+			cache.put(key, entry);
+		}
+
+		private static class Entry {
+			Object tile;
+			long accessTime;
+		}
+	}
+}
@@ -25,6 +25,12 @@ public interface SQLiteAPI {
 
 		boolean isClosed();
 
+		void beginTransaction();
+
+		void setTransactionSuccessful();
+
+		void endTransaction();
+
 	}
 	
 	interface SQLiteCursor {
@@ -76,6 +82,8 @@ public interface SQLiteAPI {
 		
 		void bindBlob(int i, byte[] val);
 
+		void clearBindings();
+
 	}
 
 	@Nullable
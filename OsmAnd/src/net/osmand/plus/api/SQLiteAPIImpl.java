@@ -182,6 +182,11 @@ public class SQLiteAPIImpl implements SQLiteAPI {
 				public void bindBlob(int i, byte[] val) {
 					st.bindBlob(i, val);
 				}
+
+				@Override
+				public void clearBindings() {
+					st.clearBindings();
+				}
 			};
 		}
 
@@ -199,6 +204,21 @@ public class SQLiteAPIImpl implements SQLiteAPI {
 		public boolean isClosed() {
 			return !ds.isOpen();
 		}
+
+		@Override
+		public void beginTransaction() {
+			ds.beginTransaction();
+		}
+
+		@Override
+		public void setTransactionSuccessful() {
+			ds.setTransactionSuccessful();
+		}
+
+		@Override
+		public void endTransaction() {
+			ds.endTransaction();
+		}
 		
 	}
 
@@ -14,7 +14,6 @@ import androidx.annotation.Nullable;
 
 import net.osmand.plus.utils.AndroidUtils;
 import net.osmand.Location;
-import net.osmand.TspAnt;
 import net.osmand.data.FavouritePoint;
 import net.osmand.data.LatLon;
 import net.osmand.data.LocationPoint;
@@ -34,6 +33,7 @@ import net.osmand.plus.helpers.WaypointHelper.AmenityLocationPoint;
 import net.osmand.plus.helpers.WaypointHelper.LocationPointWrapper;
 import net.osmand.plus.routepreparationmenu.AddPointBottomSheetDialog;
 import net.osmand.plus.routepreparationmenu.MapRouteInfoMenu;
+import net.osmand.plus.routing.RoutingHelper;
 import net.osmand.plus.views.controls.StableArrayAdapter;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
@@ -396,7 +396,8 @@ public class WaypointDialogHelper {
 					al.add(p.point);
 				}
 				try {
-					return new TspAnt().readGraph(al, start.point, end.point).solve();
+					RoutingHelper routingHelper = app.getRoutingHelper();
+					return routingHelper.sortPointsByRoute(routingHelper.getAppMode(), al, start.point, end.point);
 				} catch (Exception e) {
 					return null;
 				}
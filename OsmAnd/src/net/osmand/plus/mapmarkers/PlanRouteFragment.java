@@ -22,7 +22,6 @@ import com.google.android.material.snackbar.Snackbar;
 import net.osmand.GPXUtilities.TrkSegment;
 import net.osmand.GPXUtilities.WptPt;
 import net.osmand.Location;
-import net.osmand.TspAnt;
 import net.osmand.data.LatLon;
 import net.osmand.data.PointDescription;
 import net.osmand.data.RotatedTileBox;
@@ -904,7 +903,8 @@ public class PlanRouteFragment extends BaseOsmAndFragment implements OsmAndLocat
 
 				LatLon start = startFromLoc ? new LatLon(myLoc.getLatitude(), myLoc.getLongitude()) : selectedLatLon.remove(0);
 
-				int[] sequence = new TspAnt().readGraph(selectedLatLon, start, null).solve();
+				int[] sequence = mapActivity.getMyApplication().getRoutingHelper()
+						.sortPointsByRoute(planRouteContext.getSnappedMode(), selectedLatLon, start, null);
 
 				List<MapMarker> res = new ArrayList<>();
 				for (int i = 0; i < sequence.length; i++) {
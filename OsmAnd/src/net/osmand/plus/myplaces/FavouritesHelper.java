@@ -528,8 +528,7 @@ public class FavouritesHelper {
 					public boolean publish(RouteDataObject routeDataObject) {
 						if (routeDataObject != null) {
 							LatLon latLon = new LatLon(point.getLatitude(), point.getLongitude());
-							routeDataObject.calculateHeightArray(latLon);
-							point.setAltitude(routeDataObject.heightByCurrentLocation);
+							point.setAltitude(routeDataObject.calculateHeightByLocation(latLon));
 						}
 						if (callback != null) {
 							callback.run();
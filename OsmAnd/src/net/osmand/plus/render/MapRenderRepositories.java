@@ -17,6 +17,9 @@ import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.MapIndex;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.binary.BinaryMapObjectsTileCache;
+import net.osmand.binary.BinaryMapParallelSearch;
+import net.osmand.binary.BinaryMapReadersIndex;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
@@ -80,8 +83,18 @@ public class MapRenderRepositories {
 	);
 
 	static int zoomForBaseRouteRendering  = 14;
+	private static final long MAX_TILES_CACHE_BYTES = 64 << 20;
+	private static final int MAP_READING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
 	private final Handler handler;
 	private Map<String, BinaryMapIndexReader> files = new LinkedHashMap<>();
+	private final BinaryMapReadersIndex readersIndex = new BinaryMapReadersIndex();
+	// decoded map objects by file/zoom/tile, pan reads only newly visible tiles
+	private final BinaryMapObjectsTileCache tilesCache = new BinaryMapObjectsTileCache(
+			Math.min(MAX_TILES_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 8));
+	// reads map objects of different memory mapped files in parallel, each thread with own file cursor
+	private final BinaryMapParallelSearch parallelSearch = new BinaryMapParallelSearch(MAP_READING_THREADS, tilesCache);
+	// search filter of cached tiles depends on rendering style and its parameters
+	private RenderingRuleSearchRequest tilesCacheRequest;
 	private final Set<String> nativeFiles = new HashSet<>();
 	private final Set<String> hiddenFileNames = new HashSet<>();
 	private final Set<String> hiddenFileExtensions = new HashSet<>();
@@ -186,12 +199,17 @@ public class MapRenderRepositories {
 		LinkedHashMap<String, BinaryMapIndexReader> cpfiles = new LinkedHashMap<>(files);
 		cpfiles.put(fileName, reader);
 		files = cpfiles;
+		readersIndex.addReader(reader);
 	}
 
 	public synchronized void closeConnection(String file) {
 		LinkedHashMap<String, BinaryMapIndexReader> cpfiles = new LinkedHashMap<String, BinaryMapIndexReader>(files);
 		BinaryMapIndexReader bmir = cpfiles.remove(file);
 		files = cpfiles;
+		if (bmir != null) {
+			readersIndex.removeReader(bmir);
+			parallelSearch.removeReader(bmir);
+		}
 		if (nativeFiles.contains(file)) {
 			NativeOsmandLibrary lib = NativeOsmandLibrary.getLoadedLibrary();
 			if (lib != null) {
@@ -209,19 +227,22 @@ public class MapRenderRepositories {
 		}
 	}
 
+	/**
+	 * Number of threads to read map objects of different files, 1 to read files one by one
+	 */
+	public void setMapReadingThreads(int threads) {
+		parallelSearch.setThreads(threads);
+	}
+
 	public boolean containsLatLonMapData(double lat, double lon, int zoom) {
 		int x = MapUtils.get31TileNumberX(lon);
 		int y = MapUtils.get31TileNumberY(lat);
-		for (BinaryMapIndexReader reader : files.values()) {
-			if (reader.containsMapData(x, y, zoom)) {
-				return true;
-			}
-		}
-		return false;
+		return !readersIndex.getMapReaders(x, y, x, y, zoom).isEmpty();
 	}
 
 	public void clearAllResources() {
 		clearCache();
+		tilesCache.clear();
 		bmp = null;
 		bmpLocation = null;
 		for (String f : new ArrayList<String>(files.keySet())) {
@@ -335,11 +356,12 @@ public class MapRenderRepositories {
 		}
 		boolean containsJapanMapData = false;
 		boolean useLive = context.getSettings().USE_OSM_LIVE_FOR_ROUTING.get();
+		Set<BinaryMapIndexReader> intersected = new HashSet<>(readersIndex.getMapReaders(leftX, topY, rightX, bottomY, zoom));
+		intersected.addAll(readersIndex.getRouteReaders(leftX, topY, rightX, bottomY));
 		for (Map.Entry<String, BinaryMapIndexReader> entry : files.entrySet()) {
 			String mapName = entry.getKey();
 			BinaryMapIndexReader fr = entry.getValue();
-			if (fr != null && (fr.containsMapData(leftX, topY, rightX, bottomY, zoom) ||
-					fr.containsRouteData(leftX, topY, rightX, bottomY, zoom))) {
+			if (fr != null && intersected.contains(fr)) {
 				if (!nativeFiles.contains(mapName)) {
 					long time = System.currentTimeMillis();
 					nativeFiles.add(mapName);
@@ -531,11 +553,8 @@ public class MapRenderRepositories {
 		return true;
 	}
 
-	private MapIndex readMapObjectsForRendering(int zoom, RenderingRuleSearchRequest renderingReq,
-	                                            ArrayList<BinaryMapDataObject> tempResult, ArrayList<BinaryMapDataObject> basemapResult,
-	                                            TLongSet ids, int[] count, boolean[] ocean, boolean[] land, List<BinaryMapDataObject> coastLines,
-	                                            List<BinaryMapDataObject> basemapCoastLines, int leftX, int rightX, int bottomY, int topY) {
-		BinaryMapIndexReader.SearchFilter searchFilter = new BinaryMapIndexReader.SearchFilter() {
+	private BinaryMapIndexReader.SearchFilter createSearchFilter(RenderingRuleSearchRequest renderingReq, int zoom) {
+		return new BinaryMapIndexReader.SearchFilter() {
 			@Override
 			public boolean accept(TIntArrayList types, BinaryMapIndexReader.MapIndex root) {
 				for (int j = 0; j < types.size(); j++) {
@@ -562,21 +581,43 @@ public class MapRenderRepositories {
 			}
 
 		};
-		if (zoom > 16) {
-			searchFilter = null;
+	}
+
+	private MapIndex readMapObjectsForRendering(int zoom, RenderingRuleSearchRequest renderingReq,
+	                                            ArrayList<BinaryMapDataObject> tempResult, ArrayList<BinaryMapDataObject> basemapResult,
+	                                            TLongSet ids, int[] count, boolean[] ocean, boolean[] land, List<BinaryMapDataObject> coastLines,
+	                                            List<BinaryMapDataObject> basemapCoastLines, int leftX, int rightX, int bottomY, int topY) {
+		BinaryMapParallelSearch.SearchFilterFactory filterFactory = null;
+		if (zoom <= 16) {
+			filterFactory = new BinaryMapParallelSearch.SearchFilterFactory() {
+				@Override
+				public BinaryMapIndexReader.SearchFilter createFilter() {
+					// every reading thread checks rules with own request
+					return createSearchFilter(new RenderingRuleSearchRequest(renderingReq), zoom);
+				}
+			};
 		}
 		MapIndex mi = null;
-		searchRequest = BinaryMapIndexReader.buildSearchRequest(leftX, rightX, topY, bottomY, zoom, searchFilter);
+		if (!renderingReq.hasSameSavedState(tilesCacheRequest)) {
+			tilesCache.clear();
+			tilesCacheRequest = new RenderingRuleSearchRequest(renderingReq);
+		}
+		// used to interrupt reading of all files
+		searchRequest = BinaryMapIndexReader.buildSearchRequest(leftX, rightX, topY, bottomY, zoom, null);
 		boolean containsJapanMapData = false;
-		for (BinaryMapIndexReader c : files.values()) {
+		long searchStart = System.currentTimeMillis();
+		// only readers with map roots intersecting request, in the same order as files
+		List<BinaryMapParallelSearch.FileResult> fileResults = parallelSearch.searchMapIndex(
+				readersIndex.getMapReaders(leftX, topY, rightX, bottomY, zoom), searchRequest, filterFactory);
+		BinaryMapParallelSearch.logTimings(fileResults, System.currentTimeMillis() - searchStart);
+		for (BinaryMapParallelSearch.FileResult fileResult : fileResults) {
+			BinaryMapIndexReader c = fileResult.getReader();
 			boolean basemap = c.isBasemap();
-			searchRequest.clearSearchResults();
-			List<BinaryMapDataObject> res;
-			try {
-				res = c.searchMapIndex(searchRequest);
-			} catch (IOException e) {
-				res = new ArrayList<BinaryMapDataObject>();
-				log.debug("Search failed " + c.getRegionNames(), e); //$NON-NLS-1$
+			List<BinaryMapDataObject> res = fileResult.getObjects();
+			boolean isOcean = fileResult.isOcean();
+			boolean isLand = fileResult.isLand();
+			if (fileResult.getError() != null) {
+				log.debug("Search failed " + c.getRegionNames(), fileResult.getError()); //$NON-NLS-1$
 			}
 			if (res.size() > 0) {
 				if(basemap) {
@@ -617,16 +658,17 @@ public class MapRenderRepositories {
 				}
 			}
 
-			if (searchRequest.isOcean()) {
+			if (isOcean) {
 				mi = c.getMapIndexes().get(0);
 				ocean[0] = true;
 			}
-			if (searchRequest.isLand()) {
+			if (isLand) {
 				mi = c.getMapIndexes().get(0);
 				land[0] = true;
 			}
 		}
 		TransliterationHelper.setJapanese(containsJapanMapData);
+		tilesCache.logStatistics();
 		return mi;
 	}
 
@@ -681,6 +723,7 @@ public class MapRenderRepositories {
 			RenderingRuleSearchRequest renderingReq = getSearchRequestWithAppliedCustomRules(storage, nightMode);
 
 			renderingReq.saveState();
+			renderingReq.setUseSearchCache(true);
 			NativeOsmandLibrary nativeLib = !prefs.SAFE_MODE.get() ? NativeOsmandLibrary.getLibrary(storage, context) : null;
 
 
@@ -18,6 +18,9 @@ import java.util.Map;
 
 public class BitmapTilesCache extends TilesCache<Bitmap> {
 
+	// 256x256 ARGB_8888 tile
+	private static final long AVERAGE_TILE_BYTES = 256 * 256 * 4;
+
 	private final Map<String, Map<Integer, Long>> mapsTilesSizes = new HashMap<>();
 
 	public BitmapTilesCache(AsyncLoadingThread asyncLoadingThread) {
@@ -25,7 +28,17 @@ public class BitmapTilesCache extends TilesCache<Bitmap> {
 		// it is not good investigated but no more than 64 (satellite images)
 		// Only 8 MB (from 16 Mb whole mem) available for images : image 64K * 128 = 8 MB (8 bit), 64 - 16 bit, 32 - 32 bit
 		// at least 3*9?
-		maxCacheSize = 28;
+		setMaxCacheSize(28);
+	}
+
+	@Override
+	protected long getTileBytes(@NonNull Bitmap tile) {
+		return tile.getAllocationByteCount();
+	}
+
+	@Override
+	protected long getAverageTileBytes() {
+		return AVERAGE_TILE_BYTES;
 	}
 
 	public synchronized long getTileSize(@NonNull ITileSource tileSource, int zoom) {
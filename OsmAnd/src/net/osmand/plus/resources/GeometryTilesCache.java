@@ -1,5 +1,7 @@
 package net.osmand.plus.resources;
 
+import com.vividsolutions.jts.geom.Geometry;
+
 import net.osmand.binary.BinaryVectorTileReader;
 import net.osmand.data.GeometryTile;
 import net.osmand.map.ITileSource;
@@ -7,6 +9,7 @@ import net.osmand.plus.resources.AsyncLoadingThread.TileLoadDownloadRequest;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import androidx.annotation.NonNull;
 
@@ -17,9 +20,31 @@ public class GeometryTilesCache extends TilesCache<GeometryTile> {
 	private static final int MAPILLARY_SEQUENCE_LAYER_CACHE_SIZE = 16;
 	private static final int MAPILLARY_IMAGE_LAYER_CACHE_SIZE = 4;
 
+	// rough estimation of geometry objects with coordinates on heap
+	private static final long GEOMETRY_BYTES = 64;
+	private static final long COORDINATE_BYTES = 40;
+	private static final long AVERAGE_TILE_BYTES = 512 * 1024;
+
 	public GeometryTilesCache(AsyncLoadingThread asyncLoadingThread) {
 		super(asyncLoadingThread);
-		this.maxCacheSize = 4;
+		setMaxCacheSize(4);
+	}
+
+	@Override
+	protected long getTileBytes(@NonNull GeometryTile tile) {
+		long bytes = GEOMETRY_BYTES;
+		List<Geometry> data = tile.getData();
+		if (data != null) {
+			for (Geometry g : data) {
+				bytes += GEOMETRY_BYTES + g.getNumPoints() * COORDINATE_BYTES;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	protected long getAverageTileBytes() {
+		return AVERAGE_TILE_BYTES;
 	}
 
 	public void useForMapillarySequenceLayer() {
@@ -7,6 +7,7 @@ import android.content.Context;
 import android.content.res.AssetManager;
 import android.database.sqlite.SQLiteException;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.HandlerThread;
 import android.text.format.DateFormat;
 import android.util.DisplayMetrics;
@@ -25,6 +26,7 @@ import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiSubType;
 import net.osmand.binary.CachedOsmandIndexes;
+import net.osmand.binary.NameSearchIndex;
 import net.osmand.data.Amenity;
 import net.osmand.data.RotatedTileBox;
 import net.osmand.data.TransportRoute;
@@ -69,7 +71,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -165,8 +166,7 @@ public class ResourceManager {
 			BinaryMapIndexReader initialReader = this.initialReader;
 			if (r == null && initialReader != null) {
 				try {
-					RandomAccessFile raf = new RandomAccessFile(filename, "r");
-					r = new BinaryMapIndexReader(raf, initialReader);
+					r = initialReader.createCursor();
 					readers.set(type.ordinal(), r);
 				} catch (IOException e) {
 					log.error("Fail to initialize " + filename.getName(), e);
@@ -179,6 +179,18 @@ public class ResourceManager {
 			return filename.getName();
 		}
 
+		public void setNameIndex(@Nullable NameSearchIndex nameIndex) {
+			BinaryMapIndexReader initialReader = this.initialReader;
+			if (initialReader != null) {
+				initialReader.setNameIndex(nameIndex);
+			}
+			for (BinaryMapIndexReader r : readers) {
+				if (r != null) {
+					r.setNameIndex(nameIndex);
+				}
+			}
+		}
+
 		public long getFileLastModified() {
 			return filename.lastModified();
 		}
@@ -633,6 +645,7 @@ public class ResourceManager {
 	}
 
 	private final ExecutorService checkAssetsSingleThreadExecutor = Executors.newSingleThreadExecutor();
+	private final ExecutorService nameIndexesSingleThreadExecutor = Executors.newSingleThreadExecutor();
 
 	public void checkAssetsAsync(@Nullable IProgress progress, boolean forceUpdate, boolean forceCheck,
 	                             @Nullable CheckAssetsListener listener) {
@@ -887,6 +900,10 @@ public class ResourceManager {
 		renderer.clearAllResources();
 		CachedOsmandIndexes cachedOsmandIndexes = new CachedOsmandIndexes();
 		File indCache = context.getAppPath(INDEXES_CACHE);
+		cachedOsmandIndexes.setNameIndexesDir(new File(indCache.getParentFile(), CachedOsmandIndexes.NAME_INDEXES_DIR));
+		// address space of 32-bit processes is too small to map all files
+		cachedOsmandIndexes.setMemoryMappedReaders(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+				&& android.os.Process.is64Bit());
 		if (indCache.exists()) {
 			try {
 				cachedOsmandIndexes.readFromFile(indCache, CachedOsmandIndexes.VERSION);
@@ -924,20 +941,26 @@ public class ResourceManager {
 		}
 
 		java.text.DateFormat dateFormat = getDateFormat();
+		if (progress != null) {
+			progress.startTask(context.getString(R.string.indexing_map), -1);
+		}
+		Map<File, BinaryMapIndexReader> readers;
+		try {
+			readers = cachedOsmandIndexes.getReaders(files, filesToReindex, Runtime.getRuntime().availableProcessors());
+		} catch (InterruptedException e) {
+			log.error(e.getMessage(), e);
+			readers = new HashMap<>();
+		}
+		List<BinaryMapReaderResource> withoutNameIndex = new ArrayList<>();
 		for (File f : files) {
 			String fileName = f.getName();
 			if (progress != null) {
 				progress.startTask(context.getString(R.string.indexing_map) + " " + fileName, -1);
 			}
 			try {
-				BinaryMapIndexReader mapReader = null;
-				try {
-					mapReader = cachedOsmandIndexes.getReader(f, !filesToReindex.contains(f));
-					if (mapReader.getVersion() != IndexConstants.BINARY_MAP_VERSION) {
-						mapReader = null;
-					}
-				} catch (IOException e) {
-					log.error(String.format("File %s could not be read", fileName), e);
+				BinaryMapIndexReader mapReader = readers.get(f);
+				if (mapReader != null && mapReader.getVersion() != IndexConstants.BINARY_MAP_VERSION) {
+					mapReader = null;
 				}
 				boolean wikiMap = WikipediaPlugin.containsWikipediaExtension(fileName);
 				boolean srtmMap = SrtmDownloadItem.containsSrtmExtension(fileName);
@@ -975,6 +998,12 @@ public class ResourceManager {
 						amenityRepositories.put(fileName, new AmenityIndexRepositoryBinary(resource, context));
 					}
 					fileReaders.put(fileName, resource);
+					if (mapReader.containsPoiData() || mapReader.containsAddressData()) {
+						// index is set before copies of the reader are created
+						if (loadNameIndex(cachedOsmandIndexes, mapReader) == null) {
+							withoutNameIndex.add(resource);
+						}
+					}
 					if (resource.getFileName().endsWith(IndexConstants.BINARY_TRAVEL_GUIDE_MAP_INDEX_EXT)) {
 						travelRepositories.put(resource.getFileName(), resource);
 						// travel files should be indexed separately (so it's possible to turn on / off)
@@ -1041,6 +1070,9 @@ public class ResourceManager {
 				log.error("Index file could not be written", e);
 			}
 		}
+		if (!withoutNameIndex.isEmpty()) {
+			buildNameIndexes(cachedOsmandIndexes, withoutNameIndex);
+		}
 		backupedFileNames.clear();
 		getBackupIndexes(backupedFileNames);
 		for (ResourceListener l : resourceListeners) {
@@ -1049,6 +1081,47 @@ public class ResourceManager {
 		return warnings;
 	}
 
+	@Nullable
+	private NameSearchIndex loadNameIndex(@NonNull CachedOsmandIndexes cachedOsmandIndexes, @NonNull BinaryMapIndexReader reader) {
+		try {
+			return cachedOsmandIndexes.loadNameIndex(reader, false);
+		} catch (IOException e) {
+			log.error("Name index of " + reader.getFile().getName() + " could not be read", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Name indexes are built in background by own readers of files and set to readers of resources,
+	 * until then search by name reads name tables of files
+	 */
+	private void buildNameIndexes(@NonNull CachedOsmandIndexes cachedOsmandIndexes,
+	                              @NonNull List<BinaryMapReaderResource> resources) {
+		nameIndexesSingleThreadExecutor.execute(() -> {
+			for (BinaryMapReaderResource resource : resources) {
+				BinaryMapIndexReader initialReader = resource.getShallowReader();
+				if (initialReader == null) {
+					continue;
+				}
+				BinaryMapIndexReader reader = null;
+				try {
+					reader = initialReader.createCursor();
+					resource.setNameIndex(cachedOsmandIndexes.loadNameIndex(reader, true));
+				} catch (IOException | RuntimeException e) {
+					log.error("Name index of " + resource.getFileName() + " could not be built", e);
+				} finally {
+					if (reader != null) {
+						try {
+							reader.close();
+						} catch (IOException e) {
+							log.error(e.getMessage(), e);
+						}
+					}
+				}
+			}
+		});
+	}
+
 	public List<String> getTravelRepositoryNames() {
 		List<String> fileNames = new ArrayList<>(travelRepositories.keySet());
 		Collections.sort(fileNames, Algorithms.getStringVersionComparator());
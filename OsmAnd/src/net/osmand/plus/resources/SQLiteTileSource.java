@@ -20,10 +20,12 @@ import net.osmand.map.TileSourceManager.TileSourceTemplate;
 import net.osmand.plus.OsmandApplication;
 import net.osmand.plus.api.SQLiteAPI.SQLiteConnection;
 import net.osmand.plus.api.SQLiteAPI.SQLiteCursor;
+import net.osmand.plus.api.SQLiteAPI.SQLiteStatement;
 import net.osmand.util.Algorithms;
 
 import org.apache.commons.logging.Log;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -53,6 +55,8 @@ public class SQLiteTileSource implements ITileSource {
 	private static final String BIG_PLANET_TILE_NUMBERING = "BigPlanet";
 	private static final String TILESIZE = "tilesize";
 
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
 	private final OsmandApplication app;
 
 	private ITileSource base;
@@ -77,6 +81,11 @@ public class SQLiteTileSource implements ITileSource {
 	private boolean tileSizeSpecified;
 	private boolean onlyReadonlyAvailable;
 
+	public interface TileBytesCallback {
+
+		void tileLoaded(int x, int y, int zoom, @NonNull byte[] data, long time);
+	}
+
 	public SQLiteTileSource(OsmandApplication app, File f, List<TileSourceTemplate> toFindUrl){
 		this.app = app;
 		this.file = f;
@@ -505,6 +514,38 @@ public class SQLiteTileSource implements ITileSource {
 		return getBytes(x, y, zoom, dirWithTiles, null);
 	}
 
+	/**
+	 * Loads all stored tiles of zoom within [left, right] x [top, bottom] by one query
+	 * @return number of loaded tiles
+	 */
+	public int getBytes(int zoom, int left, int top, int right, int bottom, @NonNull TileBytesCallback callback) {
+		SQLiteConnection db = getDatabase();
+		if (db == null || zoom > maxZoom) {
+			return 0;
+		}
+		int count = 0;
+		long ts = System.currentTimeMillis();
+		String[] params = new String[] {String.valueOf(getFileZoom(zoom)), String.valueOf(left), String.valueOf(right),
+				String.valueOf(top), String.valueOf(bottom)};
+		SQLiteCursor cursor = db.rawQuery("SELECT x, y, image" + (timeSupported ? ", time" : "")
+				+ " FROM tiles WHERE z = ? AND x >= ? AND x <= ? AND y >= ? AND y <= ?", params);
+		if (cursor.moveToFirst()) {
+			do {
+				byte[] blob = cursor.getBlob(2);
+				if (blob != null) {
+					callback.tileLoaded(cursor.getInt(0), cursor.getInt(1), zoom, blob,
+							timeSupported ? cursor.getLong(3) : 0);
+					count++;
+				}
+			} while (cursor.moveToNext());
+		}
+		cursor.close();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Load " + count + " tiles of zoom " + zoom + " for " + (System.currentTimeMillis() - ts) + " ms");
+		}
+		return count;
+	}
+
 	public Bitmap getImage(int x, int y, int zoom, long[] timeHolder) {
 		byte[] blob;
 		try {
@@ -648,9 +689,32 @@ public class SQLiteTileSource implements ITileSource {
 			return;
 		}*/
 		
-		String query = timeSupported ? "INSERT OR REPLACE INTO tiles(x,y,z,s,image,time) VALUES(?, ?, ?, ?, ?, ?)"
+		SQLiteStatement statement = db.compileStatement(getInsertQuery()); //$NON-NLS-1$
+		bindTile(statement, x, y, zoom, dataToSave);
+		statement.execute();
+		statement.close();
+
+	}
+
+	/**
+	 * Writer inserts tiles by batches in transactions with one compiled statement,
+	 * it should be closed to commit last batch. Returns null if database is not writable.
+	 */
+	@Nullable
+	public TilesWriter createTilesWriter(int batchSize) {
+		SQLiteConnection db = getDatabase();
+		if (db == null || db.isReadOnly() || onlyReadonlyAvailable) {
+			return null;
+		}
+		return new TilesWriter(db, batchSize);
+	}
+
+	private String getInsertQuery() {
+		return timeSupported ? "INSERT OR REPLACE INTO tiles(x,y,z,s,image,time) VALUES(?, ?, ?, ?, ?, ?)"
 				: "INSERT OR REPLACE INTO tiles(x,y,z,s,image) VALUES(?, ?, ?, ?, ?)";
-		net.osmand.plus.api.SQLiteAPI.SQLiteStatement statement = db.compileStatement(query); //$NON-NLS-1$
+	}
+
+	private void bindTile(SQLiteStatement statement, int x, int y, int zoom, byte[] dataToSave) {
 		statement.bindLong(1, x);
 		statement.bindLong(2, y);
 		statement.bindLong(3, getFileZoom(zoom));
@@ -659,9 +723,61 @@ public class SQLiteTileSource implements ITileSource {
 		if (timeSupported) {
 			statement.bindLong(6, System.currentTimeMillis());
 		}
-		statement.execute();
-		statement.close();
+	}
+
+	public class TilesWriter implements Closeable {
+
+		private final SQLiteConnection db;
+		private final SQLiteStatement statement;
+		private final int batchSize;
+		private int pending;
+		private int count;
+
+		private TilesWriter(SQLiteConnection db, int batchSize) {
+			this.db = db;
+			this.batchSize = batchSize;
+			this.statement = db.compileStatement(getInsertQuery());
+		}
+
+		public void addTile(int x, int y, int zoom, @NonNull byte[] data) {
+			if (pending == 0) {
+				db.beginTransaction();
+			}
+			try {
+				statement.clearBindings();
+				bindTile(statement, x, y, zoom, data);
+				statement.execute();
+			} catch (RuntimeException e) {
+				pending = 0;
+				db.endTransaction();
+				throw e;
+			}
+			count++;
+			if (++pending >= batchSize) {
+				flush();
+			}
+		}
 
+		public void flush() {
+			if (pending > 0) {
+				pending = 0;
+				db.setTransactionSuccessful();
+				db.endTransaction();
+			}
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public void close() {
+			try {
+				flush();
+			} finally {
+				statement.close();
+			}
+		}
 	}
 
 	private int getFileZoom(int zoom) {
@@ -4,37 +4,56 @@ import net.osmand.IndexConstants;
 import net.osmand.PlatformUtil;
 import net.osmand.map.ITileSource;
 import net.osmand.plus.resources.AsyncLoadingThread.TileLoadDownloadRequest;
+import net.osmand.util.ConcurrentLruCache;
+import net.osmand.util.ConcurrentLruCache.Weigher;
 
 import org.apache.commons.logging.Log;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+/**
+ * Cache of loaded tiles shared by UI, loading and download threads. Tiles are kept in concurrent
+ * map without global lock, cache is limited by memory occupied by tiles (see {@link #getTileBytes}),
+ * least recently used tiles are evicted first.
+ */
 public abstract class TilesCache<T> {
 
 	private final AsyncLoadingThread asyncLoadingThread;
 	protected static final Log log = PlatformUtil.getLog(TilesCache.class);
 
-	Map<String, CacheEntry<T>> cache = new LinkedHashMap<>();
-	Map<String, Boolean> tilesOnFS = new LinkedHashMap<>();
+	final ConcurrentLruCache<String, T> cache;
+	// value is false if tile doesn't exist
+	final Map<String, Boolean> tilesOnFS = new ConcurrentHashMap<>();
 
 	protected File dirWithTiles;
 	protected int maxCacheSize = 30;
 
 	public TilesCache(AsyncLoadingThread asyncLoadingThread) {
 		this.asyncLoadingThread = asyncLoadingThread;
+		this.cache = new ConcurrentLruCache<>(maxCacheSize * getAverageTileBytes(), new Weigher<String, T>() {
+			@Override
+			public long weigh(String key, T tile) {
+				return getTileBytes(tile);
+			}
+		});
 	}
 
-	protected StringBuilder builder = new StringBuilder(40);
+	/**
+	 * Memory occupied by tile in bytes
+	 */
+	protected abstract long getTileBytes(@NonNull T tile);
+
+	/**
+	 * Expected memory occupied by tile, used to convert max cache size in tiles to bytes
+	 */
+	protected abstract long getAverageTileBytes();
 
 	public int getMaxCacheSize() {
 		return maxCacheSize;
@@ -42,6 +61,19 @@ public abstract class TilesCache<T> {
 
 	public void setMaxCacheSize(int maxCacheSize) {
 		this.maxCacheSize = maxCacheSize;
+		setMaxCacheBytes(maxCacheSize * getAverageTileBytes());
+	}
+
+	public long getMaxCacheBytes() {
+		return cache.getMaxWeight();
+	}
+
+	public void setMaxCacheBytes(long maxCacheBytes) {
+		cache.setMaxWeight(maxCacheBytes);
+	}
+
+	public long getCacheBytes() {
+		return cache.getWeight();
 	}
 
 	public void setDirWithTiles(File dirWithTiles) {
@@ -51,8 +83,8 @@ public abstract class TilesCache<T> {
 	public abstract boolean isTileSourceSupported(ITileSource tileSource);
 
 	@NonNull
-	public synchronized String calculateTileId(@Nullable ITileSource map, int x, int y, int zoom) {
-		builder.setLength(0);
+	public String calculateTileId(@Nullable ITileSource map, int x, int y, int zoom) {
+		StringBuilder builder = new StringBuilder(40);
 		if (map == null) {
 			builder.append(IndexConstants.TEMP_SOURCE_TO_LOAD);
 		} else {
@@ -72,15 +104,15 @@ public abstract class TilesCache<T> {
 		return builder.toString();
 	}
 
-	public synchronized boolean isTileDownloaded(@Nullable String tileId, ITileSource map, int x, int y, int zoom) {
+	public boolean isTileDownloaded(@Nullable String tileId, ITileSource map, int x, int y, int zoom) {
 		tileId = tileId == null ? calculateTileId(map, x, y, zoom) : tileId;
-		return cache.get(tileId) != null || isTileSavedOnFileSystem(tileId, map, x, y, zoom);
+		return cache.containsKey(tileId) || isTileSavedOnFileSystem(tileId, map, x, y, zoom);
 	}
 
-	public synchronized boolean isTileSavedOnFileSystem(@NonNull String tileId, @Nullable ITileSource map,
-	                                                    int x, int y, int zoom) {
-		if (!tilesOnFS.containsKey(tileId)) {
-			boolean exist;
+	public boolean isTileSavedOnFileSystem(@NonNull String tileId, @Nullable ITileSource map,
+	                                       int x, int y, int zoom) {
+		Boolean exist = tilesOnFS.get(tileId);
+		if (exist == null) {
 			if (map instanceof SQLiteTileSource) {
 				if (((SQLiteTileSource) map).isLocked()){
 					return false;
@@ -89,14 +121,14 @@ public abstract class TilesCache<T> {
 			} else {
 				exist = new File(dirWithTiles, tileId).exists();
 			}
-			tilesOnFS.put(tileId, exist ? true : null);
+			tilesOnFS.put(tileId, exist);
 		}
-		return tilesOnFS.get(tileId) != null;
+		return exist;
 	}
 
-	public synchronized int getTileBytesSizeOnFileSystem(@NonNull String tileId,
-	                                                     @NonNull ITileSource map,
-	                                                     int x, int y, int zoom) {
+	public int getTileBytesSizeOnFileSystem(@NonNull String tileId,
+	                                        @NonNull ITileSource map,
+	                                        int x, int y, int zoom) {
 		if (isTileDownloaded(tileId, map, x, y, zoom)) {
 			try {
 				byte[] bytes = map.getBytes(x, y, zoom, dirWithTiles.getAbsolutePath());
@@ -129,9 +161,9 @@ public abstract class TilesCache<T> {
 		return getTileForMap(file, map, x, y, zoom, loadFromInternetIfNeeded, sync, false, timestamp);
 	}
 
-	protected synchronized T getTileForMap(String tileId, ITileSource map, int x, int y, int zoom,
-	                                       boolean loadFromInternetIfNeeded, boolean sync,
-	                                       boolean deleteBefore, long timestamp) {
+	protected T getTileForMap(String tileId, ITileSource map, int x, int y, int zoom,
+	                          boolean loadFromInternetIfNeeded, boolean sync,
+	                          boolean deleteBefore, long timestamp) {
 		if (tileId == null) {
 			tileId = calculateTileId(map, x, y, zoom);
 		}
@@ -146,7 +178,7 @@ public abstract class TilesCache<T> {
 					f.delete();
 				}
 			}
-			tilesOnFS.put(tileId, null);
+			tilesOnFS.put(tileId, false);
 		}
 
 		if (map != null) {
@@ -165,7 +197,7 @@ public abstract class TilesCache<T> {
 			}
 			TileLoadDownloadRequest req = new TileLoadDownloadRequest(dirWithTiles, url, toSave,
 					tileId, map, x, y, zoom, timestamp, map.getReferer(), map.getUserAgent());
-			if (cache.get(tileId) == null || isExpired(req)) {
+			if (!cache.containsKey(tileId) || isExpired(req)) {
 				if (sync) {
 					return getRequestedTile(req);
 				} else {
@@ -176,7 +208,7 @@ public abstract class TilesCache<T> {
 		return get(tileId, timestamp);
 	}
 
-	protected synchronized T getRequestedTile(TileLoadDownloadRequest req) {
+	protected T getRequestedTile(TileLoadDownloadRequest req) {
 		if (req.tileId == null || req.dirWithTiles == null) {
 			return null;
 		}
@@ -188,9 +220,6 @@ public abstract class TilesCache<T> {
 				return cacheObject;
 			}
 		}
-		if (cache.size() > maxCacheSize) {
-			clearTiles();
-		}
 		if (req.dirWithTiles.canRead() && !asyncLoadingThread.isFileCurrentlyDownloaded(req.fileToSave)
 				&& !asyncLoadingThread.isFilePendingToDownload(req.fileToSave)) {
 			long time = System.currentTimeMillis();
@@ -203,11 +232,12 @@ public abstract class TilesCache<T> {
 			if (tileObject != null) {
 				put(req.tileId, tileObject, req.timestamp);
 				if (log.isDebugEnabled()) {
-					log.debug("Loaded file : " + req.tileId + " " + -(time - System.currentTimeMillis()) + " ms " + cache.size());
+					log.debug("Loaded file : " + req.tileId + " " + -(time - System.currentTimeMillis()) + " ms "
+							+ cache.size() + " tiles " + cache.getWeight() + " bytes");
 				}
 			}
 
-			if (cache.get(req.tileId) == null && req.url != null) {
+			if (!cache.containsKey(req.tileId) && req.url != null) {
 				asyncLoadingThread.requestToDownload(req);
 			}
 
@@ -238,58 +268,37 @@ public abstract class TilesCache<T> {
 		}
 	}
 
-	protected synchronized void clearTiles() {
+	protected void clearTiles() {
 		log.info("Cleaning tiles - size = " + cache.size());
-		List<Map.Entry<String, CacheEntry<T>>> list = new ArrayList<>(cache.entrySet());
-		Collections.sort(list, (left, right) -> Long.compare(left.getValue().accessTime, right.getValue().accessTime));
-		for (int i = 0; i < list.size() / 2; i++) {
-			cache.remove(list.get(i).getKey());
-		}
+		cache.trim();
 	}
 
-	protected synchronized void clearAllTiles() {
+	protected void clearAllTiles() {
 		log.info("Cleaning tiles - size = " + cache.size());
 		cache.clear();
 	}
 
-	public synchronized T get(String key, long accessTime) {
-		CacheEntry<T> entry = cache.get(key);
-		if (entry == null) {
-			return null;
-		}
-		entry.accessTime = accessTime;
-		return entry.tile;
+	public T get(String key, long accessTime) {
+		return cache.get(key, accessTime);
 	}
 
-	public synchronized void put(String key, T value, long timestamp) {
-		cache.put(key, new CacheEntry<>(value, timestamp));
+	public void put(String key, T value, long timestamp) {
+		cache.put(key, value, timestamp);
 	}
 
-	public synchronized T remove(String key) {
-		CacheEntry<T> entry = cache.remove(key);
-		return entry == null ? null : entry.tile;
+	public T remove(String key) {
+		return cache.remove(key);
 	}
 
-	public synchronized int size() {
+	public int size() {
 		return cache.size();
 	}
 
-	public synchronized Set<String> keySet() {
+	public Set<String> keySet() {
 		return cache.keySet();
 	}
 
 	public void close() {
 		tilesOnFS.clear();
 	}
-
-	private static class CacheEntry<T> {
-
-		T tile;
-		long accessTime;
-
-		public CacheEntry(T tile, long accessTime) {
-			this.tile = tile;
-			this.accessTime = accessTime;
-		}
-	}
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import net.osmand.Location;
 import net.osmand.LocationsHolder;
 import net.osmand.PlatformUtil;
 import net.osmand.ResultMatcher;
+import net.osmand.TspLocalSearch;
 import net.osmand.data.LatLon;
 import net.osmand.data.ValueHolder;
 import net.osmand.plus.NavigationService;
@@ -25,7 +26,9 @@ import net.osmand.plus.settings.backend.OsmAndAppCustomization.OsmAndAppCustomiz
 import net.osmand.plus.settings.backend.OsmandSettings;
 import net.osmand.plus.settings.enums.MetricsConstants;
 import net.osmand.plus.utils.OsmAndFormatter;
+import net.osmand.router.RouteCalculationProgress;
 import net.osmand.router.RouteExporter;
+import net.osmand.router.RouteMatrix;
 import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
 import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
 import net.osmand.router.RouteSegmentResult;
@@ -42,6 +45,11 @@ import java.util.List;
 public class RoutingHelper {
 
 	private static final org.apache.commons.logging.Log log = PlatformUtil.getLog(RoutingHelper.class);
+	private static final long TSP_TIME_LIMIT = 3000;
+	// route matrix is calculated only for points within the box, otherwise straight line distances are used
+	private static final int MATRIX_MAX_POINTS = 100;
+	private static final double MATRIX_MAX_BOX_SIZE = 100000;
+	private static final long MATRIX_TIME_LIMIT = 15000;
 
 	// POS_TOLERANCE
 	// 1) calculate current closest segment of the route during navigation
@@ -898,6 +906,57 @@ public class RoutingHelper {
 		return provider.getRoutingEnvironment(ctx, mode, start, end);
 	}
 
+	/**
+	 * Orders points to visit by travel times of the mode (straight line distances when mode has no routing
+	 * or routing data is missing), should be called from background thread.
+	 * @return indexes of points (start, intermediates, end) in visiting order as {@link TspLocalSearch#solve()}
+	 */
+	public int[] sortPointsByRoute(@Nullable ApplicationMode mode, @NonNull List<LatLon> intermediates,
+	                               @NonNull LatLon start, @Nullable LatLon end) {
+		List<LatLon> points = TspLocalSearch.listPoints(intermediates, start, end);
+		TspLocalSearch tsp = new TspLocalSearch().setTimeLimit(TSP_TIME_LIMIT);
+		RouteMatrix matrix = null;
+		if (mode != null && mode != ApplicationMode.DEFAULT && points.size() > 2 && isRouteMatrixAllowed(points)) {
+			try {
+				RoutingEnvironment env = getRoutingEnvironment(app, mode, start, points.get(points.size() - 1));
+				if (env != null) {
+					RouteCalculationProgress progress = new RouteCalculationProgress();
+					env.getCtx().calculationProgress = progress;
+					app.runInUIThread(() -> progress.isCancelled = true, MATRIX_TIME_LIMIT);
+					matrix = env.getRouter().searchRouteMatrix(env.getCtx(), points, points,
+							Runtime.getRuntime().availableProcessors());
+					if (matrix == null) {
+						log.info("Route matrix is not calculated, straight line distances are used");
+					}
+				}
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		if (matrix != null) {
+			// matrix ignores turn restrictions and penalties, it's good enough to order points
+			tsp.readRouteMatrix(matrix, points, end != null);
+		} else {
+			tsp.readGraph(intermediates, start, end);
+		}
+		return tsp.solve();
+	}
+
+	private static boolean isRouteMatrixAllowed(@NonNull List<LatLon> points) {
+		if (points.size() > MATRIX_MAX_POINTS) {
+			return false;
+		}
+		double top = -90, bottom = 90, left = 180, right = -180;
+		for (LatLon l : points) {
+			top = Math.max(top, l.getLatitude());
+			bottom = Math.min(bottom, l.getLatitude());
+			left = Math.min(left, l.getLongitude());
+			right = Math.max(right, l.getLongitude());
+		}
+		return MapUtils.getDistance(top, left, bottom, left) <= MATRIX_MAX_BOX_SIZE
+				&& MapUtils.getDistance(bottom, left, bottom, right) <= MATRIX_MAX_BOX_SIZE;
+	}
+
 	public List<GpxPoint> generateGpxPoints(RoutingEnvironment env, GpxRouteApproximation gctx, LocationsHolder locationsHolder) {
 		return provider.generateGpxPoints(env, gctx, locationsHolder);
 	}